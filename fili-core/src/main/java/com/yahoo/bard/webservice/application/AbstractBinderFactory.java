@@ -22,7 +22,9 @@ import com.yahoo.bard.webservice.async.jobs.jobrows.JobRowBuilder;
 import com.yahoo.bard.webservice.async.jobs.payloads.DefaultJobPayloadBuilder;
 import com.yahoo.bard.webservice.async.jobs.payloads.JobPayloadBuilder;
 import com.yahoo.bard.webservice.async.jobs.stores.ApiJobStore;
+import com.yahoo.bard.webservice.async.jobs.stores.IndexedJobStore;
 import com.yahoo.bard.webservice.async.jobs.stores.NoOpApiJobStore;
+import com.yahoo.bard.webservice.async.preresponses.stores.FilePreResponseStore;
 import com.yahoo.bard.webservice.async.preresponses.stores.NoOpPreResponseStore;
 import com.yahoo.bard.webservice.async.preresponses.stores.PreResponseStore;
 import com.yahoo.bard.webservice.async.workflows.AsynchronousWorkflowsBuilder;
@@ -38,11 +40,15 @@ import com.yahoo.bard.webservice.data.DruidResponseParser;
 import com.yahoo.bard.webservice.data.HttpResponseMaker;
 import com.yahoo.bard.webservice.data.PartialDataHandler;
 import com.yahoo.bard.webservice.data.PreResponseDeserializer;
+import com.yahoo.bard.webservice.data.cache.CachedResponseFormat;
 import com.yahoo.bard.webservice.data.cache.DataCache;
 import com.yahoo.bard.webservice.data.cache.HashDataCache;
 import com.yahoo.bard.webservice.data.cache.MemDataCache;
 import com.yahoo.bard.webservice.data.cache.MemTupleDataCache;
 import com.yahoo.bard.webservice.data.cache.StubDataCache;
+import com.yahoo.bard.webservice.data.cache.TieredTupleDataCache;
+import com.yahoo.bard.webservice.data.cache.TinyLfuDataCache;
+import com.yahoo.bard.webservice.data.cache.TupleDataCache;
 import com.yahoo.bard.webservice.data.config.ConfigurationLoader;
 import com.yahoo.bard.webservice.data.config.ResourceDictionaries;
 import com.yahoo.bard.webservice.data.config.dimension.DimensionConfig;
@@ -106,6 +112,7 @@ import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.RatioGauge;
 import com.codahale.metrics.health.HealthCheck;
 import com.codahale.metrics.health.HealthCheckRegistry;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.glassfish.hk2.api.TypeLiteral;
@@ -117,7 +124,9 @@ import org.slf4j.LoggerFactory;
 import rx.subjects.PublishSubject;
 
 import java.io.IOException;
+import java.io.Serializable;
 import java.lang.reflect.Constructor;
+import java.nio.file.Paths;
 import java.time.Clock;
 import java.time.ZoneId;
 import java.util.Arrays;
@@ -178,6 +187,11 @@ public abstract class AbstractBinderFactory implements BinderFactory {
     public static final String DEPRECATED_PERMISSIVE_AVAILABILITY_FLAG = SYSTEM_CONFIG.getPackageVariableName(
             "permissive_column_availability_enabled");
 
+    public static final long LOCAL_CACHE_MAX_BYTES = SYSTEM_CONFIG.getLongProperty(
+            SYSTEM_CONFIG.getPackageVariableName("druid_cache_local_max_bytes"),
+            0
+    );
+
     public static final int DRUID_UNCOVERED_INTERVAL_LIMIT = SYSTEM_CONFIG.getIntProperty(
             SYSTEM_CONFIG.getPackageVariableName("druid_uncovered_interval_limit"),
             0
@@ -185,6 +199,36 @@ public abstract class AbstractBinderFactory implements BinderFactory {
 
     public static final String SYSTEM_CONFIG_TIMEZONE_KEY = "timezone";
 
+    public static final String PRE_RESPONSE_STORE_DIRECTORY = SYSTEM_CONFIG.getStringProperty(
+            SYSTEM_CONFIG.getPackageVariableName("pre_response_store_directory"),
+            ""
+    );
+
+    public static final long PRE_RESPONSE_STORE_TTL_MILLIS = SYSTEM_CONFIG.getLongProperty(
+            SYSTEM_CONFIG.getPackageVariableName("pre_response_store_ttl_ms"),
+            TimeUnit.DAYS.toMillis(1)
+    );
+
+    public static final long PRE_RESPONSE_STORE_MAX_BYTES = SYSTEM_CONFIG.getLongProperty(
+            SYSTEM_CONFIG.getPackageVariableName("pre_response_store_max_bytes"),
+            0
+    );
+
+    public static final boolean API_JOB_STORE_INDEXED_ENABLED = SYSTEM_CONFIG.getBooleanProperty(
+            SYSTEM_CONFIG.getPackageVariableName("api_job_store_indexed_enabled"),
+            false
+    );
+
+    public static final long API_JOB_STORE_RETENTION_MILLIS = SYSTEM_CONFIG.getLongProperty(
+            SYSTEM_CONFIG.getPackageVariableName("api_job_store_retention_ms"),
+            TimeUnit.DAYS.toMillis(7)
+    );
+
+    public static final String API_JOB_STORE_LOG_FILE = SYSTEM_CONFIG.getStringProperty(
+            SYSTEM_CONFIG.getPackageVariableName("api_job_store_log_file"),
+            ""
+    );
+
     private ObjectMappersSuite objectMappers;
 
     private DataSourceMetadataService dataSourceMetadataService;
@@ -432,10 +476,27 @@ public abstract class AbstractBinderFactory implements BinderFactory {
      * @param resourceDictionaries  Hold the resource dictionaries
      *
      * @return An instance of the interface that allows Bard to talk to an arbitrary key-value store system for storing
-     * PreResponses, by default this returns a {@code NoOpPreResponseStore}, which does nothing
+     * PreResponses, by default this returns a {@code FilePreResponseStore} if a pre response store directory is
+     * configured, and a {@code NoOpPreResponseStore}, which does nothing, otherwise
      */
     protected PreResponseStore buildPreResponseStore(ResourceDictionaries resourceDictionaries) {
-        return new NoOpPreResponseStore();
+        if (PRE_RESPONSE_STORE_DIRECTORY.isEmpty()) {
+            return new NoOpPreResponseStore();
+        }
+        ObjectMapper responseContextMapper = getMapper().copy()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+                .enableDefaultTyping(ObjectMapper.DefaultTyping.NON_FINAL);
+        return new FilePreResponseStore(
+                Paths.get(PRE_RESPONSE_STORE_DIRECTORY),
+                initializePreResponseDeserializer(
+                        resourceDictionaries.getDimensionDictionary(),
+                        getMapper(),
+                        responseContextMapper,
+                        new StandardGranularityParser(getGranularityDictionary())
+                ),
+                PRE_RESPONSE_STORE_TTL_MILLIS,
+                PRE_RESPONSE_STORE_MAX_BYTES
+        );
     }
 
     /**
@@ -443,10 +504,20 @@ public abstract class AbstractBinderFactory implements BinderFactory {
      * requests.
      *
      * @return An instance of the interface that allows Bard to talk to an arbitrary key-value store system for storing
-     * job metadata, by default this returns a {@code NoOpApiJobStore}, which does nothing
+     * job metadata, by default this returns an {@code IndexedJobStore} if the indexed job store is enabled, and a
+     * {@code NoOpApiJobStore}, which does nothing, otherwise
      */
     protected ApiJobStore buildApiJobStore() {
-        return new NoOpApiJobStore();
+        if (!API_JOB_STORE_INDEXED_ENABLED) {
+            return new NoOpApiJobStore();
+        }
+        return new IndexedJobStore(
+                API_JOB_STORE_RETENTION_MILLIS,
+                getClock(),
+                API_JOB_STORE_LOG_FILE.isEmpty() ? null : Paths.get(API_JOB_STORE_LOG_FILE),
+                getMapper(),
+                Collections.emptySet()
+        );
     }
 
     /**
@@ -781,8 +852,12 @@ public abstract class AbstractBinderFactory implements BinderFactory {
             );
         }
         try {
-            MemTupleDataCache<Long, String> cache = new MemTupleDataCache<>();
+            MemTupleDataCache<Long, Serializable> cache = new MemTupleDataCache<>();
             LOG.info("MemcachedClient Version 2 started {}", cache);
+            if (LOCAL_CACHE_MAX_BYTES > 0) {
+                LOG.info("Caching up to {} bytes of memcached entries in process", LOCAL_CACHE_MAX_BYTES);
+                return new TieredTupleDataCache<>(buildLocalCache(LOCAL_CACHE_MAX_BYTES), cache);
+            }
             return cache;
         } catch (IOException e) {
             LOG.error("MemcachedClient Version 2 failed to start {}", e);
@@ -790,6 +865,24 @@ public abstract class AbstractBinderFactory implements BinderFactory {
         }
     }
 
+    /**
+     * Build the in-process cache kept in front of the local signature cache.
+     *
+     * @param maxBytes  The approximate maximum size of the cached entries, in bytes
+     *
+     * @return the local cache
+     */
+    protected DataCache<TupleDataCache.DataEntry<String, Long, Serializable>> buildLocalCache(long maxBytes) {
+        // Size the frequency sketch assuming entries of around 4KB
+        int expectedEntries = (int) Math.min(Integer.MAX_VALUE, maxBytes / 4096);
+        // The cache adds the length of each key to the weight of its entry
+        return new TinyLfuDataCache<>(
+                maxBytes,
+                expectedEntries,
+                entry -> CachedResponseFormat.sizeOf(entry.getValue())
+        );
+    }
+
     /**
      * Builds and returns an instance of TTL cache.
      *
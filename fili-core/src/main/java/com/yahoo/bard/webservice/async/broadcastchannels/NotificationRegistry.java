@@ -0,0 +1,95 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.async.broadcastchannels;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.Observable;
+import rx.Subscriber;
+import rx.subscriptions.Subscriptions;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Hands the messages of a BroadcastChannel to the listeners waiting on each message.
+ * <p>
+ * The registry subscribes to the channel once, and looks up the listeners of each message it receives, rather than
+ * having every listener subscribe to the channel and check every message. This is how long pollers wait on the ticket
+ * of their job: each notification costs one lookup no matter how many jobs are being waited on.
+ *
+ * @param <T>  The type of message that the BroadcastChannel publishes
+ */
+public class NotificationRegistry<T> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NotificationRegistry.class);
+
+    private final Map<T, Set<Subscriber<? super T>>> listeners = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param broadcastChannel  The channel whose messages are handed to the listeners
+     */
+    public NotificationRegistry(BroadcastChannel<T> broadcastChannel) {
+        broadcastChannel.getNotifications().subscribe(
+                this::dispatch,
+                throwable -> LOG.error("Broadcast channel notifications failed", throwable)
+        );
+    }
+
+    /**
+     * Wait for a message.
+     * <p>
+     * The returned observable is cold: a listener is registered when it is subscribed to, and dropped when it is
+     * unsubscribed from. Once the message is received, the observable emits it and completes.
+     *
+     * @param message  The message to wait for
+     *
+     * @return An observable emitting the message once it is published
+     */
+    public Observable<T> listen(T message) {
+        return Observable.create(subscriber -> {
+            // Adding and removing listeners through compute keeps them atomic with a message taking its listeners
+            listeners.compute(message, (key, subscribers) -> {
+                Set<Subscriber<? super T>> updated = subscribers == null ? new CopyOnWriteArraySet<>() : subscribers;
+                updated.add(subscriber);
+                return updated;
+            });
+            subscriber.add(Subscriptions.create(() -> listeners.computeIfPresent(message, (key, subscribers) -> {
+                subscribers.remove(subscriber);
+                return subscribers.isEmpty() ? null : subscribers;
+            })));
+        });
+    }
+
+    /**
+     * The number of messages being waited on.
+     *
+     * @return the number of messages with listeners
+     */
+    public int size() {
+        return listeners.size();
+    }
+
+    /**
+     * Hand a message to its listeners, if there are any.
+     *
+     * @param message  The message received from the channel
+     */
+    private void dispatch(T message) {
+        Set<Subscriber<? super T>> subscribers = listeners.remove(message);
+        if (subscribers == null) {
+            return;
+        }
+        for (Subscriber<? super T> subscriber : subscribers) {
+            if (!subscriber.isUnsubscribed()) {
+                subscriber.onNext(message);
+                subscriber.onCompleted();
+            }
+        }
+    }
+}
@@ -0,0 +1,555 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.async.jobs.stores;
+
+import com.yahoo.bard.webservice.async.jobs.jobrows.DefaultJobField;
+import com.yahoo.bard.webservice.async.jobs.jobrows.JobField;
+import com.yahoo.bard.webservice.async.jobs.jobrows.JobRow;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.Observable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory ApiJobStore which indexes the fields jobs are usually filtered on, and expires old jobs.
+ * <p>
+ * The {@link #INDEXED_FIELDS} are indexed in sorted maps from field value to job ids, so {@code eq}, {@code in} and
+ * {@code startswith} filters on them look up their jobs rather than scanning every job. When several filters can use
+ * an index, the one matching the fewest jobs is used, and the other filters are only checked on those jobs. Jobs which
+ * don't have an indexed field never match a filter on that field. Rows are returned in the order they were first
+ * saved in, like the {@link HashJobStore}.
+ * <p>
+ * Jobs are kept for the retention period after the date they were created (or were first saved, if their date created
+ * can't be parsed), and expired jobs are dropped as new jobs are saved.
+ * <p>
+ * The store may keep an append-only log of saved jobs in a file, from which it recovers its jobs when it is built.
+ * The log is rewritten with only the jobs still kept once it holds more than twice as many records as there are jobs.
+ */
+public class IndexedJobStore implements ApiJobStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IndexedJobStore.class);
+
+    public static final Set<JobField> INDEXED_FIELDS = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(
+            DefaultJobField.USER_ID,
+            DefaultJobField.STATUS,
+            DefaultJobField.DATE_CREATED
+    )));
+
+    /**
+     * The log is never compacted while it holds fewer records than this.
+     */
+    private static final long MIN_COMPACTION_RECORDS = 1024;
+
+    private static final String ID_KEY = "id";
+    private static final String ROW_KEY = "row";
+
+    private final long retentionMillis;
+    private final Clock clock;
+    private final Path logFile;
+    private final ObjectMapper mapper;
+    private final Map<String, JobField> fieldsByName = new HashMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Entry> rows = new LinkedHashMap<>();
+    private final Map<JobField, NavigableMap<String, Set<String>>> indexes = new HashMap<>();
+    private final NavigableMap<Long, Set<String>> byCreation = new TreeMap<>();
+    private long nextSequence = 0;
+
+    private Writer log;
+    private long logRecords = 0;
+
+    /**
+     * Builds a job store which is not recovered after a restart.
+     *
+     * @param retentionMillis  How long jobs are kept after they are created, 0 keeps jobs indefinitely
+     * @param clock  The clock used to expire jobs
+     */
+    public IndexedJobStore(long retentionMillis, Clock clock) {
+        this(retentionMillis, clock, null, null, Collections.emptySet());
+    }
+
+    /**
+     * Builds a job store which logs saved jobs to a file, and recovers the jobs in the file.
+     *
+     * @param retentionMillis  How long jobs are kept after they are created, 0 keeps jobs indefinitely
+     * @param clock  The clock used to expire jobs
+     * @param logFile  The file to log saved jobs to, or null to not keep a log
+     * @param mapper  The mapper used to read and write the log
+     * @param jobFields  The job fields other than the {@link DefaultJobField}s which are recovered from the log
+     */
+    public IndexedJobStore(
+            long retentionMillis,
+            Clock clock,
+            Path logFile,
+            ObjectMapper mapper,
+            Collection<? extends JobField> jobFields
+    ) {
+        this.retentionMillis = retentionMillis;
+        this.clock = clock;
+        this.logFile = logFile;
+        this.mapper = mapper;
+        for (JobField field : DefaultJobField.values()) {
+            fieldsByName.put(field.getName(), field);
+        }
+        for (JobField field : jobFields) {
+            fieldsByName.put(field.getName(), field);
+        }
+        for (JobField field : INDEXED_FIELDS) {
+            indexes.put(field, new TreeMap<>());
+        }
+
+        if (logFile != null) {
+            try {
+                recover();
+                evictExpired();
+                compact();
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to recover the job store from " + logFile, e);
+            }
+        }
+    }
+
+    @Override
+    public Observable<JobRow> get(String id) {
+        lock.readLock().lock();
+        try {
+            Entry entry = rows.get(id);
+            return entry == null || isExpired(entry, clock.millis()) ? Observable.empty() : Observable.just(entry.row);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Observable<JobRow> save(JobRow metadata) {
+        lock.writeLock().lock();
+        try {
+            // Log the job before holding it, so that a job which can't be logged isn't held either
+            if (log != null) {
+                appendToLog(metadata);
+            }
+            put(metadata);
+            if (log != null && logRecords > Math.max(MIN_COMPACTION_RECORDS, 2L * rows.size())) {
+                compact();
+            }
+            evictExpired();
+            return Observable.just(metadata);
+        } catch (IOException e) {
+            LOG.error("Unable to log job {} to {}", metadata.getId(), logFile, e);
+            return Observable.error(new ApiJobStoreException(e, metadata));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Observable<JobRow> getAllRows() {
+        lock.readLock().lock();
+        try {
+            long now = clock.millis();
+            List<JobRow> jobRows = new ArrayList<>(rows.size());
+            for (Entry entry : rows.values()) {
+                if (!isExpired(entry, now)) {
+                    jobRows.add(entry.row);
+                }
+            }
+            return Observable.from(jobRows);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Observable<JobRow> getFilteredRows(Set<JobRowFilter> jobRowFilters) throws IllegalArgumentException {
+        lock.readLock().lock();
+        try {
+            Set<String> candidates = null;
+            for (JobRowFilter filter : jobRowFilters) {
+                Set<String> matches = lookUp(filter);
+                if (matches != null && (candidates == null || matches.size() < candidates.size())) {
+                    candidates = matches;
+                }
+            }
+            if (candidates == null) {
+                return getAllRows().filter(jobRow -> satisfiesFilters(jobRowFilters, jobRow));
+            }
+
+            long now = clock.millis();
+            List<Entry> entries = new ArrayList<>(candidates.size());
+            for (String id : candidates) {
+                Entry entry = rows.get(id);
+                if (!isExpired(entry, now)) {
+                    entries.add(entry);
+                }
+            }
+            entries.sort(Comparator.comparingLong(entry -> entry.sequence));
+
+            List<JobRow> jobRows = new ArrayList<>(entries.size());
+            for (Entry entry : entries) {
+                if (satisfiesFilters(jobRowFilters, entry.row)) {
+                    jobRows.add(entry.row);
+                }
+            }
+            return Observable.from(jobRows);
+        } catch (IllegalArgumentException e) {
+            return Observable.error(e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The number of jobs held by the store, including expired jobs which haven't been dropped yet.
+     *
+     * @return the number of jobs
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return rows.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Checks if the given JobRow satisfies all the JobRowFilters.
+     *
+     * @param jobRowFilters  A Set of JobRowFilters specifying the different conditions to be satisfied
+     * @param jobRow  The JobRow which needs to be inspected
+     *
+     * @return true if the JobRow satisfies all the filters, false otherwise
+     *
+     * @throws IllegalArgumentException if a JobField in any of the filters is not a part the JobRow
+     */
+    private static boolean satisfiesFilters(Set<JobRowFilter> jobRowFilters, JobRow jobRow)
+            throws IllegalArgumentException {
+        return jobRowFilters.stream().allMatch(filter -> filter.isSatisfiedBy(jobRow));
+    }
+
+    /**
+     * Look up the ids of the jobs matching a filter in the index of its field.
+     *
+     * @param filter  The filter to look up
+     *
+     * @return the ids of the matching jobs, or null if the filter can't be answered by an index
+     */
+    private Set<String> lookUp(JobRowFilter filter) {
+        NavigableMap<String, Set<String>> index = indexes.get(filter.getJobField());
+        if (index == null) {
+            return null;
+        }
+        Set<String> ids = new LinkedHashSet<>();
+        switch (filter.getOperation()) {
+            case in:
+            case eq:
+                for (String value : filter.getValues()) {
+                    ids.addAll(index.getOrDefault(value, Collections.emptySet()));
+                }
+                return ids;
+            case startswith:
+                for (String prefix : filter.getValues()) {
+                    for (Map.Entry<String, Set<String>> entry : index.tailMap(prefix, true).entrySet()) {
+                        if (!entry.getKey().startsWith(prefix)) {
+                            break;
+                        }
+                        ids.addAll(entry.getValue());
+                    }
+                }
+                return ids;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Store a job and index it, replacing the job with the same id.
+     *
+     * @param jobRow  The job to store
+     */
+    private void put(JobRow jobRow) {
+        Entry previous = rows.get(jobRow.getId());
+        if (previous != null) {
+            unindex(previous);
+        }
+        long createdMillis = parseDateCreated(jobRow, previous == null ? clock.millis() : previous.createdMillis);
+        Entry entry = new Entry(jobRow, previous == null ? nextSequence++ : previous.sequence, createdMillis);
+        rows.put(jobRow.getId(), entry);
+
+        for (Map.Entry<JobField, NavigableMap<String, Set<String>>> index : indexes.entrySet()) {
+            String value = jobRow.get(index.getKey());
+            if (value != null) {
+                index.getValue().computeIfAbsent(value, ignored -> new LinkedHashSet<>()).add(jobRow.getId());
+            }
+        }
+        byCreation.computeIfAbsent(createdMillis, ignored -> new LinkedHashSet<>()).add(jobRow.getId());
+    }
+
+    /**
+     * Remove a job from the indexes.
+     *
+     * @param entry  The entry of the job
+     */
+    private void unindex(Entry entry) {
+        String id = entry.row.getId();
+        for (Map.Entry<JobField, NavigableMap<String, Set<String>>> index : indexes.entrySet()) {
+            String value = entry.row.get(index.getKey());
+            if (value != null) {
+                removeFromIndex(index.getValue(), value, id);
+            }
+        }
+        removeFromIndex(byCreation, entry.createdMillis, id);
+    }
+
+    /**
+     * Remove a job id from the ids of a key of an index, dropping the key once it has no ids.
+     *
+     * @param index  The index
+     * @param key  The key the job is indexed under
+     * @param id  The id of the job
+     * @param <K>  The type of the index's keys
+     */
+    private static <K> void removeFromIndex(Map<K, Set<String>> index, K key, String id) {
+        Set<String> ids = index.get(key);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Get the creation time of a job from its date created.
+     *
+     * @param jobRow  The job
+     * @param defaultMillis  The creation time to use if the job has no date created which can be parsed
+     *
+     * @return the creation time of the job in millis
+     */
+    private static long parseDateCreated(JobRow jobRow, long defaultMillis) {
+        String dateCreated = jobRow.get(DefaultJobField.DATE_CREATED);
+        if (dateCreated == null) {
+            return defaultMillis;
+        }
+        try {
+            return DateTime.parse(dateCreated).getMillis();
+        } catch (IllegalArgumentException e) {
+            LOG.debug("Unable to parse the date created {} of job {}", dateCreated, jobRow.getId());
+            return defaultMillis;
+        }
+    }
+
+    /**
+     * Check if a job has outlived the retention period.
+     *
+     * @param entry  The entry of the job
+     * @param now  The current time in millis
+     *
+     * @return true if the job is expired
+     */
+    private boolean isExpired(Entry entry, long now) {
+        return retentionMillis > 0 && entry.createdMillis < now - retentionMillis;
+    }
+
+    /**
+     * Drop the jobs which have outlived the retention period, oldest first.
+     */
+    private void evictExpired() {
+        if (retentionMillis <= 0) {
+            return;
+        }
+        long cutoff = clock.millis() - retentionMillis;
+        Iterator<Map.Entry<Long, Set<String>>> expired = byCreation.headMap(cutoff, false).entrySet().iterator();
+        while (expired.hasNext()) {
+            Map.Entry<Long, Set<String>> creation = expired.next();
+            for (String id : creation.getValue()) {
+                Entry entry = rows.remove(id);
+                for (Map.Entry<JobField, NavigableMap<String, Set<String>>> index : indexes.entrySet()) {
+                    String value = entry.row.get(index.getKey());
+                    if (value != null) {
+                        removeFromIndex(index.getValue(), value, id);
+                    }
+                }
+            }
+            expired.remove();
+        }
+    }
+
+    /**
+     * Append a job to the log.
+     *
+     * @param jobRow  The job to append
+     *
+     * @throws IOException if the log can't be written
+     */
+    private void appendToLog(JobRow jobRow) throws IOException {
+        writeRecord(log, jobRow);
+        log.flush();
+        logRecords++;
+    }
+
+    /**
+     * Write the record of a job.
+     *
+     * @param writer  The writer to write the record to
+     * @param jobRow  The job
+     *
+     * @throws IOException if the record can't be written
+     */
+    private void writeRecord(Writer writer, JobRow jobRow) throws IOException {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put(ID_KEY, jobRow.getId());
+        record.put(ROW_KEY, jobRow.getRowMap());
+        writer.write(mapper.writeValueAsString(record));
+        writer.write('\n');
+    }
+
+    /**
+     * Read the jobs in the log into the store. Records which can't be read, such as a last record cut short by a
+     * crash, are skipped.
+     *
+     * @throws IOException if the log can't be read
+     */
+    private void recover() throws IOException {
+        if (!Files.exists(logFile)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(logFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    JobRow jobRow = readRecord(mapper.readTree(line));
+                    if (jobRow != null) {
+                        put(jobRow);
+                    }
+                } catch (IOException | IllegalArgumentException e) {
+                    LOG.warn("Skipping unreadable job store log record: {}", line, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Rebuild a job from a record of the log.
+     *
+     * @param record  The record
+     *
+     * @return the job, or null if the record doesn't hold a job which can be rebuilt
+     */
+    private JobRow readRecord(JsonNode record) {
+        JsonNode row = record.get(ROW_KEY);
+        if (row == null || !record.has(ID_KEY)) {
+            return null;
+        }
+        Map<JobField, String> fieldValues = new LinkedHashMap<>();
+        Iterator<Map.Entry<String, JsonNode>> fields = row.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JobField jobField = fieldsByName.get(field.getKey());
+            if (jobField == null) {
+                LOG.debug("Skipping unknown job field {} of job {}", field.getKey(), record.get(ID_KEY).asText());
+            } else {
+                fieldValues.put(jobField, field.getValue().isNull() ? null : field.getValue().asText());
+            }
+        }
+        if (!record.get(ID_KEY).asText().equals(fieldValues.get(DefaultJobField.JOB_TICKET))) {
+            LOG.warn("Skipping job {} whose ticket is not its id", record.get(ID_KEY).asText());
+            return null;
+        }
+        return new JobRow(DefaultJobField.JOB_TICKET, fieldValues);
+    }
+
+    /**
+     * Rewrite the log with only the jobs held by the store, and open it for appending.
+     * <p>
+     * The jobs are written to a temporary file which replaces the log once it is complete, so the log is left as it was
+     * if the jobs can't be written, and keeps being appended to.
+     *
+     * @throws IOException if the log can't be rewritten
+     */
+    private void compact() throws IOException {
+        Path temp = logFile.resolveSibling(logFile.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Entry entry : rows.values()) {
+                writeRecord(writer, entry.row);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        Writer compacted = Files.newBufferedWriter(
+                logFile,
+                StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND
+        );
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                LOG.warn("Unable to close the job store log replaced by its compaction", e);
+            }
+        }
+        log = compacted;
+        logRecords = rows.size();
+    }
+
+    /**
+     * A job held by the store.
+     */
+    private static final class Entry {
+        private final JobRow row;
+        private final long sequence;
+        private final long createdMillis;
+
+        /**
+         * Constructor.
+         *
+         * @param row  The job
+         * @param sequence  The order the job was first saved in
+         * @param createdMillis  The creation time of the job, used to expire it
+         */
+        Entry(JobRow row, long sequence, long createdMillis) {
+            this.row = row;
+            this.sequence = sequence;
+            this.createdMillis = createdMillis;
+        }
+    }
+}
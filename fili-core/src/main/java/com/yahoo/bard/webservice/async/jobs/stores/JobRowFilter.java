@@ -9,6 +9,7 @@ import static com.yahoo.bard.webservice.web.ErrorMessageFormat.FILTER_OPERATOR_I
 
 import com.yahoo.bard.webservice.async.jobs.jobrows.DefaultJobField;
 import com.yahoo.bard.webservice.async.jobs.jobrows.JobField;
+import com.yahoo.bard.webservice.async.jobs.jobrows.JobRow;
 import com.yahoo.bard.webservice.util.FilterTokenizer;
 import com.yahoo.bard.webservice.web.BadFilterException;
 import com.yahoo.bard.webservice.web.FilterOperation;
@@ -132,6 +133,43 @@ public class JobRowFilter {
         return new JobRowFilter(jobField, operation, values);
     }
 
+    /**
+     * Checks if the given JobRow satisfies this filter.
+     * If the JobField of the filter is not a part the JobRow, this method throws an IllegalArgumentException.
+     *
+     * @param jobRow  The JobRow which needs to be inspected
+     *
+     * @return true if the JobRow satisfies the filter, false otherwise
+     *
+     * @throws IllegalArgumentException if the JobField of the filter is not a part the JobRow
+     */
+    public boolean isSatisfiedBy(JobRow jobRow) throws IllegalArgumentException {
+        if (!jobRow.containsKey(jobField)) {
+            Set<JobField> actualJobFields = jobRow.keySet();
+            LOG.debug(FILTER_JOBFIELD_UNDEFINED.logFormat(jobField, actualJobFields));
+            throw new IllegalArgumentException(
+                    FILTER_JOBFIELD_UNDEFINED.format(jobField, actualJobFields)
+            );
+        }
+
+        String actualValue = jobRow.get(jobField);
+
+        switch (operation) {
+            case notin:
+                return !values.contains(actualValue);
+            case startswith:
+                return values.stream().anyMatch(actualValue::startsWith);
+            case contains :
+                return values.stream().anyMatch(actualValue::contains);
+            case in: // the fall-through is intentional because in is a synonym for eq
+            case eq:
+                return values.contains(actualValue);
+            default:
+                LOG.debug(FILTER_OPERATOR_INVALID.logFormat(operation));
+                throw new IllegalArgumentException(FILTER_OPERATOR_INVALID.format(operation));
+        }
+    }
+
     /**
      * Extracts the JobField to be examined from the tokenizedQuery.
      *
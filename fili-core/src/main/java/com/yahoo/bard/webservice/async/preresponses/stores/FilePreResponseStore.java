@@ -0,0 +1,1069 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.async.preresponses.stores;
+
+import com.yahoo.bard.webservice.data.DeserializationException;
+import com.yahoo.bard.webservice.data.PreResponseDeserializer;
+import com.yahoo.bard.webservice.data.Result;
+import com.yahoo.bard.webservice.data.ResultColumns;
+import com.yahoo.bard.webservice.data.ResultSet;
+import com.yahoo.bard.webservice.data.ResultSetSchema;
+import com.yahoo.bard.webservice.data.ResultView;
+import com.yahoo.bard.webservice.data.dimension.Dimension;
+import com.yahoo.bard.webservice.data.dimension.DimensionColumn;
+import com.yahoo.bard.webservice.data.dimension.DimensionRow;
+import com.yahoo.bard.webservice.data.metric.MetricColumn;
+import com.yahoo.bard.webservice.data.metric.MetricColumnWithValueType;
+import com.yahoo.bard.webservice.table.Column;
+import com.yahoo.bard.webservice.util.DateTimeUtils;
+import com.yahoo.bard.webservice.util.GranularityParseException;
+import com.yahoo.bard.webservice.web.ErrorMessageFormat;
+import com.yahoo.bard.webservice.web.PreResponse;
+import com.yahoo.bard.webservice.web.responseprocessors.ResponseContext;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.Observable;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A PreResponseStore which stores each PreResponse in a compressed, columnar file in a local directory.
+ * <p>
+ * The rows of a result set are stored in blocks of {@link #DEFAULT_ROWS_PER_BLOCK} rows. Each block is compressed on
+ * its own and stores its rows column by column: timestamps as epoch millis, dimension rows through a dictionary of the
+ * block's distinct rows, and metric values as longs, decimals or JSON depending on the values in the block. JSON values
+ * keep their own value type, so a column may mix types, such as numbers and strings. The header of the file holds the
+ * response context, the schema and the offset of every block.
+ * <p>
+ * Getting a PreResponse maps its file into memory and returns a result set whose rows are lightweight views, so only
+ * the blocks holding the rows that are actually read (such as the rows of one page of a paginated job result) are
+ * decompressed, and only a few decompressed blocks are kept at a time.
+ * <p>
+ * Files are dropped once they are older than the time to live, and the oldest files are dropped whenever the files of
+ * the store take more than the most bytes allowed. The store keeps the size and age of its files in memory, read from
+ * the directory once when the store is built, so saving a PreResponse doesn't list the directory. The store expects
+ * to be the only writer of its directory.
+ */
+public class FilePreResponseStore implements PreResponseStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FilePreResponseStore.class);
+
+    public static final int DEFAULT_ROWS_PER_BLOCK = 4096;
+
+    private static final int MAGIC = 0x46505253;
+    private static final int VERSION = 1;
+
+    private static final String FILE_SUFFIX = ".preresponse";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Most bytes of the file mapped into a single buffer, blocks are never split across buffers.
+     */
+    private static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+    /**
+     * Number of decompressed blocks kept by each result set read from the store.
+     */
+    private static final int DECODED_BLOCKS = 4;
+
+    private static final byte LONG_VALUES = 0;
+    private static final byte DECIMAL_VALUES = 1;
+    /**
+     * JSON values read as the value type of their column, only found in files written before values had their own type.
+     */
+    private static final byte JSON_VALUES = 2;
+    /**
+     * JSON values, each with its own value type from a dictionary of the value types of the block's column.
+     */
+    private static final byte TYPED_JSON_VALUES = 3;
+
+    private static final int NULL_CODE = -1;
+    private static final int ABSENT_CODE = -2;
+
+    private final Path directory;
+    private final PreResponseDeserializer deserializer;
+    private final long timeToLiveMillis;
+    private final long maxBytes;
+    private final int rowsPerBlock;
+
+    /**
+     * The files of the store, oldest first, guarded by the store.
+     */
+    private final Map<Path, StoredFile> files = new LinkedHashMap<>();
+    private long totalBytes = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param directory  The directory holding the files of the store, which is created if it doesn't exist
+     * @param deserializer  Provides the dimensions, granularity parser and object mappers used to restore PreResponses
+     * @param timeToLiveMillis  How long a PreResponse is kept after it is saved, 0 keeps PreResponses indefinitely
+     * @param maxBytes  Most bytes taken by the files of the store, 0 doesn't limit the size of the store
+     */
+    public FilePreResponseStore(
+            Path directory,
+            PreResponseDeserializer deserializer,
+            long timeToLiveMillis,
+            long maxBytes
+    ) {
+        this(directory, deserializer, timeToLiveMillis, maxBytes, DEFAULT_ROWS_PER_BLOCK);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param directory  The directory holding the files of the store, which is created if it doesn't exist
+     * @param deserializer  Provides the dimensions, granularity parser and object mappers used to restore PreResponses
+     * @param timeToLiveMillis  How long a PreResponse is kept after it is saved, 0 keeps PreResponses indefinitely
+     * @param maxBytes  Most bytes taken by the files of the store, 0 doesn't limit the size of the store
+     * @param rowsPerBlock  Number of rows stored (and decompressed) together
+     */
+    public FilePreResponseStore(
+            Path directory,
+            PreResponseDeserializer deserializer,
+            long timeToLiveMillis,
+            long maxBytes,
+            int rowsPerBlock
+    ) {
+        if (rowsPerBlock < 1) {
+            throw new IllegalArgumentException("Rows per block must be positive: " + rowsPerBlock);
+        }
+        this.directory = directory;
+        this.deserializer = deserializer;
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.maxBytes = maxBytes;
+        this.rowsPerBlock = rowsPerBlock;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to create the PreResponse store directory " + directory, e);
+        }
+        try {
+            loadFiles();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read the PreResponse store directory " + directory, e);
+        }
+    }
+
+    @Override
+    public Observable<PreResponse> get(String ticket) {
+        return Observable.defer(() -> {
+            Path file = getFile(ticket);
+            try {
+                if (isExpired(file, System.currentTimeMillis())) {
+                    Files.deleteIfExists(file);
+                    return Observable.empty();
+                }
+                return Observable.just(read(file));
+            } catch (NoSuchFileException e) {
+                return Observable.empty();
+            } catch (IOException | RuntimeException e) {
+                LOG.error("Unable to read the PreResponse of ticket {} from {}", ticket, file, e);
+                return Observable.error(e);
+            }
+        });
+    }
+
+    @Override
+    public Observable<String> save(String ticket, PreResponse preResponse) {
+        return Observable.defer(() -> {
+            Path file = getFile(ticket);
+            Path temp = directory.resolve(file.getFileName() + TEMP_SUFFIX);
+            try {
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                    write(preResponse, out);
+                }
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                evict(file, Files.size(file), Files.getLastModifiedTime(file).toMillis());
+                return Observable.just(ticket);
+            } catch (IOException | RuntimeException e) {
+                LOG.error("Unable to save the PreResponse of ticket {} to {}", ticket, file, e);
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                    // The temporary file is swept when the next store is built on the directory
+                }
+                return Observable.error(e);
+            }
+        });
+    }
+
+    /**
+     * Get the file storing the PreResponse of a ticket.
+     * <p>
+     * Tickets are hex encoded so that any ticket makes a valid file name which stays inside the store's directory.
+     *
+     * @param ticket  The ticket of the PreResponse
+     *
+     * @return the file of the ticket
+     */
+    private Path getFile(String ticket) {
+        StringBuilder name = new StringBuilder();
+        for (byte b : ticket.getBytes(StandardCharsets.UTF_8)) {
+            name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return directory.resolve(name.append(FILE_SUFFIX).toString());
+    }
+
+    /**
+     * Check if a file of the store has outlived the time to live.
+     *
+     * @param file  The file to check
+     * @param now  The current time in millis
+     *
+     * @return true if the file is expired
+     *
+     * @throws IOException if the file can't be read
+     */
+    private boolean isExpired(Path file, long now) throws IOException {
+        return isExpired(Files.getLastModifiedTime(file).toMillis(), now);
+    }
+
+    /**
+     * Check if a file of the store modified at a given time has outlived the time to live.
+     *
+     * @param modified  When the file was last modified, in millis
+     * @param now  The current time in millis
+     *
+     * @return true if the file is expired
+     */
+    private boolean isExpired(long modified, long now) {
+        return timeToLiveMillis > 0 && modified + timeToLiveMillis <= now;
+    }
+
+    /**
+     * Read the files of the store from its directory, dropping stale temporary files and expired files.
+     *
+     * @throws IOException if the directory of the store can't be read
+     */
+    private synchronized void loadFiles() throws IOException {
+        long now = System.currentTimeMillis();
+        Map<Path, StoredFile> found = new HashMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                try {
+                    long modified = Files.getLastModifiedTime(file).toMillis();
+                    boolean stale = name.endsWith(TEMP_SUFFIX) &&
+                            modified + Math.max(timeToLiveMillis, 60000) <= now;
+                    if (stale || (name.endsWith(FILE_SUFFIX) && isExpired(modified, now))) {
+                        Files.deleteIfExists(file);
+                    } else if (name.endsWith(FILE_SUFFIX)) {
+                        found.put(file, new StoredFile(Files.size(file), modified));
+                    }
+                } catch (NoSuchFileException ignored) {
+                    // Dropped while the directory was read
+                }
+            }
+        }
+        found.entrySet().stream()
+                .sorted(Comparator.comparing(entry -> entry.getValue().modified))
+                .forEach(entry -> {
+                    files.put(entry.getKey(), entry.getValue());
+                    totalBytes += entry.getValue().size;
+                });
+    }
+
+    /**
+     * Record a file just saved, then drop the expired files of the store and the oldest files until the store fits in
+     * the most bytes allowed.
+     * <p>
+     * Files are recorded oldest first, so only the files which are dropped are visited.
+     *
+     * @param saved  The file just saved, which is never dropped for size
+     * @param size  The size of the file just saved
+     * @param modified  When the file just saved was last modified, in millis
+     *
+     * @throws IOException if a file can't be dropped
+     */
+    private synchronized void evict(Path saved, long size, long modified) throws IOException {
+        StoredFile replaced = files.remove(saved);
+        if (replaced != null) {
+            totalBytes -= replaced.size;
+        }
+        files.put(saved, new StoredFile(size, modified));
+        totalBytes += size;
+
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<Path, StoredFile>> oldest = files.entrySet().iterator();
+        while (oldest.hasNext()) {
+            Map.Entry<Path, StoredFile> entry = oldest.next();
+            boolean oversized = maxBytes > 0 && totalBytes > maxBytes && !entry.getKey().equals(saved);
+            if (!oversized && !isExpired(entry.getValue().modified, now)) {
+                break;
+            }
+            // The file may already be gone, if it expired when it was read
+            Files.deleteIfExists(entry.getKey());
+            totalBytes -= entry.getValue().size;
+            oldest.remove();
+        }
+    }
+
+    /**
+     * Write a PreResponse in the layout of the store.
+     *
+     * @param preResponse  The PreResponse to write
+     * @param out  The stream to write to
+     *
+     * @throws IOException if the PreResponse can't be written
+     */
+    private void write(PreResponse preResponse, OutputStream out) throws IOException {
+        ResultSet resultSet = preResponse.getResultSet();
+        ResultSetSchema schema = resultSet.getSchema();
+        List<DimensionColumn> dimensionColumns = new ArrayList<>(schema.getColumns(DimensionColumn.class));
+        List<MetricColumn> metricColumns = new ArrayList<>(schema.getColumns(MetricColumn.class));
+        List<String> metricTypes = getMetricTypes(resultSet, metricColumns);
+
+        List<byte[]> blocks = new ArrayList<>();
+        List<Integer> rawLengths = new ArrayList<>();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            for (int start = 0; start < resultSet.size(); start += rowsPerBlock) {
+                List<Result> rows = resultSet.subList(start, Math.min(start + rowsPerBlock, resultSet.size()));
+                byte[] raw = encodeBlock(rows, dimensionColumns, metricColumns);
+                rawLengths.add(raw.length);
+                blocks.add(compress(deflater, raw));
+            }
+        } finally {
+            deflater.end();
+        }
+
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(MAGIC);
+        header.writeInt(VERSION);
+        writeBytes(header, deserializer.getResponseContextMapper().writeValueAsBytes(preResponse.getResponseContext()));
+        writeString(header, schema.getGranularity().getName());
+        writeString(header, DateTimeUtils.getTimeZone(schema.getGranularity()).getID());
+        header.writeInt(dimensionColumns.size());
+        for (DimensionColumn column : dimensionColumns) {
+            writeString(header, column.getName());
+        }
+        header.writeInt(metricColumns.size());
+        for (int i = 0; i < metricColumns.size(); i++) {
+            writeString(header, metricColumns.get(i).getName());
+            writeString(header, metricTypes.get(i));
+        }
+        header.writeInt(resultSet.size());
+        header.writeInt(rowsPerBlock);
+        header.writeInt(blocks.size());
+        long offset = 0;
+        for (int i = 0; i < blocks.size(); i++) {
+            header.writeLong(offset);
+            header.writeInt(blocks.get(i).length);
+            header.writeInt(rawLengths.get(i));
+            offset += blocks.get(i).length;
+        }
+        for (byte[] block : blocks) {
+            header.write(block);
+        }
+        header.flush();
+    }
+
+    /**
+     * Get the class names of the metric columns' values, taken from the first value of each column that isn't null.
+     *
+     * @param resultSet  The result set being written
+     * @param metricColumns  The metric columns of the result set
+     *
+     * @return the class name of each metric column, in column order
+     */
+    private static List<String> getMetricTypes(ResultSet resultSet, List<MetricColumn> metricColumns) {
+        String[] types = new String[metricColumns.size()];
+        int unknown = types.length;
+        for (Result result : resultSet) {
+            if (unknown == 0) {
+                break;
+            }
+            for (int i = 0; i < types.length; i++) {
+                Object value = types[i] == null ? result.getMetricValue(metricColumns.get(i)) : null;
+                if (value != null) {
+                    types[i] = value.getClass().getName();
+                    unknown--;
+                }
+            }
+        }
+        List<String> metricTypes = new ArrayList<>(types.length);
+        for (String type : types) {
+            metricTypes.add(type == null ? String.class.getName() : type);
+        }
+        return metricTypes;
+    }
+
+    /**
+     * Encode a block of rows column by column.
+     *
+     * @param rows  The rows of the block
+     * @param dimensionColumns  The dimension columns of the result set
+     * @param metricColumns  The metric columns of the result set
+     *
+     * @return the encoded block
+     *
+     * @throws IOException if a metric value can't be serialized
+     */
+    private byte[] encodeBlock(
+            List<Result> rows,
+            List<DimensionColumn> dimensionColumns,
+            List<MetricColumn> metricColumns
+    ) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(rows.size());
+
+        // Timestamps, with a dictionary of their time zones
+        Map<String, Integer> zones = new LinkedHashMap<>();
+        int[] zoneCodes = new int[rows.size()];
+        for (int row = 0; row < rows.size(); row++) {
+            DateTime timestamp = rows.get(row).getTimeStamp();
+            out.writeLong(timestamp.getMillis());
+            zoneCodes[row] = zones.computeIfAbsent(timestamp.getZone().getID(), id -> zones.size());
+        }
+        writeStrings(out, zones.keySet());
+        for (int code : zoneCodes) {
+            out.writeInt(code);
+        }
+
+        // Dimension rows, with a dictionary of the distinct rows of each column
+        for (DimensionColumn column : dimensionColumns) {
+            Map<DimensionRow, Integer> dictionary = new LinkedHashMap<>();
+            int[] codes = new int[rows.size()];
+            for (int row = 0; row < rows.size(); row++) {
+                DimensionRow dimensionRow = rows.get(row).getDimensionRow(column);
+                if (dimensionRow != null) {
+                    codes[row] = dictionary.computeIfAbsent(dimensionRow, r -> dictionary.size());
+                } else {
+                    codes[row] = rows.get(row).getDimensionRows().containsKey(column) ? NULL_CODE : ABSENT_CODE;
+                }
+            }
+            out.writeInt(dictionary.size());
+            for (DimensionRow dimensionRow : dictionary.keySet()) {
+                Map<String, String> fields = dimensionRow.getRowMap();
+                out.writeInt(fields.size());
+                for (Map.Entry<String, String> field : fields.entrySet()) {
+                    writeString(out, field.getKey());
+                    writeString(out, field.getValue());
+                }
+            }
+            for (int code : codes) {
+                out.writeInt(code);
+            }
+        }
+
+        // Metric values, with the encoding chosen from the values of the block
+        ObjectMapper mapper = deserializer.getNonResponseContextMapper();
+        for (MetricColumn column : metricColumns) {
+            Object[] values = new Object[rows.size()];
+            BitSet nulls = new BitSet(rows.size());
+            // Rows without the column, rather than with a null value
+            BitSet absent = new BitSet(rows.size());
+            boolean decimals = true;
+            boolean longs = true;
+            for (int row = 0; row < rows.size(); row++) {
+                values[row] = rows.get(row).getMetricValue(column);
+                if (values[row] == null) {
+                    nulls.set(row);
+                    absent.set(row, !rows.get(row).getMetricValues().containsKey(column));
+                } else if (values[row] instanceof BigDecimal) {
+                    BigDecimal number = (BigDecimal) values[row];
+                    longs &= number.scale() == 0 && number.unscaledValue().bitLength() < Long.SIZE;
+                } else {
+                    decimals = false;
+                }
+            }
+            byte encoding = !decimals ? TYPED_JSON_VALUES : longs ? LONG_VALUES : DECIMAL_VALUES;
+            out.writeByte(encoding);
+            writeBytes(out, nulls.toByteArray());
+            writeBytes(out, absent.toByteArray());
+            Map<String, Integer> types = new LinkedHashMap<>();
+            int[] typeCodes = new int[rows.size()];
+            if (encoding == TYPED_JSON_VALUES) {
+                for (int row = 0; row < rows.size(); row++) {
+                    if (values[row] != null) {
+                        typeCodes[row] = types.computeIfAbsent(values[row].getClass().getName(), t -> types.size());
+                    }
+                }
+                writeStrings(out, types.keySet());
+            }
+            for (int row = 0; row < rows.size(); row++) {
+                Object value = values[row];
+                if (value == null) {
+                    continue;
+                }
+                if (encoding == LONG_VALUES) {
+                    out.writeLong(((BigDecimal) value).longValueExact());
+                } else if (encoding == DECIMAL_VALUES) {
+                    out.writeInt(((BigDecimal) value).scale());
+                    writeBytes(out, ((BigDecimal) value).unscaledValue().toByteArray());
+                } else {
+                    out.writeInt(typeCodes[row]);
+                    writeBytes(out, mapper.writeValueAsBytes(value));
+                }
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Read a PreResponse from a file of the store.
+     *
+     * @param file  The file to read
+     *
+     * @return the PreResponse, whose rows are decoded as they are read
+     *
+     * @throws IOException if the file can't be read
+     */
+    private PreResponse read(Path file) throws IOException {
+        ByteBuffer header;
+        List<ByteBuffer> segments = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, MAX_SEGMENT_BYTES));
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new DeserializationException("Not a PreResponse file of a supported version: " + file);
+            }
+            ResponseContext responseContext = deserializer.getResponseContextMapper()
+                    .readValue(readBytes(header), ResponseContext.class);
+            String granularity = readString(header);
+            DateTimeZone timeZone = DateTimeZone.forID(readString(header));
+
+            LinkedHashSet<Column> columns = new LinkedHashSet<>();
+            DimensionColumn[] dimensionColumns = new DimensionColumn[header.getInt()];
+            for (int i = 0; i < dimensionColumns.length; i++) {
+                dimensionColumns[i] = new DimensionColumn(resolveDimension(readString(header)));
+                columns.add(dimensionColumns[i]);
+            }
+            MetricColumnWithValueType[] metricColumns = new MetricColumnWithValueType[header.getInt()];
+            for (int i = 0; i < metricColumns.length; i++) {
+                metricColumns[i] = new MetricColumnWithValueType(readString(header), readString(header));
+                columns.add(metricColumns[i]);
+            }
+            ResultSetSchema schema;
+            try {
+                schema = new ResultSetSchema(
+                        deserializer.getGranularityParser().parseGranularity(granularity, timeZone),
+                        columns
+                );
+            } catch (GranularityParseException e) {
+                String msg = ErrorMessageFormat.GRANULARITY_PARSING_ERROR.format(granularity);
+                LOG.error(msg, e);
+                throw new DeserializationException(msg, e);
+            }
+
+            int rows = header.getInt();
+            int blockRows = header.getInt();
+            int blockCount = header.getInt();
+            long[] offsets = new long[blockCount];
+            int[] lengths = new int[blockCount];
+            int[] rawLengths = new int[blockCount];
+            for (int i = 0; i < blockCount; i++) {
+                offsets[i] = header.getLong();
+                lengths[i] = header.getInt();
+                rawLengths[i] = header.getInt();
+            }
+
+            // Map the blocks in segments of whole blocks, remembering which segment and position each block is at
+            long dataStart = header.position();
+            int[] blockSegments = new int[blockCount];
+            int[] blockPositions = new int[blockCount];
+            int first = 0;
+            while (first < blockCount) {
+                long segmentStart = dataStart + offsets[first];
+                int last = first;
+                while (last + 1 < blockCount &&
+                        offsets[last + 1] + lengths[last + 1] - offsets[first] <= MAX_SEGMENT_BYTES) {
+                    last++;
+                }
+                long segmentLength = offsets[last] + lengths[last] - offsets[first];
+                MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, segmentLength);
+                for (int i = first; i <= last; i++) {
+                    blockSegments[i] = segments.size();
+                    blockPositions[i] = (int) (offsets[i] - offsets[first]);
+                }
+                segments.add(segment);
+                first = last + 1;
+            }
+
+            Blocks blocks = new Blocks(
+                    segments,
+                    blockSegments,
+                    blockPositions,
+                    lengths,
+                    rawLengths,
+                    blockRows,
+                    dimensionColumns,
+                    metricColumns
+            );
+            return new PreResponse(new FileResultSet(schema, blocks, rows), responseContext);
+        }
+    }
+
+    /**
+     * Find the dimension of a dimension column by its api name.
+     *
+     * @param apiName  The api name of the dimension
+     *
+     * @return the dimension
+     */
+    private Dimension resolveDimension(String apiName) {
+        Dimension dimension = deserializer.getDimensionDictionary().findByApiName(apiName);
+        if (dimension == null) {
+            String msg = ErrorMessageFormat.UNABLE_TO_FIND_DIMENSION_FROM_DICTIONARY.format(apiName);
+            LOG.error(msg);
+            throw new DeserializationException(msg);
+        }
+        return dimension;
+    }
+
+    /**
+     * Compress a block.
+     *
+     * @param deflater  The deflater to compress with, which is reset before use
+     * @param raw  The encoded block
+     *
+     * @return the compressed block
+     */
+    private static byte[] compress(Deflater deflater, byte[] raw) {
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 4 + 64);
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            compressed.write(buffer, 0, deflater.deflate(buffer));
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Write a length prefixed byte array.
+     *
+     * @param out  The stream to write to
+     * @param bytes  The bytes to write
+     *
+     * @throws IOException if the stream can't be written
+     */
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Write a length prefixed UTF-8 string, with a length of -1 for null.
+     *
+     * @param out  The stream to write to
+     * @param value  The string to write
+     *
+     * @throws IOException if the stream can't be written
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Write a count prefixed list of strings.
+     *
+     * @param out  The stream to write to
+     * @param values  The strings to write
+     *
+     * @throws IOException if the stream can't be written
+     */
+    private static void writeStrings(DataOutputStream out, Iterable<String> values) throws IOException {
+        List<String> strings = new ArrayList<>();
+        values.forEach(strings::add);
+        out.writeInt(strings.size());
+        for (String value : strings) {
+            writeString(out, value);
+        }
+    }
+
+    /**
+     * Read a length prefixed byte array.
+     *
+     * @param buffer  The buffer to read from
+     *
+     * @return the bytes
+     */
+    private static byte[] readBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Read a length prefixed UTF-8 string.
+     *
+     * @param buffer  The buffer to read from
+     *
+     * @return the string, or null
+     */
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The size and age of a file of the store.
+     */
+    private static final class StoredFile {
+        private final long size;
+        private final long modified;
+
+        /**
+         * Constructor.
+         *
+         * @param size  The size of the file
+         * @param modified  When the file was last modified, in millis
+         */
+        StoredFile(long size, long modified) {
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+
+    /**
+     * The blocks of a file of the store, decompressed and decoded on demand, read as the columns of the result set.
+     */
+    private final class Blocks implements ResultColumns {
+        private final List<ByteBuffer> segments;
+        private final int[] blockSegments;
+        private final int[] blockPositions;
+        private final int[] lengths;
+        private final int[] rawLengths;
+        private final int blockRows;
+        private final DimensionColumn[] dimensionColumns;
+        private final MetricColumnWithValueType[] metricColumns;
+        private final Map<DimensionColumn, Integer> dimensionIndexes = new HashMap<>();
+        private final Map<MetricColumn, Integer> metricIndexes = new HashMap<>();
+
+        private final Map<Integer, Block> decoded = new LinkedHashMap<Integer, Block>(DECODED_BLOCKS, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Block> eldest) {
+                return size() > DECODED_BLOCKS;
+            }
+        };
+
+        /**
+         * Constructor.
+         *
+         * @param segments  The mapped segments of the file holding the blocks
+         * @param blockSegments  The segment of each block
+         * @param blockPositions  The position of each block in its segment
+         * @param lengths  The compressed length of each block
+         * @param rawLengths  The decompressed length of each block
+         * @param blockRows  The number of rows of each block
+         * @param dimensionColumns  The dimension columns, in file order
+         * @param metricColumns  The metric columns, in file order
+         */
+        Blocks(
+                List<ByteBuffer> segments,
+                int[] blockSegments,
+                int[] blockPositions,
+                int[] lengths,
+                int[] rawLengths,
+                int blockRows,
+                DimensionColumn[] dimensionColumns,
+                MetricColumnWithValueType[] metricColumns
+        ) {
+            this.segments = segments;
+            this.blockSegments = blockSegments;
+            this.blockPositions = blockPositions;
+            this.lengths = lengths;
+            this.rawLengths = rawLengths;
+            this.blockRows = blockRows;
+            this.dimensionColumns = dimensionColumns;
+            this.metricColumns = metricColumns;
+            for (int i = 0; i < dimensionColumns.length; i++) {
+                dimensionIndexes.put(dimensionColumns[i], i);
+            }
+            for (int i = 0; i < metricColumns.length; i++) {
+                metricIndexes.put(metricColumns[i], i);
+            }
+        }
+
+        /**
+         * Get the decoded block holding a row.
+         *
+         * @param row  The row
+         *
+         * @return the block of the row
+         */
+        synchronized Block getBlock(int row) {
+            return decoded.computeIfAbsent(row / blockRows, this::decode);
+        }
+
+        @Override
+        public int getDimensionColumnCount() {
+            return dimensionColumns.length;
+        }
+
+        @Override
+        public DimensionColumn getDimensionColumn(int column) {
+            return dimensionColumns[column];
+        }
+
+        @Override
+        public int indexOf(DimensionColumn dimensionColumn) {
+            return dimensionIndexes.getOrDefault(dimensionColumn, -1);
+        }
+
+        @Override
+        public int getMetricColumnCount() {
+            return metricColumns.length;
+        }
+
+        @Override
+        public MetricColumn getMetricColumn(int column) {
+            return metricColumns[column];
+        }
+
+        @Override
+        public int indexOf(MetricColumn metricColumn) {
+            return metricIndexes.getOrDefault(metricColumn, -1);
+        }
+
+        @Override
+        public DateTime getTimeStamp(int row) {
+            Block block = getBlock(row);
+            return new DateTime(block.millis[row % blockRows], block.zones[row % blockRows]);
+        }
+
+        @Override
+        public DimensionRow getDimensionRow(int column, int row) {
+            return getBlock(row).dimensionRows[column][row % blockRows];
+        }
+
+        @Override
+        public Object getMetricValue(int column, int row) {
+            return getBlock(row).metricValues[column][row % blockRows];
+        }
+
+        @Override
+        public boolean hasDimensionRow(int column, int row) {
+            return !getBlock(row).absentDimensions[column].get(row % blockRows);
+        }
+
+        @Override
+        public boolean hasMetricValue(int column, int row) {
+            return !getBlock(row).absentMetrics[column].get(row % blockRows);
+        }
+
+        /**
+         * Decompress and decode a block.
+         *
+         * @param index  The index of the block
+         *
+         * @return the decoded block
+         */
+        private Block decode(int index) {
+            ByteBuffer segment = segments.get(blockSegments[index]).duplicate();
+            segment.position(blockPositions[index]);
+            byte[] compressed = new byte[lengths[index]];
+            segment.get(compressed);
+
+            byte[] raw = new byte[rawLengths[index]];
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(compressed);
+                if (inflater.inflate(raw) != raw.length) {
+                    throw new DeserializationException("Truncated PreResponse block " + index);
+                }
+            } catch (DataFormatException e) {
+                throw new DeserializationException("Corrupt PreResponse block " + index, e);
+            } finally {
+                inflater.end();
+            }
+            return new Block(ByteBuffer.wrap(raw), this);
+        }
+    }
+
+    /**
+     * The decoded columns of a block of rows.
+     */
+    private final class Block {
+        private final long[] millis;
+        private final DateTimeZone[] zones;
+        private final DimensionRow[][] dimensionRows;
+        private final Object[][] metricValues;
+        // Rows of the block without a value for a column, per column
+        private final BitSet[] absentDimensions;
+        private final BitSet[] absentMetrics;
+
+        /**
+         * Decode a block.
+         *
+         * @param buffer  The decompressed block
+         * @param blocks  The blocks of the file, giving the columns of the block
+         */
+        Block(ByteBuffer buffer, Blocks blocks) {
+            int rows = buffer.getInt();
+            millis = new long[rows];
+            for (int row = 0; row < rows; row++) {
+                millis[row] = buffer.getLong();
+            }
+            DateTimeZone[] zoneDictionary = new DateTimeZone[buffer.getInt()];
+            for (int i = 0; i < zoneDictionary.length; i++) {
+                zoneDictionary[i] = DateTimeZone.forID(readString(buffer));
+            }
+            zones = new DateTimeZone[rows];
+            for (int row = 0; row < rows; row++) {
+                zones[row] = zoneDictionary[buffer.getInt()];
+            }
+
+            dimensionRows = new DimensionRow[blocks.dimensionColumns.length][];
+            absentDimensions = new BitSet[blocks.dimensionColumns.length];
+            for (int i = 0; i < dimensionRows.length; i++) {
+                Dimension dimension = blocks.dimensionColumns[i].getDimension();
+                DimensionRow[] dictionary = new DimensionRow[buffer.getInt()];
+                for (int code = 0; code < dictionary.length; code++) {
+                    int fieldCount = buffer.getInt();
+                    Map<String, String> fields = new LinkedHashMap<>();
+                    for (int field = 0; field < fieldCount; field++) {
+                        fields.put(readString(buffer), readString(buffer));
+                    }
+                    dictionary[code] = dimension.parseDimensionRow(fields);
+                }
+                dimensionRows[i] = new DimensionRow[rows];
+                absentDimensions[i] = new BitSet(rows);
+                for (int row = 0; row < rows; row++) {
+                    int code = buffer.getInt();
+                    dimensionRows[i][row] = code < 0 ? null : dictionary[code];
+                    absentDimensions[i].set(row, code == ABSENT_CODE);
+                }
+            }
+
+            ObjectMapper mapper = deserializer.getNonResponseContextMapper();
+            metricValues = new Object[blocks.metricColumns.length][];
+            absentMetrics = new BitSet[blocks.metricColumns.length];
+            for (int i = 0; i < metricValues.length; i++) {
+                byte encoding = buffer.get();
+                BitSet nulls = BitSet.valueOf(readBytes(buffer));
+                absentMetrics[i] = BitSet.valueOf(readBytes(buffer));
+                metricValues[i] = new Object[rows];
+                Class<?>[] types = encoding == TYPED_JSON_VALUES ? readTypes(buffer) : null;
+                for (int row = 0; row < rows; row++) {
+                    if (nulls.get(row)) {
+                        continue;
+                    }
+                    if (encoding == LONG_VALUES) {
+                        metricValues[i][row] = BigDecimal.valueOf(buffer.getLong());
+                    } else if (encoding == DECIMAL_VALUES) {
+                        int scale = buffer.getInt();
+                        metricValues[i][row] = new BigDecimal(new BigInteger(readBytes(buffer)), scale);
+                    } else if (encoding == TYPED_JSON_VALUES) {
+                        Class<?> type = types[buffer.getInt()];
+                        metricValues[i][row] = readMetricValue(mapper, readBytes(buffer), type);
+                    } else {
+                        Class<?> type = blocks.metricColumns[i].getClassType();
+                        metricValues[i][row] = readMetricValue(mapper, readBytes(buffer), type);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Read the dictionary of the value types of a column of the block.
+         *
+         * @param buffer  The decompressed block
+         *
+         * @return the value types, by code
+         */
+        private Class<?>[] readTypes(ByteBuffer buffer) {
+            Class<?>[] types = new Class<?>[buffer.getInt()];
+            for (int code = 0; code < types.length; code++) {
+                String className = readString(buffer);
+                try {
+                    types[code] = Class.forName(className);
+                } catch (ClassNotFoundException e) {
+                    String msg = ErrorMessageFormat.METRIC_VALUE_CLASS_NOT_FOUND.format(className);
+                    LOG.error(msg, e);
+                    throw new DeserializationException(msg, e);
+                }
+            }
+            return types;
+        }
+
+        /**
+         * Deserialize a metric value stored as JSON.
+         *
+         * @param mapper  The mapper to deserialize with
+         * @param json  The serialized value
+         * @param type  The value type of the value
+         *
+         * @return the metric value
+         */
+        private Object readMetricValue(ObjectMapper mapper, byte[] json, Class<?> type) {
+            try {
+                return mapper.readValue(json, type);
+            } catch (IOException e) {
+                String msg = ErrorMessageFormat.METRIC_VALUE_PARSING_ERROR.format("parse");
+                LOG.error(msg, e);
+                throw new DeserializationException(msg, e);
+            }
+        }
+    }
+
+    /**
+     * A result set read from a file of the store, whose rows decode their block when they are read.
+     */
+    private static final class FileResultSet extends ResultSet {
+
+        /**
+         * Constructor.
+         *
+         * @param schema  The schema of the result set
+         * @param blocks  The blocks of the result set's file
+         * @param rows  The number of rows
+         */
+        FileResultSet(ResultSetSchema schema, Blocks blocks, int rows) {
+            super(schema, Collections.emptyList());
+            ensureCapacity(rows);
+            for (int row = 0; row < rows; row++) {
+                add(new ResultView(blocks, row));
+            }
+        }
+    }
+}
@@ -16,7 +16,13 @@ public enum BardFeatureFlag implements FeatureFlag {
     UPDATED_METADATA_COLLECTION_NAMES("updated_metadata_collection_names_enabled"),
     DRUID_COORDINATOR_METADATA("druid_coordinator_metadata_enabled"),
     DRUID_DIMENSIONS_LOADER("druid_dimensions_loader_enabled"),
-    CASE_SENSITIVE_KEYS("case_sensitive_keys_enabled");
+    CASE_SENSITIVE_KEYS("case_sensitive_keys_enabled"),
+    STREAMING_RESPONSE_PARSING("streaming_response_parsing_enabled"),
+    COLUMNAR_RESULT_SETS("columnar_result_sets_enabled"),
+    QUERY_FINGERPRINT_CACHE_KEYS("query_fingerprint_cache_keys_enabled"),
+    QUERY_COALESCING("query_coalescing_enabled"),
+    DRUID_BUCKET_CACHE("druid_bucket_cache_enabled"),
+    BINARY_DIMENSION_ROWS("binary_dimension_rows_enabled");
 
     static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
 
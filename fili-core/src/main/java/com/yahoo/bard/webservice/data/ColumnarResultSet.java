@@ -0,0 +1,765 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.data;
+
+import com.yahoo.bard.webservice.data.dimension.DimensionColumn;
+import com.yahoo.bard.webservice.data.dimension.DimensionRow;
+import com.yahoo.bard.webservice.data.metric.MetricColumn;
+
+import org.joda.time.Chronology;
+import org.joda.time.DateTime;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A result set which stores its rows column by column.
+ * <p>
+ * Timestamps are stored as epoch millis, dimension columns are dictionary encoded and numeric metric columns are
+ * stored in primitive arrays with a bitmap of null values. Metric columns holding values which don't fit in a primitive
+ * array (such as strings, booleans or sketches) are stored as objects.
+ * <p>
+ * The rows of the result set are lightweight views over the columns, so result set mappers and response writers work
+ * with a columnar result set the same way they work with any other result set. All rows of a columnar result set have
+ * the same dimension and metric columns, so columnar result sets are made through {@link Builder} (or
+ * {@link #of(ResultSetSchema, List)}) which falls back to a plain {@link ResultSet} if the rows differ.
+ */
+public class ColumnarResultSet extends ResultSet {
+
+    /**
+     * Values with a magnitude up to this bound are stored exactly as doubles.
+     */
+    private static final long MAX_EXACT_DOUBLE_LONG = 1L << 53;
+
+    private final Columns columns;
+
+    /**
+     * Constructor.
+     *
+     * @param schema  The associated schema
+     * @param columns  The column values of the result set
+     */
+    ColumnarResultSet(ResultSetSchema schema, Columns columns) {
+        super(schema, Collections.emptyList());
+        this.columns = columns;
+        ensureCapacity(columns.size);
+        for (int row = 0; row < columns.size; row++) {
+            add(new ResultView(columns, row));
+        }
+    }
+
+    /**
+     * Constructor for a result set over rows of the columns of another columnar result set.
+     *
+     * @param schema  The associated schema
+     * @param columns  The column values of the result set
+     * @param rows  The row views over the columns
+     */
+    private ColumnarResultSet(ResultSetSchema schema, Columns columns, List<Result> rows) {
+        super(schema, rows);
+        this.columns = columns;
+    }
+
+    /**
+     * Build a result set holding the given results, stored in columns if the results all have the same columns.
+     *
+     * @param schema  The associated schema
+     * @param results  The list of results
+     *
+     * @return A columnar result set, or a plain result set if the results don't all have the same columns
+     */
+    public static ResultSet of(ResultSetSchema schema, List<Result> results) {
+        Builder builder = new Builder(schema, results.size());
+        results.forEach(builder::add);
+        return builder.build();
+    }
+
+    /**
+     * The dimension columns of each row of this result set, in row order.
+     *
+     * @return the dimension columns
+     */
+    public List<DimensionColumn> getDimensionColumns() {
+        return Collections.unmodifiableList(Arrays.asList(columns.dimensionColumns));
+    }
+
+    /**
+     * The metric columns of each row of this result set, in row order.
+     *
+     * @return the metric columns
+     */
+    public List<MetricColumn> getMetricColumns() {
+        return Collections.unmodifiableList(Arrays.asList(columns.metricColumns));
+    }
+
+    /**
+     * Build a result set of some of the rows of this result set, in the given order, sharing the columns of this
+     * result set rather than copying the rows.
+     *
+     * @param schema  The schema of the new result set
+     * @param positions  The positions in this result set of the rows of the new result set
+     *
+     * @return the new result set
+     */
+    public ResultSet select(ResultSetSchema schema, int[] positions) {
+        List<Result> rows = new ArrayList<>(positions.length);
+        boolean views = true;
+        for (int position : positions) {
+            Result row = get(position);
+            rows.add(row);
+            views &= isView(row);
+        }
+        // Rows added to this result set after it was built aren't views over its columns
+        return views ? new ColumnarResultSet(schema, columns, rows) : new ResultSet(schema, rows);
+    }
+
+    /**
+     * Check if every timestamp of the rows has the same chronology, so that timestamps with the same epoch millis are
+     * equal.
+     *
+     * @return true if the timestamps all have the same chronology
+     */
+    public boolean hasUniformChronology() {
+        if (columns.timeValues.dateTimes != null) {
+            return false;
+        }
+        for (Result row : this) {
+            if (!isView(row)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the epoch millis of the timestamp of a row, without building the timestamp.
+     *
+     * @param position  The position of the row in this result set
+     *
+     * @return the epoch millis of the timestamp
+     */
+    public long getTimeMillis(int position) {
+        Result row = get(position);
+        return isView(row) ? columns.timeValues.getMillis(((ResultView) row).getRow()) : row.getTimeStamp().getMillis();
+    }
+
+    /**
+     * Check if a row is a view over the columns of this result set.
+     *
+     * @param row  The row to check
+     *
+     * @return true if the row reads from the columns of this result set
+     */
+    private boolean isView(Result row) {
+        return row instanceof ResultView && ((ResultView) row).getColumns() == columns;
+    }
+
+    /**
+     * Builds a columnar result set one result at a time.
+     * <p>
+     * Each result is encoded into the columns as it is added, so the builder does not hold on to the results. If a
+     * result has different columns than the ones before it, the builder falls back to building a plain result set.
+     */
+    public static class Builder {
+
+        private static final int DEFAULT_CAPACITY = 16;
+
+        private final ResultSetSchema schema;
+
+        private DimensionColumn[] dimensionColumns;
+        private MetricColumn[] metricColumns;
+        private TimeValues timeValues;
+        private DimensionValues[] dimensionValues;
+        private MetricValues[] metricValues;
+        private int size = 0;
+        private int capacity;
+
+        // Set once the results are found to not all have the same columns
+        private List<Result> fallbackResults;
+
+        /**
+         * Constructor.
+         *
+         * @param schema  The schema of the result set being built
+         */
+        public Builder(ResultSetSchema schema) {
+            this(schema, DEFAULT_CAPACITY);
+        }
+
+        /**
+         * Constructor.
+         *
+         * @param schema  The schema of the result set being built
+         * @param expectedSize  The number of results expected to be added
+         */
+        public Builder(ResultSetSchema schema, int expectedSize) {
+            this.schema = schema;
+            this.capacity = Math.max(expectedSize, 1);
+        }
+
+        /**
+         * Add a result to the result set being built.
+         *
+         * @param result  The result to add
+         *
+         * @return the builder
+         */
+        public Builder add(Result result) {
+            if (fallbackResults != null) {
+                fallbackResults.add(result);
+                return this;
+            }
+            if (size == 0) {
+                initializeColumns(result);
+            } else if (!hasSameColumns(result)) {
+                fallBack();
+                fallbackResults.add(result);
+                return this;
+            }
+
+            if (size == capacity) {
+                grow(capacity + (capacity >> 1) + 1);
+            }
+
+            int row = size++;
+            timeValues.set(row, result.getTimeStamp());
+            for (int i = 0; i < dimensionColumns.length; i++) {
+                dimensionValues[i].set(row, result.getDimensionRow(dimensionColumns[i]));
+            }
+            for (int i = 0; i < metricColumns.length; i++) {
+                metricValues[i].set(row, result.getMetricValue(metricColumns[i]));
+            }
+            return this;
+        }
+
+        /**
+         * Build the result set.
+         *
+         * @return A columnar result set, or a plain result set if the results didn't all have the same columns
+         */
+        public ResultSet build() {
+            if (fallbackResults != null) {
+                return new ResultSet(schema, fallbackResults);
+            }
+            if (size == 0) {
+                return new ResultSet(schema, Collections.emptyList());
+            }
+            grow(size);
+            for (DimensionValues values : dimensionValues) {
+                values.seal();
+            }
+            return new ColumnarResultSet(
+                    schema,
+                    new Columns(dimensionColumns, metricColumns, timeValues, dimensionValues, metricValues, size)
+            );
+        }
+
+        /**
+         * Set up the columns using the columns of the first result.
+         *
+         * @param result  The first result added to the builder
+         */
+        private void initializeColumns(Result result) {
+            dimensionColumns = result.getDimensionRows().keySet().toArray(new DimensionColumn[0]);
+            metricColumns = result.getMetricValues().keySet().toArray(new MetricColumn[0]);
+
+            timeValues = new TimeValues(capacity);
+            dimensionValues = new DimensionValues[dimensionColumns.length];
+            for (int i = 0; i < dimensionValues.length; i++) {
+                dimensionValues[i] = new DimensionValues(capacity);
+            }
+            metricValues = new MetricValues[metricColumns.length];
+            for (int i = 0; i < metricValues.length; i++) {
+                metricValues[i] = new MetricValues(capacity);
+            }
+        }
+
+        /**
+         * Check if a result has the same columns, in the same order, as the results already added.
+         *
+         * @param result  The result to check
+         *
+         * @return true if the result has the same columns
+         */
+        private boolean hasSameColumns(Result result) {
+            return sameColumns(result.getDimensionRows().keySet(), dimensionColumns) &&
+                    sameColumns(result.getMetricValues().keySet(), metricColumns);
+        }
+
+        /**
+         * Check if a collection of columns matches an array of columns, in order.
+         *
+         * @param columns  The columns to check
+         * @param expected  The expected columns
+         *
+         * @return true if the columns match
+         */
+        private static boolean sameColumns(Collection<?> columns, Object[] expected) {
+            if (columns.size() != expected.length) {
+                return false;
+            }
+            Iterator<?> iterator = columns.iterator();
+            for (Object column : expected) {
+                if (!column.equals(iterator.next())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Switch to building a plain result set, decoding the results added so far.
+         */
+        private void fallBack() {
+            Columns added = new Columns(
+                    dimensionColumns,
+                    metricColumns,
+                    timeValues,
+                    dimensionValues,
+                    metricValues,
+                    size
+            );
+            fallbackResults = new ArrayList<>(capacity);
+            for (int row = 0; row < size; row++) {
+                ResultView view = new ResultView(added, row);
+                fallbackResults.add(new Result(
+                        new LinkedHashMap<>(view.getDimensionRows()),
+                        new LinkedHashMap<>(view.getMetricValues()),
+                        view.getTimeStamp()
+                ));
+            }
+            timeValues = null;
+            dimensionValues = null;
+            metricValues = null;
+        }
+
+        /**
+         * Resize all columns.
+         *
+         * @param newCapacity  The new capacity of the columns
+         */
+        private void grow(int newCapacity) {
+            capacity = newCapacity;
+            timeValues.resize(newCapacity);
+            for (DimensionValues values : dimensionValues) {
+                values.resize(newCapacity);
+            }
+            for (MetricValues values : metricValues) {
+                values.resize(newCapacity);
+            }
+        }
+    }
+
+    /**
+     * The columns of a columnar result set, shared by the row views of the result set.
+     */
+    private static final class Columns implements ResultColumns {
+        private final DimensionColumn[] dimensionColumns;
+        private final MetricColumn[] metricColumns;
+        private final Map<DimensionColumn, Integer> dimensionIndexes;
+        private final Map<MetricColumn, Integer> metricIndexes;
+        private final TimeValues timeValues;
+        private final DimensionValues[] dimensionValues;
+        private final MetricValues[] metricValues;
+        private final int size;
+
+        /**
+         * Constructor.
+         *
+         * @param dimensionColumns  The dimension columns, in row order
+         * @param metricColumns  The metric columns, in row order
+         * @param timeValues  The timestamps of the rows
+         * @param dimensionValues  The values of each dimension column
+         * @param metricValues  The values of each metric column
+         * @param size  The number of rows
+         */
+        Columns(
+                DimensionColumn[] dimensionColumns,
+                MetricColumn[] metricColumns,
+                TimeValues timeValues,
+                DimensionValues[] dimensionValues,
+                MetricValues[] metricValues,
+                int size
+        ) {
+            this.dimensionColumns = dimensionColumns;
+            this.metricColumns = metricColumns;
+            this.timeValues = timeValues;
+            this.dimensionValues = dimensionValues;
+            this.metricValues = metricValues;
+            this.size = size;
+
+            dimensionIndexes = new HashMap<>();
+            for (int i = 0; i < dimensionColumns.length; i++) {
+                dimensionIndexes.put(dimensionColumns[i], i);
+            }
+            metricIndexes = new HashMap<>();
+            for (int i = 0; i < metricColumns.length; i++) {
+                metricIndexes.put(metricColumns[i], i);
+            }
+        }
+
+        @Override
+        public int getDimensionColumnCount() {
+            return dimensionColumns.length;
+        }
+
+        @Override
+        public DimensionColumn getDimensionColumn(int column) {
+            return dimensionColumns[column];
+        }
+
+        @Override
+        public int indexOf(DimensionColumn dimensionColumn) {
+            return dimensionIndexes.getOrDefault(dimensionColumn, -1);
+        }
+
+        @Override
+        public int getMetricColumnCount() {
+            return metricColumns.length;
+        }
+
+        @Override
+        public MetricColumn getMetricColumn(int column) {
+            return metricColumns[column];
+        }
+
+        @Override
+        public int indexOf(MetricColumn metricColumn) {
+            return metricIndexes.getOrDefault(metricColumn, -1);
+        }
+
+        @Override
+        public DateTime getTimeStamp(int row) {
+            return timeValues.get(row);
+        }
+
+        @Override
+        public DimensionRow getDimensionRow(int column, int row) {
+            return dimensionValues[column].get(row);
+        }
+
+        @Override
+        public Object getMetricValue(int column, int row) {
+            return metricValues[column].get(row);
+        }
+    }
+
+    /**
+     * Timestamps stored as epoch millis with a shared chronology.
+     */
+    private static final class TimeValues {
+        private long[] millis;
+        private Chronology chronology;
+        // Only used if the timestamps don't all have the same chronology
+        private DateTime[] dateTimes;
+
+        /**
+         * Constructor.
+         *
+         * @param capacity  The initial capacity
+         */
+        TimeValues(int capacity) {
+            millis = new long[capacity];
+        }
+
+        /**
+         * Set the timestamp of a row.
+         *
+         * @param row  The row
+         * @param dateTime  The timestamp
+         */
+        void set(int row, DateTime dateTime) {
+            if (dateTimes != null) {
+                dateTimes[row] = dateTime;
+                return;
+            }
+            if (row == 0 && dateTime != null) {
+                chronology = dateTime.getChronology();
+            }
+            if (dateTime != null && dateTime.getChronology().equals(chronology)) {
+                millis[row] = dateTime.getMillis();
+                return;
+            }
+            DateTime[] values = new DateTime[millis.length];
+            for (int i = 0; i < row; i++) {
+                values[i] = get(i);
+            }
+            values[row] = dateTime;
+            dateTimes = values;
+            millis = null;
+        }
+
+        /**
+         * Get the timestamp of a row.
+         *
+         * @param row  The row
+         *
+         * @return the timestamp
+         */
+        DateTime get(int row) {
+            return dateTimes != null ? dateTimes[row] : new DateTime(millis[row], chronology);
+        }
+
+        /**
+         * Get the epoch millis of the timestamp of a row.
+         *
+         * @param row  The row
+         *
+         * @return the epoch millis
+         */
+        long getMillis(int row) {
+            return dateTimes != null ? dateTimes[row].getMillis() : millis[row];
+        }
+
+        /**
+         * Resize the column.
+         *
+         * @param capacity  The new capacity
+         */
+        void resize(int capacity) {
+            if (dateTimes != null) {
+                dateTimes = Arrays.copyOf(dateTimes, capacity);
+            } else {
+                millis = Arrays.copyOf(millis, capacity);
+            }
+        }
+    }
+
+    /**
+     * Dictionary encoded dimension rows.
+     */
+    private static final class DimensionValues {
+        private final List<DimensionRow> dictionary = new ArrayList<>();
+        private Map<String, Integer> codesByKeyValue = new HashMap<>();
+        private int[] codes;
+
+        /**
+         * Constructor.
+         *
+         * @param capacity  The initial capacity
+         */
+        DimensionValues(int capacity) {
+            codes = new int[capacity];
+        }
+
+        /**
+         * Set the dimension row of a row.
+         *
+         * @param row  The row
+         * @param dimensionRow  The dimension row
+         */
+        void set(int row, DimensionRow dimensionRow) {
+            if (dimensionRow == null) {
+                codes[row] = -1;
+                return;
+            }
+            Integer code = codesByKeyValue.get(dimensionRow.getKeyValue());
+            // Rows with the same key value are almost always equal, but the dictionary must not assume it
+            if (code == null || !dictionary.get(code).equals(dimensionRow)) {
+                code = dictionary.size();
+                dictionary.add(dimensionRow);
+                codesByKeyValue.put(dimensionRow.getKeyValue(), code);
+            }
+            codes[row] = code;
+        }
+
+        /**
+         * Get the dimension row of a row.
+         *
+         * @param row  The row
+         *
+         * @return the dimension row
+         */
+        DimensionRow get(int row) {
+            int code = codes[row];
+            return code < 0 ? null : dictionary.get(code);
+        }
+
+        /**
+         * Resize the column.
+         *
+         * @param capacity  The new capacity
+         */
+        void resize(int capacity) {
+            codes = Arrays.copyOf(codes, capacity);
+        }
+
+        /**
+         * Release the state which is only needed while building the column.
+         */
+        void seal() {
+            codesByKeyValue = null;
+        }
+    }
+
+    /**
+     * Metric values stored in a primitive array when every value allows it, or as objects otherwise.
+     * <p>
+     * Values are stored as longs while they are all integral numbers, as doubles while they are all numbers whose value
+     * (and scale) survives a round trip through a double, and as objects otherwise.
+     */
+    private static final class MetricValues {
+        private final BitSet nulls = new BitSet();
+        private long[] longs;
+        private double[] doubles;
+        // Rows of a double column whose value was integral
+        private BitSet integral;
+        private Object[] objects;
+
+        /**
+         * Constructor.
+         *
+         * @param capacity  The initial capacity
+         */
+        MetricValues(int capacity) {
+            longs = new long[capacity];
+        }
+
+        /**
+         * Set the metric value of a row.
+         *
+         * @param row  The row
+         * @param value  The metric value
+         */
+        void set(int row, Object value) {
+            if (value == null) {
+                nulls.set(row);
+                return;
+            }
+            if (objects == null && value instanceof BigDecimal) {
+                BigDecimal number = (BigDecimal) value;
+                boolean isLong = isLong(number);
+                if (longs != null && isLong) {
+                    longs[row] = number.longValueExact();
+                    return;
+                }
+                if (longs != null && isExactDouble(number) && toDoubles(row)) {
+                    doubles[row] = number.doubleValue();
+                    return;
+                }
+                if (doubles != null && isLong && Math.abs(number.longValueExact()) <= MAX_EXACT_DOUBLE_LONG) {
+                    doubles[row] = number.doubleValue();
+                    integral.set(row);
+                    return;
+                }
+                if (doubles != null && !isLong && isExactDouble(number)) {
+                    doubles[row] = number.doubleValue();
+                    return;
+                }
+            }
+            toObjects(row);
+            objects[row] = value;
+        }
+
+        /**
+         * Get the metric value of a row.
+         *
+         * @param row  The row
+         *
+         * @return the metric value
+         */
+        Object get(int row) {
+            if (objects != null) {
+                return objects[row];
+            }
+            if (nulls.get(row)) {
+                return null;
+            }
+            if (longs != null) {
+                return BigDecimal.valueOf(longs[row]);
+            }
+            return integral.get(row) ? BigDecimal.valueOf((long) doubles[row]) : BigDecimal.valueOf(doubles[row]);
+        }
+
+        /**
+         * Resize the column.
+         *
+         * @param capacity  The new capacity
+         */
+        void resize(int capacity) {
+            if (longs != null) {
+                longs = Arrays.copyOf(longs, capacity);
+            } else if (doubles != null) {
+                doubles = Arrays.copyOf(doubles, capacity);
+            } else {
+                objects = Arrays.copyOf(objects, capacity);
+            }
+        }
+
+        /**
+         * Convert a long column into a double column, if all values so far are exactly representable as doubles.
+         *
+         * @param rows  The number of rows set so far
+         *
+         * @return true if the column was converted
+         */
+        private boolean toDoubles(int rows) {
+            for (int row = 0; row < rows; row++) {
+                if (!nulls.get(row) && Math.abs(longs[row]) > MAX_EXACT_DOUBLE_LONG) {
+                    return false;
+                }
+            }
+            doubles = new double[longs.length];
+            integral = new BitSet();
+            for (int row = 0; row < rows; row++) {
+                if (!nulls.get(row)) {
+                    doubles[row] = longs[row];
+                    integral.set(row);
+                }
+            }
+            longs = null;
+            return true;
+        }
+
+        /**
+         * Convert the column into an object column.
+         *
+         * @param rows  The number of rows set so far
+         */
+        private void toObjects(int rows) {
+            if (objects != null) {
+                return;
+            }
+            Object[] values = new Object[longs != null ? longs.length : doubles.length];
+            for (int row = 0; row < rows; row++) {
+                values[row] = get(row);
+            }
+            objects = values;
+            longs = null;
+            doubles = null;
+            integral = null;
+        }
+
+        /**
+         * Check if a number is integral and fits in a long, such that it is restored exactly from the long.
+         *
+         * @param number  The number to check
+         *
+         * @return true if the number can be stored as a long
+         */
+        private static boolean isLong(BigDecimal number) {
+            return number.scale() == 0 && number.unscaledValue().bitLength() < Long.SIZE;
+        }
+
+        /**
+         * Check if a number is restored exactly, including its scale, from its double value.
+         *
+         * @param number  The number to check
+         *
+         * @return true if the number can be stored as a double
+         */
+        private static boolean isExactDouble(BigDecimal number) {
+            double value = number.doubleValue();
+            return !Double.isInfinite(value) && BigDecimal.valueOf(value).equals(number);
+        }
+    }
+}
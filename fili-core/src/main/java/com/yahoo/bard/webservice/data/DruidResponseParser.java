@@ -4,6 +4,7 @@ package com.yahoo.bard.webservice.data;
 
 import static com.yahoo.bard.webservice.web.ErrorMessageFormat.RESULT_SET_ERROR;
 
+import com.yahoo.bard.webservice.config.BardFeatureFlag;
 import com.yahoo.bard.webservice.data.dimension.DimensionColumn;
 import com.yahoo.bard.webservice.data.dimension.DimensionRow;
 import com.yahoo.bard.webservice.data.metric.MetricColumn;
@@ -12,17 +13,26 @@ import com.yahoo.bard.webservice.druid.model.QueryType;
 import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
 import com.yahoo.bard.webservice.table.Column;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 import javax.inject.Singleton;
@@ -35,6 +45,7 @@ import javax.inject.Singleton;
 public class DruidResponseParser {
 
     private static final Logger LOG = LoggerFactory.getLogger(DruidResponseParser.class);
+    private static final ObjectMapper TREE_READER = new ObjectMapper();
 
     /**
      * Parse Druid GroupBy result into ResultSet.
@@ -86,7 +97,327 @@ public class DruidResponseParser {
         }
 
         LOG.trace("Parsed druid query {} results: {}", queryType, results);
-        return new ResultSet(schema, results);
+        return BardFeatureFlag.COLUMNAR_RESULT_SETS.isOn() ?
+                ColumnarResultSet.of(schema, results) :
+                new ResultSet(schema, results);
+    }
+
+    /**
+     * Parse a Druid response into a ResultSet by streaming over the tokens of the response.
+     * <p>
+     * Unlike {@link #parse(JsonNode, ResultSetSchema, QueryType, DateTimeZone)}, this never materializes a tree of
+     * the whole response. Only the fields of a single record which are named by the schema are buffered at any time.
+     *
+     * @param jsonParser  Parser positioned before (or at) the start of the Druid response array
+     * @param schema  Schema for results
+     * @param queryType  the type of query, note that this implementation only supports instances of
+     * {@link DefaultQueryType}
+     * @param dateTimeZone the time zone used for format the results
+     *
+     * @return the set of results
+     *
+     * @throws IOException if the response cannot be read or is not a well formed Druid response
+     */
+    public ResultSet parse(
+            JsonParser jsonParser,
+            ResultSetSchema schema,
+            QueryType queryType,
+            DateTimeZone dateTimeZone
+    ) throws IOException {
+
+        LOG.trace("Stream parsing druid query {} using schema: {}", queryType, schema);
+
+        if (!(queryType instanceof DefaultQueryType)) {
+            // Throw an exception for unsupported query types
+            unsupportedQueryType(queryType);
+        }
+        DefaultQueryType defaultQueryType = (DefaultQueryType) queryType;
+
+        /* Get dimension and metric columns */
+        Set<DimensionColumn> dimensionColumns = schema.getColumns(DimensionColumn.class);
+        Set<MetricColumn> metricColumns = schema.getColumns(MetricColumn.class);
+
+        // Only the fields named by the schema are buffered, everything else in the response is skipped
+        Set<String> fieldNames = new HashSet<>();
+        dimensionColumns.stream().map(Column::getName).forEach(fieldNames::add);
+        metricColumns.stream().map(Column::getName).forEach(fieldNames::add);
+
+        // Columnar result sets encode each result as soon as it is parsed, rather than holding on to all of them
+        ColumnarResultSet.Builder columnarResults = BardFeatureFlag.COLUMNAR_RESULT_SETS.isOn() ?
+                new ColumnarResultSet.Builder(schema) :
+                null;
+        List<Result> resultList = new ArrayList<>();
+        Consumer<Result> results = columnarResults == null ? resultList::add : columnarResults::add;
+
+        JsonToken token = jsonParser.getCurrentToken() == null ? jsonParser.nextToken() : jsonParser.getCurrentToken();
+        if (token != JsonToken.START_ARRAY) {
+            throw new IOException("Expected a Druid response array but found " + token);
+        }
+
+        while (jsonParser.nextToken() == JsonToken.START_OBJECT) {
+            switch (defaultQueryType) {
+                case GROUP_BY:
+                    streamGroupByRecord(jsonParser, fieldNames, dimensionColumns, metricColumns, dateTimeZone, results);
+                    break;
+                case TOP_N:
+                    streamTopNRecord(jsonParser, fieldNames, dimensionColumns, metricColumns, dateTimeZone, results);
+                    break;
+                case TIMESERIES:
+                    streamTimeSeriesRecord(jsonParser, fieldNames, null, metricColumns, dateTimeZone, results);
+                    break;
+                case LOOKBACK:
+                    streamTimeSeriesRecord(
+                            jsonParser,
+                            fieldNames,
+                            dimensionColumns,
+                            metricColumns,
+                            dateTimeZone,
+                            results
+                    );
+                    break;
+                default:
+                    // Throw an exception for unsupported query types
+                    unsupportedQueryType(queryType);
+            }
+        }
+
+        if (jsonParser.getCurrentToken() != JsonToken.END_ARRAY) {
+            throw new IOException("Unexpected token in Druid response: " + jsonParser.getCurrentToken());
+        }
+
+        ResultSet resultSet = columnarResults == null ? new ResultSet(schema, resultList) : columnarResults.build();
+        LOG.trace("Stream parsed druid query {} results: {}", queryType, resultSet);
+        return resultSet;
+    }
+
+    /**
+     * Stream a single record of a groupBy response into a result.
+     *
+     * @param jsonParser  Parser positioned at the start of the record
+     * @param fieldNames  The names of the fields which are read from the event
+     * @param dimensionColumns  set of dimension columns
+     * @param metricColumns  set of metric columns
+     * @param dateTimeZone  The date time zone to apply to timestamps
+     * @param results  The consumer of the result
+     *
+     * @throws IOException if the record cannot be read
+     */
+    private void streamGroupByRecord(
+            JsonParser jsonParser,
+            Set<String> fieldNames,
+            Set<DimensionColumn> dimensionColumns,
+            Set<MetricColumn> metricColumns,
+            DateTimeZone dateTimeZone,
+            Consumer<Result> results
+    ) throws IOException {
+        String timestamp = null;
+        Map<String, Object> event = null;
+
+        while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = jsonParser.getCurrentName();
+            jsonParser.nextToken();
+            if ("timestamp".equals(name)) {
+                timestamp = jsonParser.getValueAsString();
+            } else if ("event".equals(name)) {
+                event = readFields(jsonParser, fieldNames);
+            } else {
+                jsonParser.skipChildren();
+            }
+        }
+
+        results.accept(makeResult(timestamp, event, dimensionColumns, metricColumns, dateTimeZone));
+    }
+
+    /**
+     * Stream a single time bucket of a topN response into results.
+     *
+     * @param jsonParser  Parser positioned at the start of the record
+     * @param fieldNames  The names of the fields which are read from each entry
+     * @param dimensionColumns  set of dimension columns
+     * @param metricColumns  set of metric columns
+     * @param dateTimeZone  The date time zone to apply to timestamps
+     * @param results  The consumer of the results
+     *
+     * @throws IOException if the record cannot be read
+     */
+    private void streamTopNRecord(
+            JsonParser jsonParser,
+            Set<String> fieldNames,
+            Set<DimensionColumn> dimensionColumns,
+            Set<MetricColumn> metricColumns,
+            DateTimeZone dateTimeZone,
+            Consumer<Result> results
+    ) throws IOException {
+        String timestamp = null;
+        List<Map<String, Object>> entries = new ArrayList<>();
+
+        while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = jsonParser.getCurrentName();
+            if (jsonParser.nextToken() == JsonToken.START_ARRAY && "result".equals(name)) {
+                while (jsonParser.nextToken() == JsonToken.START_OBJECT) {
+                    entries.add(readFields(jsonParser, fieldNames));
+                }
+            } else if ("timestamp".equals(name)) {
+                timestamp = jsonParser.getValueAsString();
+            } else {
+                jsonParser.skipChildren();
+            }
+        }
+
+        for (Map<String, Object> entry : entries) {
+            results.accept(makeResult(timestamp, entry, dimensionColumns, metricColumns, dateTimeZone));
+        }
+    }
+
+    /**
+     * Stream a single record of a timeseries or lookback response into a result.
+     *
+     * @param jsonParser  Parser positioned at the start of the record
+     * @param fieldNames  The names of the fields which are read from the result
+     * @param dimensionColumns  set of dimension columns, null if the records have no dimensions
+     * @param metricColumns  set of metric columns
+     * @param dateTimeZone  The date time zone to apply to timestamps
+     * @param results  The consumer of the result
+     *
+     * @throws IOException if the record cannot be read
+     */
+    private void streamTimeSeriesRecord(
+            JsonParser jsonParser,
+            Set<String> fieldNames,
+            Set<DimensionColumn> dimensionColumns,
+            Set<MetricColumn> metricColumns,
+            DateTimeZone dateTimeZone,
+            Consumer<Result> results
+    ) throws IOException {
+        String timestamp = null;
+        Map<String, Object> result = null;
+
+        while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = jsonParser.getCurrentName();
+            jsonParser.nextToken();
+            if ("timestamp".equals(name)) {
+                timestamp = jsonParser.getValueAsString();
+            } else if ("result".equals(name)) {
+                result = readFields(jsonParser, fieldNames);
+            } else {
+                jsonParser.skipChildren();
+            }
+        }
+
+        results.accept(makeResult(timestamp, result, dimensionColumns, metricColumns, dateTimeZone));
+    }
+
+    /**
+     * Build a result from the buffered fields of a streamed record.
+     *
+     * @param timestamp  The timestamp of the record
+     * @param fields  The buffered fields of the record
+     * @param dimensionColumns  set of dimension columns, null if the record has no dimensions
+     * @param metricColumns  set of metric columns
+     * @param dateTimeZone  The date time zone to apply to timestamps
+     *
+     * @return the result for the record
+     *
+     * @throws IOException if the record has no timestamp or no fields
+     */
+    private Result makeResult(
+            String timestamp,
+            Map<String, Object> fields,
+            Set<DimensionColumn> dimensionColumns,
+            Set<MetricColumn> metricColumns,
+            DateTimeZone dateTimeZone
+    ) throws IOException {
+        if (timestamp == null || fields == null) {
+            throw new IOException("Druid response record is missing its timestamp or values");
+        }
+
+        LinkedHashMap<DimensionColumn, DimensionRow> dimensionRows = new LinkedHashMap<>();
+        if (dimensionColumns != null) {
+            for (DimensionColumn dc : dimensionColumns) {
+                Object fieldValue = fields.get(dc.getName());
+                String keyValue = fieldValue == null ? "" :
+                        fieldValue instanceof JsonNode ? ((JsonNode) fieldValue).asText("") :
+                        fieldValue.toString();
+                dimensionRows.put(dc, getDimensionRow(dc, keyValue));
+            }
+        }
+
+        LinkedHashMap<MetricColumn, Object> metricValues = new LinkedHashMap<>();
+        for (MetricColumn mc : metricColumns) {
+            if (!fields.containsKey(mc.getName())) {
+                LOG.warn("Found null node for metric column {}", mc.getName());
+            } else {
+                metricValues.put(mc, fields.get(mc.getName()));
+            }
+        }
+
+        return new Result(dimensionRows, metricValues, new DateTime(timestamp, dateTimeZone));
+    }
+
+    /**
+     * Read the fields of the json object the parser is positioned at, keeping only the named fields.
+     * <p>
+     * Values are converted the same way as {@link #getNodeValue(JsonNode)} converts nodes, so that results are the
+     * same as those built from a json tree.
+     *
+     * @param jsonParser  Parser positioned at the start of an object
+     * @param fieldNames  The names of the fields to keep
+     *
+     * @return the kept fields by name, with the parser positioned at the end of the object
+     *
+     * @throws IOException if the object cannot be read
+     */
+    private Map<String, Object> readFields(JsonParser jsonParser, Set<String> fieldNames) throws IOException {
+        Map<String, Object> fields = new HashMap<>();
+        if (jsonParser.getCurrentToken() != JsonToken.START_OBJECT) {
+            jsonParser.skipChildren();
+            return fields;
+        }
+
+        while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = jsonParser.getCurrentName();
+            JsonToken valueToken = jsonParser.nextToken();
+            if (fieldNames.contains(name)) {
+                fields.put(name, getTokenValue(jsonParser, valueToken));
+            } else {
+                jsonParser.skipChildren();
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Extracts the value of the current token from a parser.
+     *
+     * @param jsonParser  The parser positioned at the value to be extracted
+     * @param token  The current token of the parser
+     *
+     * @return the value as a BigDecimal if the token is a number, the value as a String if the token is textual,
+     * the value as a boolean if the token is a boolean, null if the token is null, and a JsonNode otherwise.
+     *
+     * @throws IOException if the value cannot be read
+     */
+    private Object getTokenValue(JsonParser jsonParser, JsonToken token) throws IOException {
+        switch (token) {
+            case VALUE_NUMBER_INT:
+                return jsonParser.getNumberType() == JsonParser.NumberType.BIG_INTEGER ?
+                        new BigDecimal(jsonParser.getBigIntegerValue()) :
+                        BigDecimal.valueOf(jsonParser.getLongValue());
+            case VALUE_NUMBER_FLOAT:
+                return BigDecimal.valueOf(jsonParser.getDoubleValue());
+            case VALUE_STRING:
+                return jsonParser.getText();
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                return jsonParser.getBooleanValue();
+            case VALUE_NULL:
+                return null;
+            default:
+                // Non-scalar values (such as sketches) are kept as trees, as they are when parsing a tree
+                return jsonParser.getCodec() == null ?
+                        TREE_READER.readTree(jsonParser) :
+                        jsonParser.readValueAsTree();
+        }
     }
 
     /**
@@ -257,16 +588,28 @@ public class DruidResponseParser {
                 fieldValue = fieldNode.asText("");
             }
 
-            DimensionRow drow = dc.getDimension().findDimensionRowByKeyValue(fieldValue);
-            if (drow == null) {
-                drow = dc.getDimension().createEmptyDimensionRow(fieldValue);
-            }
-            dimensionRows.put(dc, drow);
+            dimensionRows.put(dc, getDimensionRow(dc, fieldValue));
         }
 
         return dimensionRows;
     }
 
+    /**
+     * Find the dimension row for a key value, or an empty dimension row if the dimension has no such row.
+     *
+     * @param dimensionColumn  The column of the dimension to find the row in
+     * @param fieldValue  The key value of the row
+     *
+     * @return the dimension row for the key value
+     */
+    private DimensionRow getDimensionRow(DimensionColumn dimensionColumn, String fieldValue) {
+        DimensionRow drow = dimensionColumn.getDimension().findDimensionRowByKeyValue(fieldValue);
+        if (drow == null) {
+            drow = dimensionColumn.getDimension().createEmptyDimensionRow(fieldValue);
+        }
+        return drow;
+    }
+
     /**
      * Extract the metric values for a json object given the set of all available metric columns and the json object.
      *
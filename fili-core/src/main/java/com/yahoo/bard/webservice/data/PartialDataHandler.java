@@ -4,13 +4,13 @@ package com.yahoo.bard.webservice.data;
 
 import com.yahoo.bard.webservice.druid.model.query.AllGranularity;
 import com.yahoo.bard.webservice.druid.model.query.Granularity;
+import com.yahoo.bard.webservice.util.IntervalSet;
 import com.yahoo.bard.webservice.util.SimplifiedIntervalList;
 
 import org.joda.time.Interval;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.function.Predicate;
 import java.util.stream.StreamSupport;
 
 import javax.inject.Singleton;
@@ -81,10 +81,10 @@ public class PartialDataHandler {
         // Stream the from intervals, split by grain
         Iterable<Interval> bucketIterable = granularity.intervalsIterable(bucketedIntervals);
 
-        // Not in returns true if any part of the stream interval is not 'covered' by the remove intervals.
-        Predicate<Interval> notIn = new SimplifiedIntervalList.IsSubinterval(supplyIntervals).negate();
+        // Collect the buckets any part of which is not 'covered' by the supply, found by binary search of the supply
+        IntervalSet supply = IntervalSet.of(supplyIntervals);
         return StreamSupport.stream(bucketIterable.spliterator(), false)
-                .filter(notIn)
+                .filter(bucket -> !supply.contains(bucket))
                 .collect(SimplifiedIntervalList.getCollector());
     }
 }
@@ -53,9 +53,9 @@ public class Result {
      * @return A new result based on this one
      */
     public Result withMetricValue(MetricColumn metricColumn, Object value) {
-        Map<MetricColumn, Object> newMetricValues = new LinkedHashMap<>(metricValues);
+        Map<MetricColumn, Object> newMetricValues = new LinkedHashMap<>(getMetricValues());
         newMetricValues.put(metricColumn, value);
-        return new Result(dimensionRows, newMetricValues, timeStamp);
+        return new Result(getDimensionRows(), newMetricValues, getTimeStamp());
     }
 
     /**
@@ -94,7 +94,7 @@ public class Result {
      * @return DimensionRow in dimensionValues map corresponding to the column provided as argument
      */
     public DimensionRow getDimensionRow(DimensionColumn dimensionColumn) {
-        return this.dimensionRows.get(dimensionColumn);
+        return getDimensionRows().get(dimensionColumn);
     }
 
     /**
@@ -110,7 +110,7 @@ public class Result {
      * @return The value of the specified column as an Object
      */
     public Object getMetricValue(MetricColumn column) {
-        return metricValues.get(column);
+        return getMetricValues().get(column);
     }
 
     /**
@@ -122,7 +122,7 @@ public class Result {
      * @throws ClassCastException if the value keyed to metricColumn is not a BigDecimal
      */
     public BigDecimal getMetricValueAsNumber(MetricColumn metricColumn) {
-        return (BigDecimal) metricValues.get(metricColumn);
+        return (BigDecimal) getMetricValue(metricColumn);
     }
 
     /**
@@ -133,7 +133,7 @@ public class Result {
      * @return The String representation of the value of the desired metric
      */
     public String getMetricValueAsString(MetricColumn metricColumn) {
-        return metricValues.containsKey(metricColumn) ? metricValues.get(metricColumn).toString() : null;
+        return getMetricValues().containsKey(metricColumn) ? getMetricValue(metricColumn).toString() : null;
     }
 
     /**
@@ -145,7 +145,7 @@ public class Result {
      * @throws ClassCastException if the value keyed to metricColumn is not a boolean
      */
     public boolean getMetricValueAsBoolean(MetricColumn metricColumn) {
-        return (boolean) metricValues.get(metricColumn);
+        return (boolean) getMetricValue(metricColumn);
     }
 
     /**
@@ -157,27 +157,37 @@ public class Result {
      * @throws ClassCastException if the value keyed to metricColumn is not a JsonNode
      */
     public JsonNode getMetricValueAsJsonNode(MetricColumn metricColumn) {
-        return (JsonNode) metricValues.get(metricColumn);
+        return (JsonNode) getMetricValue(metricColumn);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(dimensionRows, metricValues, timeStamp);
+        return Objects.hash(getDimensionRows(), getMetricValues(), getTimeStamp());
     }
 
+    /**
+     * Results are equal if they have the same dimension rows, metric values and timestamp.
+     * <p>
+     * Results are compared by value rather than by class, so that a {@link ResultView} equals the plain result holding
+     * the same values, whichever side of the comparison it is on. Subclasses must therefore not add state to equality.
+     *
+     * @param obj  The object to compare to
+     *
+     * @return true if the object is a result with the same values
+     */
     @Override
     public boolean equals(Object obj) {
         if (this == obj) { return true; }
-        if (obj == null || getClass() != obj.getClass()) { return false; }
+        if (!(obj instanceof Result)) { return false; }
         Result that = (Result) obj;
         return
-                Objects.equals(dimensionRows, that.dimensionRows) &&
-                Objects.equals(metricValues, that.metricValues) &&
-                Objects.equals(timeStamp, that.timeStamp);
+                Objects.equals(getDimensionRows(), that.getDimensionRows()) &&
+                Objects.equals(getMetricValues(), that.getMetricValues()) &&
+                Objects.equals(getTimeStamp(), that.getTimeStamp());
     }
 
     @Override
     public String toString() {
-        return timeStamp.toString() + " " + dimensionRows.keySet() + metricValues.toString();
+        return getTimeStamp().toString() + " " + getDimensionRows().keySet() + getMetricValues().toString();
     }
 }
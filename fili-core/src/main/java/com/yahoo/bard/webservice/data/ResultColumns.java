@@ -0,0 +1,120 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.data;
+
+import com.yahoo.bard.webservice.data.dimension.DimensionColumn;
+import com.yahoo.bard.webservice.data.dimension.DimensionRow;
+import com.yahoo.bard.webservice.data.metric.MetricColumn;
+
+import org.joda.time.DateTime;
+
+/**
+ * The values of rows of results stored column by column, read by {@link ResultView}s.
+ * <p>
+ * Columns are addressed by their index, and rows by their index in the columns.
+ */
+public interface ResultColumns {
+
+    /**
+     * The number of dimension columns.
+     *
+     * @return the number of dimension columns
+     */
+    int getDimensionColumnCount();
+
+    /**
+     * Get a dimension column.
+     *
+     * @param column  The index of the column
+     *
+     * @return the dimension column
+     */
+    DimensionColumn getDimensionColumn(int column);
+
+    /**
+     * Get the index of a dimension column.
+     *
+     * @param dimensionColumn  The dimension column
+     *
+     * @return the index of the column, or -1 if there is no such column
+     */
+    int indexOf(DimensionColumn dimensionColumn);
+
+    /**
+     * The number of metric columns.
+     *
+     * @return the number of metric columns
+     */
+    int getMetricColumnCount();
+
+    /**
+     * Get a metric column.
+     *
+     * @param column  The index of the column
+     *
+     * @return the metric column
+     */
+    MetricColumn getMetricColumn(int column);
+
+    /**
+     * Get the index of a metric column.
+     *
+     * @param metricColumn  The metric column
+     *
+     * @return the index of the column, or -1 if there is no such column
+     */
+    int indexOf(MetricColumn metricColumn);
+
+    /**
+     * Get the timestamp of a row.
+     *
+     * @param row  The row
+     *
+     * @return the timestamp
+     */
+    DateTime getTimeStamp(int row);
+
+    /**
+     * Get the dimension row of a row in a dimension column.
+     *
+     * @param column  The index of the dimension column
+     * @param row  The row
+     *
+     * @return the dimension row, or null
+     */
+    DimensionRow getDimensionRow(int column, int row);
+
+    /**
+     * Get the value of a row in a metric column.
+     *
+     * @param column  The index of the metric column
+     * @param row  The row
+     *
+     * @return the metric value, or null
+     */
+    Object getMetricValue(int column, int row);
+
+    /**
+     * Check if a row has a value in a dimension column, which may be null.
+     *
+     * @param column  The index of the dimension column
+     * @param row  The row
+     *
+     * @return true if the row has the column
+     */
+    default boolean hasDimensionRow(int column, int row) {
+        return true;
+    }
+
+    /**
+     * Check if a row has a value in a metric column, which may be null.
+     *
+     * @param column  The index of the metric column
+     * @param row  The row
+     *
+     * @return true if the row has the column
+     */
+    default boolean hasMetricValue(int column, int row) {
+        return true;
+    }
+}
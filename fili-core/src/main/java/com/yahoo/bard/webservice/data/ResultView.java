@@ -0,0 +1,324 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.data;
+
+import com.yahoo.bard.webservice.data.dimension.DimensionColumn;
+import com.yahoo.bard.webservice.data.dimension.DimensionRow;
+import com.yahoo.bard.webservice.data.metric.MetricColumn;
+
+import org.joda.time.DateTime;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A result which reads its values from a row of {@link ResultColumns}, rather than holding them.
+ * <p>
+ * The dimension rows and metric values maps of a view are read-only views over the columns, made once per result
+ * view, so reading them doesn't copy the row. Equality and hash codes are computed from the columns directly, and
+ * match those of a plain {@link Result} holding the same values.
+ */
+public final class ResultView extends Result {
+
+    private final ResultColumns columns;
+    private final int row;
+
+    private Map<DimensionColumn, DimensionRow> dimensionRows;
+    private Map<MetricColumn, Object> metricValues;
+
+    /**
+     * Constructor.
+     *
+     * @param columns  The columns the row is read from
+     * @param row  The index of the row in the columns
+     */
+    public ResultView(ResultColumns columns, int row) {
+        // The row's values are read from the columns by the overridden getters
+        super(Collections.emptyMap(), Collections.emptyMap(), null);
+        this.columns = Objects.requireNonNull(columns, "columns");
+        this.row = row;
+    }
+
+    /**
+     * The columns the row is read from.
+     *
+     * @return the columns
+     */
+    ResultColumns getColumns() {
+        return columns;
+    }
+
+    /**
+     * The index of the row in its columns.
+     *
+     * @return the row
+     */
+    int getRow() {
+        return row;
+    }
+
+    @Override
+    public Map<DimensionColumn, DimensionRow> getDimensionRows() {
+        if (dimensionRows == null) {
+            dimensionRows = new RowMap<DimensionColumn, DimensionRow>() {
+                @Override
+                int count() {
+                    return columns.getDimensionColumnCount();
+                }
+
+                @Override
+                DimensionColumn key(int column) {
+                    return columns.getDimensionColumn(column);
+                }
+
+                @Override
+                int indexOfKey(Object key) {
+                    return key instanceof DimensionColumn ? columns.indexOf((DimensionColumn) key) : -1;
+                }
+
+                @Override
+                boolean has(int column) {
+                    return columns.hasDimensionRow(column, row);
+                }
+
+                @Override
+                DimensionRow value(int column) {
+                    return columns.getDimensionRow(column, row);
+                }
+            };
+        }
+        return dimensionRows;
+    }
+
+    @Override
+    public Map<MetricColumn, Object> getMetricValues() {
+        if (metricValues == null) {
+            metricValues = new RowMap<MetricColumn, Object>() {
+                @Override
+                int count() {
+                    return columns.getMetricColumnCount();
+                }
+
+                @Override
+                MetricColumn key(int column) {
+                    return columns.getMetricColumn(column);
+                }
+
+                @Override
+                int indexOfKey(Object key) {
+                    return key instanceof MetricColumn ? columns.indexOf((MetricColumn) key) : -1;
+                }
+
+                @Override
+                boolean has(int column) {
+                    return columns.hasMetricValue(column, row);
+                }
+
+                @Override
+                Object value(int column) {
+                    return columns.getMetricValue(column, row);
+                }
+            };
+        }
+        return metricValues;
+    }
+
+    @Override
+    public DateTime getTimeStamp() {
+        return columns.getTimeStamp(row);
+    }
+
+    @Override
+    public DimensionRow getDimensionRow(DimensionColumn dimensionColumn) {
+        int column = columns.indexOf(dimensionColumn);
+        return column < 0 ? null : columns.getDimensionRow(column, row);
+    }
+
+    @Override
+    public Object getMetricValue(MetricColumn column) {
+        int index = columns.indexOf(column);
+        return index < 0 ? null : columns.getMetricValue(index, row);
+    }
+
+    @Override
+    public int hashCode() {
+        // Same as Objects.hash(getDimensionRows(), getMetricValues(), getTimeStamp()), without iterating map entries
+        int dimensionsHash = 0;
+        for (int column = 0; column < columns.getDimensionColumnCount(); column++) {
+            if (columns.hasDimensionRow(column, row)) {
+                dimensionsHash += columns.getDimensionColumn(column).hashCode() ^
+                        Objects.hashCode(columns.getDimensionRow(column, row));
+            }
+        }
+        int metricsHash = 0;
+        for (int column = 0; column < columns.getMetricColumnCount(); column++) {
+            if (columns.hasMetricValue(column, row)) {
+                metricsHash += columns.getMetricColumn(column).hashCode() ^
+                        Objects.hashCode(columns.getMetricValue(column, row));
+            }
+        }
+        return 31 * (31 * (31 + dimensionsHash) + metricsHash) + Objects.hashCode(getTimeStamp());
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) { return true; }
+        if (!(obj instanceof Result)) { return false; }
+        Result that = (Result) obj;
+        return ((RowMap<?, ?>) getDimensionRows()).hasSameEntries(that.getDimensionRows()) &&
+                ((RowMap<?, ?>) getMetricValues()).hasSameEntries(that.getMetricValues()) &&
+                Objects.equals(getTimeStamp(), that.getTimeStamp());
+    }
+
+    /**
+     * A read-only map over the columns of a row, whose lookups go straight to the column of the key.
+     *
+     * @param <K>  The type of the columns
+     * @param <V>  The type of the values
+     */
+    private abstract static class RowMap<K, V> extends AbstractMap<K, V> {
+
+        /**
+         * The number of columns.
+         *
+         * @return the number of columns
+         */
+        abstract int count();
+
+        /**
+         * Get a column.
+         *
+         * @param column  The index of the column
+         *
+         * @return the column
+         */
+        abstract K key(int column);
+
+        /**
+         * Get the index of a column.
+         *
+         * @param key  The column
+         *
+         * @return the index of the column, or -1 if there is no such column
+         */
+        abstract int indexOfKey(Object key);
+
+        /**
+         * Check if the row has a column.
+         *
+         * @param column  The index of the column
+         *
+         * @return true if the row has the column
+         */
+        abstract boolean has(int column);
+
+        /**
+         * Get the value of the row in a column.
+         *
+         * @param column  The index of the column
+         *
+         * @return the value
+         */
+        abstract V value(int column);
+
+        @Override
+        public V get(Object key) {
+            int column = indexOfKey(key);
+            return column >= 0 && has(column) ? value(column) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            int column = indexOfKey(key);
+            return column >= 0 && has(column);
+        }
+
+        @Override
+        public int size() {
+            int size = 0;
+            for (int column = 0; column < count(); column++) {
+                if (has(column)) {
+                    size++;
+                }
+            }
+            return size;
+        }
+
+        /**
+         * Check if a map holds the same entries as this one, without iterating the entries of this map.
+         *
+         * @param other  The map to compare to
+         *
+         * @return true if the maps are equal
+         */
+        boolean hasSameEntries(Map<?, ?> other) {
+            if (other.size() != size()) {
+                return false;
+            }
+            for (int column = 0; column < count(); column++) {
+                if (!has(column)) {
+                    continue;
+                }
+                K key = key(column);
+                V value = value(column);
+                if (value == null ? other.get(key) != null || !other.containsKey(key) : !value.equals(other.get(key))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            return new AbstractSet<Entry<K, V>>() {
+                @Override
+                public int size() {
+                    return RowMap.this.size();
+                }
+
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    return new Iterator<Entry<K, V>>() {
+                        private int next = advance(0);
+
+                        /**
+                         * Find the next column the row has.
+                         *
+                         * @param from  The index of the first column to check
+                         *
+                         * @return the index of the column, or the number of columns if there is none
+                         */
+                        private int advance(int from) {
+                            int column = from;
+                            while (column < count() && !has(column)) {
+                                column++;
+                            }
+                            return column;
+                        }
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < count();
+                        }
+
+                        @Override
+                        public Entry<K, V> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            Entry<K, V> entry = new SimpleImmutableEntry<>(key(next), value(next));
+                            next = advance(next + 1);
+                            return entry;
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,218 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.cache;
+
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.common.io.CountingOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The formats in which Druid responses are stored in the query response cache.
+ * <p>
+ * Byte formats store the UTF-8 encoded response, prefixed by a one byte header naming the format, so that cache hits
+ * can be parsed straight from the cached bytes without first copying them into a String. Cached values in any format
+ * can be read back regardless of the format currently configured.
+ */
+public enum CachedResponseFormat {
+    /**
+     * The response as a JSON String.
+     */
+    STRING("String", (byte) 0),
+    /**
+     * The response as UTF-8 encoded JSON bytes.
+     */
+    BYTES("Bytes", (byte) 1),
+    /**
+     * The response as deflate compressed, UTF-8 encoded JSON bytes.
+     */
+    COMPRESSED_BYTES("CompressedBytes", (byte) 2);
+
+    private static final Logger LOG = LoggerFactory.getLogger(CachedResponseFormat.class);
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
+
+    private static final String FORMAT_KEY = SYSTEM_CONFIG.getPackageVariableName("druid_cache_v2_value_format");
+
+    private final String name;
+    private final byte header;
+
+    /**
+     * Constructor.
+     *
+     * @param name  Name of the format in the system configuration
+     * @param header  The byte identifying the format at the start of a cached byte value
+     */
+    CachedResponseFormat(String name, byte header) {
+        this.name = name;
+        this.header = header;
+    }
+
+    /**
+     * Get the format configured for the query response cache.
+     *
+     * @return the configured format, defaulting to {@link #STRING}
+     */
+    public static CachedResponseFormat getConfiguredFormat() {
+        String configured = SYSTEM_CONFIG.getStringProperty(FORMAT_KEY, STRING.name);
+        return Arrays.stream(values())
+                .filter(format -> format.name.equalsIgnoreCase(configured))
+                .findFirst()
+                .orElseGet(() -> {
+                    LOG.warn("Unknown cached response format {}, using {}", configured, STRING.name);
+                    return STRING;
+                });
+    }
+
+    /**
+     * Encode a response into a cache value in this format.
+     *
+     * @param json  The response to encode
+     * @param writer  The writer used to serialize the response
+     *
+     * @return the cache value, a String or a byte array
+     *
+     * @throws IOException if the response cannot be serialized
+     */
+    public Serializable encode(JsonNode json, ObjectWriter writer) throws IOException {
+        return encode(json, writer, Long.MAX_VALUE);
+    }
+
+    /**
+     * Encode a response into a cache value in this format, unless the response is longer than a maximum length.
+     * <p>
+     * The length of a response is the length of its JSON before compression, in characters for {@link #STRING} and in
+     * bytes for the byte formats, so that the limit means the same thing whichever format is configured.
+     *
+     * @param json  The response to encode
+     * @param writer  The writer used to serialize the response
+     * @param maxLength  The maximum length of a response to encode
+     *
+     * @return the cache value, a String or a byte array, or null if the response is longer than the maximum length
+     *
+     * @throws IOException if the response cannot be serialized
+     */
+    public Serializable encode(JsonNode json, ObjectWriter writer, long maxLength) throws IOException {
+        if (this == STRING) {
+            String value = writer.writeValueAsString(json);
+            return value.length() <= maxLength ? value : null;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(header);
+        long length;
+        if (this == COMPRESSED_BYTES) {
+            // Favor speed, cache values are compressed and decompressed on the request path
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try (CountingOutputStream out = new CountingOutputStream(new DeflaterOutputStream(bytes, deflater))) {
+                writer.writeValue(out, json);
+                length = out.getCount();
+            } finally {
+                deflater.end();
+            }
+        } else {
+            writer.writeValue(bytes, json);
+            length = bytes.size() - 1;
+        }
+        return length <= maxLength ? bytes.toByteArray() : null;
+    }
+
+    /**
+     * Get the size of an encoded cache value, in characters for Strings and in bytes for byte arrays.
+     * <p>
+     * The size of a value paired with a query checksum includes the length of the checksum.
+     *
+     * @param value  The encoded cache value
+     *
+     * @return the size of the value
+     */
+    public static long sizeOf(Serializable value) {
+        if (value instanceof HashDataCache.Pair) {
+            HashDataCache.Pair<?, ?> pair = (HashDataCache.Pair<?, ?>) value;
+            return pair.getKey().toString().length() + sizeOf((Serializable) pair.getValue());
+        }
+        return value instanceof byte[] ? ((byte[]) value).length : value.toString().length();
+    }
+
+    /**
+     * Pair an encoded cache value with the checksum of the query it answers, so that reads can detect cache key
+     * collisions.
+     *
+     * @param value  The encoded cache value
+     * @param queryChecksum  The checksum of the query, or null to store the value alone
+     *
+     * @return the value to store in the cache
+     */
+    public static Serializable withQueryChecksum(Serializable value, String queryChecksum) {
+        return queryChecksum == null ? value : new HashDataCache.Pair<>(queryChecksum, value);
+    }
+
+    /**
+     * Get the encoded value of a cache value, if it answers the query with the given checksum.
+     *
+     * @param value  The cache value
+     * @param queryChecksum  The checksum of the query, or null if the query has none
+     *
+     * @return the encoded value, or null if the cache value was stored for a different query
+     */
+    public static Serializable verifyQueryChecksum(Serializable value, String queryChecksum) {
+        if (!(value instanceof HashDataCache.Pair)) {
+            return queryChecksum == null ? value : null;
+        }
+        HashDataCache.Pair<?, ?> pair = (HashDataCache.Pair<?, ?>) value;
+        if (queryChecksum == null || !queryChecksum.equals(pair.getKey())) {
+            return null;
+        }
+        return (Serializable) pair.getValue();
+    }
+
+    /**
+     * Create a parser reading the response from a cache value in any of the formats.
+     * <p>
+     * Byte values are parsed directly from the cached bytes (decompressing as the parser reads them), without
+     * materializing an intermediate copy of the response.
+     *
+     * @param value  The cache value, a String or a byte array
+     * @param jsonFactory  The factory for the parser, which should provide an object codec
+     *
+     * @return a parser over the response
+     *
+     * @throws IOException if the value is not a cached response
+     */
+    public static JsonParser parse(Serializable value, JsonFactory jsonFactory) throws IOException {
+        if (value instanceof String) {
+            return jsonFactory.createParser((String) value);
+        }
+        if (!(value instanceof byte[]) || ((byte[]) value).length == 0) {
+            throw new IOException(
+                    "Unexpected cached response value type: " + (value == null ? null : value.getClass())
+            );
+        }
+
+        byte[] bytes = (byte[]) value;
+        if (bytes[0] == BYTES.header) {
+            return jsonFactory.createParser(bytes, 1, bytes.length - 1);
+        }
+        if (bytes[0] == COMPRESSED_BYTES.header) {
+            return jsonFactory.createParser(
+                    new InflaterInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1))
+            );
+        }
+        throw new IOException("Unknown cached response format header: " + bytes[0]);
+    }
+}
@@ -0,0 +1,119 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.cache;
+
+import com.yahoo.bard.webservice.application.MetricRegistryFactory;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * TupleDataCache which keeps recently used entries of a remote cache, such as memcached, in an in-process local cache.
+ * <p>
+ * Entries are read from the local cache first, and the remote cache is only consulted on a local miss. Entries whose
+ * metadata does not match the metadata expected by the caller, such as an outdated segment set id, are not served from
+ * the local cache, so that a fresher entry in the remote cache is found.
+ *
+ * @param <M>  The metadata type of the cache.
+ * @param <V>  The raw data type of the cache.
+ */
+public class TieredTupleDataCache<M extends Serializable, V extends Serializable>
+        implements TupleDataCache<String, M, V> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TieredTupleDataCache.class);
+    private static final MetricRegistry REGISTRY = MetricRegistryFactory.getRegistry();
+    public static final Meter LOCAL_CACHE_HITS = REGISTRY.meter("queries.meter.cache.local.hits");
+    public static final Meter LOCAL_CACHE_MISSES = REGISTRY.meter("queries.meter.cache.local.misses");
+
+    private final DataCache<DataEntry<String, M, V>> localCache;
+    private final TupleDataCache<String, M, V> remoteCache;
+
+    /**
+     * Constructor.
+     *
+     * @param localCache  The in-process cache, keyed by the unhashed key
+     * @param remoteCache  The cache backing the local cache
+     */
+    public TieredTupleDataCache(
+            DataCache<DataEntry<String, M, V>> localCache,
+            TupleDataCache<String, M, V> remoteCache
+    ) {
+        this.localCache = localCache;
+        this.remoteCache = remoteCache;
+    }
+
+    @Override
+    public DataEntry<String, M, V> get(String key) {
+        DataEntry<String, M, V> entry = localCache.get(key);
+        if (entry != null) {
+            LOCAL_CACHE_HITS.mark();
+            return entry;
+        }
+        LOCAL_CACHE_MISSES.mark();
+        return promote(key, remoteCache.get(key));
+    }
+
+    @Override
+    public DataEntry<String, M, V> get(String key, M expectedMeta) {
+        DataEntry<String, M, V> entry = localCache.get(key);
+        if (entry != null && Objects.equals(entry.getMeta(), expectedMeta)) {
+            LOCAL_CACHE_HITS.mark();
+            return entry;
+        }
+        LOCAL_CACHE_MISSES.mark();
+
+        DataEntry<String, M, V> remoteEntry = remoteCache.get(key);
+        return remoteEntry != null && Objects.equals(remoteEntry.getMeta(), expectedMeta) ?
+                promote(key, remoteEntry) :
+                remoteEntry;
+    }
+
+    @Override
+    public V getDataValue(String key) {
+        DataEntry<String, M, V> entry = get(key);
+        return entry == null ? null : entry.getValue();
+    }
+
+    @Override
+    public boolean set(String key, M meta, V value) {
+        return set(key, new MemTupleDataCache.DataEntry<>(key, meta, value));
+    }
+
+    @Override
+    public boolean set(String key, DataEntry<String, M, V> value) {
+        localCache.set(key, value);
+        return remoteCache.set(key, value.getMeta(), value.getValue());
+    }
+
+    @Override
+    public void clear() {
+        localCache.clear();
+        remoteCache.clear();
+    }
+
+    /**
+     * Copy an entry found in the remote cache into the local cache.
+     *
+     * @param key  The key of the entry
+     * @param entry  The entry found in the remote cache, if any
+     *
+     * @return the entry
+     */
+    private DataEntry<String, M, V> promote(String key, DataEntry<String, M, V> entry) {
+        // The remote cache may have returned an entry stored under a colliding hash
+        if (entry != null && Objects.equals(entry.getKey(), key)) {
+            try {
+                localCache.set(key, entry);
+            } catch (RuntimeException e) {
+                LOG.warn("Unable to copy cache entry into the local cache: {}", e.toString());
+            }
+        }
+        return entry;
+    }
+}
@@ -0,0 +1,312 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.cache;
+
+import com.yahoo.bard.webservice.application.MetricRegistryFactory;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * A bounded, in-process DataCache which evicts by weight, using a W-TinyLFU style admission policy.
+ * <p>
+ * New entries enter a small LRU window. Entries leaving the window are only admitted into the main LRU region if they
+ * have been requested more often than the entries they would evict, as estimated by a count-min sketch of recent key
+ * frequencies. This keeps one-off queries from flushing entries that are requested over and over.
+ *
+ * @param <T> The value type being stored
+ */
+public class TinyLfuDataCache<T extends Serializable> implements DataCache<T> {
+
+    private static final MetricRegistry REGISTRY = MetricRegistryFactory.getRegistry();
+    public static final Meter LOCAL_CACHE_EVICTIONS = REGISTRY.meter("queries.meter.cache.local.evictions");
+
+    /**
+     * Percentage of the maximum weight given to the admission window.
+     */
+    private static final int WINDOW_PERCENT = 1;
+
+    private final long maxWeight;
+    private final long maxWindowWeight;
+    private final ToLongFunction<? super T> weigher;
+    private final Meter evictions;
+
+    private final LinkedHashMap<String, Node<T>> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Node<T>> main = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+
+    private long windowWeight = 0;
+    private long mainWeight = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param maxWeight  The maximum total weight of the entries in the cache
+     * @param expectedEntries  The expected number of entries in the cache, used to size the frequency sketch
+     * @param weigher  Function giving the weight of a value, usually its size in bytes
+     */
+    public TinyLfuDataCache(long maxWeight, int expectedEntries, ToLongFunction<? super T> weigher) {
+        this(maxWeight, expectedEntries, weigher, LOCAL_CACHE_EVICTIONS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxWeight  The maximum total weight of the entries in the cache
+     * @param expectedEntries  The expected number of entries in the cache, used to size the frequency sketch
+     * @param weigher  Function giving the weight of a value, usually its size in bytes
+     * @param evictions  The meter to mark for each evicted or rejected entry
+     */
+    public TinyLfuDataCache(
+            long maxWeight,
+            int expectedEntries,
+            ToLongFunction<? super T> weigher,
+            Meter evictions
+    ) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("Maximum cache weight must be positive: " + maxWeight);
+        }
+        this.maxWeight = maxWeight;
+        this.maxWindowWeight = Math.max(1, maxWeight * WINDOW_PERCENT / 100);
+        this.weigher = weigher;
+        this.evictions = evictions;
+        this.sketch = new FrequencySketch(expectedEntries);
+    }
+
+    @Override
+    public synchronized T get(String key) {
+        sketch.increment(key);
+        Node<T> node = window.get(key);
+        if (node == null) {
+            node = main.get(key);
+        }
+        return node == null ? null : node.value;
+    }
+
+    /**
+     * Put a value on a key in the cache.
+     * <p>
+     * The value is not stored if it weighs more than the main region of the cache can hold.
+     *
+     * @param key  the key under which this object should be added.
+     * @param value  the object to store
+     *
+     * @return true if the value was stored, false if it was too heavy to store
+     */
+    @Override
+    public synchronized boolean set(String key, T value) {
+        remove(key);
+
+        long weight = weigher.applyAsLong(value) + key.length();
+        if (weight > maxWeight - maxWindowWeight) {
+            return false;
+        }
+
+        sketch.increment(key);
+        window.put(key, new Node<>(value, weight));
+        windowWeight += weight;
+        evict();
+        return true;
+    }
+
+    @Override
+    public synchronized void clear() {
+        window.clear();
+        main.clear();
+        windowWeight = 0;
+        mainWeight = 0;
+    }
+
+    /**
+     * Get the total weight of the entries in the cache.
+     *
+     * @return the weight of the cache
+     */
+    public synchronized long getWeight() {
+        return windowWeight + mainWeight;
+    }
+
+    /**
+     * Remove the entry for a key from whichever region holds it.
+     *
+     * @param key  The key to remove
+     */
+    private void remove(String key) {
+        Node<T> node = window.remove(key);
+        if (node != null) {
+            windowWeight -= node.weight;
+        }
+        node = main.remove(key);
+        if (node != null) {
+            mainWeight -= node.weight;
+        }
+    }
+
+    /**
+     * Move entries from the window into the main region until the window fits, evicting the less frequently used of
+     * each candidate and the main region's least recently used entries.
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Node<T>>> windowEntries = window.entrySet().iterator();
+        while (windowWeight > maxWindowWeight && windowEntries.hasNext()) {
+            Map.Entry<String, Node<T>> candidate = windowEntries.next();
+            windowEntries.remove();
+            windowWeight -= candidate.getValue().weight;
+
+            if (admit(candidate.getKey(), candidate.getValue().weight)) {
+                main.put(candidate.getKey(), candidate.getValue());
+                mainWeight += candidate.getValue().weight;
+            } else {
+                evictions.mark();
+            }
+        }
+    }
+
+    /**
+     * Decide whether an entry leaving the window enters the main region, evicting main region entries to make room.
+     * <p>
+     * The candidate is compared against every entry it would evict before any is evicted, so a rejected candidate
+     * leaves the main region as it was.
+     *
+     * @param key  The key of the candidate entry
+     * @param weight  The weight of the candidate entry
+     *
+     * @return true if the candidate should be added to the main region
+     */
+    private boolean admit(String key, long weight) {
+        int candidateFrequency = sketch.frequency(key);
+        List<String> victims = new ArrayList<>();
+        long freed = 0;
+        Iterator<Map.Entry<String, Node<T>>> entries = main.entrySet().iterator();
+        while (mainWeight - freed + weight > maxWeight - maxWindowWeight && entries.hasNext()) {
+            Map.Entry<String, Node<T>> victim = entries.next();
+            if (sketch.frequency(victim.getKey()) >= candidateFrequency) {
+                return false;
+            }
+            victims.add(victim.getKey());
+            freed += victim.getValue().weight;
+        }
+
+        for (String victim : victims) {
+            mainWeight -= main.remove(victim).weight;
+            evictions.mark();
+        }
+        return true;
+    }
+
+    /**
+     * A cached value and its weight.
+     *
+     * @param <T> The value type being stored
+     */
+    private static class Node<T> {
+        private final T value;
+        private final long weight;
+
+        /**
+         * Constructor.
+         *
+         * @param value  The cached value
+         * @param weight  The weight of the value and its key
+         */
+        Node(T value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * A count-min sketch of 4 bit counters estimating how often keys have been seen recently.
+     * <p>
+     * Counters are halved once enough keys have been counted, so that the estimates favor recent history.
+     */
+    private static class FrequencySketch {
+        private static final int DEPTH = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+        private final byte[][] counters;
+        private final int mask;
+        private final int sampleSize;
+        private int samples = 0;
+
+        /**
+         * Constructor.
+         *
+         * @param expectedEntries  The expected number of distinct keys to track
+         */
+        FrequencySketch(int expectedEntries) {
+            int width = Integer.highestOneBit(Math.max(64, Math.min(expectedEntries, 1 << 24)) - 1) << 1;
+            this.counters = new byte[DEPTH][width];
+            this.mask = width - 1;
+            this.sampleSize = 10 * width;
+        }
+
+        /**
+         * Count an occurrence of a key.
+         *
+         * @param key  The key seen
+         */
+        void increment(String key) {
+            int hash = key.hashCode();
+            for (int i = 0; i < DEPTH; i++) {
+                int index = index(hash, i);
+                if (counters[i][index] < MAX_COUNT) {
+                    counters[i][index]++;
+                }
+            }
+            if (++samples >= sampleSize) {
+                age();
+            }
+        }
+
+        /**
+         * Estimate how often a key has been seen.
+         *
+         * @param key  The key to estimate
+         *
+         * @return the estimated recent frequency of the key
+         */
+        int frequency(String key) {
+            int hash = key.hashCode();
+            int frequency = MAX_COUNT;
+            for (int i = 0; i < DEPTH; i++) {
+                frequency = Math.min(frequency, counters[i][index(hash, i)]);
+            }
+            return frequency;
+        }
+
+        /**
+         * Halve all counters.
+         */
+        private void age() {
+            for (byte[] row : counters) {
+                for (int j = 0; j < row.length; j++) {
+                    row[j] >>= 1;
+                }
+            }
+            samples /= 2;
+        }
+
+        /**
+         * Get the counter index of a key hash in a row of the sketch.
+         *
+         * @param hash  The hash of the key
+         * @param row  The row of the sketch
+         *
+         * @return the index of the key's counter in the row
+         */
+        private int index(int hash, int row) {
+            int h = hash * SEEDS[row];
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+}
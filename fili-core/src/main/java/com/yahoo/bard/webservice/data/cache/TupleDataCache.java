@@ -25,6 +25,22 @@ public interface TupleDataCache<K, M extends Serializable, V extends Serializabl
     @Override
     DataEntry<K, M, V> get(String key);
 
+    /**
+     * Retrieve the complete data entry from the cache, when the caller expects the entry to have certain metadata.
+     * <p>
+     * Caches made of several tiers can use the expected metadata to skip outdated entries in their faster tiers. The
+     * returned entry may still have different metadata, so callers must check it.
+     *
+     * @param key  The key associated with data entry to be retrieved
+     * @param expectedMeta  The metadata of an up to date entry
+     *
+     * @return The complete data entry containing metadata and raw data, or {@code null} if the cache contains no
+     * mapping for the key
+     */
+    default DataEntry<K, M, V> get(String key, M expectedMeta) {
+        return get(key);
+    }
+
     /**
      * Read the raw data from cache.
      *
@@ -0,0 +1,146 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.dimension;
+
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Loads a stream of dimension rows into a dimension in bounded batches.
+ * <p>
+ * Rows are collected into batches of at most {@code dimension_load_batch_size} rows, and each batch is added to the
+ * dimension with {@link Dimension#addAllDimensionRows(Set)} on a loader thread, while the next batch is collected. At
+ * most one batch is being added at a time, so batches are added in order, and the rows held in memory never exceed two
+ * batches however many rows are loaded.
+ * <p>
+ * A failure to add a batch is thrown by the next call to {@link #accept(DimensionRow)} or {@link #close()}. Batches
+ * added before the failure stay added.
+ */
+public class DimensionRowBatchLoader implements Consumer<DimensionRow>, AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(DimensionRowBatchLoader.class);
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
+
+    /**
+     * The default number of rows in a batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = SYSTEM_CONFIG.getIntProperty(
+            SYSTEM_CONFIG.getPackageVariableName("dimension_load_batch_size"),
+            10000
+    );
+
+    // Adds batches to dimensions, on daemon threads so that a load never keeps the JVM alive
+    private static final ExecutorService LOADER_EXECUTOR = Executors.newCachedThreadPool(
+            runnable -> {
+                Thread thread = new Thread(runnable, "dimension-row-loader");
+                thread.setDaemon(true);
+                return thread;
+            }
+    );
+
+    private final Dimension dimension;
+    private final int batchSize;
+
+    private Set<DimensionRow> batch;
+    private CompletableFuture<Void> pendingBatch;
+    private long loadedRows;
+
+    /**
+     * Constructor, with the configured batch size.
+     *
+     * @param dimension  The dimension to load rows into
+     */
+    public DimensionRowBatchLoader(Dimension dimension) {
+        this(dimension, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param dimension  The dimension to load rows into
+     * @param batchSize  The maximum number of rows in a batch
+     */
+    public DimensionRowBatchLoader(Dimension dimension, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.dimension = dimension;
+        this.batchSize = batchSize;
+        this.batch = new LinkedHashSet<>();
+    }
+
+    /**
+     * Add a row to the current batch, starting to add the batch to the dimension once it is full.
+     *
+     * @param dimensionRow  The row to load
+     */
+    @Override
+    public void accept(DimensionRow dimensionRow) {
+        batch.add(dimensionRow);
+        if (batch.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Add the rows accepted so far to the dimension, waiting until they have all been added.
+     */
+    @Override
+    public void close() {
+        if (!batch.isEmpty()) {
+            flush();
+        }
+        awaitPendingBatch();
+        LOG.debug("Loaded {} rows into dimension {}", loadedRows, dimension.getApiName());
+    }
+
+    /**
+     * Get the number of rows added to the dimension so far.
+     *
+     * @return the number of rows in the batches which have been added
+     */
+    public long getLoadedRows() {
+        return loadedRows;
+    }
+
+    /**
+     * Start adding the current batch to the dimension, once the previous batch has been added.
+     */
+    private void flush() {
+        Set<DimensionRow> fullBatch = batch;
+        batch = new LinkedHashSet<>();
+        awaitPendingBatch();
+        pendingBatch = CompletableFuture.runAsync(() -> dimension.addAllDimensionRows(fullBatch), LOADER_EXECUTOR)
+                .thenRun(() -> loadedRows += fullBatch.size());
+    }
+
+    /**
+     * Wait for the batch being added to the dimension, if there is one, throwing its failure if it failed.
+     */
+    private void awaitPendingBatch() {
+        if (pendingBatch == null) {
+            return;
+        }
+        try {
+            pendingBatch.join();
+        } catch (CompletionException e) {
+            LOG.error("Failed to load dimension rows into dimension {}", dimension.getApiName(), e.getCause());
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        } finally {
+            pendingBatch = null;
+        }
+    }
+}
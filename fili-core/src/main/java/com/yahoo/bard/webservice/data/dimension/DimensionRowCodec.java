@@ -0,0 +1,169 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.dimension;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact encoding of dimension rows for a KeyValueStore, which decodes without parsing JSON.
+ * <p>
+ * An encoded row is a marker character followed by the non empty values of the row, each as the ordinal of its field,
+ * the length of the value and the value. Ordinals and lengths are variable length integers of 7 bits per character, so
+ * an encoded row is valid UTF-8 whatever store holds it.
+ * <p>
+ * The ordinal of a field is its position in a list of field names kept by the dimension, which is only ever appended
+ * to, so that rows encoded before fields were added to or removed from the dimension still decode.
+ */
+public class DimensionRowCodec {
+
+    /**
+     * The first character of an encoded row, which can't start a JSON row.
+     */
+    public static final char FORMAT_MARKER = '\u0001';
+
+    private static final String MISSING_ROW_KEY_FORMAT = "Dimension row '%s' doesn't contain expected key '%s'";
+    private static final String MALFORMED_ROW_FORMAT = "Malformed encoded dimension row '%s'";
+
+    private final DimensionField key;
+    private final List<DimensionField> fields;
+    private final Map<DimensionField, Integer> fieldOrdinals;
+    private final DimensionField[] ordinalFields;
+
+    /**
+     * Constructor.
+     *
+     * @param key  The key field of the dimension
+     * @param fields  The fields of the dimension, in order
+     * @param fieldNames  The field names by ordinal, which must include the name of every field
+     */
+    public DimensionRowCodec(DimensionField key, List<DimensionField> fields, List<String> fieldNames) {
+        this.key = key;
+        this.fields = fields;
+        this.fieldOrdinals = new HashMap<>();
+        this.ordinalFields = new DimensionField[fieldNames.size()];
+        for (DimensionField field : fields) {
+            int ordinal = fieldNames.indexOf(field.getName());
+            if (ordinal < 0) {
+                throw new IllegalArgumentException("No ordinal for dimension field " + field.getName());
+            }
+            fieldOrdinals.put(field, ordinal);
+            ordinalFields[ordinal] = field;
+        }
+    }
+
+    /**
+     * Whether a stored row is encoded by this codec, rather than stored as JSON.
+     *
+     * @param storedRow  The stored row
+     *
+     * @return true if the row is encoded
+     */
+    public static boolean isEncoded(String storedRow) {
+        return !storedRow.isEmpty() && storedRow.charAt(0) == FORMAT_MARKER;
+    }
+
+    /**
+     * Encode a dimension row.
+     * <p>
+     * Values of fields the dimension doesn't have are dropped.
+     *
+     * @param row  The row to encode
+     *
+     * @return the encoded row
+     */
+    public String encode(DimensionRow row) {
+        StringBuilder builder = new StringBuilder(64);
+        builder.append(FORMAT_MARKER);
+        for (Map.Entry<DimensionField, String> entry : row.entrySet()) {
+            Integer ordinal = fieldOrdinals.get(entry.getKey());
+            String value = entry.getValue();
+            if (ordinal == null || value == null || value.isEmpty()) {
+                continue;
+            }
+            appendVarInt(builder, ordinal);
+            appendVarInt(builder, value.length());
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Decode a dimension row.
+     * <p>
+     * Fields without a value get the empty string, like rows parsed by the dimension.
+     *
+     * @param encodedRow  The encoded row
+     *
+     * @return the dimension row
+     *
+     * @throws IllegalArgumentException if the row is malformed or has no key value
+     */
+    public DimensionRow decode(String encodedRow) {
+        if (!isEncoded(encodedRow)) {
+            throw new IllegalArgumentException(String.format(MALFORMED_ROW_FORMAT, encodedRow));
+        }
+        Map<DimensionField, String> values = new HashMap<>();
+        int position = 1;
+        int length = encodedRow.length();
+        try {
+            while (position < length) {
+                int ordinal = 0;
+                int shift = 0;
+                char c;
+                do {
+                    c = encodedRow.charAt(position++);
+                    ordinal |= (c & 0x7F) << shift;
+                    shift += 7;
+                } while ((c & 0x80) != 0);
+
+                int valueLength = 0;
+                shift = 0;
+                do {
+                    c = encodedRow.charAt(position++);
+                    valueLength |= (c & 0x7F) << shift;
+                    shift += 7;
+                } while ((c & 0x80) != 0);
+
+                if (ordinal < ordinalFields.length && ordinalFields[ordinal] != null) {
+                    values.put(ordinalFields[ordinal], encodedRow.substring(position, position + valueLength));
+                }
+                position += valueLength;
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException(String.format(MALFORMED_ROW_FORMAT, encodedRow), e);
+        }
+        if (position != length) {
+            throw new IllegalArgumentException(String.format(MALFORMED_ROW_FORMAT, encodedRow));
+        }
+
+        LinkedHashMap<DimensionField, String> fieldValues = new LinkedHashMap<>(fields.size());
+        for (DimensionField field : fields) {
+            String value = values.get(field);
+            if (value == null) {
+                if (field == key) {
+                    throw new IllegalArgumentException(String.format(MISSING_ROW_KEY_FORMAT, values, key.getName()));
+                }
+                value = "";
+            }
+            fieldValues.put(field, value);
+        }
+        return new DimensionRow(key, fieldValues);
+    }
+
+    /**
+     * Append a non negative integer, 7 bits per character, least significant bits first.
+     *
+     * @param builder  The builder to append to
+     * @param value  The integer
+     */
+    private static void appendVarInt(StringBuilder builder, int value) {
+        while (value >= 0x80) {
+            builder.append((char) (0x80 | (value & 0x7F)));
+            value >>>= 7;
+        }
+        builder.append((char) value);
+    }
+}
@@ -3,6 +3,8 @@
 package com.yahoo.bard.webservice.data.dimension;
 
 import java.io.Closeable;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 
 import javax.validation.constraints.NotNull;
@@ -47,6 +49,23 @@ public interface KeyValueStore extends Closeable {
      */
     String get(@NotNull String key);
 
+    /**
+     * Get the values of multiple keys.
+     * <p>
+     * The default implementation gets one key at a time. Stores which can read many keys at once should override it.
+     *
+     * @param keys  Keys to get
+     *
+     * @return The values of the keys, with a null value for each key which is not set
+     */
+    default Map<String, String> getAll(@NotNull Collection<String> keys) {
+        Map<String, String> values = new HashMap<>(keys.size());
+        for (String key : keys) {
+            values.put(key, get(key));
+        }
+        return values;
+    }
+
     /**
      * Get the health status of the store.
      *
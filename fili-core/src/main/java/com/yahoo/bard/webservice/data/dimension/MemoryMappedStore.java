@@ -0,0 +1,873 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.dimension;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * A KeyValueStore backed by memory mapped files, which keeps its entries off the heap and across restarts.
+ * <p>
+ * Entries are appended to a data file as UTF-8 records, and found through an open addressing hash table kept in an
+ * index file. Both files are mapped in fixed size segments, so they can grow beyond 2GB and only the pages in use are
+ * held in memory, by the operating system rather than the garbage collector. Removals append a tombstone record, so
+ * the index can always be rebuilt from the data file, which is done on open if the store wasn't closed cleanly. Once
+ * more than half of the data file is taken by overwritten and removed entries, it is compacted.
+ * <p>
+ * Reads may run concurrently with each other, writes are exclusive.
+ */
+public class MemoryMappedStore implements KeyValueStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MemoryMappedStore.class);
+
+    private static final int MAGIC = 0x46494C49;
+    private static final int FORMAT_VERSION = 1;
+
+    // Layout of the index file header, followed by the slots of the hash table
+    private static final int MAGIC_POSITION = 0;
+    private static final int VERSION_POSITION = 4;
+    private static final int CLEAN_POSITION = 8;
+    private static final int SEGMENT_BYTES_POSITION = 12;
+    private static final int CAPACITY_POSITION = 16;
+    private static final int SIZE_POSITION = 24;
+    private static final int DELETED_POSITION = 32;
+    private static final int DATA_END_POSITION = 40;
+    private static final int DEAD_BYTES_POSITION = 48;
+    private static final int HEADER_BYTES = 64;
+
+    // A slot holds the data file address of a record plus one, or one of the markers below, and the hash of its key
+    private static final int SLOT_BYTES = 16;
+    private static final long EMPTY = 0;
+    private static final long DELETED = -1;
+
+    // A record is the key length plus one, the value length or -1 for a removal, the key and the value, 8 byte aligned
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int RECORD_ALIGNMENT = 8;
+    private static final int TOMBSTONE = -1;
+
+    private final Path directory;
+    private final String storeName;
+    private final int segmentBytes;
+    private final long initialCapacity;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private MappedRegion data;
+    private MappedRegion index;
+    private long capacity;
+    private long size;
+    private long deleted;
+    private long dataEnd;
+    private long deadBytes;
+    private volatile boolean open;
+
+    /**
+     * Constructor.
+     * <p>
+     * The store is not opened until {@link #open()} is called.
+     *
+     * @param directory  The directory holding the files of the store
+     * @param storeName  The name of the store, used to name its files
+     * @param segmentBytes  The size of each mapped segment of the files, a multiple of 64 bytes which bounds the size
+     * of an entry
+     * @param initialCapacity  The number of slots of a new index, a power of two
+     */
+    public MemoryMappedStore(Path directory, String storeName, int segmentBytes, long initialCapacity) {
+        this.directory = directory;
+        this.storeName = storeName;
+        this.segmentBytes = segmentBytes;
+        this.initialCapacity = initialCapacity;
+    }
+
+    @Override
+    public void open() {
+        lock.writeLock().lock();
+        try {
+            if (open) {
+                return;
+            }
+            if (segmentBytes < HEADER_BYTES || segmentBytes % HEADER_BYTES != 0) {
+                throw new IllegalArgumentException("Segment size must be a multiple of " + HEADER_BYTES + " bytes");
+            }
+            if (Long.bitCount(initialCapacity) != 1) {
+                throw new IllegalArgumentException("Initial capacity must be a power of two");
+            }
+            Files.createDirectories(directory);
+            data = new MappedRegion(getDataPath(), segmentBytes);
+            data.ensureMapped(data.size());
+            if (!loadIndex()) {
+                LOG.info("Rebuilding the index of store {} from its data file", storeName);
+                rebuildIndex();
+            }
+            // Until the store is closed, a restart has to rebuild the index
+            writeHeader(false);
+            index.force();
+            open = true;
+        } catch (IOException e) {
+            closeRegions();
+            throw new IllegalStateException("Unable to open store " + storeName, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (!open) {
+                return;
+            }
+            open = false;
+            data.force();
+            writeHeader(true);
+            index.force();
+        } finally {
+            closeRegions();
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public String remove(@NotNull String key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Cannot remove null key");
+        }
+
+        return put(key, null);
+    }
+
+    @Override
+    public String get(@NotNull String key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Cannot get null key");
+        }
+
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            long slot = findSlot(key.getBytes(StandardCharsets.UTF_8), hash(key));
+            return slot < 0 ? null : readValue(index.getLong(slot) - 1);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isHealthy() {
+        lock.readLock().lock();
+        try {
+            return open && data.isOpen() && index.isOpen();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String put(@NotNull String key, String value) {
+        if (key == null) {
+            throw new IllegalArgumentException("Cannot set null key");
+        }
+
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            int hash = hash(key);
+            long slot = findSlot(keyBytes, hash);
+            long previousAddress = slot < 0 ? -1 : index.getLong(slot) - 1;
+            String previous = slot < 0 ? null : readValue(previousAddress);
+
+            if (value == null) {
+                if (slot >= 0) {
+                    long tombstone = append(keyBytes, null);
+                    index.putLong(slot, DELETED);
+                    size--;
+                    deleted++;
+                    deadBytes += recordBytes(previousAddress) + recordBytes(tombstone);
+                }
+            } else {
+                long address = append(keyBytes, value.getBytes(StandardCharsets.UTF_8));
+                if (slot >= 0) {
+                    index.putLong(slot, address + 1);
+                    deadBytes += recordBytes(previousAddress);
+                } else {
+                    insert(hash, address);
+                }
+            }
+
+            if (deadBytes > segmentBytes / 4 && deadBytes > dataEnd - deadBytes) {
+                compact();
+            }
+            return previous;
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to write to store " + storeName, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<String, String> putAll(@NotNull Map<String, String> entries) {
+        if (entries == null) {
+            throw new IllegalArgumentException("Cannot set null entries");
+        }
+
+        Map<String, String> oldValues = new HashMap<>(entries.size());
+        lock.writeLock().lock();
+        try {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                oldValues.put(entry.getKey(), put(entry.getKey(), entry.getValue()));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return oldValues;
+    }
+
+    /**
+     * Get the number of entries in the store.
+     *
+     * @return the number of keys with a value
+     */
+    public long getSize() {
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrite the data file with only the current entries, and rebuild the index over it.
+     */
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            LOG.debug("Compacting store {}, {} of {} data bytes are dead", storeName, deadBytes, dataEnd);
+            Path compactedDataPath = directory.resolve(storeName + ".data.compacting");
+            Files.deleteIfExists(compactedDataPath);
+            MappedRegion compactedData = new MappedRegion(compactedDataPath, segmentBytes);
+            MappedRegion oldData = data;
+            MappedRegion oldIndex = index;
+            long oldCapacity = capacity;
+            long compactedEnd = 0;
+
+            createIndex(capacityFor(size));
+            for (long i = 0; i < oldCapacity; i++) {
+                long slot = slotPosition(i);
+                long address = oldIndex.getLong(slot);
+                if (address == EMPTY || address == DELETED) {
+                    continue;
+                }
+                int length = recordBytes(oldData, address - 1);
+                long position = alignToSegment(compactedEnd, length);
+                compactedData.ensureMapped(position + length);
+                compactedData.putBytes(position, oldData.getBytes(address - 1, length));
+                insert(oldIndex.getInt(slot + 8), position);
+                compactedEnd = position + length;
+            }
+            compactedData.force();
+            oldData.close();
+            oldIndex.close();
+            Files.move(compactedDataPath, getDataPath(), StandardCopyOption.REPLACE_EXISTING);
+
+            data = compactedData;
+            dataEnd = compactedEnd;
+            deadBytes = 0;
+        } catch (IOException e) {
+            closeRegions();
+            open = false;
+            throw new IllegalStateException("Unable to compact store " + storeName, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Get the path of the data file.
+     *
+     * @return the data file path
+     */
+    private Path getDataPath() {
+        return directory.resolve(storeName + ".data");
+    }
+
+    /**
+     * Get the path of the index file.
+     *
+     * @return the index file path
+     */
+    private Path getIndexPath() {
+        return directory.resolve(storeName + ".index");
+    }
+
+    /**
+     * Throw if the store is not open.
+     */
+    private void checkOpen() {
+        if (!open) {
+            throw new IllegalStateException("Store " + storeName + " is not open");
+        }
+    }
+
+    /**
+     * Hash a key, spreading the bits of its String hash code.
+     *
+     * @param key  The key
+     *
+     * @return the hash of the key
+     */
+    private static int hash(String key) {
+        int hash = key.hashCode() * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Get the position in the index file of a slot.
+     *
+     * @param i  The number of the slot
+     *
+     * @return the position of the slot
+     */
+    private static long slotPosition(long i) {
+        return HEADER_BYTES + i * SLOT_BYTES;
+    }
+
+    /**
+     * Get an index capacity leaving the index at most a quarter full.
+     *
+     * @param entries  The number of entries to index
+     *
+     * @return the capacity, a power of two
+     */
+    private long capacityFor(long entries) {
+        long newCapacity = initialCapacity;
+        while ((entries + 1) * 4 > newCapacity) {
+            newCapacity *= 2;
+        }
+        return newCapacity;
+    }
+
+    /**
+     * Find the slot of a key.
+     *
+     * @param key  The UTF-8 bytes of the key
+     * @param hash  The hash of the key
+     *
+     * @return the position of the slot holding the key, or -1 if the key is not in the store
+     */
+    private long findSlot(byte[] key, int hash) {
+        long mask = capacity - 1;
+        for (long i = hash & mask; ; i = (i + 1) & mask) {
+            long slot = slotPosition(i);
+            long address = index.getLong(slot);
+            if (address == EMPTY) {
+                return -1;
+            }
+            if (address != DELETED && index.getInt(slot + 8) == hash && keyEquals(address - 1, key)) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Add a key missing from the index, growing or cleaning the index first if it is half full.
+     *
+     * @param hash  The hash of the key
+     * @param address  The data file address of the record of the key
+     *
+     * @throws IOException if the index can't be rebuilt
+     */
+    private void insert(int hash, long address) throws IOException {
+        if ((size + deleted + 1) * 2 > capacity) {
+            resizeIndex();
+        }
+        long mask = capacity - 1;
+        for (long i = hash & mask; ; i = (i + 1) & mask) {
+            long slot = slotPosition(i);
+            long current = index.getLong(slot);
+            if (current == EMPTY || current == DELETED) {
+                if (current == DELETED) {
+                    deleted--;
+                }
+                index.putLong(slot, address + 1);
+                index.putInt(slot + 8, hash);
+                size++;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Copy the live slots of the index into a new index sized for them, dropping the slots of removed keys.
+     *
+     * @throws IOException if the new index can't be written
+     */
+    private void resizeIndex() throws IOException {
+        MappedRegion oldIndex = index;
+        long oldCapacity = capacity;
+        createIndex(capacityFor(size));
+        for (long i = 0; i < oldCapacity; i++) {
+            long slot = slotPosition(i);
+            long address = oldIndex.getLong(slot);
+            if (address != EMPTY && address != DELETED) {
+                insert(oldIndex.getInt(slot + 8), address - 1);
+            }
+        }
+        oldIndex.close();
+    }
+
+    /**
+     * Replace the index with an empty index.
+     * <p>
+     * The index is written beside the index file and moved over it, so the index file is always complete.
+     *
+     * @param newCapacity  The number of slots of the index
+     *
+     * @throws IOException if the index can't be written
+     */
+    private void createIndex(long newCapacity) throws IOException {
+        Path newIndexPath = directory.resolve(storeName + ".index.new");
+        Files.deleteIfExists(newIndexPath);
+        MappedRegion newIndex = new MappedRegion(newIndexPath, segmentBytes);
+        newIndex.ensureMapped(slotPosition(newCapacity));
+        Files.move(newIndexPath, getIndexPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        index = newIndex;
+        capacity = newCapacity;
+        size = 0;
+        deleted = 0;
+        writeHeader(false);
+    }
+
+    /**
+     * Load the index file, if it was written by a clean close of a store with the same segment size.
+     *
+     * @return true if the index was loaded
+     *
+     * @throws IOException if the index file can't be read
+     */
+    private boolean loadIndex() throws IOException {
+        if (!Files.exists(getIndexPath())) {
+            return false;
+        }
+        MappedRegion existing = new MappedRegion(getIndexPath(), segmentBytes);
+        if (existing.size() >= HEADER_BYTES) {
+            existing.ensureMapped(HEADER_BYTES);
+            long existingCapacity = existing.getLong(CAPACITY_POSITION);
+            if (
+                    existing.getInt(MAGIC_POSITION) == MAGIC &&
+                    existing.getInt(VERSION_POSITION) == FORMAT_VERSION &&
+                    existing.getInt(CLEAN_POSITION) == 1 &&
+                    existing.getInt(SEGMENT_BYTES_POSITION) == segmentBytes &&
+                    Long.bitCount(existingCapacity) == 1 &&
+                    existing.size() >= slotPosition(existingCapacity)
+            ) {
+                existing.ensureMapped(slotPosition(existingCapacity));
+                index = existing;
+                capacity = existingCapacity;
+                size = existing.getLong(SIZE_POSITION);
+                deleted = existing.getLong(DELETED_POSITION);
+                dataEnd = existing.getLong(DATA_END_POSITION);
+                deadBytes = existing.getLong(DEAD_BYTES_POSITION);
+                return true;
+            }
+        }
+        existing.close();
+        return false;
+    }
+
+    /**
+     * Rebuild the index by replaying the records of the data file.
+     *
+     * @throws IOException if the index can't be written
+     */
+    private void rebuildIndex() throws IOException {
+        createIndex(initialCapacity);
+        deadBytes = 0;
+        long position = 0;
+        long end = data.size();
+        while (position + RECORD_HEADER_BYTES <= end) {
+            int keyLength = data.getInt(position) - 1;
+            if (keyLength < 0) {
+                // Either the end of the data, or the unused end of a segment
+                if (position % segmentBytes == 0) {
+                    break;
+                }
+                position += segmentBytes - position % segmentBytes;
+                continue;
+            }
+            byte[] key = data.getBytes(position + RECORD_HEADER_BYTES, keyLength);
+            int hash = hash(new String(key, StandardCharsets.UTF_8));
+            long slot = findSlot(key, hash);
+            if (slot >= 0) {
+                deadBytes += recordBytes(index.getLong(slot) - 1);
+            }
+            if (data.getInt(position + 4) == TOMBSTONE) {
+                deadBytes += recordBytes(position);
+                if (slot >= 0) {
+                    index.putLong(slot, DELETED);
+                    size--;
+                    deleted++;
+                }
+            } else if (slot >= 0) {
+                index.putLong(slot, position + 1);
+            } else {
+                insert(hash, position);
+            }
+            position += recordBytes(position);
+        }
+        dataEnd = position;
+    }
+
+    /**
+     * Write the counters of the store into the index header.
+     *
+     * @param clean  Whether the index is consistent with the data file, as it is once the store is closed
+     */
+    private void writeHeader(boolean clean) {
+        index.putInt(MAGIC_POSITION, MAGIC);
+        index.putInt(VERSION_POSITION, FORMAT_VERSION);
+        index.putInt(CLEAN_POSITION, clean ? 1 : 0);
+        index.putInt(SEGMENT_BYTES_POSITION, segmentBytes);
+        index.putLong(CAPACITY_POSITION, capacity);
+        index.putLong(SIZE_POSITION, size);
+        index.putLong(DELETED_POSITION, deleted);
+        index.putLong(DATA_END_POSITION, dataEnd);
+        index.putLong(DEAD_BYTES_POSITION, deadBytes);
+    }
+
+    /**
+     * Append a record to the data file.
+     * <p>
+     * The key length is written last, so a record is only seen by a rebuild of the index once it is complete.
+     *
+     * @param key  The UTF-8 bytes of the key
+     * @param value  The UTF-8 bytes of the value, or null for a removal
+     *
+     * @return the data file address of the record
+     *
+     * @throws IOException if the data file can't be grown
+     */
+    private long append(byte[] key, byte[] value) throws IOException {
+        int valueLength = value == null ? 0 : value.length;
+        long length = align((long) RECORD_HEADER_BYTES + key.length + valueLength);
+        if (length > segmentBytes) {
+            throw new IllegalArgumentException(
+                    "Entry of " + length + " bytes is larger than the segment size of store " + storeName
+            );
+        }
+        long position = alignToSegment(dataEnd, (int) length);
+        data.ensureMapped(position + length);
+        data.putBytes(position + RECORD_HEADER_BYTES, key);
+        if (value != null) {
+            data.putBytes(position + RECORD_HEADER_BYTES + key.length, value);
+        }
+        data.putInt(position + 4, value == null ? TOMBSTONE : value.length);
+        data.putInt(position, key.length + 1);
+        deadBytes += position - dataEnd;
+        dataEnd = position + length;
+        return position;
+    }
+
+    /**
+     * Move a position to the start of the next segment if a record of the given length doesn't fit in its segment.
+     *
+     * @param position  The position
+     * @param length  The length of the record
+     *
+     * @return the position to write the record at
+     */
+    private long alignToSegment(long position, int length) {
+        long remaining = segmentBytes - position % segmentBytes;
+        return remaining < length ? position + remaining : position;
+    }
+
+    /**
+     * Round a length up to the record alignment.
+     *
+     * @param length  The length
+     *
+     * @return the aligned length
+     */
+    private static long align(long length) {
+        return (length + RECORD_ALIGNMENT - 1) / RECORD_ALIGNMENT * RECORD_ALIGNMENT;
+    }
+
+    /**
+     * Get the aligned length of a record of the data file.
+     *
+     * @param address  The address of the record
+     *
+     * @return the length of the record
+     */
+    private int recordBytes(long address) {
+        return recordBytes(data, address);
+    }
+
+    /**
+     * Get the aligned length of a record.
+     *
+     * @param region  The data file holding the record
+     * @param address  The address of the record
+     *
+     * @return the length of the record
+     */
+    private static int recordBytes(MappedRegion region, long address) {
+        int keyLength = region.getInt(address) - 1;
+        int valueLength = Math.max(region.getInt(address + 4), 0);
+        return (int) align((long) RECORD_HEADER_BYTES + keyLength + valueLength);
+    }
+
+    /**
+     * Check whether the record at an address has the given key.
+     *
+     * @param address  The address of the record
+     * @param key  The UTF-8 bytes of the key
+     *
+     * @return true if the record has the key
+     */
+    private boolean keyEquals(long address, byte[] key) {
+        if (data.getInt(address) - 1 != key.length) {
+            return false;
+        }
+        ByteBuffer segment = data.segment(address);
+        int offset = data.offset(address) + RECORD_HEADER_BYTES;
+        for (int i = 0; i < key.length; i++) {
+            if (segment.get(offset + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read the value of the record at an address.
+     *
+     * @param address  The address of the record
+     *
+     * @return the value
+     */
+    private String readValue(long address) {
+        int keyLength = data.getInt(address) - 1;
+        int valueLength = data.getInt(address + 4);
+        return new String(
+                data.getBytes(address + RECORD_HEADER_BYTES + keyLength, valueLength),
+                StandardCharsets.UTF_8
+        );
+    }
+
+    /**
+     * Close the files of the store, ignoring failures.
+     */
+    private void closeRegions() {
+        for (MappedRegion region : new MappedRegion[] {data, index}) {
+            if (region != null) {
+                region.close();
+            }
+        }
+        data = null;
+        index = null;
+    }
+
+    /**
+     * A file mapped into memory in segments of a fixed size.
+     * <p>
+     * Values never straddle segments. Segments are only mapped by writers, so readers don't need to synchronize.
+     */
+    private static class MappedRegion {
+        private final FileChannel channel;
+        private final int segmentBytes;
+        private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+        /**
+         * Open a file, creating it if it doesn't exist.
+         *
+         * @param path  The path of the file
+         * @param segmentBytes  The size of each segment
+         *
+         * @throws IOException if the file can't be opened
+         */
+        MappedRegion(Path path, int segmentBytes) throws IOException {
+            this.channel = FileChannel.open(
+                    path,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.READ,
+                    StandardOpenOption.WRITE
+            );
+            this.segmentBytes = segmentBytes;
+        }
+
+        /**
+         * Map the segments up to a position, growing the file if needed.
+         *
+         * @param end  The position
+         *
+         * @throws IOException if the file can't be mapped
+         */
+        void ensureMapped(long end) throws IOException {
+            while ((long) segments.size() * segmentBytes < end) {
+                segments.add(
+                        channel.map(FileChannel.MapMode.READ_WRITE, (long) segments.size() * segmentBytes, segmentBytes)
+                );
+            }
+        }
+
+        /**
+         * Get the size of the file.
+         *
+         * @return the size in bytes
+         *
+         * @throws IOException if the size can't be read
+         */
+        long size() throws IOException {
+            return channel.size();
+        }
+
+        /**
+         * Whether the file is open.
+         *
+         * @return true if the file is open
+         */
+        boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        /**
+         * Get the segment holding a position.
+         *
+         * @param position  The position
+         *
+         * @return the mapped segment
+         */
+        MappedByteBuffer segment(long position) {
+            return segments.get((int) (position / segmentBytes));
+        }
+
+        /**
+         * Get the offset of a position within its segment.
+         *
+         * @param position  The position
+         *
+         * @return the offset in the segment
+         */
+        int offset(long position) {
+            return (int) (position % segmentBytes);
+        }
+
+        /**
+         * Read an int.
+         *
+         * @param position  The position of the int
+         *
+         * @return the int
+         */
+        int getInt(long position) {
+            return segment(position).getInt(offset(position));
+        }
+
+        /**
+         * Write an int.
+         *
+         * @param position  The position of the int
+         * @param value  The int
+         */
+        void putInt(long position, int value) {
+            segment(position).putInt(offset(position), value);
+        }
+
+        /**
+         * Read a long.
+         *
+         * @param position  The position of the long
+         *
+         * @return the long
+         */
+        long getLong(long position) {
+            return segment(position).getLong(offset(position));
+        }
+
+        /**
+         * Write a long.
+         *
+         * @param position  The position of the long
+         * @param value  The long
+         */
+        void putLong(long position, long value) {
+            segment(position).putLong(offset(position), value);
+        }
+
+        /**
+         * Read bytes.
+         *
+         * @param position  The position of the bytes
+         * @param length  The number of bytes
+         *
+         * @return the bytes
+         */
+        byte[] getBytes(long position, int length) {
+            byte[] bytes = new byte[length];
+            ByteBuffer buffer = segment(position).duplicate();
+            buffer.position(offset(position));
+            buffer.get(bytes);
+            return bytes;
+        }
+
+        /**
+         * Write bytes.
+         *
+         * @param position  The position of the bytes
+         * @param bytes  The bytes
+         */
+        void putBytes(long position, byte[] bytes) {
+            ByteBuffer buffer = segment(position).duplicate();
+            buffer.position(offset(position));
+            buffer.put(bytes);
+        }
+
+        /**
+         * Write the changes to the mapped segments to the file.
+         */
+        void force() {
+            segments.forEach(MappedByteBuffer::force);
+        }
+
+        /**
+         * Close the file. The segments are unmapped once they are garbage collected.
+         */
+        void close() {
+            segments.clear();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.warn("Unable to close mapped file", e);
+            }
+        }
+    }
+}
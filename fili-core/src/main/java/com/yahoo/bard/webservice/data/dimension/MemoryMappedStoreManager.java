@@ -0,0 +1,135 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.dimension;
+
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Memory Mapped Store instance manager.
+ * <p>
+ * Stores keep their files in a configured directory, so a store with the same name keeps its entries across restarts.
+ * The directory has no default, since a temporary directory may be cleaned while stores are using it. The files grow
+ * one segment at a time, so small stores stay small.
+ * <p>
+ * The stores are closed when the JVM shuts down, so that their indexes are marked clean and are not rebuilt from the
+ * data files on the next start.
+ */
+public class MemoryMappedStoreManager {
+    private static final Logger LOG = LoggerFactory.getLogger(MemoryMappedStoreManager.class);
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
+
+    private static final String STORE_DIRECTORY_KEY = SYSTEM_CONFIG.getPackageVariableName(
+            "memory_mapped_store_directory"
+    );
+
+    // Directory holding the files of the stores, which must be configured
+    private static final String STORE_DIRECTORY = SYSTEM_CONFIG.getStringProperty(STORE_DIRECTORY_KEY, null);
+
+    // Size of each mapped segment of the store files, by which the files grow, and which bounds the size of an entry
+    private static final int SEGMENT_BYTES = SYSTEM_CONFIG.getIntProperty(
+            SYSTEM_CONFIG.getPackageVariableName("memory_mapped_store_segment_bytes"),
+            16 * 1024 * 1024
+    );
+
+    // Number of slots of the index of a new store
+    private static final long INITIAL_CAPACITY = 1 << 16;
+
+    // Hold singleton instances by name
+    private static final Map<String, MemoryMappedStore> MEMORY_MAPPED_STORES = new HashMap<>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(
+                new Thread(MemoryMappedStoreManager::closeAll, "memory-mapped-store-shutdown")
+        );
+    }
+
+    /**
+     * Factory for singleton instances by name.
+     * <p>
+     * Only a single instance can exist for each name. The instance is opened if it is not open.
+     *
+     * @param storeName Name for the singleton instance
+     *
+     * @return The singleton instance for the given name
+     *
+     * @throws IllegalStateException if the directory of the stores is not configured
+     */
+    public static synchronized MemoryMappedStore getInstance(String storeName) {
+        MemoryMappedStore store = MEMORY_MAPPED_STORES.get(storeName);
+
+        if (store == null) {
+            store = new MemoryMappedStore(getStoreDirectory(), storeName, SEGMENT_BYTES, INITIAL_CAPACITY);
+            MEMORY_MAPPED_STORES.put(storeName, store);
+        }
+        store.open();
+
+        return store;
+    }
+
+    /**
+     * Delete the named singleton instance.
+     * <p>
+     * Also deletes the files of the instance.
+     *
+     * @param storeName Name of the singleton instance to delete
+     */
+    public static synchronized void removeInstance(String storeName) {
+        MemoryMappedStore store = MEMORY_MAPPED_STORES.remove(storeName);
+        if (store != null) {
+            store.close();
+        }
+        if (STORE_DIRECTORY == null) {
+            return;
+        }
+        for (String extension : new String[] {".data", ".index"}) {
+            Path path = Paths.get(STORE_DIRECTORY, storeName + extension);
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                LOG.warn("Unable to delete {}", path, e);
+            }
+        }
+    }
+
+    /**
+     * Close every singleton instance, keeping their files.
+     * <p>
+     * A closed instance is opened again by the next call to {@link #getInstance(String)} for its name.
+     */
+    public static synchronized void closeAll() {
+        for (Map.Entry<String, MemoryMappedStore> entry : MEMORY_MAPPED_STORES.entrySet()) {
+            try {
+                entry.getValue().close();
+            } catch (RuntimeException e) {
+                LOG.warn("Unable to close store {}", entry.getKey(), e);
+            }
+        }
+    }
+
+    /**
+     * Get the configured directory of the stores.
+     *
+     * @return the directory holding the files of the stores
+     *
+     * @throws IllegalStateException if the directory is not configured
+     */
+    private static Path getStoreDirectory() {
+        if (STORE_DIRECTORY == null || STORE_DIRECTORY.isEmpty()) {
+            String message = String.format("%s must be set to use memory mapped stores", STORE_DIRECTORY_KEY);
+            LOG.error(message);
+            throw new IllegalStateException(message);
+        }
+        return Paths.get(STORE_DIRECTORY);
+    }
+}
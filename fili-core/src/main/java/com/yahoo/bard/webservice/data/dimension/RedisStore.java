@@ -7,11 +7,17 @@ import org.slf4j.LoggerFactory;
 
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.exceptions.JedisException;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 import javax.validation.constraints.NotNull;
@@ -105,6 +111,32 @@ public class RedisStore implements KeyValueStore {
         }
     }
 
+    /**
+     * Get the values of multiple keys with a single MGET.
+     *
+     * @param keys  Keys to get
+     *
+     * @return The values of the keys, with a null value for each key which is not set
+     */
+    @Override
+    public Map<String, String> getAll(@NotNull Collection<String> keys) {
+        if (keys == null) {
+            throw new IllegalArgumentException("Cannot get null keys");
+        }
+        if (keys.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        try (Jedis jedis = pool.getResource()) {
+            return mget(jedis, new ArrayList<>(keys));
+        } catch (JedisException e) {
+            redisIsHealthy = false;
+            String msg = "Unable to get keys from Redis";
+            LOG.error(msg);
+            throw new RuntimeException(msg, e);
+        }
+    }
+
     @Override
     public boolean isHealthy() {
         // If we know we're not healthy, don't bother pinging.
@@ -121,39 +153,49 @@ public class RedisStore implements KeyValueStore {
         return putAll(Collections.singletonMap(key, value)).get(key);
     }
 
+    /**
+     * Set multiple key/value pairs, reading the previous values with a single MGET and writing the new values in a
+     * single pipeline.
+     *
+     * @param entries  Map of key/value pairs to put
+     *
+     * @return The previous values for the keys
+     */
     @Override
     public Map<String, String> putAll(@NotNull Map<String, String> entries) {
         if (entries == null) {
             throw new IllegalArgumentException("Cannot set null entries");
         }
+        if (entries.keySet().stream().anyMatch(Objects::isNull)) {
+            throw new IllegalArgumentException("Cannot set null key");
+        }
+        if (entries.isEmpty()) {
+            return new HashMap<>();
+        }
 
         try (Jedis jedis = pool.getResource()) {
-
-            Map<String, String> oldValues = new HashMap<>(entries.size());
-            for (String key : entries.keySet()) {
-                if (key == null) {
-                    throw new IllegalArgumentException("Cannot set null key");
-                }
-
-                String rKey = redisKey(storeName, key);
-
-                String oldValue = jedis.get(rKey);
-                String newValue = entries.get(key);
-
-                oldValues.put(key, oldValue);
-
-                if (newValue == null) {
-                    if (oldValue != null) {
-                        jedis.del(rKey);
+            Map<String, String> oldValues = mget(jedis, new ArrayList<>(entries.keySet()));
+
+            Pipeline pipeline = jedis.pipelined();
+            List<Response<String>> results = new ArrayList<>(entries.size());
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                String rKey = redisKey(storeName, entry.getKey());
+                if (entry.getValue() == null) {
+                    if (oldValues.get(entry.getKey()) != null) {
+                        pipeline.del(rKey);
                     }
                 } else {
-                    String result = jedis.set(rKey, entries.get(key));
-                    if (!"OK".equals(result)) {
-                        redisIsHealthy = false;
-                        String msg = "Redis failed to store key";
-                        LOG.error(msg);
-                        throw new RuntimeException(msg);
-                    }
+                    results.add(pipeline.set(rKey, entry.getValue()));
+                }
+            }
+            pipeline.sync();
+
+            for (Response<String> result : results) {
+                if (!"OK".equals(result.get())) {
+                    redisIsHealthy = false;
+                    String msg = "Redis failed to store key";
+                    LOG.error(msg);
+                    throw new RuntimeException(msg);
                 }
             }
             return oldValues;
@@ -166,6 +208,24 @@ public class RedisStore implements KeyValueStore {
         }
     }
 
+    /**
+     * Get the values of some keys of this store with a single MGET.
+     *
+     * @param jedis  The connection to get the values with
+     * @param keys  The keys to get, of which there is at least one
+     *
+     * @return The values of the keys, with a null value for each key which is not set
+     */
+    private Map<String, String> mget(Jedis jedis, List<String> keys) {
+        String[] rKeys = keys.stream().map(key -> redisKey(storeName, key)).toArray(String[]::new);
+        List<String> values = jedis.mget(rKeys);
+        Map<String, String> result = new HashMap<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            result.put(keys.get(i), values.get(i));
+        }
+        return result;
+    }
+
     /**
      * Ping the Redis server and update redisIsHealthy.
      */
@@ -2,15 +2,23 @@
 // Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
 package com.yahoo.bard.webservice.data.dimension.impl;
 
+import com.yahoo.bard.webservice.application.MetricRegistryFactory;
+import com.yahoo.bard.webservice.config.BardFeatureFlag;
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
 import com.yahoo.bard.webservice.data.cache.HashDataCache.Pair;
+import com.yahoo.bard.webservice.data.cache.TinyLfuDataCache;
 import com.yahoo.bard.webservice.data.config.dimension.DimensionConfig;
 import com.yahoo.bard.webservice.data.dimension.Dimension;
 import com.yahoo.bard.webservice.data.dimension.DimensionField;
 import com.yahoo.bard.webservice.data.dimension.DimensionRow;
+import com.yahoo.bard.webservice.data.dimension.DimensionRowCodec;
 import com.yahoo.bard.webservice.data.dimension.KeyValueStore;
 import com.yahoo.bard.webservice.data.dimension.SearchProvider;
 import com.yahoo.bard.webservice.util.DimensionStoreKeyUtils;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
@@ -21,15 +29,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.validation.constraints.NotNull;
 
@@ -40,12 +51,29 @@ import javax.validation.constraints.NotNull;
  * <ul>
  *     <li>Id {@literal ->} DimensionRow
  * </ul>
+ * <p>
+ * Rows are stored as JSON, or in the compact encoding of {@link DimensionRowCodec} when
+ * {@link BardFeatureFlag#BINARY_DIMENSION_ROWS} is on, and rows in either form are read. Recently found rows can be kept
+ * decoded in a bounded cache, sized by {@code dimension_row_cache_max_bytes} and off by default. The cache only sees
+ * the rows changed through this dimension, so it should only be turned on when nothing else writes to the store.
  */
 public class KeyValueStoreDimension implements Dimension {
     private static final String MISSING_ROW_KEY_FORMAT = "Dimension row '%s' doesn't contain expected key '%s'";
     private static final String FIELD_UNDEFINED_FORMAT = "Unknown dimensionField: '%s' on dimension: '%s'.";
 
     private static final Logger LOG = LoggerFactory.getLogger(KeyValueStoreDimension.class);
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
+    private static final MetricRegistry REGISTRY = MetricRegistryFactory.getRegistry();
+    public static final Meter ROW_CACHE_HITS = REGISTRY.meter("dimensions.meter.row_cache.hits");
+    public static final Meter ROW_CACHE_MISSES = REGISTRY.meter("dimensions.meter.row_cache.misses");
+    public static final Meter ROW_CACHE_EVICTIONS = REGISTRY.meter("dimensions.meter.row_cache.evictions");
+
+    public static final String ROW_CACHE_MAX_BYTES_KEY = SYSTEM_CONFIG.getPackageVariableName(
+            "dimension_row_cache_max_bytes"
+    );
+
+    // Number of replaced rows above which the rows being replaced are read from the store in parallel
+    private static final int PARALLEL_READ_THRESHOLD = 1024;
 
     private final String apiName;
     private final String longName;
@@ -66,6 +94,9 @@ public class KeyValueStoreDimension implements Dimension {
 
     private final boolean isAggregatable;
 
+    private final TinyLfuDataCache<DimensionRow> rowCache;
+    private volatile DimensionRowCodec rowCodec;
+
     /**
      * Constructor.
      *
@@ -112,6 +143,16 @@ public class KeyValueStoreDimension implements Dimension {
         this.searchProvider.setKeyValueStore(keyValueStore);
 
         this.isAggregatable = isAggregatable;
+
+        long rowCacheMaxBytes = SYSTEM_CONFIG.getLongProperty(ROW_CACHE_MAX_BYTES_KEY, 0);
+        this.rowCache = rowCacheMaxBytes > 0 ?
+                new TinyLfuDataCache<>(
+                        rowCacheMaxBytes,
+                        (int) Math.min(rowCacheMaxBytes / 256, Integer.MAX_VALUE),
+                        KeyValueStoreDimension::weigh,
+                        ROW_CACHE_EVICTIONS
+                ) :
+                null;
     }
 
     /**
@@ -380,49 +421,51 @@ public class KeyValueStoreDimension implements Dimension {
 
     @Override
     public void addAllDimensionRows(Set<DimensionRow> dimensionRows) {
-        Map<String, String> storeRows = new LinkedHashMap<>(dimensionRows.size());
-        Map<String, Pair<DimensionRow, DimensionRow>> indexRows = new LinkedHashMap<>(dimensionRows.size());
-
+        // Key the rows by their row key, so that the rows they replace can be read from the store at once
+        Map<String, DimensionRow> newRows = new LinkedHashMap<>(dimensionRows.size());
         for (DimensionRow dimensionRow : dimensionRows) {
-            try {
-                if (dimensionRow.isEmpty()) {
-                    LOG.warn("Ignoring attempt to add a dimension row with no data {}", dimensionRow);
-                    continue;
-                } else if (dimensionRow.get(getKey()) == null) {
-                    LOG.warn("Attempting to add a dimension row with a null key {}", dimensionRow);
-                    throw new IllegalArgumentException("Cannot add dimension with null key.");
-                }
-
-                // rowId  - key to associate a dimension row to its id
-                String rowIdKey = DimensionStoreKeyUtils.getRowKey(getKey().getName(), dimensionRow.get(getKey()));
-
-                // check if the dimension row already exists in store
-                DimensionRow dimensionRowOld = null;
-                String row = keyValueStore.get(rowIdKey);
-                if (row != null) {
-                    LinkedHashMap<String, String> fieldNameValueMap = objectMapper.readValue(
-                            row,
-                            new TypeReference<LinkedHashMap<String, String>>() { }
-                    );
-                    dimensionRowOld = parseDimensionRow(fieldNameValueMap);
-                    if (dimensionRow.equals(dimensionRowOld)) {
-                        continue;
-                    }
-                }
+            if (dimensionRow.isEmpty()) {
+                LOG.warn("Ignoring attempt to add a dimension row with no data {}", dimensionRow);
+                continue;
+            } else if (dimensionRow.get(getKey()) == null) {
+                LOG.warn("Attempting to add a dimension row with a null key {}", dimensionRow);
+                throw new IllegalArgumentException("Cannot add dimension with null key.");
+            }
 
-                String dimRowSerialized = objectMapper.writeValueAsString(dimensionRow);
-                storeRows.put(rowIdKey, dimRowSerialized);
+            // rowId  - key to associate a dimension row to its id
+            newRows.put(DimensionStoreKeyUtils.getRowKey(getKey().getName(), dimensionRow.get(getKey())), dimensionRow);
+        }
 
-                //update indexes
-                indexRows.put(rowIdKey, new Pair<>(dimensionRow, dimensionRowOld));
+        // check if the dimension rows already exist in store
+        Map<String, DimensionRow> oldRows = readDimensionRows(keyValueStore.getAll(newRows.keySet()));
+
+        Map<String, String> storeRows = new LinkedHashMap<>(newRows.size());
+        Map<String, Pair<DimensionRow, DimensionRow>> indexRows = new LinkedHashMap<>(newRows.size());
+        for (Map.Entry<String, DimensionRow> newRow : newRows.entrySet()) {
+            String rowIdKey = newRow.getKey();
+            DimensionRow dimensionRow = newRow.getValue();
+            DimensionRow dimensionRowOld = oldRows.get(rowIdKey);
+            if (dimensionRow.equals(dimensionRowOld)) {
+                continue;
+            }
 
+            try {
+                storeRows.put(rowIdKey, writeDimensionRow(dimensionRow));
             } catch (IOException e) {
                 LOG.error("Exception while adding dimension row {}", e);
                 throw new RuntimeException(e);
             }
+
+            //update indexes
+            indexRows.put(rowIdKey, new Pair<>(dimensionRow, dimensionRowOld));
         }
 
         keyValueStore.putAll(storeRows);
+        if (rowCache != null) {
+            for (Map.Entry<String, Pair<DimensionRow, DimensionRow>> indexRow : indexRows.entrySet()) {
+                rowCache.set(indexRow.getKey(), normalizeDimensionRow(indexRow.getValue().getKey()));
+            }
+        }
         searchProvider.refreshIndex(indexRows);
     }
 
@@ -453,15 +496,22 @@ public class KeyValueStoreDimension implements Dimension {
          * rowKey would be id_12345_row_key
          */
         String rowKey = DimensionStoreKeyUtils.getRowKey(getKey().getName(), value);
-        DimensionRow drByKey = null;
+        DimensionRow drByKey = rowCache == null ? null : rowCache.get(rowKey);
+        if (drByKey != null) {
+            ROW_CACHE_HITS.mark();
+            // Callers may change the row they are given, so they never get the cached row itself
+            return new DimensionRow(getKey(), drByKey);
+        }
+        if (rowCache != null) {
+            ROW_CACHE_MISSES.mark();
+        }
         try {
-            String dimRowJson = keyValueStore.get(rowKey);
-            if (dimRowJson != null) {
-                Map<String, String> dimensionRowMap = objectMapper.readValue(
-                        dimRowJson,
-                        new TypeReference<LinkedHashMap<String, String>>() { }
-                );
-                drByKey = parseDimensionRow(dimensionRowMap);
+            String dimRow = keyValueStore.get(rowKey);
+            if (dimRow != null) {
+                drByKey = readDimensionRow(dimRow);
+                if (rowCache != null) {
+                    rowCache.set(rowKey, new DimensionRow(getKey(), drByKey));
+                }
             }
         } catch (IOException e) {
             LOG.error("Cannot map string to DimensionRow object. {}", e);
@@ -470,11 +520,147 @@ public class KeyValueStoreDimension implements Dimension {
         return drByKey;
     }
 
+    /**
+     * Read dimension rows from their stored form, in parallel for large batches.
+     *
+     * @param storedRows  The stored rows by row key, with null for rows which are not stored
+     *
+     * @return the dimension rows by row key, for the rows which are stored
+     */
+    private Map<String, DimensionRow> readDimensionRows(Map<String, String> storedRows) {
+        Stream<Map.Entry<String, String>> entries = storedRows.size() < PARALLEL_READ_THRESHOLD ?
+                storedRows.entrySet().stream() :
+                storedRows.entrySet().parallelStream();
+        return entries
+                .filter(entry -> entry.getValue() != null)
+                .collect(Collectors.toMap(
+                        Map.Entry::getKey,
+                        entry -> {
+                            try {
+                                return readDimensionRow(entry.getValue());
+                            } catch (IOException e) {
+                                LOG.error("Exception while adding dimension row {}", e);
+                                throw new RuntimeException(e);
+                            }
+                        }
+                ));
+    }
+
+    /**
+     * Read a dimension row from its stored form, either JSON or encoded by the row codec.
+     * <p>
+     * Search providers reading rows straight from the store of the dimension read them through this method.
+     *
+     * @param storedRow  The stored row
+     *
+     * @return the dimension row
+     *
+     * @throws IOException if a JSON row can't be parsed
+     */
+    DimensionRow readDimensionRow(String storedRow) throws IOException {
+        if (DimensionRowCodec.isEncoded(storedRow)) {
+            return getRowCodec().decode(storedRow);
+        }
+        LinkedHashMap<String, String> fieldNameValueMap = objectMapper.readValue(
+                storedRow,
+                new TypeReference<LinkedHashMap<String, String>>() { }
+        );
+        return parseDimensionRow(fieldNameValueMap);
+    }
+
+    /**
+     * Write a dimension row in its stored form, encoded by the row codec if binary dimension rows are on.
+     *
+     * @param dimensionRow  The dimension row
+     *
+     * @return the stored row
+     *
+     * @throws IOException if the row can't be serialized
+     */
+    private String writeDimensionRow(DimensionRow dimensionRow) throws IOException {
+        if (BardFeatureFlag.BINARY_DIMENSION_ROWS.isOn()) {
+            return getRowCodec().encode(dimensionRow);
+        }
+        return objectMapper.writeValueAsString(dimensionRow);
+    }
+
+    /**
+     * Get the codec of the encoded rows of this dimension, building it on first use.
+     * <p>
+     * The field ordinals of encoded rows are kept in the store, so fields new to the dimension are appended to them.
+     *
+     * @return the row codec
+     *
+     * @throws IOException if the field ordinals in the store can't be read or written
+     */
+    private DimensionRowCodec getRowCodec() throws IOException {
+        DimensionRowCodec codec = rowCodec;
+        if (codec != null) {
+            return codec;
+        }
+        synchronized (this) {
+            if (rowCodec == null) {
+                String rowFieldsKey = DimensionStoreKeyUtils.getRowFieldsKey();
+                String storedFieldNames = keyValueStore.get(rowFieldsKey);
+                List<String> fieldNames = storedFieldNames == null ?
+                        new ArrayList<>() :
+                        objectMapper.readValue(storedFieldNames, new TypeReference<ArrayList<String>>() { });
+                boolean added = false;
+                for (DimensionField field : dimensionFields) {
+                    if (!fieldNames.contains(field.getName())) {
+                        fieldNames.add(field.getName());
+                        added = true;
+                    }
+                }
+                if (added) {
+                    keyValueStore.put(rowFieldsKey, objectMapper.writeValueAsString(fieldNames));
+                }
+                rowCodec = new DimensionRowCodec(getKey(), new ArrayList<>(dimensionFields), fieldNames);
+            }
+            return rowCodec;
+        }
+    }
+
+    /**
+     * Copy a dimension row as it reads back from the store, with a value for every field of the dimension and only for
+     * those.
+     *
+     * @param dimensionRow  The dimension row
+     *
+     * @return the copy of the row
+     */
+    private DimensionRow normalizeDimensionRow(DimensionRow dimensionRow) {
+        LinkedHashMap<DimensionField, String> fieldValues = new LinkedHashMap<>(dimensionFields.size());
+        for (DimensionField field : dimensionFields) {
+            String value = dimensionRow.get(field);
+            fieldValues.put(field, value == null ? "" : value);
+        }
+        return new DimensionRow(getKey(), fieldValues);
+    }
+
+    /**
+     * Estimate the size in bytes of a cached dimension row.
+     *
+     * @param dimensionRow  The dimension row
+     *
+     * @return the estimated size of the row
+     */
+    private static long weigh(DimensionRow dimensionRow) {
+        long size = 64;
+        for (String value : dimensionRow.values()) {
+            size += 48 + (value == null ? 0 : 2L * value.length());
+        }
+        return size;
+    }
+
 
     /**
      * Internal method for cleaning the dimension rows.
      */
     public void deleteAllDimensionRows() {
+        if (rowCache != null) {
+            rowCache.clear();
+        }
         try {
             String dimRowIndexes = keyValueStore.get(DimensionStoreKeyUtils.getAllValuesKey());
             if (dimRowIndexes == null) {
@@ -26,7 +26,6 @@ import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.StringField;
-import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.Term;
@@ -37,6 +36,7 @@ import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.PrefixQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TimeLimitingCollector;
 import org.apache.lucene.search.TopDocs;
@@ -54,7 +54,11 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -62,6 +66,12 @@ import java.util.stream.Stream;
 /**
  * LuceneSearchProvider.
  * Search provider which uses lucene
+ * <p>
+ * The index is updated through a single long lived IndexWriter, and searched through near real time searchers from a
+ * SearcherManager, which are reopened from the writer after each update. Searches never wait for updates, and an
+ * update only reopens the segments it changed. Updates are committed to disk with every update by default, or on a
+ * schedule, every {@code lucene_commit_interval_ms} milliseconds, and when the provider is closed. Scheduled commits
+ * make updates cheaper, but updates since the last commit are lost if the process dies.
  */
 public class LuceneSearchProvider implements SearchProvider {
     private static final Logger LOG = LoggerFactory.getLogger(LuceneSearchProvider.class);
@@ -69,13 +79,26 @@ public class LuceneSearchProvider implements SearchProvider {
     private static final Analyzer LUCENE_ANALYZER = new StandardAnalyzer();
     private static final double BUFFER_SIZE = 48;
 
-    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Commits the indexes of all the providers, on a daemon thread so that it never keeps the JVM alive
+    private static final ScheduledExecutorService COMMIT_SCHEDULER = new ScheduledThreadPoolExecutor(
+            1,
+            runnable -> {
+                Thread thread = new Thread(runnable, "lucene-index-commit");
+                thread.setDaemon(true);
+                return thread;
+            }
+    );
+
+    private final ReentrantLock writeLock = new ReentrantLock();
     private final String luceneIndexPath;
 
     private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
     public static final int LUCENE_SEARCH_TIMEOUT_MS = SYSTEM_CONFIG.getIntProperty(
             SYSTEM_CONFIG.getPackageVariableName("lucene_search_timeout_ms"), 600000
     );
+    public static final long LUCENE_COMMIT_INTERVAL_MS = SYSTEM_CONFIG.getLongProperty(
+            SYSTEM_CONFIG.getPackageVariableName("lucene_commit_interval_ms"), 0
+    );
 
     /**
      * The maximum number of results per page.
@@ -86,8 +109,11 @@ public class LuceneSearchProvider implements SearchProvider {
     private KeyValueStore keyValueStore;
     private Dimension dimension;
     private boolean luceneIndexIsHealthy;
-    private IndexSearcher luceneIndexSearcher;
+    private volatile IndexWriter luceneIndexWriter;
+    private volatile SearcherManager searcherManager;
+    private ScheduledFuture<?> commitTask;
     private int searchTimeout;
+    private final long commitInterval;
 
     /**
      * Constructor.
@@ -95,13 +121,15 @@ public class LuceneSearchProvider implements SearchProvider {
      * @param luceneIndexPath  Path to the lucene index files
      * @param maxResults  Maximum number of allowed results in a page
      * @param searchTimeout  Maximum time in milliseconds that a lucene search can run
+     * @param commitInterval  Milliseconds between commits of index updates, or 0 to commit every update
      */
-    public LuceneSearchProvider(String luceneIndexPath, int maxResults, int searchTimeout) {
+    public LuceneSearchProvider(String luceneIndexPath, int maxResults, int searchTimeout, long commitInterval) {
         this.luceneIndexPath = luceneIndexPath;
         Utils.createParentDirectories(this.luceneIndexPath);
 
         this.maxResults = maxResults;
         this.searchTimeout = searchTimeout;
+        this.commitInterval = commitInterval;
 
         try {
             luceneDirectory = new MMapDirectory(Paths.get(this.luceneIndexPath));
@@ -114,6 +142,17 @@ public class LuceneSearchProvider implements SearchProvider {
     }
 
 
+    /**
+     * Constructor.  The commit interval is initialized to the default (or configured) value.
+     *
+     * @param luceneIndexPath  Path to the lucene index files
+     * @param maxResults  Maximum number of allowed results in a page
+     * @param searchTimeout  Maximum time in milliseconds that a lucene search can run
+     */
+    public LuceneSearchProvider(String luceneIndexPath, int maxResults, int searchTimeout) {
+        this(luceneIndexPath, maxResults, searchTimeout, LUCENE_COMMIT_INTERVAL_MS);
+    }
+
     /**
      * Constructor.  The search timeout is initialized to the default (or configured) value.
      *
@@ -125,59 +164,152 @@ public class LuceneSearchProvider implements SearchProvider {
     }
 
     /**
-     * Initializes the `luceneIndexSearcher` if it has not been initialized already.
+     * Get the searcher manager, opening the index writer and the searcher manager if they are not open.
      * <p>
-     * Note that the index searcher cannot be built at construction time, because it needs the dimension and
-     * associated key-value store. However, because of a circular dependency between the `SearchProvider` and the
-     * `Dimension` classes, we cannot provide the dimension and key-value store to the search provider at
-     * construction time.
+     * Note that the index cannot be opened at construction time, because it needs the dimension and associated
+     * key-value store. However, because of a circular dependency between the `SearchProvider` and the `Dimension`
+     * classes, we cannot provide the dimension and key-value store to the search provider at construction time.
+     *
+     * @return the searcher manager of the index
      */
-    private void initializeIndexSearcher() {
-        if (luceneIndexSearcher == null) {
-            reopenIndexSearcher(true);
+    private SearcherManager getSearcherManager() {
+        SearcherManager manager = searcherManager;
+        if (manager == null) {
+            writeLock.lock();
+            try {
+                if (searcherManager == null) {
+                    openIndex();
+                }
+                manager = searcherManager;
+            } finally {
+                writeLock.unlock();
+            }
         }
+        return manager;
     }
 
     /**
-     * Re-open the Index Searcher, opening it for the first time if it's never been opened.
+     * Get the index writer, opening the index if it is not open.
      * <p>
-     * This method will attempt to acquire and release a write lock.
+     * Must be called holding the write lock, so that the writer isn't closed while it is used.
      *
-     * @param firstTimeThrough  If true, will write an empty index and will then re-open the searcher
+     * @return the index writer
      */
-    private void reopenIndexSearcher(boolean firstTimeThrough) {
-        lock.writeLock().lock();
+    private IndexWriter getIndexWriter() {
+        getSearcherManager();
+        return luceneIndexWriter;
+    }
+
+    /**
+     * Open the index writer, writing an empty index if there is none, and a searcher manager reading from it.
+     * <p>
+     * Must be called holding the write lock.
+     */
+    private void openIndex() {
+        IndexWriterConfig indexWriterConfig = new IndexWriterConfig(LUCENE_ANALYZER).setRAMBufferSizeMB(BUFFER_SIZE);
+        try {
+            luceneIndexWriter = new IndexWriter(luceneDirectory, indexWriterConfig);
+            luceneIndexWriter.commit();
+            searcherManager = new SearcherManager(luceneIndexWriter, null);
+        } catch (IOException e) {
+            luceneIndexIsHealthy = false;
+            String message = String.format("Unable to open index at %s:", luceneIndexPath);
+            LOG.error(message, e);
+            throw new RuntimeException(e);
+        }
+        if (commitInterval > 0) {
+            commitTask = COMMIT_SCHEDULER.scheduleWithFixedDelay(
+                    this::commit,
+                    commitInterval,
+                    commitInterval,
+                    TimeUnit.MILLISECONDS
+            );
+        }
+    }
+
+    /**
+     * Commit the updates to the index since the last commit, if there are any.
+     * <p>
+     * Failures are logged rather than thrown, so that they don't cancel the scheduled commits.
+     */
+    private void commit() {
+        IndexWriter writer = luceneIndexWriter;
         try {
-            // Close the current reader if open
-            if (luceneIndexSearcher != null) {
-                luceneIndexSearcher.getIndexReader().close();
+            if (writer != null && writer.hasUncommittedChanges()) {
+                writer.commit();
             }
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Unable to commit index at {}", luceneIndexPath, e);
+        }
+    }
 
-            // Open a new IndexSearcher on a new DirectoryReader
-            luceneIndexSearcher = new IndexSearcher(DirectoryReader.open(luceneDirectory));
-        } catch (IOException reopenException) {
-            // If there is no index file, this is expected. On the 1st time through, write an empty index and try again
-            if (firstTimeThrough) {
-                IndexWriterConfig indexWriterConfig = new IndexWriterConfig(LUCENE_ANALYZER);
-                try (IndexWriter ignored = new IndexWriter(luceneDirectory, indexWriterConfig)) {
-                    // Closed automatically by the try-resource block
-                } catch (IOException emptyIndexWriteException) {
-                    // We can't move past this, so puke
-                    luceneIndexIsHealthy = false;
-                    String message = String.format("Unable to write empty index to %s:", luceneIndexPath);
-                    LOG.error(message, emptyIndexWriteException);
-                    throw new RuntimeException(emptyIndexWriteException);
-                }
-                reopenIndexSearcher(false);
-            } else {
-                // We've been here before, so puke
-                luceneIndexIsHealthy = false;
-                String message = String.format("Unable to open index searcher for %s:", luceneIndexPath);
-                LOG.error(message, reopenException);
-                throw new RuntimeException(reopenException);
+    /**
+     * Make the updates written so far visible to searches, committing them first if commits are not scheduled.
+     *
+     * @throws IOException if the updates can't be committed or the searcher can't be reopened
+     */
+    private void publishUpdates() throws IOException {
+        if (commitInterval <= 0) {
+            luceneIndexWriter.commit();
+        }
+        searcherManager.maybeRefreshBlocking();
+    }
+
+    /**
+     * Acquire the current searcher of the index, which must be released after use.
+     *
+     * @param manager  The searcher manager to acquire the searcher from
+     *
+     * @return the current searcher
+     */
+    private IndexSearcher acquireSearcher(SearcherManager manager) {
+        try {
+            return manager.acquire();
+        } catch (IOException e) {
+            String message = String.format("Unable to acquire index searcher for %s:", luceneIndexPath);
+            LOG.error(message, e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Release a searcher acquired from a searcher manager.
+     *
+     * @param manager  The searcher manager the searcher was acquired from
+     * @param searcher  The searcher to release
+     */
+    private void releaseSearcher(SearcherManager manager, IndexSearcher searcher) {
+        try {
+            manager.release(searcher);
+        } catch (IOException e) {
+            LOG.warn("Unable to release index searcher for {}", luceneIndexPath, e);
+        }
+    }
+
+    /**
+     * Close the index, committing any updates not yet committed.
+     * <p>
+     * The index is opened again if the provider is used after it is closed.
+     */
+    public void close() {
+        writeLock.lock();
+        try {
+            if (commitTask != null) {
+                commitTask.cancel(false);
+                commitTask = null;
             }
+            if (searcherManager != null) {
+                searcherManager.close();
+            }
+            if (luceneIndexWriter != null) {
+                luceneIndexWriter.close();
+            }
+        } catch (IOException e) {
+            LOG.error("Unable to close index at {}", luceneIndexPath, e);
         } finally {
-            lock.writeLock().unlock();
+            searcherManager = null;
+            luceneIndexWriter = null;
+            writeLock.unlock();
         }
     }
 
@@ -256,33 +388,29 @@ public class LuceneSearchProvider implements SearchProvider {
             doc.add(luceneField);
         }
 
-        // Write the rows to the document
-        IndexWriterConfig indexWriterConfig = new IndexWriterConfig(LUCENE_ANALYZER).setRAMBufferSizeMB(BUFFER_SIZE);
-        lock.writeLock().lock();
+        // Write the rows to the document, getting the writer under the lock so that it can't be closed meanwhile
+        writeLock.lock();
         try {
-            try (IndexWriter luceneIndexWriter = new IndexWriter(luceneDirectory, indexWriterConfig)) {
-                // Update the document fields for each row and update the document
-                for (String rowId : changedRows.keySet()) {
-                    // Get the new row from the pair
-                    DimensionRow newDimensionRow = changedRows.get(rowId).getKey();
-
-                    // Update the index
-                    updateDimensionRow(doc, dimFieldToLuceneField, luceneIndexWriter, newDimensionRow);
-                }
-
-            } catch (IOException e) {
-                luceneIndexIsHealthy = false;
-                LOG.error("Failed to refresh index for dimension rows", e);
-                throw new RuntimeException(e);
-                // Commit all the changes to the index (on .close, called by try-resources) and refresh the cardinality
+            IndexWriter writer = getIndexWriter();
+            // Update the document fields for each row and update the document
+            for (String rowId : changedRows.keySet()) {
+                // Get the new row from the pair
+                DimensionRow newDimensionRow = changedRows.get(rowId).getKey();
+
+                // Update the index
+                updateDimensionRow(doc, dimFieldToLuceneField, writer, newDimensionRow);
             }
-            //This must be outside the try-resources block because it may _also_ need to open an IndexWriter, and
-            //opening an IndexWriter involves taking a write lock on lucene, of which there can only be one at a time.
-            reopenIndexSearcher(true);
-            refreshCardinality();
+
+            // Reopen the searcher on the changed segments only, so searches see the updates before they're committed
+            publishUpdates();
+        } catch (IOException e) {
+            luceneIndexIsHealthy = false;
+            LOG.error("Failed to refresh index for dimension rows", e);
+            throw new RuntimeException(e);
         } finally {
-            lock.writeLock().unlock();
+            writeLock.unlock();
         }
+        refreshCardinality();
     }
 
     /**
@@ -320,15 +448,16 @@ public class LuceneSearchProvider implements SearchProvider {
     /**
      * Clears the dimension cache, and resets the indices, effectively resetting the SearchProvider to a clean state.
      * <p>
-     * Note that this method attempts to acquire a write lock before clearing the index.
+     * Note that this method attempts to acquire the write lock before clearing the index, and commits the cleared
+     * index immediately.
      */
     @Override
     public void clearDimension() {
         Set<DimensionRow> dimensionRows = findAllDimensionRows();
-        IndexWriterConfig indexWriterConfig = new IndexWriterConfig(LUCENE_ANALYZER).setRAMBufferSizeMB(BUFFER_SIZE);
-        lock.writeLock().lock();
+        writeLock.lock();
         try {
-            try (IndexWriter writer = new IndexWriter(luceneDirectory, indexWriterConfig)) {
+            IndexWriter writer = getIndexWriter();
+            try {
                 //Remove all dimension data from the store.
                 String rowId = dimension.getKey().getName();
                 dimensionRows.stream()
@@ -348,33 +477,30 @@ public class LuceneSearchProvider implements SearchProvider {
                 //In addition to clearing the keyValueStore, we also need to delete all of Lucene's segment files.
                 writer.deleteAll();
                 writer.commit();
+                searcherManager.maybeRefreshBlocking();
             } catch (IOException e) {
                 LOG.error("Failed to wipe Lucene index at directory: {}", luceneDirectory);
                 throw new RuntimeException(e);
             }
-
-            //This must be outside the try-resources block because it may _also_ need to open an IndexWriter, and
-            //opening an IndexWriter involves taking a write lock on lucene, of which there can only be one at a time.
-            reopenIndexSearcher(true);
-            refreshCardinality();
         } finally {
-            lock.writeLock().unlock();
+            writeLock.unlock();
         }
+        refreshCardinality();
     }
 
     /**
      * Update the cardinality count.
      * <p>
-     * Note that this method acquires a read lock to query the lucene index for the number of documents.
+     * Note that this method acquires a searcher to query the lucene index for the number of documents.
      */
     private void refreshCardinality() {
         int numDocs;
-        initializeIndexSearcher();
-        lock.readLock().lock();
+        SearcherManager manager = getSearcherManager();
+        IndexSearcher searcher = acquireSearcher(manager);
         try {
-            numDocs = luceneIndexSearcher.getIndexReader().numDocs();
+            numDocs = searcher.getIndexReader().numDocs();
         } finally {
-            lock.readLock().unlock();
+            releaseSearcher(manager, searcher);
         }
         keyValueStore.put(
                 DimensionStoreKeyUtils.getCardinalityKey(),
@@ -552,8 +678,8 @@ public class LuceneSearchProvider implements SearchProvider {
      * @param paginationParameters  The parameters defining the pagination (i.e. the number of rows per page, and the
      * desired page)
      * <p>
-     * Note that this method _may_ need to acquire and release a write lock if the index searcher needs to be
-     * initialized, and it later acquires and released a read lock when querying for dimension data from Lucene.
+     * Note that this method _may_ need to acquire and release the write lock if the index needs to be opened, and it
+     * acquires and releases a searcher without any lock when querying for dimension data from Lucene.
      *
      * @return The desired page of dimension rows that satisfy the given query
      *
@@ -567,10 +693,10 @@ public class LuceneSearchProvider implements SearchProvider {
 
         TreeSet<DimensionRow> filteredDimRows;
         int documentCount;
-        initializeIndexSearcher();
+        SearcherManager manager = getSearcherManager();
         LOG.trace("Lucene Query {}", query);
 
-        lock.readLock().lock();
+        IndexSearcher luceneIndexSearcher = acquireSearcher(manager);
         try {
             ScoreDoc[] hits;
             try (TimedPhase timer = RequestLog.startTiming("QueryingLucene")) {
@@ -618,7 +744,7 @@ public class LuceneSearchProvider implements SearchProvider {
                         .collect(Collectors.toCollection(TreeSet::new));
             }
         } finally {
-            lock.readLock().unlock();
+            releaseSearcher(manager, luceneIndexSearcher);
         }
         return new SinglePagePagination<>(
                 Collections.unmodifiableList(filteredDimRows.stream().collect(Collectors.toList())),
@@ -644,8 +770,6 @@ public class LuceneSearchProvider implements SearchProvider {
 
     /**
      * Returns the requested page of dimension metadata from Lucene.
-     * <p>
-     * Note that this method acquires and releases a read lock when querying Lucene for data.
      *
      * @param indexSearcher  The service to find the desired dimension metadata in the Lucene index
      * @param lastEntry  The last entry from the previous page of dimension metadata, the indexSearcher will begin its
@@ -664,7 +788,6 @@ public class LuceneSearchProvider implements SearchProvider {
             int currentPage
     ) {
         TimeLimitingCollectorManager manager = new TimeLimitingCollectorManager(searchTimeout, lastEntry, perPage);
-        lock.readLock().lock();
         try {
             return indexSearcher.search(query, manager);
         } catch (IOException e) {
@@ -674,8 +797,6 @@ public class LuceneSearchProvider implements SearchProvider {
         } catch (TimeLimitingCollector.TimeExceededException e) {
             LOG.warn("Lucene query timeout: {}. {}", query, e.getMessage());
             throw new TimeoutException(e.getMessage(), e);
-        } finally {
-            lock.readLock().unlock();
         }
     }
 }
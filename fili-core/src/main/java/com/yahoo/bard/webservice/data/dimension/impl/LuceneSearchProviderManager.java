@@ -55,12 +55,15 @@ public class LuceneSearchProviderManager {
     }
 
     /**
-     * Cleanup the existing instance.
+     * Cleanup the existing instance, closing its index.
      *
      * @param providerName The name of the provider
      */
     public static synchronized void removeInstance(String providerName) {
-        LUCENE_SEARCH_PROVIDERS.remove(providerName);
+        LuceneSearchProvider luceneProvider = LUCENE_SEARCH_PROVIDERS.remove(providerName);
+        if (luceneProvider != null) {
+            luceneProvider.close();
+        }
         Utils.deleteFiles(getProviderPath(providerName));
     }
 
@@ -365,11 +365,29 @@ public class ScanSearchProvider implements SearchProvider, FilterDimensionRows {
         return getDimRowIndexes().stream()
                 .map(keyValueStore::get)
                 .filter(Objects::nonNull)
-                .map(dimRowJson -> readValue(new TypeReference<Map<String, String>>() { }, dimRowJson))
-                .map(dimension::parseDimensionRow)
+                .map(this::readDimensionRow)
                 .collect(Collectors.toCollection(TreeSet::new));
     }
 
+    /**
+     * Read a dimension row from the store, which may be encoded by a KeyValueStoreDimension rather than JSON.
+     *
+     * @param storedRow  The row as held in the store
+     *
+     * @return  The dimension row
+     */
+    private DimensionRow readDimensionRow(String storedRow) {
+        if (dimension instanceof KeyValueStoreDimension) {
+            try {
+                return ((KeyValueStoreDimension) dimension).readDimensionRow(storedRow);
+            } catch (IOException e) {
+                LOG.error("Exception while reading dimension rows {}", e);
+                throw new RuntimeException(e);
+            }
+        }
+        return dimension.parseDimensionRow(readValue(new TypeReference<Map<String, String>>() { }, storedRow));
+    }
+
     /**
      * Paginate dimension rows based on the requested page number and the number of results per page.
      *
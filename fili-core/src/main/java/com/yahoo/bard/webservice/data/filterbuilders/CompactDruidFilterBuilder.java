@@ -0,0 +1,275 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.filterbuilders;
+
+import com.yahoo.bard.webservice.application.MetricRegistryFactory;
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
+import com.yahoo.bard.webservice.data.dimension.Dimension;
+import com.yahoo.bard.webservice.data.dimension.DimensionRow;
+import com.yahoo.bard.webservice.data.dimension.DimensionRowNotFoundException;
+import com.yahoo.bard.webservice.druid.model.filter.AndFilter;
+import com.yahoo.bard.webservice.druid.model.filter.Filter;
+import com.yahoo.bard.webservice.druid.model.filter.InFilter;
+import com.yahoo.bard.webservice.druid.model.filter.NotFilter;
+import com.yahoo.bard.webservice.druid.model.filter.OrFilter;
+import com.yahoo.bard.webservice.druid.model.filter.RegularExpressionFilter;
+import com.yahoo.bard.webservice.druid.model.filter.SelectorFilter;
+import com.yahoo.bard.webservice.druid.model.util.ModelUtil;
+import com.yahoo.bard.webservice.web.ApiFilter;
+import com.yahoo.bard.webservice.web.BadApiRequestException;
+import com.yahoo.bard.webservice.web.ErrorMessageFormat;
+import com.yahoo.bard.webservice.web.FilterOperation;
+
+import com.codahale.metrics.Meter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Builds the smallest Druid filter it can for each filter term, rather than a disjunction of selector filters over
+ * every matching dimension row.
+ * <p>
+ * Each filter term on a dimension is translated on its own, and the terms on a dimension are combined in a
+ * conjunction, as the {@link DefaultDruidFilterBuilder} does. A term is translated by one of these strategies:
+ * <ul>
+ *     <li>{@link Strategy#KEY_VALUES}: {@code in} and {@code eq} terms on the key field of a dimension become an
+ *     {@code in} filter on the values of the term which are rows of the dimension, found by key without a search
+ *     <li>{@link Strategy#KEY_PATTERN}: {@code startswith} and {@code contains} terms on the key field of a dimension
+ *     become a regular expression filter, so Druid matches the values without the rows being found at all
+ *     <li>{@link Strategy#ROW_VALUES}: other terms are resolved into dimension rows by the search provider, and
+ *     become an {@code in} filter on the keys of those rows
+ * </ul>
+ * A {@code notin} term is translated as the {@code in} term with the same values, inside a {@link NotFilter}. A
+ * {@code notin} term whose values match no rows excludes nothing, so it adds no filter at all. Terms on
+ * dimensions with an extraction function are always resolved into rows, and their keys filtered with extraction
+ * filters, since the values Druid holds for those dimensions are not the keys of the rows.
+ * <p>
+ * Unlike the other builders, a {@code startswith} or {@code contains} term on a key field which matches no rows is
+ * not an error, and simply matches nothing in Druid.
+ * <p>
+ * A term may resolve to at most {@code druid_filter_max_values} values. A request with a term resolving to more
+ * values is rejected, rather than sent to Druid as a filter too big to plan.
+ */
+public class CompactDruidFilterBuilder extends ConjunctionDruidFilterBuilder {
+    private static final Logger LOG = LoggerFactory.getLogger(CompactDruidFilterBuilder.class);
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
+
+    /**
+     * The default maximum number of values a single filter term may resolve to.
+     */
+    public static final int DEFAULT_MAX_VALUES = SYSTEM_CONFIG.getIntProperty(
+            SYSTEM_CONFIG.getPackageVariableName("druid_filter_max_values"),
+            100000
+    );
+
+    /**
+     * The ways a filter term can be translated into a Druid filter.
+     */
+    public enum Strategy {
+        KEY_VALUES,
+        KEY_PATTERN,
+        ROW_VALUES;
+
+        private final Meter meter = MetricRegistryFactory.getRegistry().meter(
+                "filters.meter.strategy." + name().toLowerCase(Locale.ENGLISH)
+        );
+
+        /**
+         * Get the meter counting the filter terms translated with this strategy.
+         *
+         * @return the meter of this strategy
+         */
+        public Meter getMeter() {
+            return meter;
+        }
+    }
+
+    private final int maxValues;
+
+    /**
+     * Constructor, with the configured maximum number of values of a filter term.
+     */
+    public CompactDruidFilterBuilder() {
+        this(DEFAULT_MAX_VALUES);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxValues  The maximum number of values a single filter term may resolve to
+     */
+    public CompactDruidFilterBuilder(int maxValues) {
+        this.maxValues = maxValues;
+    }
+
+    @Override
+    protected Filter buildDimensionFilter(Dimension dimension, Set<ApiFilter> filters)
+            throws DimensionRowNotFoundException {
+        LOG.trace("Building dimension filter using dimension: {} and set of filters: {}", dimension, filters);
+
+        List<Filter> termFilters = new ArrayList<>(filters.size());
+        for (ApiFilter filter : filters) {
+            if (filter.getOperation() == FilterOperation.notin) {
+                Filter excluded;
+                try {
+                    excluded = buildTermFilter(dimension, filter.withOperation(FilterOperation.in));
+                } catch (DimensionRowNotFoundException e) {
+                    // Excluding no rows matches every row, so the term needs no filter
+                    LOG.debug("Term {} excludes no rows of {}", filter, dimension.getApiName());
+                    continue;
+                }
+                termFilters.add(new NotFilter(excluded));
+            } else {
+                termFilters.add(buildTermFilter(dimension, filter));
+            }
+        }
+
+        if (termFilters.isEmpty()) {
+            return null;
+        }
+        Filter newFilter = termFilters.size() == 1 ? termFilters.get(0) : new AndFilter(termFilters);
+        LOG.trace("Filter: {}", newFilter);
+        return newFilter;
+    }
+
+    /**
+     * Build the Druid filter for a single positive filter term.
+     *
+     * @param dimension  The dimension being filtered
+     * @param filter  The filter term, which is not a {@code notin} term
+     *
+     * @return the Druid filter matching the same rows as the term
+     *
+     * @throws DimensionRowNotFoundException if the term matches no dimension rows
+     */
+    protected Filter buildTermFilter(Dimension dimension, ApiFilter filter) throws DimensionRowNotFoundException {
+        Strategy strategy = selectStrategy(dimension, filter);
+        LOG.debug("Filtering {} with strategy {}", filter, strategy);
+        strategy.getMeter().mark();
+
+        switch (strategy) {
+            case KEY_VALUES:
+                // Key lookups may ignore case, so the filter uses the key values of the rows found, not the request's
+                List<String> values = filter.getValues().stream()
+                        .map(dimension::findDimensionRowByKeyValue)
+                        .filter(Objects::nonNull)
+                        .map(row -> row.get(dimension.getKey()))
+                        .distinct()
+                        .sorted()
+                        .collect(Collectors.toList());
+                if (values.isEmpty()) {
+                    String msg = ErrorMessageFormat.DIMENSION_ROWS_NOT_FOUND.format(dimension.getApiName(), filter);
+                    LOG.debug(msg);
+                    throw new DimensionRowNotFoundException(msg);
+                }
+                return buildValuesFilter(dimension, filter, values);
+            case KEY_PATTERN:
+                checkSize(dimension, filter, filter.getValues().size());
+                return new RegularExpressionFilter(dimension, buildPattern(filter));
+            case ROW_VALUES:
+            default:
+                Set<DimensionRow> rows = getFilteredDimensionRows(dimension, Collections.singleton(filter));
+                checkSize(dimension, filter, rows.size());
+                if (ModelUtil.getExtractionFunction(dimension).isPresent()) {
+                    List<Filter> selectorFilters = buildSelectorFilters(dimension, rows);
+                    return selectorFilters.size() == 1 ? selectorFilters.get(0) : new OrFilter(selectorFilters);
+                }
+                return buildValuesFilter(
+                        dimension,
+                        filter,
+                        rows.stream().map(row -> row.get(dimension.getKey())).sorted().collect(Collectors.toList())
+                );
+        }
+    }
+
+    /**
+     * Choose how to translate a positive filter term.
+     *
+     * @param dimension  The dimension being filtered
+     * @param filter  The filter term
+     *
+     * @return the strategy to translate the term with
+     */
+    protected Strategy selectStrategy(Dimension dimension, ApiFilter filter) {
+        if (!filter.getDimensionField().equals(dimension.getKey())
+                || ModelUtil.getExtractionFunction(dimension).isPresent()) {
+            return Strategy.ROW_VALUES;
+        }
+        switch (filter.getOperation()) {
+            case in:
+            case eq:
+                return Strategy.KEY_VALUES;
+            case startswith:
+            case contains:
+                return Strategy.KEY_PATTERN;
+            default:
+                return Strategy.ROW_VALUES;
+        }
+    }
+
+    /**
+     * Build a filter matching any of the values of the key of a dimension.
+     *
+     * @param dimension  The dimension being filtered
+     * @param filter  The filter term the values were resolved from
+     * @param values  The values of the key
+     *
+     * @return a selector filter for a single value, or an in filter
+     */
+    private Filter buildValuesFilter(Dimension dimension, ApiFilter filter, List<String> values) {
+        checkSize(dimension, filter, values.size());
+        return values.size() == 1 ? new SelectorFilter(dimension, values.get(0)) : new InFilter(dimension, values);
+    }
+
+    /**
+     * Build the regular expression matching the values of a {@code startswith} or {@code contains} term.
+     * <p>
+     * Druid finds the expression anywhere in a value, so only a {@code startswith} expression is anchored.
+     *
+     * @param filter  The filter term
+     *
+     * @return the regular expression
+     */
+    private static Pattern buildPattern(ApiFilter filter) {
+        String alternatives = filter.getValues().stream()
+                .sorted()
+                .map(Pattern::quote)
+                .collect(Collectors.joining("|"));
+        if (filter.getOperation() == FilterOperation.startswith) {
+            return Pattern.compile(filter.getValues().size() == 1 ? "^" + alternatives : "^(?:" + alternatives + ")");
+        }
+        return Pattern.compile(alternatives);
+    }
+
+    /**
+     * Reject a filter term resolving to more values than the budget allows.
+     *
+     * @param dimension  The dimension being filtered
+     * @param filter  The filter term
+     * @param size  The number of values the term resolved to
+     *
+     * @throws BadApiRequestException if there are too many values
+     */
+    private void checkSize(Dimension dimension, ApiFilter filter, int size) {
+        if (size > maxValues) {
+            String msg = ErrorMessageFormat.TOO_MANY_FILTER_VALUES.format(
+                    dimension.getApiName(),
+                    filter,
+                    size,
+                    maxValues
+            );
+            LOG.debug(msg);
+            throw new BadApiRequestException(msg);
+        }
+    }
+}
@@ -42,7 +42,15 @@ public abstract class ConjunctionDruidFilterBuilder implements DruidFilterBuilde
 
         List<Filter> dimensionFilters = new ArrayList<>(filterMap.size());
         for (Map.Entry<Dimension, Set<ApiFilter>> entry : filterMap.entrySet()) {
-            dimensionFilters.add(buildDimensionFilter(entry.getKey(), entry.getValue()));
+            Filter dimensionFilter = buildDimensionFilter(entry.getKey(), entry.getValue());
+            if (dimensionFilter != null) {
+                dimensionFilters.add(dimensionFilter);
+            }
+        }
+
+        // the filters match every row
+        if (dimensionFilters.isEmpty()) {
+            return null;
         }
 
         // for a single filter just return the entry and not a collection containing one entry
@@ -61,7 +69,8 @@ public abstract class ConjunctionDruidFilterBuilder implements DruidFilterBuilde
      * @param dimension  Dimension for the filters
      * @param filters  All filters belonging to that dimension
      *
-     * @return A druid query filter object representing the filtering on a given dimension
+     * @return A druid query filter object representing the filtering on a given dimension, or null if the filters
+     * match every row
      *
      * @throws DimensionRowNotFoundException if we attempt to filter a dimension without dimension rows
      */
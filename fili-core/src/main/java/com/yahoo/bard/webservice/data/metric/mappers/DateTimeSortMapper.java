@@ -2,6 +2,7 @@
 // Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
 package com.yahoo.bard.webservice.data.metric.mappers;
 
+import com.yahoo.bard.webservice.data.ColumnarResultSet;
 import com.yahoo.bard.webservice.data.Result;
 import com.yahoo.bard.webservice.data.ResultSet;
 import com.yahoo.bard.webservice.data.ResultSetSchema;
@@ -11,6 +12,7 @@ import com.yahoo.bard.webservice.logging.RequestLog;
 import org.joda.time.DateTime;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.LinkedHashMap;
@@ -48,6 +50,10 @@ public class DateTimeSortMapper extends ResultSetMapper {
 
         RequestLog.startTiming("sortResultSet");
         try {
+            if (resultSet instanceof ColumnarResultSet && ((ColumnarResultSet) resultSet).hasUniformChronology()) {
+                return sortColumnar((ColumnarResultSet) resultSet);
+            }
+
             for (Result result : resultSet) {
                 bucketizedResultsMap.computeIfAbsent(result.getTimeStamp(), ignored -> new ArrayList<>()).add(result);
             }
@@ -70,6 +76,41 @@ public class DateTimeSortMapper extends ResultSetMapper {
         }
     }
 
+    /**
+     * Sort a columnar result set by the epoch millis of its timestamps, keeping the order of rows within a time bucket.
+     * <p>
+     * The sorted result set reads from the same columns, so no timestamps or rows are built to sort it.
+     *
+     * @param resultSet  The result set to sort, whose timestamps all have the same chronology
+     *
+     * @return sorted ResultSet
+     */
+    private ResultSet sortColumnar(ColumnarResultSet resultSet) {
+        int size = resultSet.size();
+        long[] millis = new long[size];
+        for (int row = 0; row < size; row++) {
+            millis[row] = resultSet.getTimeMillis(row);
+        }
+        long[] bucketMillis = Arrays.stream(millis).sorted().distinct().toArray();
+
+        // Counting sort of the rows by bucket, which is stable
+        int[] buckets = new int[size];
+        int[] bucketStarts = new int[bucketMillis.length + 1];
+        for (int row = 0; row < size; row++) {
+            int bucket = Arrays.binarySearch(bucketMillis, millis[row]);
+            buckets[row] = direction == SortDirection.ASC ? bucket : bucketMillis.length - 1 - bucket;
+            bucketStarts[buckets[row] + 1]++;
+        }
+        for (int bucket = 0; bucket < bucketMillis.length; bucket++) {
+            bucketStarts[bucket + 1] += bucketStarts[bucket];
+        }
+        int[] positions = new int[size];
+        for (int row = 0; row < size; row++) {
+            positions[bucketStarts[buckets[row]]++] = row;
+        }
+        return resultSet.select(resultSet.getSchema(), positions);
+    }
+
     @Override
     protected Result map(Result result, ResultSetSchema schema) {
         //Not needed, because this mapper overrides map(ResultSet). So it is just a no-op.
@@ -2,6 +2,7 @@
 // Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
 package com.yahoo.bard.webservice.data.metric.mappers;
 
+import com.yahoo.bard.webservice.data.ColumnarResultSet;
 import com.yahoo.bard.webservice.data.Result;
 import com.yahoo.bard.webservice.data.ResultSet;
 import com.yahoo.bard.webservice.data.ResultSetSchema;
@@ -11,6 +12,8 @@ import com.yahoo.bard.webservice.web.AbstractResponse;
 import com.yahoo.bard.webservice.web.responseprocessors.MappingResponseProcessor;
 import com.yahoo.bard.webservice.web.util.PaginationParameters;
 
+import java.util.stream.IntStream;
+
 import javax.ws.rs.core.UriBuilder;
 
 /**
@@ -54,6 +57,12 @@ public class PaginationMapper extends ResultSetMapper {
         Pagination<Result> pages = new AllPagesPagination<>(resultSet, paginationParameters);
         AbstractResponse.addLinks(pages, uriBuilder, responseProcessor);
         //uses map for additional flexibility and robustness, even though it is currently a no-op.
+        if (resultSet instanceof ColumnarResultSet) {
+            // The page is a contiguous range of rows, which keeps reading from the same columns
+            int offset = (pages.getPage() - 1) * pages.getPerPage();
+            int[] positions = IntStream.range(offset, offset + pages.getPageOfData().size()).toArray();
+            return ((ColumnarResultSet) resultSet).select(map(resultSet.getSchema()), positions);
+        }
         return new ResultSet(map(resultSet.getSchema()), pages.getPageOfData());
     }
 
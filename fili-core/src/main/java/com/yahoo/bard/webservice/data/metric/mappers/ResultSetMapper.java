@@ -2,6 +2,7 @@
 // Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
 package com.yahoo.bard.webservice.data.metric.mappers;
 
+import com.yahoo.bard.webservice.data.ColumnarResultSet;
 import com.yahoo.bard.webservice.data.ResultSetSchema;
 import com.yahoo.bard.webservice.data.Result;
 import com.yahoo.bard.webservice.data.ResultSet;
@@ -10,6 +11,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -31,15 +33,37 @@ abstract public class ResultSetMapper {
         List<Result> newResults = new ArrayList<>();
         Result newResult;
 
+        // Positions of the kept rows, while every kept row is returned unchanged
+        int[] positions = resultSet instanceof ColumnarResultSet ? new int[resultSet.size()] : null;
+        int position = 0;
+
         for (Result r: resultSet) {
             newResult = map(r, resultSet.getSchema());
             if (newResult != null) {
+                if (positions != null && newResult != r) {
+                    positions = null;
+                }
+                if (positions != null) {
+                    positions[newResults.size()] = position;
+                }
                 newResults.add(newResult);
             }
+            position++;
         }
 
         ResultSetSchema newSchema = map(resultSet.getSchema());
-        ResultSet newResultSet = new ResultSet(newSchema, newResults);
+        ResultSet newResultSet;
+        if (positions != null) {
+            // Rows were only removed, so the mapped result set keeps reading from the same columns
+            newResultSet = ((ColumnarResultSet) resultSet).select(
+                    newSchema,
+                    Arrays.copyOf(positions, newResults.size())
+            );
+        } else if (resultSet instanceof ColumnarResultSet) {
+            newResultSet = ColumnarResultSet.of(newSchema, newResults);
+        } else {
+            newResultSet = new ResultSet(newSchema, newResults);
+        }
         LOG.trace("Mapped resultSet: {} to new resultSet {}", resultSet, newResultSet);
 
         return newResultSet;
@@ -2,6 +2,7 @@
 // Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
 package com.yahoo.bard.webservice.data.metric.mappers;
 
+import com.yahoo.bard.webservice.data.ColumnarResultSet;
 import com.yahoo.bard.webservice.data.ResultSetSchema;
 import com.yahoo.bard.webservice.data.Result;
 import com.yahoo.bard.webservice.data.ResultSet;
@@ -9,6 +10,7 @@ import com.yahoo.bard.webservice.data.ResultSet;
 import org.joda.time.DateTime;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.function.Consumer;
 
@@ -30,11 +32,36 @@ public class TopNResultSetMapper extends ResultSetMapper {
     @Override
     public ResultSet map(ResultSet resultSet) {
         // TODO: Use only native stream operations in RxJava: GroupByTime -> Sort -> Take N -> Concat streams by time
+        if (resultSet instanceof ColumnarResultSet && ((ColumnarResultSet) resultSet).hasUniformChronology()) {
+            return truncateColumnar((ColumnarResultSet) resultSet);
+        }
         TopNAccumulator acc = new TopNAccumulator();
         resultSet.stream().forEachOrdered(acc);
         return new ResultSet(resultSet.getSchema(), acc.data);
     }
 
+    /**
+     * Truncate a columnar result set by comparing the epoch millis of its timestamps, keeping its columns.
+     *
+     * @param resultSet  The result set to truncate, whose timestamps all have the same chronology
+     *
+     * @return the truncated result set
+     */
+    private ResultSet truncateColumnar(ColumnarResultSet resultSet) {
+        int[] positions = new int[resultSet.size()];
+        int kept = 0;
+        int filledBuckets = 0;
+        for (int row = 0; row < resultSet.size(); row++) {
+            if (row == 0 || resultSet.getTimeMillis(row) != resultSet.getTimeMillis(row - 1)) {
+                filledBuckets = 0;
+            }
+            if (filledBuckets++ < topN) {
+                positions[kept++] = row;
+            }
+        }
+        return resultSet.select(resultSet.getSchema(), Arrays.copyOf(positions, kept));
+    }
+
     @Override
     protected Result map(Result result, ResultSetSchema schema) {
         return result;
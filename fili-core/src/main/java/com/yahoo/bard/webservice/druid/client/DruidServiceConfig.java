@@ -27,6 +27,15 @@ public class DruidServiceConfig {
         this.priority = priority;
     }
 
+    /**
+     * The name of the druid service.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
     /**
      * The URL for the primary servlet of the druid service.
      *
@@ -0,0 +1,36 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.druid.client;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+
+/**
+ * Callback from the async HTTP client on success which consumes the response as a stream of JSON tokens.
+ * <p>
+ * Web services which support streaming hand the callback a parser over the response body, so that the response never
+ * needs to be built into a tree. Web services which do not support streaming may invoke the callback with a tree,
+ * in which case the tokens are read from the tree.
+ */
+public interface StreamingSuccessCallback extends SuccessCallback {
+
+    /**
+     * Invoke the success callback code.
+     *
+     * @param jsonParser  Parser over the response, positioned before the root-level value
+     *
+     * @throws IOException if the response cannot be read
+     */
+    void invoke(JsonParser jsonParser) throws IOException;
+
+    @Override
+    default void invoke(JsonNode rootNode) {
+        try {
+            invoke(rootNode.traverse());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,358 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.druid.client.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits the number of requests in flight to a backend, adapting the limit to the latency the backend responds with.
+ * <p>
+ * The limit is adjusted by additive increase, multiplicative decrease: a request which completes within the latency
+ * threshold while the limit is at least half used raises the limit by one over the limit, about one per round of
+ * requests, and a request which is slower than the threshold or fails with an overload lowers it by the backoff ratio.
+ * The limit stays between its minimum and maximum.
+ * <p>
+ * Requests over the limit wait in a bounded queue, in order of priority and then of arrival. A request arriving at a
+ * full queue takes the place of the last waiting request of a lower priority, if there is one, and is rejected
+ * otherwise. A request which waits longer than the maximum wait is rejected rather than sent late.
+ */
+public class AdaptiveConcurrencyLimiter {
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+
+    // Expires waiting requests for every limiter, so that a full backend does not delay the rejections
+    private static final ScheduledThreadPoolExecutor TIMEOUTS = new ScheduledThreadPoolExecutor(
+            1,
+            runnable -> {
+                Thread thread = new Thread(runnable, "druid-concurrency-limiter-timeouts");
+                thread.setDaemon(true);
+                return thread;
+            }
+    );
+
+    static {
+        TIMEOUTS.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * The priorities of requests, highest first.
+     */
+    public enum Priority {
+        WEIGHT_CHECK,
+        INTERACTIVE,
+        ASYNCHRONOUS
+    }
+
+    /**
+     * The reasons a request is rejected.
+     */
+    public enum Rejection {
+        QUEUE_FULL,
+        QUEUE_TIMEOUT
+    }
+
+    /**
+     * A request waiting for the limiter.
+     */
+    public interface LimitedRequest {
+
+        /**
+         * Send the request, releasing the permit when it completes.
+         *
+         * @param permit  The permit the request holds while in flight
+         */
+        void dispatch(Permit permit);
+
+        /**
+         * Fail the request without sending it.
+         *
+         * @param rejection  Why the request was rejected
+         */
+        void reject(Rejection rejection);
+    }
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long latencyThresholdNanos;
+    private final int maxQueueSize;
+    private final long maxQueueWaitMs;
+    private final LongSupplier clock;
+
+    // Guarded by this
+    private final NavigableSet<Waiter> queue = new TreeSet<>(
+            Comparator.comparing((Waiter waiter) -> waiter.priority).thenComparingLong(waiter -> waiter.sequence)
+    );
+    private double limit;
+    private int inFlight;
+    private long sequence;
+
+    /**
+     * Constructor.
+     *
+     * @param initialLimit  The limit to start at
+     * @param minLimit  The lowest the limit goes
+     * @param maxLimit  The highest the limit goes
+     * @param backoffRatio  The ratio the limit is lowered by on an overload, between 0 and 1
+     * @param latencyThresholdMs  The latency above which a request is taken as a sign of overload, in milliseconds
+     * @param maxQueueSize  The most requests which may wait
+     * @param maxQueueWaitMs  The longest a request may wait, in milliseconds
+     */
+    public AdaptiveConcurrencyLimiter(
+            int initialLimit,
+            int minLimit,
+            int maxLimit,
+            double backoffRatio,
+            long latencyThresholdMs,
+            int maxQueueSize,
+            long maxQueueWaitMs
+    ) {
+        this(
+                initialLimit,
+                minLimit,
+                maxLimit,
+                backoffRatio,
+                latencyThresholdMs,
+                maxQueueSize,
+                maxQueueWaitMs,
+                System::nanoTime
+        );
+    }
+
+    /**
+     * Constructor with a clock, for testing.
+     *
+     * @param initialLimit  The limit to start at
+     * @param minLimit  The lowest the limit goes
+     * @param maxLimit  The highest the limit goes
+     * @param backoffRatio  The ratio the limit is lowered by on an overload, between 0 and 1
+     * @param latencyThresholdMs  The latency above which a request is taken as a sign of overload, in milliseconds
+     * @param maxQueueSize  The most requests which may wait
+     * @param maxQueueWaitMs  The longest a request may wait, in milliseconds
+     * @param clock  Supplies the current time, in nanos
+     */
+    protected AdaptiveConcurrencyLimiter(
+            int initialLimit,
+            int minLimit,
+            int maxLimit,
+            double backoffRatio,
+            long latencyThresholdMs,
+            int maxQueueSize,
+            long maxQueueWaitMs,
+            LongSupplier clock
+    ) {
+        if (minLimit < 1 || maxLimit < minLimit || backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException(
+                    "Concurrency limits need 1 <= min <= max and a backoff ratio between 0 and 1: " + minLimit + ", "
+                            + maxLimit + ", " + backoffRatio
+            );
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMs);
+        this.maxQueueSize = maxQueueSize;
+        this.maxQueueWaitMs = maxQueueWaitMs;
+        this.clock = clock;
+        this.limit = Math.min(Math.max(initialLimit, minLimit), maxLimit);
+    }
+
+    /**
+     * Send a request now if the limit allows it, or queue it until it does.
+     *
+     * @param priority  The priority of the request
+     * @param request  The request
+     */
+    public void submit(Priority priority, LimitedRequest request) {
+        Waiter waiter = null;
+        Waiter evicted = null;
+        boolean dispatch = false;
+        synchronized (this) {
+            if (inFlight < getLimit() && queue.isEmpty()) {
+                inFlight++;
+                dispatch = true;
+            } else if (queue.size() < maxQueueSize) {
+                waiter = new Waiter(priority, sequence++, request);
+                queue.add(waiter);
+            } else if (!queue.isEmpty() && priority.compareTo(queue.last().priority) < 0) {
+                // Shed the newest of the lowest priority requests to make room for this one
+                evicted = queue.pollLast();
+                waiter = new Waiter(priority, sequence++, request);
+                queue.add(waiter);
+            }
+        }
+
+        if (dispatch) {
+            dispatch(request);
+        } else if (waiter == null) {
+            request.reject(Rejection.QUEUE_FULL);
+        } else {
+            Waiter scheduled = waiter;
+            waiter.timeout = TIMEOUTS.schedule(() -> expire(scheduled), maxQueueWaitMs, TimeUnit.MILLISECONDS);
+            if (evicted != null) {
+                cancelTimeout(evicted);
+                evicted.request.reject(Rejection.QUEUE_FULL);
+            }
+        }
+    }
+
+    /**
+     * Get the current limit on requests in flight.
+     *
+     * @return the limit
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Get the number of requests in flight.
+     *
+     * @return the requests in flight
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Get the number of requests waiting.
+     *
+     * @return the depth of the queue
+     */
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Release a permit, adjust the limit to its outcome, and send the waiting requests the new limit allows.
+     *
+     * @param latencyNanos  How long the request was in flight, in nanos
+     * @param overloaded  Whether the request failed in a way which signals the backend is overloaded
+     */
+    private void release(long latencyNanos, boolean overloaded) {
+        List<Waiter> ready = new ArrayList<>();
+        synchronized (this) {
+            if (overloaded || latencyNanos > latencyThresholdNanos) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+            } else if (inFlight >= limit / 2) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            inFlight--;
+            while (inFlight < getLimit() && !queue.isEmpty()) {
+                inFlight++;
+                ready.add(queue.pollFirst());
+            }
+        }
+        for (Waiter waiter : ready) {
+            cancelTimeout(waiter);
+            dispatch(waiter.request);
+        }
+    }
+
+    /**
+     * Send a request holding a permit, releasing the permit if sending throws.
+     *
+     * @param request  The request
+     */
+    private void dispatch(LimitedRequest request) {
+        Permit permit = new Permit(this, clock.getAsLong());
+        try {
+            request.dispatch(permit);
+        } catch (RuntimeException e) {
+            LOG.error("Limited request failed to dispatch", e);
+            permit.release(false);
+        }
+    }
+
+    /**
+     * Reject a request which waited too long, unless it has been sent or rejected already.
+     *
+     * @param waiter  The waiting request
+     */
+    private void expire(Waiter waiter) {
+        boolean removed;
+        synchronized (this) {
+            removed = queue.remove(waiter);
+        }
+        if (removed) {
+            waiter.request.reject(Rejection.QUEUE_TIMEOUT);
+        }
+    }
+
+    /**
+     * Stop the expiry of a request which is no longer waiting.
+     *
+     * @param waiter  The request
+     */
+    private static void cancelTimeout(Waiter waiter) {
+        ScheduledFuture<?> timeout = waiter.timeout;
+        if (timeout != null) {
+            timeout.cancel(false);
+        }
+    }
+
+    /**
+     * A slot in flight held by a request, released once when the request completes.
+     */
+    public static class Permit {
+        private final AdaptiveConcurrencyLimiter limiter;
+        private final long start;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        /**
+         * Constructor.
+         *
+         * @param limiter  The limiter the permit was taken from
+         * @param start  When the request was sent, in nanos
+         */
+        Permit(AdaptiveConcurrencyLimiter limiter, long start) {
+            this.limiter = limiter;
+            this.start = start;
+        }
+
+        /**
+         * Release the permit, if it has not been released already.
+         *
+         * @param overloaded  Whether the request failed in a way which signals the backend is overloaded
+         */
+        public void release(boolean overloaded) {
+            if (released.compareAndSet(false, true)) {
+                limiter.release(limiter.clock.getAsLong() - start, overloaded);
+            }
+        }
+    }
+
+    /**
+     * A request waiting in the queue.
+     */
+    private static class Waiter {
+        private final Priority priority;
+        private final long sequence;
+        private final LimitedRequest request;
+        private volatile ScheduledFuture<?> timeout;
+
+        /**
+         * Constructor.
+         *
+         * @param priority  The priority of the request
+         * @param sequence  The order the request arrived in
+         * @param request  The request
+         */
+        Waiter(Priority priority, long sequence, LimitedRequest request) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.request = request;
+        }
+    }
+}
@@ -2,26 +2,36 @@
 // Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
 package com.yahoo.bard.webservice.druid.client.impl;
 
+import static com.yahoo.bard.webservice.web.ErrorMessageFormat.DRUID_QUEUE_FULL;
+import static com.yahoo.bard.webservice.web.ErrorMessageFormat.DRUID_QUEUE_TIMEOUT;
 import static com.yahoo.bard.webservice.web.ErrorMessageFormat.DRUID_URL_INVALID;
 import static com.yahoo.bard.webservice.web.handlers.workflow.DruidWorkflow.REQUEST_WORKFLOW_TIMER;
 import static com.yahoo.bard.webservice.web.handlers.workflow.DruidWorkflow.RESPONSE_WORKFLOW_TIMER;
 
 import com.yahoo.bard.webservice.application.MetricRegistryFactory;
 import com.yahoo.bard.webservice.config.CacheFeatureFlag;
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
 import com.yahoo.bard.webservice.druid.client.DruidServiceConfig;
 import com.yahoo.bard.webservice.druid.client.DruidWebService;
 import com.yahoo.bard.webservice.druid.client.FailureCallback;
 import com.yahoo.bard.webservice.druid.client.HttpErrorCallback;
+import com.yahoo.bard.webservice.druid.client.StreamingSuccessCallback;
 import com.yahoo.bard.webservice.druid.client.SuccessCallback;
+import com.yahoo.bard.webservice.druid.client.impl.AdaptiveConcurrencyLimiter.Priority;
+import com.yahoo.bard.webservice.druid.client.impl.AdaptiveConcurrencyLimiter.Rejection;
 import com.yahoo.bard.webservice.druid.model.query.DruidQuery;
 import com.yahoo.bard.webservice.druid.model.query.WeightEvaluationQuery;
 import com.yahoo.bard.webservice.logging.RequestLog;
 import com.yahoo.bard.webservice.logging.blocks.DruidResponse;
 import com.yahoo.bard.webservice.util.CompletedFuture;
+import com.yahoo.bard.webservice.web.ResponseCode;
 import com.yahoo.bard.webservice.web.handlers.RequestContext;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.MappingJsonFactory;
@@ -39,9 +49,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -50,15 +63,58 @@ import javax.ws.rs.core.Response.Status;
 
 /**
  * Represents the druid web service endpoint.
+ * <p>
+ * Druid queries are sent through an {@link AdaptiveConcurrencyLimiter}, unless
+ * {@code druid_concurrency_limiter_enabled} is off, so that a slow broker is sent fewer queries at once rather than
+ * more. Queries over the limit wait with weight check queries first, then queries of synchronous requests, then queries
+ * of requests which may become jobs, and queries which can't wait are answered with 429 or 503 without being sent.
  */
 public class AsyncDruidWebServiceImpl implements DruidWebService {
     private static final Logger LOG = LoggerFactory.getLogger(AsyncDruidWebServiceImpl.class);
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
     private static final MetricRegistry REGISTRY = MetricRegistryFactory.getRegistry();
+    private static final MappingJsonFactory JSON_FACTORY = new MappingJsonFactory();
+
+    private static final boolean CONCURRENCY_LIMITER_ENABLED = SYSTEM_CONFIG.getBooleanProperty(
+            SYSTEM_CONFIG.getPackageVariableName("druid_concurrency_limiter_enabled"),
+            true
+    );
+    private static final int CONCURRENCY_LIMIT_INITIAL = SYSTEM_CONFIG.getIntProperty(
+            SYSTEM_CONFIG.getPackageVariableName("druid_concurrency_limit_initial"),
+            64
+    );
+    private static final int CONCURRENCY_LIMIT_MIN = SYSTEM_CONFIG.getIntProperty(
+            SYSTEM_CONFIG.getPackageVariableName("druid_concurrency_limit_min"),
+            8
+    );
+    private static final int CONCURRENCY_LIMIT_MAX = SYSTEM_CONFIG.getIntProperty(
+            SYSTEM_CONFIG.getPackageVariableName("druid_concurrency_limit_max"),
+            512
+    );
+    private static final double CONCURRENCY_BACKOFF_RATIO = SYSTEM_CONFIG.getDoubleProperty(
+            SYSTEM_CONFIG.getPackageVariableName("druid_concurrency_backoff_ratio"),
+            0.9
+    );
+    private static final long CONCURRENCY_LATENCY_THRESHOLD_MS = SYSTEM_CONFIG.getLongProperty(
+            SYSTEM_CONFIG.getPackageVariableName("druid_concurrency_latency_threshold_ms"),
+            10000L
+    );
+    private static final int CONCURRENCY_QUEUE_SIZE = SYSTEM_CONFIG.getIntProperty(
+            SYSTEM_CONFIG.getPackageVariableName("druid_concurrency_queue_size"),
+            512
+    );
+    private static final long CONCURRENCY_QUEUE_WAIT_MS = SYSTEM_CONFIG.getLongProperty(
+            SYSTEM_CONFIG.getPackageVariableName("druid_concurrency_queue_wait_ms"),
+            2000L
+    );
 
     private final AsyncHttpClient webClient;
     private final ObjectWriter writer;
     private final Meter httpErrorMeter;
     private final Meter exceptionMeter;
+    private final Meter queueFullMeter;
+    private final Meter queueTimeoutMeter;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
 
     public static final String DRUID_TIMER = "DruidProcessing";
     public static final String DRUID_QUERY_TIMER = DRUID_TIMER + "_Q_";
@@ -223,8 +279,39 @@ public class AsyncDruidWebServiceImpl implements DruidWebService {
         this.writer = mapper.writer();
         this.httpErrorMeter = REGISTRY.meter("druid.errors.http");
         this.exceptionMeter = REGISTRY.meter("druid.errors.exceptions");
+        this.queueFullMeter = REGISTRY.meter("druid.errors.queue.full");
+        this.queueTimeoutMeter = REGISTRY.meter("druid.errors.queue.timeout");
 
         this.jsonNodeBuilderStrategy = jsonNodeBuilderStrategy;
+
+        this.concurrencyLimiter = CONCURRENCY_LIMITER_ENABLED
+                ? new AdaptiveConcurrencyLimiter(
+                        CONCURRENCY_LIMIT_INITIAL,
+                        CONCURRENCY_LIMIT_MIN,
+                        CONCURRENCY_LIMIT_MAX,
+                        CONCURRENCY_BACKOFF_RATIO,
+                        CONCURRENCY_LATENCY_THRESHOLD_MS,
+                        CONCURRENCY_QUEUE_SIZE,
+                        CONCURRENCY_QUEUE_WAIT_MS
+                )
+                : null;
+        if (concurrencyLimiter != null) {
+            String prefix = "druid.concurrency." + config.getName();
+            registerGauge(prefix + ".limit", concurrencyLimiter::getLimit);
+            registerGauge(prefix + ".inflight", concurrencyLimiter::getInFlight);
+            registerGauge(prefix + ".queue.depth", concurrencyLimiter::getQueueDepth);
+        }
+    }
+
+    /**
+     * Register a gauge, replacing any gauge of the same name registered by an earlier instance.
+     *
+     * @param name  The name of the gauge
+     * @param gauge  The gauge
+     */
+    private static void registerGauge(String name, Gauge<Integer> gauge) {
+        REGISTRY.remove(name);
+        REGISTRY.register(name, gauge);
     }
 
     /**
@@ -285,6 +372,13 @@ public class AsyncDruidWebServiceImpl implements DruidWebService {
 
                         if (hasError(status)) {
                             markError(status, response, druidQueryId, error);
+                        } else if (success instanceof StreamingSuccessCallback) {
+                            // Streaming callbacks read the body directly, without building a JSON tree first
+                            try (JsonParser parser = JSON_FACTORY.createParser(response.getResponseBodyAsStream())) {
+                                ((StreamingSuccessCallback) success).invoke(parser);
+                            } catch (IOException | RuntimeException e) {
+                                failure.invoke(e);
+                            }
                         } else {
                             try {
                                 success.invoke(jsonNodeBuilderStrategy.apply(response));
@@ -353,10 +447,11 @@ public class AsyncDruidWebServiceImpl implements DruidWebService {
             DruidQuery<?> druidQuery
     ) {
         long seqNum = druidQuery.getContext().getSequenceNumber();
-        String entityBody;
+        byte[] entityBody;
         RequestLog.startTiming("DruidQuerySerializationSeq" + seqNum);
         try {
-            entityBody = writer.writeValueAsString(druidQuery);
+            // Serialize straight to UTF-8, the body is sent as bytes
+            entityBody = writer.writeValueAsBytes(druidQuery);
         } catch (JsonProcessingException e) {
             throw new IllegalStateException(e);
         } finally {
@@ -385,8 +480,21 @@ public class AsyncDruidWebServiceImpl implements DruidWebService {
 
         headersToAppend.get().forEach(requestBuilder::addHeader);
 
-        LOG.debug("druid json request: {}", entityBody);
-        return sendRequest(
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("druid json request: {}", new String(entityBody, StandardCharsets.UTF_8));
+        }
+        if (concurrencyLimiter == null) {
+            return sendRequest(
+                    success,
+                    error,
+                    failure,
+                    requestBuilder,
+                    timerName,
+                    outstanding
+            );
+        }
+        return sendLimitedRequest(
+                getPriority(context, druidQuery),
                 success,
                 error,
                 failure,
@@ -396,6 +504,180 @@ public class AsyncDruidWebServiceImpl implements DruidWebService {
         );
     }
 
+    /**
+     * Get the priority a query waits for the concurrency limiter with.
+     *
+     * @param context  The context of the request the query answers
+     * @param druidQuery  The query
+     *
+     * @return the priority of the query
+     */
+    protected Priority getPriority(RequestContext context, DruidQuery<?> druidQuery) {
+        if (druidQuery instanceof WeightEvaluationQuery) {
+            return Priority.WEIGHT_CHECK;
+        }
+        return context != null && context.isAsynchronous() ? Priority.ASYNCHRONOUS : Priority.INTERACTIVE;
+    }
+
+    /**
+     * Send a request once the concurrency limiter allows it, or answer it with an error if it can't wait.
+     * <p>
+     * The request log of the current thread travels with the request, as it does with a request sent directly, so a
+     * request sent later from another thread is logged against the request it belongs to.
+     *
+     * @param priority  The priority of the request
+     * @param success  callback for handling successful requests.
+     * @param error  callback for handling http errors.
+     * @param failure  callback for handling exception failures.
+     * @param requestBuilder  The bound request builder for the request to be sent.
+     * @param timerName  The name that distinguishes this request as part of a druid query or segment metadata request
+     * @param outstanding  The counter that keeps track of the outstanding (in flight) requests for the top level query
+     *
+     * @return a future response for the query being sent
+     */
+    protected Future<Response> sendLimitedRequest(
+            Priority priority,
+            SuccessCallback success,
+            HttpErrorCallback error,
+            FailureCallback failure,
+            BoundRequestBuilder requestBuilder,
+            String timerName,
+            AtomicLong outstanding
+    ) {
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        RequestLog logCtx = RequestLog.dump();
+        concurrencyLimiter.submit(priority, new AdaptiveConcurrencyLimiter.LimitedRequest() {
+            @Override
+            public void dispatch(AdaptiveConcurrencyLimiter.Permit permit) {
+                RequestLog current = RequestLog.dump();
+                RequestLog.restore(logCtx);
+                try {
+                    sendRequest(
+                            releasing(permit, success, future),
+                            (statusCode, reasonPhrase, responseBody) -> {
+                                permit.release(isOverloaded(statusCode));
+                                try {
+                                    error.invoke(statusCode, reasonPhrase, responseBody);
+                                } finally {
+                                    future.complete(null);
+                                }
+                            },
+                            throwable -> {
+                                permit.release(isOverloaded(throwable));
+                                try {
+                                    failure.invoke(throwable);
+                                } finally {
+                                    future.completeExceptionally(throwable);
+                                }
+                            },
+                            requestBuilder,
+                            timerName,
+                            outstanding
+                    );
+                } finally {
+                    RequestLog.restore(current);
+                }
+            }
+
+            @Override
+            public void reject(Rejection rejection) {
+                RequestLog.restore(logCtx);
+                if (outstanding.decrementAndGet() == 0) {
+                    RequestLog.startTiming(RESPONSE_WORKFLOW_TIMER);
+                }
+                try {
+                    if (rejection == Rejection.QUEUE_FULL) {
+                        queueFullMeter.mark();
+                        String message = DRUID_QUEUE_FULL.format(serviceConfig.getNameAndUrl());
+                        LOG.warn(message);
+                        error.invoke(
+                                ResponseCode.RATE_LIMIT.getStatusCode(),
+                                ResponseCode.RATE_LIMIT.getReasonPhrase(),
+                                message
+                        );
+                    } else {
+                        queueTimeoutMeter.mark();
+                        String message = DRUID_QUEUE_TIMEOUT.format(
+                                CONCURRENCY_QUEUE_WAIT_MS,
+                                serviceConfig.getNameAndUrl()
+                        );
+                        LOG.warn(message);
+                        error.invoke(
+                                Status.SERVICE_UNAVAILABLE.getStatusCode(),
+                                Status.SERVICE_UNAVAILABLE.getReasonPhrase(),
+                                message
+                        );
+                    }
+                } finally {
+                    future.complete(null);
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Wrap a success callback to release a permit before it runs, keeping it a streaming callback if it is one.
+     *
+     * @param permit  The permit to release
+     * @param success  The success callback
+     * @param future  The future to complete once the callback has run
+     *
+     * @return the wrapped success callback
+     */
+    private static SuccessCallback releasing(
+            AdaptiveConcurrencyLimiter.Permit permit,
+            SuccessCallback success,
+            CompletableFuture<Response> future
+    ) {
+        if (success instanceof StreamingSuccessCallback) {
+            return (StreamingSuccessCallback) jsonParser -> {
+                permit.release(false);
+                try {
+                    ((StreamingSuccessCallback) success).invoke(jsonParser);
+                } finally {
+                    future.complete(null);
+                }
+            };
+        }
+        return rootNode -> {
+            permit.release(false);
+            try {
+                success.invoke(rootNode);
+            } finally {
+                future.complete(null);
+            }
+        };
+    }
+
+    /**
+     * Whether an error status from Druid signals that it is overloaded.
+     *
+     * @param statusCode  The status code of the response
+     *
+     * @return true if Druid is throttling or timing out queries
+     */
+    protected boolean isOverloaded(int statusCode) {
+        return statusCode == ResponseCode.RATE_LIMIT.getStatusCode()
+                || statusCode == Status.SERVICE_UNAVAILABLE.getStatusCode()
+                || statusCode == Status.GATEWAY_TIMEOUT.getStatusCode();
+    }
+
+    /**
+     * Whether a failure sending a query to Druid signals that it is overloaded.
+     * <p>
+     * Only failures to reach Druid or to read its response, and timeouts, do. Failures of the client itself, like a
+     * response which can't be parsed or a callback which throws, say nothing about the load on Druid.
+     *
+     * @param throwable  The failure
+     *
+     * @return true if the failure is a transport failure or a timeout
+     */
+    protected boolean isOverloaded(Throwable throwable) {
+        return throwable instanceof TimeoutException
+                || (throwable instanceof IOException && !(throwable instanceof JsonProcessingException));
+    }
+
     @Override
     public Integer getTimeout() {
         return serviceConfig.getTimeout();
@@ -418,6 +700,10 @@ public class AsyncDruidWebServiceImpl implements DruidWebService {
         return serviceConfig;
     }
 
+    protected AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
     /**
      * <ol>
      *     <li>Logs request using RequestLog,</li>
@@ -6,7 +6,9 @@ import com.yahoo.bard.webservice.druid.model.QueryType;
 import com.yahoo.bard.webservice.druid.model.datasource.DataSource;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
+import java.io.IOException;
 import java.util.Optional;
 
 /**
@@ -84,4 +86,19 @@ public interface DruidQuery<Q extends DruidQuery<? super Q>> {
      * @return the query copy
      */
     Q withContext(QueryContext context);
+
+    /**
+     * Returns a canonical fingerprint of this query, which ignores the contexts of the query and its inner queries.
+     *
+     * @param writer  The writer serializing queries to JSON
+     *
+     * @return the query fingerprint
+     *
+     * @throws IOException if the query cannot be serialized
+     *
+     * @see QueryFingerprint
+     */
+    default String getFingerprint(ObjectWriter writer) throws IOException {
+        return QueryFingerprint.of(this, writer);
+    }
 }
@@ -0,0 +1,400 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.druid.model.query;
+
+import com.fasterxml.jackson.core.Base64Variant;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.util.JsonGeneratorDelegate;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingOutputStream;
+import com.google.common.io.ByteStreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Canonical fingerprints of Druid queries, suitable for use as cache keys.
+ * <p>
+ * The canonical form of a query is its JSON serialization, leaving out the query contexts at every level of the query
+ * and keeping everything else, including empty arrays and objects. The key of a fingerprint is a 128 bit hash of the
+ * canonical form, and its checksum is a SHA-256 hash of it, which caches store beside a value to detect key
+ * collisions. The JSON is streamed straight into the hashes as it is generated, without building a tree or a String.
+ */
+public final class QueryFingerprint {
+
+    private static final HashFunction KEY_FUNCTION = Hashing.murmur3_128();
+    private static final HashFunction CHECKSUM_FUNCTION = Hashing.sha256();
+
+    private final String key;
+    private final String checksum;
+
+    /**
+     * Constructor.
+     *
+     * @param key  The key of the query
+     * @param checksum  The checksum of the query
+     */
+    private QueryFingerprint(String key, String checksum) {
+        this.key = key;
+        this.checksum = checksum;
+    }
+
+    /**
+     * Compute the fingerprint key of a query.
+     *
+     * @param query  The query to fingerprint
+     * @param writer  The writer serializing queries to JSON
+     *
+     * @return the fingerprint key as 32 hexadecimal characters
+     *
+     * @throws IOException if the query cannot be serialized
+     */
+    public static String of(DruidQuery<?> query, ObjectWriter writer) throws IOException {
+        HashingOutputStream keyHash = new HashingOutputStream(KEY_FUNCTION, ByteStreams.nullOutputStream());
+        writeCanonical(query, writer, keyHash);
+        return keyHash.hash().toString();
+    }
+
+    /**
+     * Compute the fingerprint key and checksum of a query, in a single pass over its canonical form.
+     *
+     * @param query  The query to fingerprint
+     * @param writer  The writer serializing queries to JSON
+     *
+     * @return the fingerprint
+     *
+     * @throws IOException if the query cannot be serialized
+     */
+    public static QueryFingerprint compute(DruidQuery<?> query, ObjectWriter writer) throws IOException {
+        HashingOutputStream checksumHash = new HashingOutputStream(CHECKSUM_FUNCTION, ByteStreams.nullOutputStream());
+        HashingOutputStream keyHash = new HashingOutputStream(KEY_FUNCTION, checksumHash);
+        writeCanonical(query, writer, keyHash);
+        return new QueryFingerprint(keyHash.hash().toString(), checksumHash.hash().toString());
+    }
+
+    /**
+     * Write the canonical form of a query.
+     *
+     * @param query  The query to write
+     * @param writer  The writer serializing queries to JSON
+     * @param out  The stream receiving the canonical form as UTF-8 encoded JSON, which is closed afterwards
+     *
+     * @throws IOException if the query cannot be serialized
+     */
+    public static void writeCanonical(DruidQuery<?> query, ObjectWriter writer, OutputStream out) throws IOException {
+        try (JsonGenerator generator = new ContextSkippingGenerator(writer.getFactory().createGenerator(out))) {
+            writer.writeValue(generator, query);
+        }
+    }
+
+    /**
+     * Get the key of the query, 32 hexadecimal characters.
+     *
+     * @return the key
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Get the checksum of the query, 64 hexadecimal characters.
+     *
+     * @return the checksum
+     */
+    public String getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * Prefix a String cache value with the checksum of the query it answers, so that reads can detect key collisions.
+     *
+     * @param value  The cache value
+     * @param checksum  The checksum of the query, or null to store the value alone
+     *
+     * @return the value to store in the cache
+     */
+    public static String withChecksum(String value, String checksum) {
+        return checksum == null ? value : checksum + value;
+    }
+
+    /**
+     * Get a String cache value, if it was stored for the query with the given checksum.
+     *
+     * @param value  The cache value
+     * @param checksum  The checksum of the query, or null if the value was stored alone
+     *
+     * @return the value without its checksum, or null if the value was stored for a different query
+     */
+    public static String verifyChecksum(String value, String checksum) {
+        if (checksum == null || value == null) {
+            return value;
+        }
+        return value.startsWith(checksum) ? value.substring(checksum.length()) : null;
+    }
+
+    /**
+     * Generator dropping every field named context, at any depth, along with its value.
+     * <p>
+     * Copy methods are not delegated, so that objects and trees written through this generator are filtered as well.
+     */
+    private static final class ContextSkippingGenerator extends JsonGeneratorDelegate {
+
+        private boolean skipping = false;
+        private int depth = 0;
+
+        /**
+         * Constructor.
+         *
+         * @param delegate  The generator writing the canonical form
+         */
+        ContextSkippingGenerator(JsonGenerator delegate) {
+            super(delegate, false);
+        }
+
+        /**
+         * Note a field name, starting to skip if it is a context.
+         *
+         * @param name  The field name
+         *
+         * @return true if the field name is skipped
+         */
+        private boolean skipField(String name) {
+            if (!skipping && "context".equals(name)) {
+                skipping = true;
+                depth = 0;
+            }
+            return skipping;
+        }
+
+        /**
+         * Note a scalar value, which ends a skipped context if it is the context's value.
+         *
+         * @return true if the value is skipped
+         */
+        private boolean skipValue() {
+            if (skipping && depth == 0) {
+                skipping = false;
+                return true;
+            }
+            return skipping;
+        }
+
+        /**
+         * Note the start of an array or object.
+         *
+         * @return true if the start is skipped
+         */
+        private boolean skipStart() {
+            if (skipping) {
+                depth++;
+            }
+            return skipping;
+        }
+
+        /**
+         * Note the end of an array or object, which ends a skipped context if it closes the context's value.
+         *
+         * @return true if the end is skipped
+         */
+        private boolean skipEnd() {
+            if (skipping && --depth == 0) {
+                skipping = false;
+                return true;
+            }
+            return skipping;
+        }
+
+        @Override
+        public void writeFieldName(String name) throws IOException {
+            if (!skipField(name)) {
+                super.writeFieldName(name);
+            }
+        }
+
+        @Override
+        public void writeFieldName(SerializableString name) throws IOException {
+            if (!skipField(name.getValue())) {
+                super.writeFieldName(name);
+            }
+        }
+
+        @Override
+        public void writeStartArray() throws IOException {
+            if (!skipStart()) {
+                super.writeStartArray();
+            }
+        }
+
+        @Override
+        public void writeStartArray(int size) throws IOException {
+            if (!skipStart()) {
+                super.writeStartArray(size);
+            }
+        }
+
+        @Override
+        public void writeEndArray() throws IOException {
+            if (!skipEnd()) {
+                super.writeEndArray();
+            }
+        }
+
+        @Override
+        public void writeStartObject() throws IOException {
+            if (!skipStart()) {
+                super.writeStartObject();
+            }
+        }
+
+        @Override
+        public void writeEndObject() throws IOException {
+            if (!skipEnd()) {
+                super.writeEndObject();
+            }
+        }
+
+        @Override
+        public void writeString(String text) throws IOException {
+            if (!skipValue()) {
+                super.writeString(text);
+            }
+        }
+
+        @Override
+        public void writeString(char[] text, int offset, int len) throws IOException {
+            if (!skipValue()) {
+                super.writeString(text, offset, len);
+            }
+        }
+
+        @Override
+        public void writeString(SerializableString text) throws IOException {
+            if (!skipValue()) {
+                super.writeString(text);
+            }
+        }
+
+        @Override
+        public void writeRawUTF8String(byte[] text, int offset, int length) throws IOException {
+            if (!skipValue()) {
+                super.writeRawUTF8String(text, offset, length);
+            }
+        }
+
+        @Override
+        public void writeUTF8String(byte[] text, int offset, int length) throws IOException {
+            if (!skipValue()) {
+                super.writeUTF8String(text, offset, length);
+            }
+        }
+
+        @Override
+        public void writeRawValue(String text) throws IOException {
+            if (!skipValue()) {
+                super.writeRawValue(text);
+            }
+        }
+
+        @Override
+        public void writeRawValue(String text, int offset, int len) throws IOException {
+            if (!skipValue()) {
+                super.writeRawValue(text, offset, len);
+            }
+        }
+
+        @Override
+        public void writeRawValue(char[] text, int offset, int len) throws IOException {
+            if (!skipValue()) {
+                super.writeRawValue(text, offset, len);
+            }
+        }
+
+        @Override
+        public void writeBinary(Base64Variant b64variant, byte[] data, int offset, int len) throws IOException {
+            if (!skipValue()) {
+                super.writeBinary(b64variant, data, offset, len);
+            }
+        }
+
+        @Override
+        public int writeBinary(Base64Variant b64variant, InputStream data, int dataLength) throws IOException {
+            return skipValue() ? 0 : super.writeBinary(b64variant, data, dataLength);
+        }
+
+        @Override
+        public void writeNumber(short v) throws IOException {
+            if (!skipValue()) {
+                super.writeNumber(v);
+            }
+        }
+
+        @Override
+        public void writeNumber(int v) throws IOException {
+            if (!skipValue()) {
+                super.writeNumber(v);
+            }
+        }
+
+        @Override
+        public void writeNumber(long v) throws IOException {
+            if (!skipValue()) {
+                super.writeNumber(v);
+            }
+        }
+
+        @Override
+        public void writeNumber(BigInteger v) throws IOException {
+            if (!skipValue()) {
+                super.writeNumber(v);
+            }
+        }
+
+        @Override
+        public void writeNumber(double v) throws IOException {
+            if (!skipValue()) {
+                super.writeNumber(v);
+            }
+        }
+
+        @Override
+        public void writeNumber(float v) throws IOException {
+            if (!skipValue()) {
+                super.writeNumber(v);
+            }
+        }
+
+        @Override
+        public void writeNumber(BigDecimal v) throws IOException {
+            if (!skipValue()) {
+                super.writeNumber(v);
+            }
+        }
+
+        @Override
+        public void writeNumber(String encodedValue) throws IOException {
+            if (!skipValue()) {
+                super.writeNumber(encodedValue);
+            }
+        }
+
+        @Override
+        public void writeBoolean(boolean state) throws IOException {
+            if (!skipValue()) {
+                super.writeBoolean(state);
+            }
+        }
+
+        @Override
+        public void writeNull() throws IOException {
+            if (!skipValue()) {
+                super.writeNull();
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.metadata;
+
+import com.yahoo.bard.webservice.data.config.names.DataSourceName;
+import com.yahoo.bard.webservice.util.SimplifiedIntervalList;
+
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * A change to the segment metadata of a data source, published by the {@link DataSourceMetadataService}.
+ * <p>
+ * The changed intervals cover every segment which was added or removed, so anything computed from the segments of the
+ * data source outside those intervals, or from columns other than the changed columns, is still valid.
+ */
+public class DataSourceMetadataChange {
+    private final DataSourceName dataSourceName;
+    private final SimplifiedIntervalList changedIntervals;
+    private final Set<String> changedColumns;
+    private final long version;
+
+    /**
+     * Constructor.
+     *
+     * @param dataSourceName  The data source whose metadata changed
+     * @param changedIntervals  The intervals of the segments which were added or removed
+     * @param changedColumns  The columns of the segments which were added or removed
+     * @param version  The version of the metadata service after the change
+     */
+    public DataSourceMetadataChange(
+            DataSourceName dataSourceName,
+            SimplifiedIntervalList changedIntervals,
+            @NotNull Set<String> changedColumns,
+            long version
+    ) {
+        this.dataSourceName = dataSourceName;
+        this.changedIntervals = changedIntervals;
+        this.changedColumns = Collections.unmodifiableSet(changedColumns);
+        this.version = version;
+    }
+
+    /**
+     * Getter for the data source whose metadata changed.
+     *
+     * @return The data source name
+     */
+    public DataSourceName getDataSourceName() {
+        return dataSourceName;
+    }
+
+    /**
+     * Getter for the intervals of the segments which were added or removed.
+     *
+     * @return The changed intervals
+     */
+    public SimplifiedIntervalList getChangedIntervals() {
+        return changedIntervals;
+    }
+
+    /**
+     * Getter for the columns of the segments which were added or removed.
+     *
+     * @return The changed column names
+     */
+    public Set<String> getChangedColumns() {
+        return changedColumns;
+    }
+
+    /**
+     * Getter for the version of the metadata service after the change.
+     *
+     * @return The version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof DataSourceMetadataChange)) {
+            return false;
+        }
+        DataSourceMetadataChange that = (DataSourceMetadataChange) o;
+        return version == that.version
+                && Objects.equals(dataSourceName, that.dataSourceName)
+                && Objects.equals(changedIntervals, that.changedIntervals)
+                && Objects.equals(changedColumns, that.changedColumns);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(dataSourceName, changedIntervals, changedColumns, version);
+    }
+
+    @Override
+    public String toString() {
+        return "DataSourceMetadataChange{dataSource=" + dataSourceName + ", intervals=" + changedIntervals
+                + ", columns=" + changedColumns + ", version=" + version + "}";
+    }
+}
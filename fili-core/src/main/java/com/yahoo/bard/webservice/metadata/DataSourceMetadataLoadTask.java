@@ -25,8 +25,13 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.Collections;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.inject.Singleton;
@@ -58,12 +63,21 @@ public class DataSourceMetadataLoadTask extends LoadTask<Boolean> {
     public static final String DRUID_SEG_LOADER_TIMER_DELAY_KEY =
             SYSTEM_CONFIG.getPackageVariableName("druid_seg_loader_timer_delay");
 
+    /**
+     * Parameter specifying the maximum number of data source metadata requests in flight at once.
+     */
+    public static final String DRUID_SEG_LOADER_MAX_CONCURRENT_REQUESTS_KEY =
+            SYSTEM_CONFIG.getPackageVariableName("druid_seg_loader_max_concurrent_requests");
+
     private final DruidWebService druidWebService;
     private final PhysicalTableDictionary physicalTableDictionary;
     private final DataSourceMetadataService metadataService;
     private final AtomicReference<DateTime> lastRunTimestamp;
     private final ObjectMapper mapper;
     private final FailureCallback failureCallback;
+    private final Semaphore requestPermits;
+    private final Queue<DataSourceName> pendingDataSources = new ConcurrentLinkedQueue<>();
+    private final Set<DataSourceName> pendingDataSourceSet = ConcurrentHashMap.newKeySet();
 
     /**
      * Datasource metadata loader fetches data from the druid coordinator and updates the datasource metadata service.
@@ -94,6 +108,9 @@ public class DataSourceMetadataLoadTask extends LoadTask<Boolean> {
         this.mapper = mapper;
         this.failureCallback = getFailureCallback();
         this.lastRunTimestamp = new AtomicReference<>();
+        this.requestPermits = new Semaphore(
+                SYSTEM_CONFIG.getIntProperty(DRUID_SEG_LOADER_MAX_CONCURRENT_REQUESTS_KEY, 4)
+        );
     }
 
     @Override
@@ -121,16 +138,89 @@ public class DataSourceMetadataLoadTask extends LoadTask<Boolean> {
 
     /**
      * Queries Druid for updated datasource metadata and then updates the datasource metadata service.
+     * <p>
+     * At most {@code druid_seg_loader_max_concurrent_requests} requests are in flight at once. If that many requests
+     * are in flight, the data source is queued without waiting, and queried as soon as an earlier request finishes. A
+     * data source which is already queued is not queued again.
      *
      * @param dataSourceName  The data source to be updated.
      */
     protected void queryDataSourceMetadata(DataSourceName dataSourceName) {
+        if (pendingDataSourceSet.add(dataSourceName)) {
+            pendingDataSources.add(dataSourceName);
+        } else {
+            LOG.debug("{}: Metadata of data source {} is already queued", getName(), dataSourceName.asName());
+        }
+        sendPendingRequests();
+    }
+
+    /**
+     * Send requests for the queued data sources while request permits are available, without waiting for a permit.
+     * <p>
+     * Every finished request releases its permit before calling this again, so no queued data source is left behind.
+     */
+    private void sendPendingRequests() {
+        while (!pendingDataSources.isEmpty() && requestPermits.tryAcquire()) {
+            DataSourceName dataSourceName = pendingDataSources.poll();
+            if (dataSourceName == null) {
+                // Another thread took the last queued data source, so check the queue again
+                requestPermits.release();
+                continue;
+            }
+            pendingDataSourceSet.remove(dataSourceName);
+            sendRequest(dataSourceName);
+        }
+    }
+
+    /**
+     * Send the metadata request of a data source, holding a request permit until the request finishes.
+     *
+     * @param dataSourceName  The data source to be updated
+     */
+    private void sendRequest(DataSourceName dataSourceName) {
         String resourcePath = String.format(DATASOURCE_METADATA_QUERY_FORMAT, dataSourceName.asName());
 
         // Success callback will update datasource metadata on success
         SuccessCallback success = buildDataSourceMetadataSuccessCallback(dataSourceName);
         HttpErrorCallback errorCallback = getErrorCallback(dataSourceName);
-        druidWebService.getJsonObject(success, errorCallback, failureCallback, resourcePath);
+
+        // Release the permit once, whichever way the request finishes, and send the next queued request
+        AtomicBoolean finished = new AtomicBoolean();
+        Runnable release = () -> {
+            if (finished.compareAndSet(false, true)) {
+                requestPermits.release();
+                sendPendingRequests();
+            }
+        };
+        try {
+            druidWebService.getJsonObject(
+                    rootNode -> {
+                        try {
+                            success.invoke(rootNode);
+                        } finally {
+                            release.run();
+                        }
+                    },
+                    (statusCode, reason, responseBody) -> {
+                        try {
+                            errorCallback.invoke(statusCode, reason, responseBody);
+                        } finally {
+                            release.run();
+                        }
+                    },
+                    error -> {
+                        try {
+                            failureCallback.invoke(error);
+                        } finally {
+                            release.run();
+                        }
+                    },
+                    resourcePath
+            );
+        } catch (RuntimeException e) {
+            release.run();
+            throw e;
+        }
     }
 
     /**
@@ -2,28 +2,42 @@
 // Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
 package com.yahoo.bard.webservice.metadata;
 
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
 import com.yahoo.bard.webservice.data.config.names.DataSourceName;
 import com.yahoo.bard.webservice.table.PhysicalTable;
+import com.yahoo.bard.webservice.util.IntervalSet;
 import com.yahoo.bard.webservice.util.SimplifiedIntervalList;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
 
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.joda.time.Interval;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.druid.timeline.DataSegment;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
 
@@ -35,6 +49,15 @@ import javax.inject.Singleton;
 @Singleton
 public class DataSourceMetadataService {
     private static final Logger LOG = LoggerFactory.getLogger(DataSourceMetadataService.class);
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
+
+    /**
+     * Whether updates are applied as a diff against the metadata held for a data source, rather than replacing it.
+     */
+    private static final boolean INCREMENTAL_UPDATE = SYSTEM_CONFIG.getBooleanProperty(
+            SYSTEM_CONFIG.getPackageVariableName("datasource_metadata_incremental_update"),
+            true
+    );
 
     /**
      * The container that holds the segment metadata for every table. It should support concurrent access.
@@ -44,6 +67,24 @@ public class DataSourceMetadataService {
     private final Map<DataSourceName, AtomicReference<ImmutableMap<String, SimplifiedIntervalList>>>
             allSegmentsByColumn;
 
+    /**
+     * The signatures of the segments of every data source, indexed for the signing of queries.
+     * <p>
+     * Signatures hold the segments they were built from, so each entry publishes a version of the segments and their
+     * signatures together. An update sets the segments of a data source before putting their signatures.
+     */
+    private final Map<DataSourceName, SegmentSignatures> segmentSignatures;
+
+    /**
+     * The version of the metadata, which is bumped after every update.
+     */
+    private final AtomicLong version;
+
+    /**
+     * The listeners notified of every change to the metadata.
+     */
+    private final List<Consumer<DataSourceMetadataChange>> changeListeners;
+
     /**
      * The collector that accumulates partitions of a segment.
      */
@@ -55,6 +96,21 @@ public class DataSourceMetadataService {
     public DataSourceMetadataService() {
         this.allSegmentsByTime = new ConcurrentHashMap<>();
         this.allSegmentsByColumn = new ConcurrentHashMap<>();
+        this.segmentSignatures = new ConcurrentHashMap<>();
+        this.version = new AtomicLong();
+        this.changeListeners = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Get the version of the metadata held by this service.
+     * <p>
+     * The version changes after the metadata of any data source is updated, so anything computed from the metadata
+     * read after reading a version is at least as fresh as that version, and can be reused until the version changes.
+     *
+     * @return the version of the metadata
+     */
+    public long getVersion() {
+        return version.get();
     }
 
     /**
@@ -69,9 +125,48 @@ public class DataSourceMetadataService {
                 .map(allSegmentsByTime::get)
                 .filter(Objects::nonNull)
                 .map(AtomicReference::get)
+                .filter(Objects::nonNull)
                 .collect(Collectors.toSet());
     }
 
+    /**
+     * Get the signatures of the segments of the given data sources.
+     * <p>
+     * Signatures are built when the metadata of a data source is updated. Signatures missing or out of date for the
+     * segments held for a data source, as when segments are set without an update, are built on demand.
+     *
+     * @param dataSourceNames  A Set of physical data source names
+     *
+     * @return the signatures of the data sources which have segments
+     */
+    public List<SegmentSignatures> getSegmentSignatures(Set<DataSourceName> dataSourceNames) {
+        List<SegmentSignatures> signatures = new ArrayList<>(dataSourceNames.size());
+        for (DataSourceName dataSourceName : dataSourceNames) {
+            // Read the signatures before the segments: updates set the segments first, so the signatures read are
+            // never newer than the segments read
+            SegmentSignatures signature = segmentSignatures.get(dataSourceName);
+            AtomicReference<ConcurrentSkipListMap<DateTime, Map<String, SegmentInfo>>> reference =
+                    allSegmentsByTime.get(dataSourceName);
+            ConcurrentSkipListMap<DateTime, Map<String, SegmentInfo>> segments =
+                    reference == null ? null : reference.get();
+            if (segments == null) {
+                continue;
+            }
+            if (signature == null || !signature.isOf(segments)) {
+                SegmentSignatures built = SegmentSignatures.of(segments);
+                // Only replace the signatures read, so that signatures put by a later update are not overwritten
+                if (signature == null) {
+                    segmentSignatures.putIfAbsent(dataSourceName, built);
+                } else {
+                    segmentSignatures.replace(dataSourceName, signature, built);
+                }
+                signature = built;
+            }
+            signatures.add(signature);
+        }
+        return signatures;
+    }
+
     /**
      * Get a set of intervals available for each column in the data source.
      *
@@ -108,11 +203,57 @@ public class DataSourceMetadataService {
     /**
      * Update the information with respect to the segment metadata of a particular data source.
      * This operation update both segment mappings for the dataSourceName.
+     * <p>
+     * Unless {@code datasource_metadata_incremental_update} is off, the segments are diffed by identifier against the
+     * segments held for the data source, and only the segments and column availabilities touched by added or removed
+     * segments are rebuilt. An update which changes nothing leaves the metadata and its version as they are. Every
+     * update which changes the metadata is published to the change listeners.
      *
      * @param dataSourceName  The data source to which the metadata refer.
      * @param metadata  The updated datasource metadata.
      */
     public void update(DataSourceName dataSourceName, DataSourceMetadata metadata) {
+        AtomicReference<ConcurrentSkipListMap<DateTime, Map<String, SegmentInfo>>> byTimeReference =
+                allSegmentsByTime.computeIfAbsent(dataSourceName, ignored -> new AtomicReference<>());
+
+        // Updates of a data source are diffed against the previous update, so they must not interleave
+        synchronized (byTimeReference) {
+            ConcurrentSkipListMap<DateTime, Map<String, SegmentInfo>> previousByTime = byTimeReference.get();
+            AtomicReference<ImmutableMap<String, SimplifiedIntervalList>> byColumnReference =
+                    allSegmentsByColumn.get(dataSourceName);
+
+            DataSourceMetadataChange change;
+            if (INCREMENTAL_UPDATE && previousByTime != null && byColumnReference != null) {
+                change = updateIncrementally(
+                        dataSourceName,
+                        metadata,
+                        byTimeReference,
+                        byColumnReference
+                );
+            } else {
+                change = replace(dataSourceName, metadata, byTimeReference);
+            }
+
+            if (change != null) {
+                changeListeners.forEach(listener -> notify(listener, change));
+            }
+        }
+    }
+
+    /**
+     * Replace the metadata of a data source, rebuilding all its segment mappings.
+     *
+     * @param dataSourceName  The data source to which the metadata refer
+     * @param metadata  The updated datasource metadata
+     * @param byTimeReference  The reference holding the segments of the data source by time
+     *
+     * @return the change, covering every interval and column of the previous and the new metadata
+     */
+    private DataSourceMetadataChange replace(
+            DataSourceName dataSourceName,
+            DataSourceMetadata metadata,
+            AtomicReference<ConcurrentSkipListMap<DateTime, Map<String, SegmentInfo>>> byTimeReference
+    ) {
         // Group all the segments by the starting date of their interval.
         // Accumulate all the partitions of a segment in a map indexed by their identifier.
         ConcurrentSkipListMap<DateTime, Map<String, SegmentInfo>> currentByTime = groupSegmentByTime(metadata);
@@ -120,10 +261,206 @@ public class DataSourceMetadataService {
         // Group segment interval by every column present in the segment
         Map<String, SimplifiedIntervalList> currentByColumn = groupIntervalByColumn(metadata);
 
-        allSegmentsByTime.computeIfAbsent(dataSourceName, ignored -> new AtomicReference<>())
-                .set(currentByTime);
-        allSegmentsByColumn.computeIfAbsent(dataSourceName, ignored -> new AtomicReference<>())
-                .set(ImmutableMap.copyOf(currentByColumn));
+        AtomicReference<ImmutableMap<String, SimplifiedIntervalList>> byColumnReference =
+                allSegmentsByColumn.computeIfAbsent(dataSourceName, ignored -> new AtomicReference<>());
+        Map<String, SimplifiedIntervalList> previousByColumn = byColumnReference.get() == null
+                ? Collections.emptyMap()
+                : byColumnReference.get();
+
+        byTimeReference.set(currentByTime);
+        byColumnReference.set(ImmutableMap.copyOf(currentByColumn));
+        segmentSignatures.put(dataSourceName, SegmentSignatures.of(currentByTime));
+        long currentVersion = version.incrementAndGet();
+
+        IntervalSet changedIntervals = IntervalSet.EMPTY;
+        for (SimplifiedIntervalList intervals : previousByColumn.values()) {
+            changedIntervals = changedIntervals.union(IntervalSet.of(intervals));
+        }
+        for (SimplifiedIntervalList intervals : currentByColumn.values()) {
+            changedIntervals = changedIntervals.union(IntervalSet.of(intervals));
+        }
+        Set<String> changedColumns = new HashSet<>(previousByColumn.keySet());
+        changedColumns.addAll(currentByColumn.keySet());
+
+        return new DataSourceMetadataChange(
+                dataSourceName,
+                changedIntervals.toSimplifiedIntervalList(),
+                changedColumns,
+                currentVersion
+        );
+    }
+
+    /**
+     * Apply the segments added to and removed from a data source since its previous update.
+     * <p>
+     * Only the time buckets holding added or removed segments are copied, and only the availability of the columns of
+     * those segments is recomputed: the changed intervals are cut out of the previous availability of each column and
+     * the segments overlapping them are added back.
+     *
+     * @param dataSourceName  The data source to which the metadata refer
+     * @param metadata  The updated datasource metadata
+     * @param byTimeReference  The reference holding the segments of the data source by time
+     * @param byColumnReference  The reference holding the availability of the data source by column
+     *
+     * @return the change, or null if no segment was added or removed
+     */
+    private DataSourceMetadataChange updateIncrementally(
+            DataSourceName dataSourceName,
+            DataSourceMetadata metadata,
+            AtomicReference<ConcurrentSkipListMap<DateTime, Map<String, SegmentInfo>>> byTimeReference,
+            AtomicReference<ImmutableMap<String, SimplifiedIntervalList>> byColumnReference
+    ) {
+        ConcurrentSkipListMap<DateTime, Map<String, SegmentInfo>> previousByTime = byTimeReference.get();
+        ImmutableMap<String, SimplifiedIntervalList> previousByColumn = byColumnReference.get();
+
+        // Diff the segments by identifier, tracking the longest segment to bound the search for overlapping segments
+        Set<String> identifiers = new HashSet<>();
+        List<SegmentInfo> added = new ArrayList<>();
+        long maxDurationMillis = 0;
+        for (DataSegment segment : metadata.getSegments()) {
+            String identifier = segment.getIdentifier();
+            if (!identifiers.add(identifier)) {
+                continue;
+            }
+            Interval interval = segment.getInterval();
+            maxDurationMillis = Math.max(maxDurationMillis, interval.toDurationMillis());
+            Map<String, SegmentInfo> bucket = previousByTime.get(interval.getStart());
+            if (bucket == null || !bucket.containsKey(identifier)) {
+                added.add(new SegmentInfo(segment));
+            }
+        }
+        List<SegmentInfo> removed = previousByTime.values().stream()
+                .flatMap(bucket -> bucket.values().stream())
+                .filter(segmentInfo -> !identifiers.contains(segmentInfo.getIdentifier()))
+                .collect(Collectors.toList());
+
+        if (added.isEmpty() && removed.isEmpty()) {
+            return null;
+        }
+
+        // Copy the buckets holding changed segments, leaving the buckets of the previous map untouched for readers
+        SortedMap<DateTime, Map<String, SegmentInfo>> changedBuckets = new TreeMap<>();
+        for (SegmentInfo segmentInfo : removed) {
+            changedBuckets.computeIfAbsent(
+                    segmentInfo.getInterval().getStart(),
+                    start -> new LinkedHashMap<>(previousByTime.get(start))
+            ).remove(segmentInfo.getIdentifier());
+        }
+        for (SegmentInfo segmentInfo : added) {
+            changedBuckets.computeIfAbsent(
+                    segmentInfo.getInterval().getStart(),
+                    start -> new LinkedHashMap<>(previousByTime.getOrDefault(start, Collections.emptyMap()))
+            ).put(segmentInfo.getIdentifier(), segmentInfo);
+        }
+        ConcurrentSkipListMap<DateTime, Map<String, SegmentInfo>> currentByTime =
+                new ConcurrentSkipListMap<>(previousByTime);
+        changedBuckets.forEach((start, bucket) -> {
+            if (bucket.isEmpty()) {
+                currentByTime.remove(start);
+            } else {
+                currentByTime.put(start, bucket);
+            }
+        });
+
+        List<Interval> changedIntervalList = new ArrayList<>();
+        Set<String> changedColumns = new HashSet<>();
+        for (SegmentInfo segmentInfo : Iterables.concat(added, removed)) {
+            changedIntervalList.add(segmentInfo.getInterval());
+            changedColumns.addAll(segmentInfo.getColumnNames());
+        }
+        IntervalSet changedIntervals = IntervalSet.of(changedIntervalList);
+
+        // Collect the intervals of the segments overlapping the changed intervals, for each changed column
+        Map<String, List<Interval>> overlappingByColumn = new HashMap<>();
+        long searchStart = changedIntervals.getStartMillis(0) - maxDurationMillis;
+        long searchEnd = changedIntervals.getEndMillis(changedIntervals.size() - 1);
+        Collection<Map<String, SegmentInfo>> candidateBuckets = currentByTime.subMap(
+                new DateTime(searchStart, DateTimeZone.UTC),
+                new DateTime(searchEnd, DateTimeZone.UTC)
+        ).values();
+        for (Map<String, SegmentInfo> bucket : candidateBuckets) {
+            for (SegmentInfo segmentInfo : bucket.values()) {
+                if (!changedIntervals.overlaps(segmentInfo.getInterval())) {
+                    continue;
+                }
+                for (String column : segmentInfo.getColumnNames()) {
+                    if (changedColumns.contains(column)) {
+                        overlappingByColumn.computeIfAbsent(column, ignored -> new ArrayList<>())
+                                .add(segmentInfo.getInterval());
+                    }
+                }
+            }
+        }
+
+        Map<String, SimplifiedIntervalList> currentByColumn = new HashMap<>(previousByColumn);
+        for (String column : changedColumns) {
+            IntervalSet availability = IntervalSet.of(previousByColumn.get(column))
+                    .subtract(changedIntervals)
+                    .union(IntervalSet.of(overlappingByColumn.get(column)));
+            if (availability.isEmpty()) {
+                currentByColumn.remove(column);
+            } else {
+                currentByColumn.put(column, availability.toSimplifiedIntervalList());
+            }
+        }
+
+        SegmentSignatures previousSignatures = segmentSignatures.get(dataSourceName);
+        byTimeReference.set(currentByTime);
+        byColumnReference.set(ImmutableMap.copyOf(currentByColumn));
+        segmentSignatures.put(
+                dataSourceName,
+                previousSignatures != null && previousSignatures.isOf(previousByTime)
+                        ? previousSignatures.update(currentByTime, changedBuckets.keySet())
+                        : SegmentSignatures.of(currentByTime)
+        );
+        long currentVersion = version.incrementAndGet();
+
+        LOG.debug(
+                "Updated metadata of data source {}: {} segments added, {} segments removed",
+                dataSourceName.asName(),
+                added.size(),
+                removed.size()
+        );
+        return new DataSourceMetadataChange(
+                dataSourceName,
+                changedIntervals.toSimplifiedIntervalList(),
+                changedColumns,
+                currentVersion
+        );
+    }
+
+    /**
+     * Register a listener to be notified of every change to the metadata held by this service.
+     * <p>
+     * Listeners are called on the thread updating the metadata, after the change is visible to readers.
+     *
+     * @param listener  The listener
+     */
+    public void addChangeListener(Consumer<DataSourceMetadataChange> listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * Stop notifying a listener of changes to the metadata held by this service.
+     *
+     * @param listener  The listener
+     */
+    public void removeChangeListener(Consumer<DataSourceMetadataChange> listener) {
+        changeListeners.remove(listener);
+    }
+
+    /**
+     * Notify a listener of a change, logging rather than throwing any failure of the listener.
+     *
+     * @param listener  The listener
+     * @param change  The change
+     */
+    private static void notify(Consumer<DataSourceMetadataChange> listener, DataSourceMetadataChange change) {
+        try {
+            listener.accept(change);
+        } catch (RuntimeException e) {
+            LOG.error("Failed to notify listener {} of change {}", listener, change, e);
+        }
     }
 
     /**
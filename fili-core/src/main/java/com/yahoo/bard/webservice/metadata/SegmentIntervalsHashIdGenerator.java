@@ -11,9 +11,11 @@ import com.yahoo.bard.webservice.util.DefaultingDictionary;
 import com.yahoo.bard.webservice.util.SimplifiedIntervalList;
 
 import org.joda.time.DateTime;
+import org.joda.time.Interval;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -24,6 +26,9 @@ import java.util.stream.Stream;
 /**
  * An implementation of the QuerySigningService that generates segment id for requested interval.
  * It uses the sum of segment hashes to create a segment id.
+ * <p>
+ * The hashes come from the {@link SegmentSignatures} of the data sources of a query, so signing a query costs a few
+ * binary searches per requested interval however many segments the intervals hold.
  */
 public class SegmentIntervalsHashIdGenerator implements QuerySigningService<Long> {
 
@@ -115,24 +120,28 @@ public class SegmentIntervalsHashIdGenerator implements QuerySigningService<Long
                 .stream()
                 .collect(Collectors.toSet());
 
-        // Get all the segments for the data sources of the query's physical tables
-        Set<SortedMap<DateTime, Map<String, SegmentInfo>>> tableSegments = dataSourceMetadataService.getSegments(
-                dataSourceNames
-        );
+        // Get the segment signatures for the data sources of the query's physical tables
+        List<SegmentSignatures> tableSignatures = dataSourceMetadataService.getSegmentSignatures(dataSourceNames);
 
         // Check if we have no tables with segments
-        if (tableSegments.isEmpty()) {
+        if (tableSignatures.isEmpty()) {
             LOG.warn(DRUID_METADATA_SEGMENTS_MISSING.logFormat(dataSourceNames));
             return Optional.empty();
         }
 
-        // Get requested intervals, then their segments, and sum their hash codes into a long
-        return getSegmentHash(
-                requestedIntervalsQueryExtractionFunctions.get(query.getClass()).apply(query).stream()
-                        .flatMap(interval -> tableSegments.stream()
-                                .map(segments -> segments.subMap(interval.getStart(), interval.getEnd()))
-                        )
-        );
+        // Get requested intervals, then sum the signatures of their segments into a long
+        SimplifiedIntervalList requestedIntervals = requestedIntervalsQueryExtractionFunctions.get(query.getClass())
+                .apply(query);
+        if (requestedIntervals.isEmpty()) {
+            return Optional.empty();
+        }
+        long segmentSetId = 0;
+        for (Interval interval : requestedIntervals) {
+            for (SegmentSignatures signatures : tableSignatures) {
+                segmentSetId += signatures.getSignature(interval.getStartMillis(), interval.getEndMillis());
+            }
+        }
+        return Optional.of(segmentSetId);
     }
 
     /**
@@ -141,7 +150,11 @@ public class SegmentIntervalsHashIdGenerator implements QuerySigningService<Long
      * @param requestedSegments  A set of requestedSegments
      *
      * @return A hash of the given segments
+     *
+     * @deprecated  Segment set ids are summed from the {@link SegmentSignatures} of the data sources of a query, which
+     * hash segments differently
      */
+    @Deprecated
     public Optional<Long> getSegmentHash(Stream<SortedMap<DateTime, Map<String, SegmentInfo>>> requestedSegments) {
         return requestedSegments
                 .distinct()
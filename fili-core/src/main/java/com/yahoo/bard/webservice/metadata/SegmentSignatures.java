@@ -0,0 +1,183 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.metadata;
+
+import org.joda.time.DateTime;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.SortedMap;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * The signatures of the segments of a data source, indexed so that the signature of the segments starting in any range
+ * of time is two binary searches and a subtraction.
+ * <p>
+ * Each bucket of segments starting at the same time is hashed once, mixing the 64 bit hashes of the identifiers of its
+ * segments with its start, and the hashes are held as prefix sums in order of start. The signature of a range is the
+ * sum of the hashes of the buckets starting in it, so the signatures of disjoint ranges add up to the signature of
+ * their union, and a bucket has the same signature whichever range it is looked up with.
+ */
+public final class SegmentSignatures {
+
+    private final SortedMap<DateTime, Map<String, SegmentInfo>> segments;
+    private final long[] starts;
+    private final long[] bucketHashes;
+    private final long[] prefixSums;
+
+    /**
+     * Constructor.
+     *
+     * @param segments  The segments the signatures are of
+     * @param starts  The start millis of the buckets, in order
+     * @param bucketHashes  The hashes of the buckets
+     */
+    SegmentSignatures(
+            SortedMap<DateTime, Map<String, SegmentInfo>> segments,
+            @NotNull long[] starts,
+            @NotNull long[] bucketHashes
+    ) {
+        this.segments = segments;
+        this.starts = starts;
+        this.bucketHashes = bucketHashes;
+        this.prefixSums = new long[bucketHashes.length + 1];
+        for (int i = 0; i < bucketHashes.length; i++) {
+            prefixSums[i + 1] = prefixSums[i] + bucketHashes[i];
+        }
+    }
+
+    /**
+     * Build the signatures of the segments of a data source.
+     *
+     * @param segments  The segments of the data source, in buckets by start
+     *
+     * @return the signatures of the segments
+     */
+    public static SegmentSignatures of(SortedMap<DateTime, Map<String, SegmentInfo>> segments) {
+        long[] starts = new long[segments.size()];
+        long[] bucketHashes = new long[segments.size()];
+        int i = 0;
+        for (Map.Entry<DateTime, Map<String, SegmentInfo>> bucket : segments.entrySet()) {
+            starts[i] = bucket.getKey().getMillis();
+            bucketHashes[i] = hashBucket(starts[i], bucket.getValue());
+            i++;
+        }
+        return new SegmentSignatures(segments, starts, bucketHashes);
+    }
+
+    /**
+     * Build the signatures of the segments of a data source after some of its buckets changed, rehashing only the
+     * changed buckets.
+     *
+     * @param segments  The segments of the data source after the change, in buckets by start
+     * @param changedStarts  The starts of the buckets which were added, removed or changed
+     *
+     * @return the signatures of the segments
+     */
+    public SegmentSignatures update(
+            SortedMap<DateTime, Map<String, SegmentInfo>> segments,
+            Collection<DateTime> changedStarts
+    ) {
+        long[] changed = changedStarts.stream().mapToLong(DateTime::getMillis).sorted().toArray();
+        long[] newStarts = new long[segments.size()];
+        long[] newBucketHashes = new long[segments.size()];
+        int i = 0;
+        for (Map.Entry<DateTime, Map<String, SegmentInfo>> bucket : segments.entrySet()) {
+            long start = bucket.getKey().getMillis();
+            int previous = Arrays.binarySearch(starts, start);
+            newStarts[i] = start;
+            newBucketHashes[i] = previous >= 0 && Arrays.binarySearch(changed, start) < 0
+                    ? bucketHashes[previous]
+                    : hashBucket(start, bucket.getValue());
+            i++;
+        }
+        return new SegmentSignatures(segments, newStarts, newBucketHashes);
+    }
+
+    /**
+     * Whether these are the signatures of a map of segments, rather than of an earlier or later version of it.
+     *
+     * @param segments  The segments of a data source
+     *
+     * @return true if these signatures were built from the same map instance
+     */
+    public boolean isOf(SortedMap<DateTime, Map<String, SegmentInfo>> segments) {
+        return this.segments == segments;
+    }
+
+    /**
+     * Get the signature of the segments starting in a range of time.
+     *
+     * @param startMillis  The start of the range, inclusive
+     * @param endMillis  The end of the range, exclusive
+     *
+     * @return the sum of the hashes of the buckets starting in the range
+     */
+    public long getSignature(long startMillis, long endMillis) {
+        return prefixSums[firstIndexAtOrAfter(endMillis)] - prefixSums[firstIndexAtOrAfter(startMillis)];
+    }
+
+    /**
+     * Find the first bucket starting at or after an instant.
+     *
+     * @param instant  The instant, in millis
+     *
+     * @return the index of the bucket, or the number of buckets if every bucket starts before the instant
+     */
+    private int firstIndexAtOrAfter(long instant) {
+        int index = Arrays.binarySearch(starts, instant);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * Hash a bucket of segments starting at the same time.
+     *
+     * @param start  The start of the bucket, in millis
+     * @param bucket  The segments of the bucket, by identifier
+     *
+     * @return the hash of the bucket
+     */
+    private static long hashBucket(long start, Map<String, SegmentInfo> bucket) {
+        // Sum the segment hashes so that the order of the segments in the bucket doesn't matter
+        long sum = 0;
+        for (String identifier : bucket.keySet()) {
+            sum += hashIdentifier(identifier);
+        }
+        return mix(mix(start) + sum);
+    }
+
+    /**
+     * Hash a segment identifier into 64 bits, using 64 bit FNV-1a over its characters.
+     *
+     * @param identifier  The segment identifier
+     *
+     * @return the hash of the identifier
+     */
+    private static long hashIdentifier(String identifier) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < identifier.length(); i++) {
+            hash ^= identifier.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Mix the bits of a long so that every input bit affects every output bit, using the MurmurHash3 finalizer.
+     *
+     * @param value  The value to mix
+     *
+     * @return the mixed value
+     */
+    private static long mix(long value) {
+        long mixed = value;
+        mixed ^= mixed >>> 33;
+        mixed *= 0xff51afd7ed558ccdL;
+        mixed ^= mixed >>> 33;
+        mixed *= 0xc4ceb9fe1a85ec53L;
+        mixed ^= mixed >>> 33;
+        return mixed;
+    }
+}
@@ -2,27 +2,50 @@
 // Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
 package com.yahoo.bard.webservice.table.availability;
 
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
 import com.yahoo.bard.webservice.data.config.names.DataSourceName;
 import com.yahoo.bard.webservice.metadata.DataSourceMetadataService;
 import com.yahoo.bard.webservice.table.resolver.PhysicalDataSourceConstraint;
+import com.yahoo.bard.webservice.util.IntervalSet;
 import com.yahoo.bard.webservice.util.SimplifiedIntervalList;
 
+import com.google.common.collect.ImmutableSet;
+
 import java.util.Collections;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 import javax.validation.constraints.NotNull;
 
 /**
  * An availability based on a DataSourceMetadataService backed by a single data source.
+ * <p>
+ * Subclasses can memoize the intervals available for a set of columns with
+ * {@link #getMemoizedIntervals(Set, Function)}. Memoized intervals are kept until the version of the metadata service
+ * changes, so a request only reduces the availability of its columns the first time the columns are requested after
+ * each metadata refresh.
  */
 public abstract class BaseMetadataAvailability implements Availability {
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
+
+    /**
+     * The maximum number of column sets whose intervals an availability memoizes for a version of the metadata.
+     */
+    public static final int MAX_MEMOIZED_COLUMN_SETS = SYSTEM_CONFIG.getIntProperty(
+            SYSTEM_CONFIG.getPackageVariableName("availability_max_memoized_column_sets"),
+            1000
+    );
 
     private final DataSourceName dataSourceName;
     private final Set<DataSourceName> dataSourceNames;
     private final DataSourceMetadataService metadataService;
 
+    private volatile Snapshot snapshot = new Snapshot(-1);
+
     /**
      * Constructor.
      *
@@ -59,6 +82,37 @@ public abstract class BaseMetadataAvailability implements Availability {
     @Override
     public abstract SimplifiedIntervalList getAvailableIntervals(PhysicalDataSourceConstraint constraint);
 
+    /**
+     * Get the intervals available for a set of columns, computing them only if they haven't been computed since the
+     * metadata last changed.
+     *
+     * @param columns  The physical names of the columns
+     * @param compute  Computes the intervals available for a set of columns from the current metadata
+     *
+     * @return a new list of the intervals available for the columns
+     */
+    protected SimplifiedIntervalList getMemoizedIntervals(
+            Set<String> columns,
+            Function<Set<String>, IntervalSet> compute
+    ) {
+        // Read the version before the metadata, so that intervals are never memoized under a newer version
+        long version = getDataSourceMetadataService().getVersion();
+        Snapshot current = snapshot;
+        if (current.version != version) {
+            current = new Snapshot(version);
+            snapshot = current;
+        }
+
+        IntervalSet intervals = current.intervals.get(columns);
+        if (intervals == null) {
+            intervals = compute.apply(columns);
+            if (current.intervals.size() < MAX_MEMOIZED_COLUMN_SETS) {
+                current.intervals.putIfAbsent(ImmutableSet.copyOf(columns), intervals);
+            }
+        }
+        return intervals.toSimplifiedIntervalList();
+    }
+
     @Override
     public String toString() {
         return String.format("BaseMetadataAvailability for data source = %s", getDataSourceName().asName());
@@ -80,4 +134,21 @@ public abstract class BaseMetadataAvailability implements Availability {
         // Leave metadataService out of hash because it is mutable
         return Objects.hash(getDataSourceName());
     }
+
+    /**
+     * The intervals memoized for a version of the metadata.
+     */
+    private static class Snapshot {
+        private final long version;
+        private final Map<Set<String>, IntervalSet> intervals = new ConcurrentHashMap<>();
+
+        /**
+         * Constructor.
+         *
+         * @param version  The version of the metadata the intervals are computed from
+         */
+        Snapshot(long version) {
+            this.version = version;
+        }
+    }
 }
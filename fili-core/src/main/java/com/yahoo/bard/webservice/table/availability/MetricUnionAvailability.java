@@ -6,6 +6,7 @@ import com.yahoo.bard.webservice.data.config.names.DataSourceName;
 import com.yahoo.bard.webservice.data.metric.MetricColumn;
 import com.yahoo.bard.webservice.table.Column;
 import com.yahoo.bard.webservice.table.resolver.PhysicalDataSourceConstraint;
+import com.yahoo.bard.webservice.util.IntervalSet;
 import com.yahoo.bard.webservice.util.SimplifiedIntervalList;
 import com.yahoo.bard.webservice.util.Utils;
 
@@ -130,8 +131,10 @@ public class MetricUnionAvailability extends BaseCompositeAvailability implement
         }
 
         return constructSubConstraint(constraint).entrySet().stream()
-                .map(entry -> entry.getKey().getAvailableIntervals(entry.getValue()))
-                .reduce(SimplifiedIntervalList::intersect).orElse(new SimplifiedIntervalList());
+                .map(entry -> IntervalSet.of(entry.getKey().getAvailableIntervals(entry.getValue())))
+                .reduce(IntervalSet::intersect)
+                .orElse(IntervalSet.EMPTY)
+                .toSimplifiedIntervalList();
     }
 
     /**
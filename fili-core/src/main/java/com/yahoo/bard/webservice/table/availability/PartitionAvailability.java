@@ -4,6 +4,7 @@ package com.yahoo.bard.webservice.table.availability;
 
 import com.yahoo.bard.webservice.table.resolver.DataSourceFilter;
 import com.yahoo.bard.webservice.table.resolver.PhysicalDataSourceConstraint;
+import com.yahoo.bard.webservice.util.IntervalSet;
 import com.yahoo.bard.webservice.util.SimplifiedIntervalList;
 
 import java.util.Map;
@@ -85,8 +86,10 @@ public class PartitionAvailability extends BaseCompositeAvailability implements
      */
     private SimplifiedIntervalList mergeAvailabilities(PhysicalDataSourceConstraint constraint) {
         return filteredAvailabilities(constraint)
-                .map(availability -> availability.getAvailableIntervals(constraint))
-                .reduce(SimplifiedIntervalList::intersect).orElse(new SimplifiedIntervalList());
+                .map(availability -> IntervalSet.of(availability.getAvailableIntervals(constraint)))
+                .reduce(IntervalSet::intersect)
+                .orElse(IntervalSet.EMPTY)
+                .toSimplifiedIntervalList();
     }
 
     @Override
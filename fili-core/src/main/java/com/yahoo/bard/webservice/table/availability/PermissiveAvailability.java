@@ -5,8 +5,11 @@ package com.yahoo.bard.webservice.table.availability;
 import com.yahoo.bard.webservice.data.config.names.DataSourceName;
 import com.yahoo.bard.webservice.metadata.DataSourceMetadataService;
 import com.yahoo.bard.webservice.table.resolver.PhysicalDataSourceConstraint;
+import com.yahoo.bard.webservice.util.IntervalSet;
 import com.yahoo.bard.webservice.util.SimplifiedIntervalList;
 
+import java.util.Collections;
+
 import javax.validation.constraints.NotNull;
 
 /**
@@ -46,9 +49,13 @@ public class PermissiveAvailability extends BaseMetadataAvailability {
      */
     @Override
     public SimplifiedIntervalList getAvailableIntervals(PhysicalDataSourceConstraint ignoredConstraint) {
-        return getAllAvailableIntervals().values().stream()
-                .map(SimplifiedIntervalList::new)
-                .reduce(new SimplifiedIntervalList(), SimplifiedIntervalList::simplifyIntervals);
+        // The union doesn't depend on the constraint, so it is memoized for the empty set of columns
+        return getMemoizedIntervals(
+                Collections.emptySet(),
+                ignored -> getAllAvailableIntervals().values().stream()
+                        .map(IntervalSet::of)
+                        .reduce(IntervalSet.EMPTY, IntervalSet::union)
+        );
     }
 
     @Override
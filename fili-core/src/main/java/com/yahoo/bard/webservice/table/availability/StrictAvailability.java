@@ -5,8 +5,10 @@ package com.yahoo.bard.webservice.table.availability;
 import com.yahoo.bard.webservice.data.config.names.DataSourceName;
 import com.yahoo.bard.webservice.metadata.DataSourceMetadataService;
 import com.yahoo.bard.webservice.table.resolver.PhysicalDataSourceConstraint;
+import com.yahoo.bard.webservice.util.IntervalSet;
 import com.yahoo.bard.webservice.util.SimplifiedIntervalList;
 
+import java.util.Map;
 import java.util.Set;
 
 import javax.validation.constraints.NotNull;
@@ -38,14 +40,23 @@ public class StrictAvailability extends BaseMetadataAvailability {
             return new SimplifiedIntervalList();
         }
 
-        // Need to ensure requestColumns is not empty in order to prevent returning null by reduce operation
-        return requestColumns.stream()
-                .map(physicalName -> getAllAvailableIntervals().getOrDefault(
-                        physicalName,
-                        new SimplifiedIntervalList()
-                ))
-                .reduce(SimplifiedIntervalList::intersect)
-                .orElse(new SimplifiedIntervalList());
+        return getMemoizedIntervals(requestColumns, this::intersectColumns);
+    }
+
+    /**
+     * Intersect the intervals available for some columns.
+     *
+     * @param columns  The physical names of the columns, of which there is at least one
+     *
+     * @return the intervals available for all the columns
+     */
+    private IntervalSet intersectColumns(Set<String> columns) {
+        // Intersect the columns as interval sets, so that only the result is turned back into a list of intervals
+        Map<String, SimplifiedIntervalList> allAvailableIntervals = getAllAvailableIntervals();
+        return columns.stream()
+                .map(physicalName -> IntervalSet.of(allAvailableIntervals.get(physicalName)))
+                .reduce(IntervalSet::intersect)
+                .orElse(IntervalSet.EMPTY);
     }
 
     @Override
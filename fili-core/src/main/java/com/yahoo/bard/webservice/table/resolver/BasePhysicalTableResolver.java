@@ -25,6 +25,24 @@ public abstract class BasePhysicalTableResolver implements PhysicalTableResolver
     private static final Logger LOG = LoggerFactory.getLogger(BasePhysicalTableResolver.class);
     private static final MetricRegistry REGISTRY = MetricRegistryFactory.getRegistry();
 
+    private final PhysicalTableResolutionCache resolutionCache;
+
+    /**
+     * Constructor, for a resolver which resolves every request.
+     */
+    protected BasePhysicalTableResolver() {
+        this(null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param resolutionCache  Remembers the tables resolved for requests, or null to resolve every request
+     */
+    protected BasePhysicalTableResolver(PhysicalTableResolutionCache resolutionCache) {
+        this.resolutionCache = resolutionCache;
+    }
+
     /**
      * Create a list of matchers based on a request and query.
      *
@@ -96,9 +114,13 @@ public abstract class BasePhysicalTableResolver implements PhysicalTableResolver
         );
 
         try {
-            PhysicalTable bestTable = filter(candidateTables, requestConstraint).stream()
-                    .reduce(getBetterTableOperator(requestConstraint))
-                    .get();
+            PhysicalTable bestTable = resolutionCache == null
+                    ? resolveBestTable(candidateTables, requestConstraint)
+                    : resolutionCache.resolve(
+                            candidateTables,
+                            requestConstraint,
+                            () -> resolveBestTable(candidateTables, requestConstraint)
+                    );
 
             REGISTRY.meter(
                     "request.physical.table." + bestTable.getName() + "." + bestTable.getSchema().getTimeGrain()
@@ -115,4 +137,23 @@ public abstract class BasePhysicalTableResolver implements PhysicalTableResolver
             throw me;
         }
     }
+
+    /**
+     * Filter the candidate tables and pick the best of the tables which match.
+     *
+     * @param candidateTables  The physical tables being resolved from
+     * @param requestConstraint contains the request constraints extracted from DataApiRequest and TemplateDruidQuery
+     *
+     * @return the best matching table
+     *
+     * @throws NoMatchFoundException if no table matches the request
+     */
+    private PhysicalTable resolveBestTable(
+            Collection<PhysicalTable> candidateTables,
+            QueryPlanningConstraint requestConstraint
+    ) throws NoMatchFoundException {
+        return filter(candidateTables, requestConstraint).stream()
+                .reduce(getBetterTableOperator(requestConstraint))
+                .get();
+    }
 }
@@ -5,6 +5,7 @@ package com.yahoo.bard.webservice.table.resolver;
 import com.yahoo.bard.webservice.config.BardFeatureFlag;
 import com.yahoo.bard.webservice.data.PartialDataHandler;
 import com.yahoo.bard.webservice.data.volatility.VolatileIntervalsService;
+import com.yahoo.bard.webservice.metadata.DataSourceMetadataService;
 import com.yahoo.bard.webservice.table.PhysicalTable;
 import com.yahoo.bard.webservice.util.ChainingComparator;
 
@@ -33,17 +34,41 @@ public class DefaultPhysicalTableResolver extends BasePhysicalTableResolver {
     private final PartialDataHandler partialDataHandler;
     private final VolatileIntervalsService volatileIntervalsService;
 
+    /**
+     * Constructor, for a resolver which resolves every request.
+     *
+     * @param partialDataHandler  Handler for to use for PartialData
+     * @param volatileIntervalsService  Service to get volatile intervals from
+     */
+    public DefaultPhysicalTableResolver(
+            PartialDataHandler partialDataHandler,
+            VolatileIntervalsService volatileIntervalsService
+    ) {
+        this(partialDataHandler, volatileIntervalsService, null);
+    }
+
     /**
      * Constructor.
+     * <p>
+     * Resolutions are remembered until the metadata of the data sources changes, if a metadata service is given and
+     * {@code physical_table_resolution_cache_ttl_ms} is configured.
      *
      * @param partialDataHandler  Handler for to use for PartialData
      * @param volatileIntervalsService  Service to get volatile intervals from
+     * @param dataSourceMetadataService  Service whose version invalidates remembered resolutions, or null to resolve
+     * every request
      */
     @Inject
     public DefaultPhysicalTableResolver(
             PartialDataHandler partialDataHandler,
-            VolatileIntervalsService volatileIntervalsService
+            VolatileIntervalsService volatileIntervalsService,
+            DataSourceMetadataService dataSourceMetadataService
     ) {
+        super(
+                dataSourceMetadataService == null || PhysicalTableResolutionCache.DEFAULT_TTL_MS <= 0
+                        ? null
+                        : new PhysicalTableResolutionCache(dataSourceMetadataService::getVersion)
+        );
         this.partialDataHandler = partialDataHandler;
         this.volatileIntervalsService = volatileIntervalsService;
     }
@@ -0,0 +1,335 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.table.resolver;
+
+import com.yahoo.bard.webservice.application.MetricRegistryFactory;
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
+import com.yahoo.bard.webservice.data.dimension.Dimension;
+import com.yahoo.bard.webservice.table.PhysicalTable;
+import com.yahoo.bard.webservice.web.ApiFilter;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+
+import org.joda.time.Interval;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Remembers the physical table resolved for a table group and the parts of a request which table resolution depends
+ * on.
+ * <p>
+ * A resolution is keyed on the candidate tables, by identity, and on a normalized signature of the request: the names
+ * of its request, filter and metric dimensions, its filters (whose values availabilities such as partition
+ * availabilities resolve on), its metric names, its intervals and its granularities. Resolutions are dropped when the
+ * version supplied to the cache changes, usually the version of the data source metadata, and expire
+ * {@code physical_table_resolution_cache_ttl_ms} after they are made, since resolution may depend on the current time
+ * through volatile intervals. Replacing a table in the table dictionary changes the candidate tables of a request, and
+ * so its key.
+ * <p>
+ * Failed resolutions are not remembered, and nothing is remembered if the time to live is not positive. The time to
+ * live defaults to 0, so resolutions are only remembered once it is configured.
+ */
+public class PhysicalTableResolutionCache {
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
+    private static final MetricRegistry REGISTRY = MetricRegistryFactory.getRegistry();
+
+    /**
+     * The default maximum number of resolutions remembered for a version.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = SYSTEM_CONFIG.getIntProperty(
+            SYSTEM_CONFIG.getPackageVariableName("physical_table_resolution_cache_max_entries"),
+            10000
+    );
+
+    /**
+     * The default time a resolution is remembered, in milliseconds.
+     */
+    public static final long DEFAULT_TTL_MS = SYSTEM_CONFIG.getLongProperty(
+            SYSTEM_CONFIG.getPackageVariableName("physical_table_resolution_cache_ttl_ms"),
+            0L
+    );
+
+    public static final String METER_HIT_RATIO = "tables.resolution.cache.hit.ratio";
+
+    public static final Meter HITS = REGISTRY.meter("tables.resolution.cache.hits");
+    public static final Meter MISSES = REGISTRY.meter("tables.resolution.cache.misses");
+    public static final Counter TIME_SAVED_NANOS = REGISTRY.counter("tables.resolution.cache.time.saved.nanos");
+
+    // The total time spent resolving on misses, to estimate the time a hit saves
+    private static final LongAdder MISS_NANOS = new LongAdder();
+
+    static {
+        if (!REGISTRY.getMetrics().containsKey(METER_HIT_RATIO)) {
+            REGISTRY.register(
+                    METER_HIT_RATIO,
+                    new RatioGauge() {
+                        @Override
+                        protected Ratio getRatio() {
+                            long requests = HITS.getCount() + MISSES.getCount();
+                            return requests != 0 ? Ratio.of(HITS.getCount(), requests) : Ratio.of(0, 1);
+                        }
+                    }
+            );
+        }
+    }
+
+    /**
+     * Resolves a table when the cache has no resolution for a request.
+     */
+    @FunctionalInterface
+    public interface Resolver {
+
+        /**
+         * Resolve the table for a request.
+         *
+         * @return the resolved table
+         *
+         * @throws NoMatchFoundException if no table matches the request
+         */
+        PhysicalTable resolve() throws NoMatchFoundException;
+    }
+
+    private final LongSupplier versionSupplier;
+    private final int maxEntries;
+    private final long ttlNanos;
+
+    private volatile Snapshot snapshot = new Snapshot(Long.MIN_VALUE);
+
+    /**
+     * Constructor, with the configured size and time to live.
+     *
+     * @param versionSupplier  Supplies the version of the state resolutions depend on, usually the metadata version
+     */
+    public PhysicalTableResolutionCache(LongSupplier versionSupplier) {
+        this(versionSupplier, DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param versionSupplier  Supplies the version of the state resolutions depend on, usually the metadata version
+     * @param maxEntries  The maximum number of resolutions remembered for a version
+     * @param ttlMs  The time a resolution is remembered, in milliseconds, or 0 to not remember resolutions
+     */
+    public PhysicalTableResolutionCache(LongSupplier versionSupplier, int maxEntries, long ttlMs) {
+        this.versionSupplier = versionSupplier;
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+    }
+
+    /**
+     * Get the table resolved for a request, resolving it if it isn't remembered.
+     *
+     * @param candidateTables  The tables the table is resolved from
+     * @param requestConstraint  The constraint of the request
+     * @param resolver  Resolves the table if it isn't remembered
+     *
+     * @return the resolved table
+     *
+     * @throws NoMatchFoundException if no table matches the request
+     */
+    public PhysicalTable resolve(
+            Collection<PhysicalTable> candidateTables,
+            QueryPlanningConstraint requestConstraint,
+            Resolver resolver
+    ) throws NoMatchFoundException {
+        if (ttlNanos <= 0) {
+            return resolver.resolve();
+        }
+
+        // Read the version before resolving, so that a resolution is never remembered under a newer version
+        long version = versionSupplier.getAsLong();
+        Snapshot current = snapshot;
+        if (current.version != version) {
+            current = new Snapshot(version);
+            snapshot = current;
+        }
+
+        Key key = new Key(candidateTables, requestConstraint);
+        long now = System.nanoTime();
+        Entry entry = current.entries.get(key);
+        if (entry != null && now - entry.created < ttlNanos) {
+            HITS.mark();
+            long misses = MISSES.getCount();
+            if (misses > 0) {
+                TIME_SAVED_NANOS.inc(Math.max(MISS_NANOS.sum() / misses - (System.nanoTime() - now), 0));
+            }
+            return entry.table;
+        }
+
+        MISSES.mark();
+        PhysicalTable table = resolver.resolve();
+        long end = System.nanoTime();
+        MISS_NANOS.add(end - now);
+
+        if (entry != null || current.entries.size() < maxEntries) {
+            current.entries.put(key, new Entry(table, end));
+        }
+        return table;
+    }
+
+    /**
+     * The resolutions remembered for a version.
+     */
+    private static class Snapshot {
+        private final long version;
+        private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+
+        /**
+         * Constructor.
+         *
+         * @param version  The version the resolutions were made at
+         */
+        Snapshot(long version) {
+            this.version = version;
+        }
+    }
+
+    /**
+     * A remembered resolution.
+     */
+    private static class Entry {
+        private final PhysicalTable table;
+        private final long created;
+
+        /**
+         * Constructor.
+         *
+         * @param table  The resolved table
+         * @param created  When the table was resolved, in nanos
+         */
+        Entry(PhysicalTable table, long created) {
+            this.table = table;
+            this.created = created;
+        }
+    }
+
+    /**
+     * The candidate tables, by identity, and the normalized signature of a request.
+     */
+    private static class Key {
+        private final PhysicalTable[] tables;
+        private final Set<String> requestDimensions;
+        private final Set<String> filterDimensions;
+        private final Map<Dimension, Set<ApiFilter>> apiFilters;
+        private final Set<String> metricDimensions;
+        private final Set<String> metricNames;
+        private final Set<String> logicalMetricNames;
+        private final Set<Interval> intervals;
+        private final Object minimumGranularity;
+        private final Object requestGranularity;
+        private final int hashCode;
+
+        /**
+         * Constructor.
+         *
+         * @param candidateTables  The tables the table is resolved from
+         * @param constraint  The constraint of the request
+         */
+        Key(Collection<PhysicalTable> candidateTables, QueryPlanningConstraint constraint) {
+            this.tables = candidateTables.toArray(new PhysicalTable[candidateTables.size()]);
+            this.requestDimensions = names(constraint.getRequestDimensions());
+            this.filterDimensions = names(constraint.getFilterDimensions());
+            this.apiFilters = constraint.getApiFilters();
+            this.metricDimensions = names(constraint.getMetricDimensions());
+            this.metricNames = constraint.getMetricNames();
+            this.logicalMetricNames = constraint.getLogicalMetricNames();
+            this.intervals = constraint.getIntervals();
+            this.minimumGranularity = constraint.getMinimumGranularity();
+            this.requestGranularity = constraint.getRequestGranularity();
+
+            int tablesHash = 1;
+            for (PhysicalTable table : tables) {
+                tablesHash = 31 * tablesHash + System.identityHashCode(table);
+            }
+            this.hashCode = Objects.hash(
+                    tablesHash,
+                    requestDimensions,
+                    filterDimensions,
+                    apiFilters,
+                    metricDimensions,
+                    metricNames,
+                    logicalMetricNames,
+                    intervals,
+                    minimumGranularity,
+                    requestGranularity
+            );
+        }
+
+        /**
+         * Get the API names of some dimensions.
+         *
+         * @param dimensions  The dimensions
+         *
+         * @return the names of the dimensions
+         */
+        private static Set<String> names(Set<Dimension> dimensions) {
+            return dimensions.stream().map(Dimension::getApiName).collect(Collectors.toSet());
+        }
+
+        /**
+         * Whether two lists of tables hold the same table instances in the same order.
+         *
+         * @param left  One list of tables
+         * @param right  The other list of tables
+         *
+         * @return true if the lists hold the same instances
+         */
+        private static boolean sameTables(PhysicalTable[] left, PhysicalTable[] right) {
+            if (left.length != right.length) {
+                return false;
+            }
+            for (int i = 0; i < left.length; i++) {
+                if (left[i] != right[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return hashCode == that.hashCode
+                    && sameTables(tables, that.tables)
+                    && Objects.equals(requestDimensions, that.requestDimensions)
+                    && Objects.equals(filterDimensions, that.filterDimensions)
+                    && Objects.equals(apiFilters, that.apiFilters)
+                    && Objects.equals(metricDimensions, that.metricDimensions)
+                    && Objects.equals(metricNames, that.metricNames)
+                    && Objects.equals(logicalMetricNames, that.logicalMetricNames)
+                    && Objects.equals(intervals, that.intervals)
+                    && Objects.equals(minimumGranularity, that.minimumGranularity)
+                    && Objects.equals(requestGranularity, that.requestGranularity);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public String toString() {
+            return "Resolution key: tables " + Arrays.toString(tables) + ", columns " + requestDimensions;
+        }
+    }
+}
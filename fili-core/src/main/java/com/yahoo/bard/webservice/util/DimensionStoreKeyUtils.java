@@ -81,4 +81,14 @@ public class DimensionStoreKeyUtils {
     public static String getCardinalityKey() {
         return "cardinality_key";
     }
+
+    /**
+     * Returns a key that, when fed into a {@link com.yahoo.bard.webservice.data.dimension.KeyValueStore} returns the
+     * names of the dimension fields, in the order of the ordinals used by encoded dimension rows.
+     *
+     * @return  A key that, when fed into a KeyValueStore returns the field names of encoded dimension rows.
+     */
+    public static String getRowFieldsKey() {
+        return "row_fields_key";
+    }
 }
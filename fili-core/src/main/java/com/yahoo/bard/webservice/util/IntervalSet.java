@@ -0,0 +1,436 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.util;
+
+import org.joda.time.Chronology;
+import org.joda.time.Interval;
+import org.joda.time.chrono.ISOChronology;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * An immutable set of instants, held as sorted arrays of the start and end millis of its disjoint intervals.
+ * <p>
+ * An interval set describes the same instants as a {@link SimplifiedIntervalList}: its intervals are sorted, non empty,
+ * and never overlap or abut. Union, intersection and difference are linear merges of the arrays, and containment is a
+ * binary search, so none of them allocate an {@link Interval} until the set is turned back into a list with
+ * {@link #toSimplifiedIntervalList()}. Reducing many interval lists, like the availabilities of the columns of a table,
+ * is cheapest done by converting each list once, combining the sets, and converting the result once.
+ * <p>
+ * A set keeps the chronology of the intervals it was built from, and builds its intervals in it. The result of
+ * combining two sets has the chronology of the set it was called on. Sets are equal if they have the same instants,
+ * whatever their chronologies.
+ */
+public final class IntervalSet {
+
+    /**
+     * The set without any instants.
+     */
+    public static final IntervalSet EMPTY = new IntervalSet(
+            new long[0],
+            new long[0],
+            0,
+            ISOChronology.getInstanceUTC()
+    );
+
+    private final long[] starts;
+    private final long[] ends;
+    private final int size;
+    private final Chronology chronology;
+
+    private int hashCode;
+
+    /**
+     * Constructor.
+     *
+     * @param starts  The start millis of the intervals, of which the first size are used
+     * @param ends  The end millis of the intervals, of which the first size are used
+     * @param size  The number of intervals
+     * @param chronology  The chronology the intervals are built in
+     */
+    IntervalSet(@NotNull long[] starts, @NotNull long[] ends, int size, @NotNull Chronology chronology) {
+        this.starts = starts;
+        this.ends = ends;
+        this.size = size;
+        this.chronology = chronology;
+    }
+
+    /**
+     * Build the set of the instants of some intervals.
+     * <p>
+     * The intervals of a {@link SimplifiedIntervalList} are copied without sorting, unless the list turns out not to
+     * be simplified.
+     *
+     * @param intervals  The intervals, in any order, which may overlap
+     *
+     * @return the set of the instants in any of the intervals, in the chronology of the first interval
+     */
+    public static IntervalSet of(Collection<Interval> intervals) {
+        if (intervals == null || intervals.isEmpty()) {
+            return EMPTY;
+        }
+        if (intervals instanceof SimplifiedIntervalList) {
+            IntervalSet simplified = copySimplified(intervals);
+            if (simplified != null) {
+                return simplified;
+            }
+        }
+
+        Interval[] sorted = intervals.toArray(new Interval[intervals.size()]);
+        Chronology chronology = sorted[0].getChronology();
+        Arrays.sort(sorted, Comparator.comparingLong(Interval::getStartMillis));
+        Builder builder = new Builder(sorted.length, chronology);
+        for (Interval interval : sorted) {
+            builder.append(interval.getStartMillis(), interval.getEndMillis());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Copy intervals which are already sorted, non empty and disjoint.
+     *
+     * @param intervals  The intervals
+     *
+     * @return the set of the intervals, or null if the intervals are not simplified
+     */
+    private static IntervalSet copySimplified(Collection<Interval> intervals) {
+        int size = intervals.size();
+        long[] starts = new long[size];
+        long[] ends = new long[size];
+        int i = 0;
+        for (Interval interval : intervals) {
+            starts[i] = interval.getStartMillis();
+            ends[i] = interval.getEndMillis();
+            if (starts[i] >= ends[i] || (i > 0 && starts[i] <= ends[i - 1])) {
+                return null;
+            }
+            i++;
+        }
+        return new IntervalSet(starts, ends, size, intervals.iterator().next().getChronology());
+    }
+
+    /**
+     * Get the intervals of this set as a simplified interval list.
+     *
+     * @return a new simplified interval list of the intervals of this set
+     */
+    public SimplifiedIntervalList toSimplifiedIntervalList() {
+        SimplifiedIntervalList intervals = new SimplifiedIntervalList();
+        for (int i = 0; i < size; i++) {
+            intervals.addLast(new Interval(starts[i], ends[i], chronology));
+        }
+        return intervals;
+    }
+
+    /**
+     * Get the union of this set and another.
+     *
+     * @param that  The other set
+     *
+     * @return the set of the instants in either set
+     */
+    public IntervalSet union(IntervalSet that) {
+        if (that.size == 0) {
+            return this;
+        }
+        if (size == 0) {
+            return that;
+        }
+        Builder builder = new Builder(size + that.size, chronology);
+        int i = 0;
+        int j = 0;
+        while (i < size || j < that.size) {
+            if (j == that.size || (i < size && starts[i] <= that.starts[j])) {
+                builder.append(starts[i], ends[i]);
+                i++;
+            } else {
+                builder.append(that.starts[j], that.ends[j]);
+                j++;
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Get the intersection of this set and another.
+     *
+     * @param that  The other set
+     *
+     * @return the set of the instants in both sets
+     */
+    public IntervalSet intersect(IntervalSet that) {
+        if (size == 0 || that.size == 0) {
+            return EMPTY;
+        }
+        Builder builder = new Builder(Math.max(size, that.size), chronology);
+        int i = 0;
+        int j = 0;
+        while (i < size && j < that.size) {
+            long start = Math.max(starts[i], that.starts[j]);
+            long end = Math.min(ends[i], that.ends[j]);
+            if (start < end) {
+                builder.append(start, end);
+            }
+            if (ends[i] < that.ends[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Get the difference of this set and another.
+     *
+     * @param that  The other set
+     *
+     * @return the set of the instants in this set and not in the other
+     */
+    public IntervalSet subtract(IntervalSet that) {
+        if (size == 0 || that.size == 0) {
+            return this;
+        }
+        Builder builder = new Builder(size + that.size, chronology);
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            long start = starts[i];
+            long end = ends[i];
+            // Skip the intervals of that which end before this interval starts
+            while (j < that.size && that.ends[j] <= start) {
+                j++;
+            }
+            for (int k = j; k < that.size && that.starts[k] < end && start < end; k++) {
+                if (that.starts[k] > start) {
+                    builder.append(start, that.starts[k]);
+                }
+                start = Math.max(start, that.ends[k]);
+            }
+            if (start < end) {
+                builder.append(start, end);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Whether an instant is in this set.
+     *
+     * @param instant  The instant, in millis
+     *
+     * @return true if an interval of this set contains the instant
+     */
+    public boolean contains(long instant) {
+        int index = indexOfLastStartAtOrBefore(instant);
+        return index >= 0 && instant < ends[index];
+    }
+
+    /**
+     * Whether all the instants of an interval are in this set.
+     *
+     * @param interval  The interval
+     *
+     * @return true if a single interval of this set contains the interval
+     */
+    public boolean contains(Interval interval) {
+        long start = interval.getStartMillis();
+        int index = indexOfLastStartAtOrBefore(start);
+        return index >= 0 && start < ends[index] && interval.getEndMillis() <= ends[index];
+    }
+
+    /**
+     * Whether any instant of a non empty interval is in this set.
+     *
+     * @param interval  The interval
+     *
+     * @return true if an interval of this set overlaps the interval
+     */
+    public boolean overlaps(Interval interval) {
+        // The last interval starting before the end of the interval is the only one which may overlap it
+        int index = indexOfLastStartAtOrBefore(interval.getEndMillis() - 1);
+        return index >= 0 && interval.getStartMillis() < ends[index];
+    }
+
+    /**
+     * Find the interval of this set starting last at or before an instant.
+     *
+     * @param instant  The instant, in millis
+     *
+     * @return the index of the interval, or -1 if every interval starts after the instant
+     */
+    private int indexOfLastStartAtOrBefore(long instant) {
+        int index = Arrays.binarySearch(starts, 0, size, instant);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * Get the number of disjoint intervals in this set.
+     *
+     * @return the number of intervals
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Whether this set has no instants.
+     *
+     * @return true if the set is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Get the start of an interval of this set.
+     *
+     * @param index  The index of the interval, in order of time
+     *
+     * @return the start of the interval, in millis
+     */
+    public long getStartMillis(int index) {
+        checkIndex(index);
+        return starts[index];
+    }
+
+    /**
+     * Get the end of an interval of this set.
+     *
+     * @param index  The index of the interval, in order of time
+     *
+     * @return the end of the interval, in millis
+     */
+    public long getEndMillis(int index) {
+        checkIndex(index);
+        return ends[index];
+    }
+
+    /**
+     * Get the total duration of the intervals of this set.
+     *
+     * @return the duration, in millis
+     */
+    public long getTotalDurationMillis() {
+        long duration = 0;
+        for (int i = 0; i < size; i++) {
+            duration += ends[i] - starts[i];
+        }
+        return duration;
+    }
+
+    /**
+     * Reject an index which is not the index of an interval.
+     *
+     * @param index  The index
+     */
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof IntervalSet)) {
+            return false;
+        }
+        IntervalSet that = (IntervalSet) o;
+        if (size != that.size) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (starts[i] != that.starts[i] || ends[i] != that.ends[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = hashCode;
+        if (result == 0) {
+            result = 1;
+            for (int i = 0; i < size; i++) {
+                result = 31 * result + Long.hashCode(starts[i]);
+                result = 31 * result + Long.hashCode(ends[i]);
+            }
+            hashCode = result;
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(new Interval(starts[i], ends[i], chronology));
+        }
+        return builder.append("]").toString();
+    }
+
+    /**
+     * Collects intervals appended in order of start into a set, merging intervals which overlap or abut.
+     */
+    private static class Builder {
+        private final Chronology chronology;
+        private long[] starts;
+        private long[] ends;
+        private int size;
+
+        /**
+         * Constructor.
+         *
+         * @param capacity  The expected number of intervals
+         * @param chronology  The chronology of the set being built
+         */
+        Builder(int capacity, Chronology chronology) {
+            this.chronology = chronology;
+            starts = new long[Math.max(capacity, 1)];
+            ends = new long[Math.max(capacity, 1)];
+        }
+
+        /**
+         * Append an interval starting at or after the start of every interval appended so far.
+         *
+         * @param start  The start of the interval, in millis
+         * @param end  The end of the interval, in millis
+         */
+        void append(long start, long end) {
+            // Do not store empty intervals
+            if (start >= end) {
+                return;
+            }
+            if (size > 0 && start <= ends[size - 1]) {
+                ends[size - 1] = Math.max(ends[size - 1], end);
+                return;
+            }
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+            }
+            starts[size] = start;
+            ends[size] = end;
+            size++;
+        }
+
+        /**
+         * Build the set of the appended intervals.
+         *
+         * @return the interval set
+         */
+        IntervalSet build() {
+            return size == 0 ? EMPTY : new IntervalSet(starts, ends, size, chronology);
+        }
+    }
+}
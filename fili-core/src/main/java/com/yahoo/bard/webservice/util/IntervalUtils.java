@@ -10,9 +10,7 @@ import com.yahoo.bard.webservice.druid.model.query.Granularity;
 import com.yahoo.bard.webservice.table.resolver.GranularityComparator;
 
 import org.joda.time.DateTime;
-import org.joda.time.Duration;
 import org.joda.time.Interval;
-import org.joda.time.base.AbstractInterval;
 
 import java.util.Collection;
 import java.util.LinkedHashMap;
@@ -23,7 +21,6 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
-import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
@@ -117,6 +114,48 @@ public class IntervalUtils {
                 );
     }
 
+    /**
+     * Simplify raw intervals and split them by the grain, grouping adjacent slices into about maxSlices at most.
+     * <p>
+     * Slices are grouped in runs of equal length, and a group never spans a gap between the raw intervals, so there may
+     * be a few more groups than maxSlices when the raw intervals are not contiguous.
+     *
+     * @param rawIntervals  A collection of intervals to be split
+     * @param grain  The grain to split by.
+     * @param maxSlices  The number of slices to aim for, or 0 to not group slices
+     *
+     * @return a map of the grouped slices, in time order, to an integer that indicates their ordinal
+     */
+    public static Map<Interval, AtomicInteger> getSlicedIntervals(
+            Collection<Interval> rawIntervals,
+            Granularity grain,
+            int maxSlices
+    ) {
+        Map<Interval, AtomicInteger> slices = getSlicedIntervals(rawIntervals, grain);
+        if (maxSlices <= 0 || slices.size() <= maxSlices) {
+            return slices;
+        }
+
+        int slicesPerGroup = (slices.size() + maxSlices - 1) / maxSlices;
+        Map<Interval, AtomicInteger> groups = new LinkedHashMap<>();
+        Interval group = null;
+        int groupSize = 0;
+        for (Interval slice : slices.keySet()) {
+            if (group != null && groupSize < slicesPerGroup && group.abuts(slice)) {
+                group = group.withEnd(slice.getEnd());
+                groupSize++;
+                continue;
+            }
+            if (group != null) {
+                groups.put(group, new AtomicInteger(groups.size()));
+            }
+            group = slice;
+            groupSize = 1;
+        }
+        groups.put(group, new AtomicInteger(groups.size()));
+        return groups;
+    }
+
     /**
      * Count the intervals after simplifying raw intervals and splitting by grain.
      *
@@ -149,16 +188,11 @@ public class IntervalUtils {
         // Stream the from intervals, split by grain
         Iterable<Interval> bucketedIterable = granularity.intervalsIterable(bucketedIntervals);
 
-        // Predicate to find buckets which overlap
-        Predicate<Interval> isIntersecting =
-                new SimplifiedIntervalList.SkippingIntervalPredicate(
-                        supplyIntervals,
-                        AbstractInterval::overlaps,
-                        false
-                );
+        // Find buckets which overlap by binary search of the supply
+        IntervalSet supply = IntervalSet.of(supplyIntervals);
 
         return StreamSupport.stream(bucketedIterable.spliterator(), false)
-                .filter(isIntersecting)
+                .filter(supply::overlaps)
                 .collect(SimplifiedIntervalList.getCollector());
     }
     /**
@@ -169,10 +203,7 @@ public class IntervalUtils {
      * @return The total duration of all the intervals
      */
     public static long getTotalDuration(Collection<Interval> intervals) {
-        return new SimplifiedIntervalList(intervals).stream()
-                .map(Interval::toDuration)
-                .mapToLong(Duration::getMillis)
-                .sum();
+        return IntervalSet.of(intervals).getTotalDurationMillis();
     }
 
     /**
@@ -9,7 +9,6 @@ import org.joda.time.DateTime;
 import org.joda.time.Interval;
 import org.joda.time.ReadablePeriod;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
@@ -275,7 +274,7 @@ public class SimplifiedIntervalList extends LinkedList<Interval> {
      * @return A new simplified list containing all subintervals of both this and that.
      */
     public SimplifiedIntervalList union(SimplifiedIntervalList that) {
-        return simplifyIntervals(this, that);
+        return IntervalSet.of(this).union(IntervalSet.of(that)).toSimplifiedIntervalList();
     }
 
     /**
@@ -286,23 +285,7 @@ public class SimplifiedIntervalList extends LinkedList<Interval> {
      * @return A new simplified interval list whose intervals are all subintervals of this and that.
      */
     public SimplifiedIntervalList intersect(SimplifiedIntervalList that) {
-        Iterator<Interval> theseIntervals = this.iterator();
-        Iterator<Interval> thoseIntervals = that.iterator();
-        Interval thisCurrent = getNextIfAvailable.apply(theseIntervals);
-        Interval thatCurrent = getNextIfAvailable.apply(thoseIntervals);
-        List<Interval> collected = new ArrayList<>();
-
-        while (thisCurrent != null && thatCurrent != null) {
-            if (thisCurrent.overlaps(thatCurrent)) {
-                collected.add(thisCurrent.overlap(thatCurrent));
-            }
-            if (thisCurrent.isBefore(thatCurrent.getEnd())) {
-                thisCurrent = getNextIfAvailable.apply(theseIntervals);
-            } else {
-                thatCurrent = getNextIfAvailable.apply(thoseIntervals);
-            }
-        }
-        return new SimplifiedIntervalList(collected);
+        return IntervalSet.of(this).intersect(IntervalSet.of(that)).toSimplifiedIntervalList();
     }
 
     /**
@@ -313,46 +296,7 @@ public class SimplifiedIntervalList extends LinkedList<Interval> {
      * @return A new simplified interval list whose intervals are all subintervals of this and not that
      */
     public SimplifiedIntervalList subtract(SimplifiedIntervalList that) {
-        Iterator<Interval> theseIntervals = this.iterator();
-        Interval thisCurrent = getNextIfAvailable.apply(theseIntervals);
-
-        if (thisCurrent == null) {
-            return new SimplifiedIntervalList();
-        }
-
-        Iterator<Interval> thoseIntervals = that.iterator();
-
-        Interval thatCurrent = getNextIfAvailable.apply(thoseIntervals);
-        List<Interval> collected = new ArrayList<>();
-
-        while (thisCurrent != null && thatCurrent != null) {
-            if (thisCurrent.isBefore(thatCurrent)) {
-                // Non overlapping intervals are simply collected
-                collected.add(thisCurrent);
-            } else if (thisCurrent.overlaps(thatCurrent)) {
-                // Take any part of the source interval that lies before an overlap
-                if (thisCurrent.getStart().isBefore(thatCurrent.getStart())) {
-                    collected.add(new Interval(thisCurrent.getStart(), thatCurrent.getStart()));
-                }
-                // Truncate out any overlap from the source interval and continue
-                if (!thisCurrent.getEnd().isBefore(thatCurrent.getEnd())) {
-                    thisCurrent = new Interval(thatCurrent.getEnd(), thisCurrent.getEnd());
-                }
-            }
-            // Advance to the next interval to consider
-            if (thisCurrent.isBefore(thatCurrent.getEnd())) {
-                thisCurrent = getNextIfAvailable.apply(theseIntervals);
-            } else {
-                thatCurrent = getNextIfAvailable.apply(thoseIntervals);
-            }
-        }
-        if (thatCurrent == null) {
-            collected.add(thisCurrent);
-            while (theseIntervals.hasNext()) {
-                collected.add(theseIntervals.next());
-            }
-        }
-        return new SimplifiedIntervalList(collected);
+        return IntervalSet.of(this).subtract(IntervalSet.of(that)).toSimplifiedIntervalList();
     }
 
     /**
@@ -3,9 +3,10 @@
 package com.yahoo.bard.webservice.web;
 
 import com.yahoo.bard.webservice.application.ObjectMappersSuite;
+import com.yahoo.bard.webservice.data.Result;
 import com.yahoo.bard.webservice.data.metric.MetricColumn;
 
-import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.dataformat.csv.CsvMapper;
 import com.fasterxml.jackson.dataformat.csv.CsvSchema;
 
@@ -45,24 +46,15 @@ public class CsvResponseWriter implements ResponseWriter {
         csvMapper.writer().with(schema.withSkipFirstDataRow(true))
                 .writeValue(outputStream, Collections.emptyMap());
 
-        ObjectWriter writer = csvMapper.writer().with(schema.withoutHeader());
-
-        try {
-            responseData.getResultSet().stream()
-                    .map(responseData::buildResultRow)
-                    .forEachOrdered(
-                            row -> {
-                                try {
-                                    writer.writeValue(outputStream, row);
-                                } catch (IOException ioe) {
-                                    String msg = String.format("Unable to write CSV data row: %s", row);
-                                    LOG.error(msg, ioe);
-                                    throw new RuntimeException(msg, ioe);
-                                }
-                            }
-                    );
-        } catch (RuntimeException re) {
-            throw new IOException(re);
+        ResultRowWriter rowWriter = responseData.buildResultRowWriter();
+        try (JsonGenerator generator = csvMapper.getFactory().createGenerator(outputStream)) {
+            generator.setSchema(schema.withoutHeader());
+            for (Result result : responseData.getResultSet()) {
+                rowWriter.write(result, generator);
+            }
+        } catch (IOException e) {
+            LOG.error("Unable to write CSV data rows: {}", e.toString());
+            throw e;
         }
     }
 
@@ -137,6 +137,7 @@ public enum ErrorMessageFormat implements MessageFormatter {
     ),
 
     DIMENSION_ROWS_NOT_FOUND("Dimension rows not found for %s with filter %s"),
+    TOO_MANY_FILTER_VALUES("Filter on %s with %s matches %d values, more than the limit of %d"),
 
     UNABLE_TO_FIND_DIMENSION_FROM_DICTIONARY("Unable to find dimension from Dimension dictionary for the name: %s"),
     METRIC_VALUE_PARSING_ERROR("Unable to %s metric value and its type"),
@@ -213,6 +214,10 @@ public enum ErrorMessageFormat implements MessageFormatter {
             "Received %s with status code %s for reason %s when sending %s to Druid"
     ),
 
+    DRUID_QUEUE_FULL("Too many queries are waiting for Druid %s, please try again later."),
+
+    DRUID_QUEUE_TIMEOUT("Query waited more than %d ms for Druid %s, please try again later."),
+
     RESULT_MAPPING_FAILURE(
             "Error occurred while processing response data: %s"
     ),
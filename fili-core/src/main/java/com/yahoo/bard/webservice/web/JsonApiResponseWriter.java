@@ -115,8 +115,9 @@ public class JsonApiResponseWriter extends JsonAndJsonApiResponseWriter {
 
             // Write the data rows and extract the dimension rows for the sidecars
             generator.writeArrayFieldStart("rows");
+            ResultRowWriter rowWriter = responseData.buildResultRowWriterWithSidecars(sidecars);
             for (Result result : responseData.getResultSet()) {
-                generator.writeObject(responseData.buildResultRowWithSidecars(result, sidecars));
+                rowWriter.write(result, generator);
             }
             generator.writeEndArray();
 
@@ -75,8 +75,9 @@ public class JsonResponseWriter extends JsonAndJsonApiResponseWriter {
             g.writeStartObject();
 
             g.writeArrayFieldStart("rows");
+            ResultRowWriter rowWriter = responseData.buildResultRowWriter();
             for (Result result : responseData.getResultSet()) {
-                g.writeObject(responseData.buildResultRow(result));
+                rowWriter.write(result, g);
             }
             g.writeEndArray();
 
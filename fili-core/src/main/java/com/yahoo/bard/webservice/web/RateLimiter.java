@@ -18,12 +18,21 @@ import java.io.Closeable;
 import java.security.Principal;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
 import javax.validation.constraints.NotNull;
 
 /**
  * Handles Rate Limiting for web service.
+ * <p>
+ * Requests are limited by the number of outstanding requests, globally and per user. With
+ * {@code request_token_bucket_enabled}, requests are also charged their estimated cost against a per user
+ * {@link TokenBucket} and a global {@link StripedTokenBucket}, so that a few users sending heavy requests can't take
+ * the capacity light requests need. The global bucket is striped, since every request takes from it. Per user buckets
+ * which have been full for {@code request_token_bucket_idle_eviction_ms} are dropped.
  */
 public class RateLimiter {
     private static final Logger LOG = LoggerFactory.getLogger(RateLimiter.class);
@@ -36,11 +45,28 @@ public class RateLimiter {
             SYSTEM_CONFIG.getPackageVariableName("request_limit_per_user");
     private static final @NotNull String REQUEST_LIMIT_UI_KEY =
             SYSTEM_CONFIG.getPackageVariableName("request_limit_ui");
+    private static final @NotNull String TOKEN_BUCKET_ENABLED_KEY =
+            SYSTEM_CONFIG.getPackageVariableName("request_token_bucket_enabled");
+    private static final @NotNull String TOKEN_RATE_GLOBAL_KEY =
+            SYSTEM_CONFIG.getPackageVariableName("request_token_rate_global");
+    private static final @NotNull String TOKEN_BURST_GLOBAL_KEY =
+            SYSTEM_CONFIG.getPackageVariableName("request_token_burst_global");
+    private static final @NotNull String TOKEN_RATE_PER_USER_KEY =
+            SYSTEM_CONFIG.getPackageVariableName("request_token_rate_per_user");
+    private static final @NotNull String TOKEN_BURST_PER_USER_KEY =
+            SYSTEM_CONFIG.getPackageVariableName("request_token_burst_per_user");
+    private static final @NotNull String TOKEN_BUCKET_IDLE_EVICTION_KEY =
+            SYSTEM_CONFIG.getPackageVariableName("request_token_bucket_idle_eviction_ms");
 
     // Default values
     private static final int DEFAULT_REQUEST_LIMIT_GLOBAL = 70;
     private static final int DEFAULT_REQUEST_LIMIT_PER_USER = 2;
     private static final int DEFAULT_REQUEST_LIMIT_UI = 52;
+    private static final int DEFAULT_TOKEN_RATE_GLOBAL = 2000;
+    private static final int DEFAULT_TOKEN_BURST_GLOBAL = 20000;
+    private static final int DEFAULT_TOKEN_RATE_PER_USER = 100;
+    private static final int DEFAULT_TOKEN_BURST_PER_USER = 2000;
+    private static final long DEFAULT_TOKEN_BUCKET_IDLE_EVICTION_MS = TimeUnit.MINUTES.toMillis(10);
 
     private static final MetricRegistry REGISTRY = MetricRegistryFactory.getRegistry();
 
@@ -51,10 +77,22 @@ public class RateLimiter {
     final int requestLimitPerUser;
     final int requestLimitUi;
 
+    // Token bucket limits
+    final boolean tokenBucketEnabled;
+    final int tokenRatePerUser;
+    final int tokenBurstPerUser;
+    final long idleEvictionNanos;
+
     // Live count holders
     private final AtomicInteger globalCount = new AtomicInteger();
     private final Map<String, AtomicInteger> userCounts = new ConcurrentHashMap<>();
 
+    // Token buckets
+    private final StripedTokenBucket globalBucket;
+    private final Map<String, TokenBucket> userBuckets = new ConcurrentHashMap<>();
+    private final AtomicLong lastEviction;
+    private final LongSupplier clock;
+
     private final Counter requestGlobalCounter;
     private final Counter usersCounter;
 
@@ -63,6 +101,7 @@ public class RateLimiter {
     private final Meter requestUserMeter;
     private final Meter rejectUiMeter;
     private final Meter rejectUserMeter;
+    private final Meter rejectCostMeter;
 
     /**
      * Loads defaults and create RateLimiter.
@@ -70,11 +109,39 @@ public class RateLimiter {
      * @throws SystemConfigException If any parameters fail to load
      */
     public RateLimiter() throws SystemConfigException {
+        this(System::nanoTime);
+    }
+
+    /**
+     * Loads defaults and create RateLimiter, reading time for the token buckets from a clock.
+     *
+     * @param clock  Supplies the current time, in nanos
+     *
+     * @throws SystemConfigException If any parameters fail to load
+     */
+    protected RateLimiter(LongSupplier clock) throws SystemConfigException {
+        this.clock = clock;
+
         // Load limits
         requestLimitGlobal = SYSTEM_CONFIG.getIntProperty(REQUEST_LIMIT_GLOBAL_KEY, DEFAULT_REQUEST_LIMIT_GLOBAL);
         requestLimitPerUser = SYSTEM_CONFIG.getIntProperty(REQUEST_LIMIT_PER_USER_KEY, DEFAULT_REQUEST_LIMIT_PER_USER);
         requestLimitUi = SYSTEM_CONFIG.getIntProperty(REQUEST_LIMIT_UI_KEY, DEFAULT_REQUEST_LIMIT_UI);
 
+        // Load token bucket limits
+        tokenBucketEnabled = SYSTEM_CONFIG.getBooleanProperty(TOKEN_BUCKET_ENABLED_KEY, false);
+        tokenRatePerUser = SYSTEM_CONFIG.getIntProperty(TOKEN_RATE_PER_USER_KEY, DEFAULT_TOKEN_RATE_PER_USER);
+        tokenBurstPerUser = SYSTEM_CONFIG.getIntProperty(TOKEN_BURST_PER_USER_KEY, DEFAULT_TOKEN_BURST_PER_USER);
+        idleEvictionNanos = TimeUnit.MILLISECONDS.toNanos(
+                SYSTEM_CONFIG.getLongProperty(TOKEN_BUCKET_IDLE_EVICTION_KEY, DEFAULT_TOKEN_BUCKET_IDLE_EVICTION_MS)
+        );
+        globalBucket = new StripedTokenBucket(
+                SYSTEM_CONFIG.getIntProperty(TOKEN_RATE_GLOBAL_KEY, DEFAULT_TOKEN_RATE_GLOBAL),
+                SYSTEM_CONFIG.getIntProperty(TOKEN_BURST_GLOBAL_KEY, DEFAULT_TOKEN_BURST_GLOBAL),
+                Runtime.getRuntime().availableProcessors(),
+                clock.getAsLong()
+        );
+        lastEviction = new AtomicLong(clock.getAsLong());
+
         // Register counters for currently active requests
         usersCounter = REGISTRY.counter("ratelimit.count.users");
         requestGlobalCounter = REGISTRY.counter("ratelimit.count.global");
@@ -85,6 +152,7 @@ public class RateLimiter {
         requestBypassMeter = REGISTRY.meter("ratelimit.meter.request.bypass");
         rejectUserMeter = REGISTRY.meter("ratelimit.meter.reject.user");
         rejectUiMeter = REGISTRY.meter("ratelimit.meter.reject.ui");
+        rejectCostMeter = REGISTRY.meter("ratelimit.meter.reject.cost");
     }
 
     /**
@@ -98,7 +166,7 @@ public class RateLimiter {
      * Type of rate limit.
      */
     public enum RateLimitType {
-        GLOBAL, USER
+        GLOBAL, USER, COST
     }
 
     /**
@@ -121,6 +189,55 @@ public class RateLimiter {
         return count;
     }
 
+    /**
+     * Take tokens for a request from the user's token bucket and the global token bucket.
+     *
+     * @param userName  Username to charge
+     * @param cost  The estimated cost of the request
+     *
+     * @return true if both buckets held enough tokens, false if the request should be rejected
+     */
+    private boolean takeTokens(String userName, long cost) {
+        long now = clock.getAsLong();
+        evictIdleBuckets(now);
+
+        TokenBucket userBucket = userBuckets.computeIfAbsent(
+                userName,
+                ignored -> new TokenBucket(tokenRatePerUser, tokenBurstPerUser, now)
+        );
+        if (!userBucket.tryTake(cost, now)) {
+            LOG.info("reject cost {} for user {}: {} tokens left", cost, userName, userBucket.getAvailableTokens(now));
+            return false;
+        }
+        if (!globalBucket.tryTake(cost, now)) {
+            userBucket.refund(cost);
+            LOG.info("reject cost {} globally: {} tokens left", cost, globalBucket.getAvailableTokens(now));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Drop the user token buckets which have been full for the idle eviction time, at most once per that time.
+     *
+     * @param now  The current time, in nanos
+     */
+    private void evictIdleBuckets(long now) {
+        long last = lastEviction.get();
+        if (now - last >= idleEvictionNanos && lastEviction.compareAndSet(last, now)) {
+            userBuckets.values().removeIf(bucket -> bucket.isIdle(now, idleEvictionNanos));
+        }
+    }
+
+    /**
+     * Get the number of users with a token bucket.
+     *
+     * @return the number of user token buckets held
+     */
+    int getUserBucketCount() {
+        return userBuckets.size();
+    }
+
     /**
      * Increment user outstanding requests count.
      *
@@ -130,11 +247,31 @@ public class RateLimiter {
      * @return token holding this user's count
      */
     public RequestToken getToken(RequestType type, Principal user) {
+        return getToken(type, user, 1);
+    }
+
+    /**
+     * Increment user outstanding requests count, and charge the estimated cost of the request if token buckets are
+     * enabled.
+     *
+     * @param type  request type
+     * @param user  request user
+     * @param cost  estimated cost of the request, in tokens
+     *
+     * @return token holding this user's count
+     */
+    public RequestToken getToken(RequestType type, Principal user, long cost) {
         switch (type) {
             case UI:
-                return new OutstandingRequestToken(user, requestLimitUi, requestUiMeter, rejectUiMeter);
+                return new OutstandingRequestToken(user, requestLimitUi, requestUiMeter, rejectUiMeter, cost);
             case USER:
-                return new OutstandingRequestToken(user, requestLimitPerUser, requestUserMeter, rejectUserMeter);
+                return new OutstandingRequestToken(
+                        user,
+                        requestLimitPerUser,
+                        requestUserMeter,
+                        rejectUserMeter,
+                        cost
+                );
             case BYPASS:
                 return new BypassRequestToken();
             default:
@@ -202,6 +339,25 @@ public class RateLimiter {
          * @param rejectMeter  reject meter
          */
         public OutstandingRequestToken(Principal user, int requestLimit, Meter requestMeter, Meter rejectMeter) {
+            this(user, requestLimit, requestMeter, rejectMeter, 1);
+        }
+
+        /**
+         * Bind outstanding request to token and charge its cost, or fail and set to unbound.
+         *
+         * @param user  request user
+         * @param requestLimit  request limit
+         * @param requestMeter  request meter
+         * @param rejectMeter  reject meter
+         * @param cost  estimated cost of the request, charged if token buckets are enabled
+         */
+        public OutstandingRequestToken(
+                Principal user,
+                int requestLimit,
+                Meter requestMeter,
+                Meter rejectMeter,
+                long cost
+        ) {
             userName = String.valueOf(user == null ? null : user.getName());
             count = getCount(userName);
 
@@ -220,6 +376,17 @@ public class RateLimiter {
                 return;
             }
 
+            // Charge the cost of the request
+            if (tokenBucketEnabled && !takeTokens(userName, cost)) {
+                // Decrement the counts that had already been incremented
+                globalCount.decrementAndGet();
+                count.decrementAndGet();
+
+                rejectCostMeter.mark();
+                rejectRequest(rejectMeter, RateLimitType.COST);
+                return;
+            }
+
             // Measure the accepted request and current open connections
             requestMeter.mark();
             requestGlobalCounter.inc();
@@ -21,6 +21,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -270,6 +271,70 @@ public class ResponseData {
         return row;
     }
 
+    /**
+     * Builds the writer of the rows of the response, which writes the same fields as {@link #buildResultRow(Result)}.
+     *
+     * @return the row writer
+     */
+    public ResultRowWriter buildResultRowWriter() {
+        List<ResultRowWriter.DimensionColumnWriter> dimensionColumnWriters = new ArrayList<>();
+        for (DimensionColumn dimensionColumn : resultSet.getSchema().getColumns(DimensionColumn.class)) {
+            Dimension dimension = dimensionColumn.getDimension();
+            Set<DimensionField> requestedDimensionFields = requestedApiDimensionFields.get(dimension);
+            if (requestedDimensionFields == null) {
+                continue;
+            }
+
+            LinkedHashMap<String, DimensionField> fieldsByName = new LinkedHashMap<>();
+            if (requestedDimensionFields.isEmpty()) {
+                // When no fields are requested, show the key field
+                fieldsByName.put(dimension.getApiName(), dimension.getKey());
+            } else {
+                // Otherwise, show the fields requested, with the pipe-separated name
+                for (DimensionField dimensionField : requestedDimensionFields) {
+                    fieldsByName.put(getDimensionColumnName(dimension, dimensionField), dimensionField);
+                }
+            }
+            dimensionColumnWriters.add(new ResultRowWriter.DimensionColumnWriter(dimensionColumn, fieldsByName));
+        }
+        return new ResultRowWriter(dimensionColumnWriters, apiMetricColumns);
+    }
+
+    /**
+     * Builds the writer of the rows of the response which loads the dimension rows into the sidecar map, and writes
+     * the same fields as {@link #buildResultRowWithSidecars(Result, Map)}.
+     *
+     * @param sidecars  Map of sidecar data (dimension rows in the result)
+     *
+     * @return the row writer
+     */
+    public ResultRowWriter buildResultRowWriterWithSidecars(Map<Dimension, Set<Map<DimensionField, String>>> sidecars) {
+        List<ResultRowWriter.DimensionColumnWriter> dimensionColumnWriters = new ArrayList<>();
+        for (DimensionColumn dimensionColumn : resultSet.getSchema().getColumns(DimensionColumn.class)) {
+            Dimension dimension = dimensionColumn.getDimension();
+
+            // Put the dimension name and dimension row's key value into the row
+            LinkedHashMap<String, DimensionField> fieldsByName = new LinkedHashMap<>();
+            fieldsByName.put(dimension.getApiName(), dimension.getKey());
+
+            // add sidecar only if at-least one field needs to be shown, the key field is required
+            Set<DimensionField> requestedDimensionFields = requestedApiDimensionFields.get(dimension);
+            if (requestedDimensionFields == null || requestedDimensionFields.isEmpty()) {
+                dimensionColumnWriters.add(new ResultRowWriter.DimensionColumnWriter(dimensionColumn, fieldsByName));
+            } else {
+                Set<DimensionField> sidecarFields = new LinkedHashSet<>(requestedDimensionFields);
+                sidecarFields.add(dimension.getKey());
+                dimensionColumnWriters.add(new ResultRowWriter.DimensionColumnWriter(
+                        dimensionColumn,
+                        fieldsByName,
+                        sidecarFields,
+                        sidecars.computeIfAbsent(dimension, ignored -> new LinkedHashSet<>())
+                ));
+            }
+        }
+        return new ResultRowWriter(dimensionColumnWriters, apiMetricColumns);
+    }
+
     /**
      * Build a list of interval strings. Format of interval string: yyyy-MM-dd' 'HH:mm:ss/yyyy-MM-dd' 'HH:mm:ss
      *
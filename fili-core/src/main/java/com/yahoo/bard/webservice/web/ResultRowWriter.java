@@ -0,0 +1,214 @@
+// Copyright 2017 Oath Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web;
+
+import com.yahoo.bard.webservice.data.Result;
+import com.yahoo.bard.webservice.data.dimension.DimensionColumn;
+import com.yahoo.bard.webservice.data.dimension.DimensionField;
+import com.yahoo.bard.webservice.data.dimension.DimensionRow;
+import com.yahoo.bard.webservice.data.metric.MetricColumn;
+import com.yahoo.bard.webservice.util.DateTimeFormatterFactory;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormatter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes the rows of a response straight to a JsonGenerator, without building a map for each row.
+ * <p>
+ * The writer is a plan of the columns of the response, built once per response by
+ * {@link ResponseData#buildResultRowWriter()} or {@link ResponseData#buildResultRowWriterWithSidecars(Map)}, and
+ * writes the same fields as {@link ResponseData#buildResultRow(Result)} and
+ * {@link ResponseData#buildResultRowWithSidecars(Result, Map)} would build. Field names are serialized once, the
+ * formatted timestamp is reused while consecutive rows are in the same time bucket, and numbers are written as
+ * numbers rather than through the ObjectMapper. Since it caches the last timestamp, a writer should only be used by
+ * the one response it was built for.
+ */
+public class ResultRowWriter {
+
+    private static final SerializedString DATE_TIME = new SerializedString("dateTime");
+
+    private final DateTimeFormatter formatter = DateTimeFormatterFactory.getOutputFormatter();
+    private final DimensionColumnWriter[] dimensionColumnWriters;
+    private final MetricColumn[] metricColumns;
+    private final SerializedString[] metricNames;
+
+    private DateTime lastTimeStamp;
+    private String lastFormattedTimeStamp;
+
+    /**
+     * Constructor.
+     *
+     * @param dimensionColumnWriters  The writers of the dimension columns of the response, in order
+     * @param metricColumns  The metric columns of the response, in order
+     */
+    ResultRowWriter(List<DimensionColumnWriter> dimensionColumnWriters, Collection<MetricColumn> metricColumns) {
+        this.dimensionColumnWriters = dimensionColumnWriters.toArray(new DimensionColumnWriter[0]);
+        this.metricColumns = metricColumns.toArray(new MetricColumn[0]);
+        this.metricNames = new SerializedString[this.metricColumns.length];
+        for (int i = 0; i < this.metricColumns.length; i++) {
+            metricNames[i] = new SerializedString(this.metricColumns[i].getName());
+        }
+    }
+
+    /**
+     * Write a result as a row object.
+     *
+     * @param result  The result to write
+     * @param generator  The generator to write the row to
+     *
+     * @throws IOException if the generator fails to write the row
+     */
+    public void write(Result result, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+
+        generator.writeFieldName(DATE_TIME);
+        generator.writeString(formatTimeStamp(result.getTimeStamp()));
+
+        for (DimensionColumnWriter dimensionColumnWriter : dimensionColumnWriters) {
+            dimensionColumnWriter.write(result, generator);
+        }
+
+        for (int i = 0; i < metricColumns.length; i++) {
+            generator.writeFieldName(metricNames[i]);
+            writeValue(result.getMetricValue(metricColumns[i]), generator);
+        }
+
+        generator.writeEndObject();
+    }
+
+    /**
+     * Format a timestamp, reusing the formatted timestamp of the previous row when it is in the same bucket.
+     *
+     * @param timeStamp  The timestamp to format
+     *
+     * @return the formatted timestamp
+     */
+    private String formatTimeStamp(DateTime timeStamp) {
+        if (!timeStamp.equals(lastTimeStamp)) {
+            lastTimeStamp = timeStamp;
+            lastFormattedTimeStamp = timeStamp.toString(formatter);
+        }
+        return lastFormattedTimeStamp;
+    }
+
+    /**
+     * Write a metric value, using the generator's own methods for the types metric values usually have.
+     *
+     * @param value  The value to write
+     * @param generator  The generator to write the value to
+     *
+     * @throws IOException if the generator fails to write the value
+     */
+    private static void writeValue(Object value, JsonGenerator generator) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else if (value instanceof BigDecimal) {
+            generator.writeNumber((BigDecimal) value);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short
+                || value instanceof Byte) {
+            generator.writeNumber(((Number) value).longValue());
+        } else if (value instanceof Double) {
+            generator.writeNumber((Double) value);
+        } else if (value instanceof Float) {
+            generator.writeNumber((Float) value);
+        } else if (value instanceof BigInteger) {
+            generator.writeNumber((BigInteger) value);
+        } else if (value instanceof String) {
+            generator.writeString((String) value);
+        } else if (value instanceof Boolean) {
+            generator.writeBoolean((Boolean) value);
+        } else {
+            generator.writeObject(value);
+        }
+    }
+
+    /**
+     * Writes the fields of one dimension column of a row, and collects its dimension rows into a sidecar.
+     */
+    static class DimensionColumnWriter {
+        private final DimensionColumn dimensionColumn;
+        private final DimensionField[] fields;
+        private final SerializedString[] names;
+        private final DimensionField[] sidecarFields;
+        private final Set<Map<DimensionField, String>> sidecar;
+        private final Set<DimensionRow> sidecarRows = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        /**
+         * Constructor for a column without a sidecar.
+         *
+         * @param dimensionColumn  The column to write
+         * @param fieldsByName  The fields of the dimension rows to write, by the name they are written as
+         */
+        DimensionColumnWriter(DimensionColumn dimensionColumn, LinkedHashMap<String, DimensionField> fieldsByName) {
+            this(dimensionColumn, fieldsByName, Collections.emptySet(), null);
+        }
+
+        /**
+         * Constructor.
+         *
+         * @param dimensionColumn  The column to write
+         * @param fieldsByName  The fields of the dimension rows to write, by the name they are written as
+         * @param sidecarFields  The fields of the dimension rows collected into the sidecar
+         * @param sidecar  The sidecar to collect the dimension rows into, or null to not collect them
+         */
+        DimensionColumnWriter(
+                DimensionColumn dimensionColumn,
+                LinkedHashMap<String, DimensionField> fieldsByName,
+                Collection<DimensionField> sidecarFields,
+                Set<Map<DimensionField, String>> sidecar
+        ) {
+            this.dimensionColumn = dimensionColumn;
+            this.fields = fieldsByName.values().toArray(new DimensionField[0]);
+            this.names = fieldsByName.keySet().stream().map(SerializedString::new).toArray(SerializedString[]::new);
+            this.sidecarFields = sidecarFields.toArray(new DimensionField[0]);
+            this.sidecar = sidecar;
+        }
+
+        /**
+         * Write the fields of the column of a result, if the result has the column.
+         *
+         * @param result  The result to write
+         * @param generator  The generator to write the fields to
+         *
+         * @throws IOException if the generator fails to write the fields
+         */
+        void write(Result result, JsonGenerator generator) throws IOException {
+            DimensionRow dimensionRow = result.getDimensionRow(dimensionColumn);
+            if (dimensionRow == null) {
+                return;
+            }
+            for (int i = 0; i < fields.length; i++) {
+                generator.writeFieldName(names[i]);
+                String value = dimensionRow.get(fields[i]);
+                if (value == null) {
+                    generator.writeNull();
+                } else {
+                    generator.writeString(value);
+                }
+            }
+
+            // Dimension rows are usually shared between results, so each row instance is only projected once
+            if (sidecar != null && sidecarRows.add(dimensionRow)) {
+                Map<DimensionField, String> sidecarRow = new LinkedHashMap<>();
+                for (DimensionField sidecarField : sidecarFields) {
+                    sidecarRow.put(sidecarField, dimensionRow.get(sidecarField));
+                }
+                sidecar.add(sidecarRow);
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web;
+
+/**
+ * A token bucket shared by many threads, split into stripes so that concurrent takes don't all contend on one value.
+ * <p>
+ * Each stripe is a {@link TokenBucket} holding a share of the capacity and refilling at the same share of the rate.
+ * A take is tried first against the stripe of the calling thread, and only when that stripe holds too few tokens is it
+ * gathered from the other stripes, so the striped bucket still admits as much as a single bucket would. Stripes hold
+ * whole tokens, so up to a token per stripe may be unavailable while the stripes refill. Stripes are kept to at least
+ * {@link #MIN_STRIPE_CAPACITY} tokens, which makes that loss negligible, and a small bucket is not striped at all.
+ */
+public class StripedTokenBucket {
+
+    /**
+     * The fewest tokens a stripe holds.
+     */
+    public static final long MIN_STRIPE_CAPACITY = 1000;
+
+    private final long capacity;
+    private final TokenBucket[] stripes;
+
+    /**
+     * Constructor, for a full bucket.
+     *
+     * @param tokensPerSecond  The rate the bucket refills at
+     * @param capacity  The most tokens the bucket holds
+     * @param maxStripes  The most stripes to split the bucket into
+     * @param nowNanos  The current time, in nanos
+     */
+    public StripedTokenBucket(double tokensPerSecond, long capacity, int maxStripes, long nowNanos) {
+        if (tokensPerSecond <= 0 || capacity < 1) {
+            throw new IllegalArgumentException(
+                    "Token buckets need a positive rate and capacity: " + tokensPerSecond + ", " + capacity
+            );
+        }
+        this.capacity = capacity;
+        int stripeCount = (int) Math.max(1, Math.min(maxStripes, capacity / MIN_STRIPE_CAPACITY));
+        this.stripes = new TokenBucket[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            long stripeCapacity = capacity / stripeCount + (i < capacity % stripeCount ? 1 : 0);
+            stripes[i] = new TokenBucket(tokensPerSecond * stripeCapacity / capacity, stripeCapacity, nowNanos);
+        }
+    }
+
+    /**
+     * Take tokens from the bucket if it holds enough.
+     * <p>
+     * A cost above the capacity of the bucket takes the full bucket, so that no request is rejected forever.
+     *
+     * @param cost  The number of tokens to take
+     * @param nowNanos  The current time, in nanos
+     *
+     * @return true if the tokens were taken, false if the bucket holds too few
+     */
+    public boolean tryTake(long cost, long nowNanos) {
+        long remaining = Math.min(Math.max(cost, 0), capacity);
+        int home = (int) (Thread.currentThread().getId() % stripes.length);
+        if (remaining <= stripes[home].getCapacity() && stripes[home].tryTake(remaining, nowNanos)) {
+            return true;
+        }
+
+        // Gather the cost from every stripe, giving back what was taken if the stripes together hold too few
+        long[] taken = new long[stripes.length];
+        for (int i = 0; i < stripes.length && remaining > 0; i++) {
+            int stripe = (home + i) % stripes.length;
+            long part = Math.min(remaining, stripes[stripe].getAvailableTokens(nowNanos));
+            if (part > 0 && stripes[stripe].tryTake(part, nowNanos)) {
+                taken[stripe] = part;
+                remaining -= part;
+            }
+        }
+        if (remaining > 0) {
+            for (int stripe = 0; stripe < stripes.length; stripe++) {
+                stripes[stripe].refund(taken[stripe]);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Get the number of tokens in the bucket.
+     *
+     * @param nowNanos  The current time, in nanos
+     *
+     * @return the tokens available to take
+     */
+    public long getAvailableTokens(long nowNanos) {
+        long available = 0;
+        for (TokenBucket stripe : stripes) {
+            available += stripe.getAvailableTokens(nowNanos);
+        }
+        return available;
+    }
+
+    /**
+     * Get the number of stripes the bucket is split into.
+     *
+     * @return the number of stripes
+     */
+    public int getStripeCount() {
+        return stripes.length;
+    }
+}
@@ -0,0 +1,116 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock free token bucket, refilling at a steady rate up to a capacity.
+ * <p>
+ * The bucket is held as a single theoretical arrival time, in nanos, as in the generic cell rate algorithm: the time at
+ * which the bucket would be full again if nothing more were taken. Taking tokens pushes that time forward, and is
+ * allowed while it stays within the time the bucket takes to fill from empty. Taking and refunding tokens are a compare
+ * and set of that one value, so the bucket needs no lock and no refill task.
+ */
+public class TokenBucket {
+    private final long capacity;
+    private final long nanosPerToken;
+    private final long fillNanos;
+    private final AtomicLong fullAt;
+
+    /**
+     * Constructor, for a full bucket.
+     *
+     * @param tokensPerSecond  The rate the bucket refills at
+     * @param capacity  The most tokens the bucket holds
+     * @param nowNanos  The current time, in nanos
+     */
+    public TokenBucket(double tokensPerSecond, long capacity, long nowNanos) {
+        if (tokensPerSecond <= 0 || capacity < 1) {
+            throw new IllegalArgumentException(
+                    "Token buckets need a positive rate and capacity: " + tokensPerSecond + ", " + capacity
+            );
+        }
+        this.capacity = capacity;
+        this.nanosPerToken = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / tokensPerSecond));
+        this.fillNanos = nanosPerToken * capacity;
+        this.fullAt = new AtomicLong(nowNanos);
+    }
+
+    /**
+     * Take tokens from the bucket if it holds enough.
+     * <p>
+     * A cost above the capacity of the bucket takes the full bucket, so that no request is rejected forever.
+     *
+     * @param cost  The number of tokens to take
+     * @param nowNanos  The current time, in nanos
+     *
+     * @return true if the tokens were taken, false if the bucket holds too few
+     */
+    public boolean tryTake(long cost, long nowNanos) {
+        long increment = charge(cost);
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, nowNanos) + increment;
+            if (next - nowNanos > fillNanos) {
+                return false;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Return tokens taken from the bucket.
+     *
+     * @param cost  The number of tokens taken
+     */
+    public void refund(long cost) {
+        fullAt.addAndGet(-charge(cost));
+    }
+
+    /**
+     * Get the number of tokens in the bucket.
+     *
+     * @param nowNanos  The current time, in nanos
+     *
+     * @return the tokens available to take
+     */
+    public long getAvailableTokens(long nowNanos) {
+        return (fillNanos - Math.max(0, fullAt.get() - nowNanos)) / nanosPerToken;
+    }
+
+    /**
+     * Get the most tokens the bucket holds.
+     *
+     * @return the capacity of the bucket
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Whether the bucket has been full for a while, so that replacing it with a new, full bucket changes nothing.
+     *
+     * @param nowNanos  The current time, in nanos
+     * @param idleNanos  How long the bucket must have been full
+     *
+     * @return true if the bucket has been full for at least the idle time
+     */
+    public boolean isIdle(long nowNanos, long idleNanos) {
+        return nowNanos - fullAt.get() >= idleNanos;
+    }
+
+    /**
+     * Get the time a cost takes from the bucket.
+     *
+     * @param cost  The number of tokens
+     *
+     * @return the time, in nanos, the bucket takes to refill the cost
+     */
+    private long charge(long cost) {
+        return Math.min(Math.max(cost, 0), capacity) * nanosPerToken;
+    }
+}
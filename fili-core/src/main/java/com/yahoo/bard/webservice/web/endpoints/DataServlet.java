@@ -396,7 +396,11 @@ public class DataServlet extends CORSPreflightServlet implements BardConfigResou
             // Accumulate data needed for request processing workflow
             RequestContext context;
             try (TimedPhase timer = RequestLog.startTiming("BuildRequestContext")) {
-                context = new RequestContext(containerRequestContext, readCache);
+                context = new RequestContext(
+                        containerRequestContext,
+                        readCache,
+                        apiRequest.getAsyncAfter() != DataApiRequest.SYNCHRONOUS_ASYNC_AFTER_VALUE
+                );
             }
 
             Subject<PreResponse, PreResponse> queryResultsEmitter = PublishSubject.create();
@@ -12,11 +12,15 @@ import com.yahoo.bard.webservice.data.dimension.Dimension;
 import com.yahoo.bard.webservice.data.dimension.DimensionDictionary;
 import com.yahoo.bard.webservice.data.dimension.DimensionField;
 import com.yahoo.bard.webservice.data.dimension.DimensionRow;
+import com.yahoo.bard.webservice.data.dimension.DimensionRowBatchLoader;
 import com.yahoo.bard.webservice.data.dimension.DimensionUpdateDate;
 import com.yahoo.bard.webservice.web.PATCH;
 
 import com.codahale.metrics.annotation.Timed;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -25,11 +29,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
 import java.util.Map;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -170,6 +174,9 @@ public class DimensionCacheLoaderServlet {
      * Endpoint to add/replace dimension rows.
      * <p>
      * If a row having the same ID already exists, it will be overwritten.
+     * <p>
+     * The rows are read from the request as they are added, in batches of {@code dimension_load_batch_size} rows, so
+     * the request is never held in memory. If the request fails part way, the batches before the failure stay added.
      *
      * @param dimensionName  name of the dimension whose dimension rows are to be modified. (path parameter)
      * @param json  post data json containing a list of json objects which describe dimension rows
@@ -188,8 +195,8 @@ public class DimensionCacheLoaderServlet {
     @Timed
     @Path("/dimensions/{dimensionName}/dimensionRows")
     @Consumes("application/json; charset=utf-8")
-    public Response addReplaceDimensionRows(@PathParam("dimensionName") String dimensionName, String json) {
-        LOG.debug("Replacing {} dimension rows with a json payload {} characters long", dimensionName, json.length());
+    public Response addReplaceDimensionRows(@PathParam("dimensionName") String dimensionName, Reader json) {
+        LOG.debug("Replacing {} dimension rows", dimensionName);
         try {
             // if dimension is not located return bad request response
             Dimension dimension = dimensionDictionary.findByApiName(dimensionName);
@@ -199,19 +206,21 @@ public class DimensionCacheLoaderServlet {
                 return Response.status(NOT_FOUND).entity(message).build();
             }
 
-            // extract dimension rows form the post data
-            Map<String, LinkedHashSet<LinkedHashMap<String, String>>> rawDimensionRows = mapper.readValue(
-                    json,
-                    new TypeReference<Map<String, LinkedHashSet<LinkedHashMap<String, String>>>>() { /* Empty class */ }
-            );
-
-            Set<DimensionRow> dimensionRows = rawDimensionRows.get("dimensionRows").stream()
-                    .map(dimension::parseDimensionRow)
-                    .collect(Collectors.toCollection(LinkedHashSet::new));
-
-            dimension.addAllDimensionRows(dimensionRows);
+            // stream the dimension rows from the post data into the dimension
+            DimensionRowBatchLoader loader = new DimensionRowBatchLoader(dimension);
+            try {
+                readDimensionRows(json, fieldnameValueMap -> loader.accept(
+                        dimension.parseDimensionRow(fieldnameValueMap)
+                ));
+            } finally {
+                loader.close();
+            }
 
-            LOG.debug("Successfully added/replaced {} row(s) for dimension: {}", dimensionRows.size(), dimensionName);
+            LOG.debug(
+                    "Successfully added/replaced {} row(s) for dimension: {}",
+                    loader.getLoadedRows(),
+                    dimensionName
+            );
             return Response.status(Status.OK).build();
         } catch (IOException e) {
             String message = "Failed to add/replace dimension rows";
@@ -220,6 +229,20 @@ public class DimensionCacheLoaderServlet {
         }
     }
 
+    /**
+     * Add/replace dimension rows from a json string.
+     *
+     * @param dimensionName  name of the dimension whose dimension rows are to be modified
+     * @param json  post data json containing a list of json objects which describe dimension rows
+     *
+     * @return OK(200) if successfully added/replaced else Bad Request(400)
+     *
+     * @see #addReplaceDimensionRows(String, Reader)
+     */
+    public Response addReplaceDimensionRows(String dimensionName, String json) {
+        return addReplaceDimensionRows(dimensionName, new StringReader(json));
+    }
+
     /**
      * Endpoint to add/update dimension rows, with update semantics.
      * <p>
@@ -274,8 +297,8 @@ public class DimensionCacheLoaderServlet {
     @Timed
     @Path("/dimensions/{dimensionName}/dimensionRows")
     @Consumes("application/json")
-    public Response addUpdateDimensionRows(@PathParam("dimensionName") String dimensionName, String json) {
-        LOG.debug("Updating {} dimension rows with a json payload {} characters long", dimensionName, json.length());
+    public Response addUpdateDimensionRows(@PathParam("dimensionName") String dimensionName, Reader json) {
+        LOG.debug("Updating {} dimension rows", dimensionName);
         try {
             // if dimension is not located return bad request response
             Dimension dimension = dimensionDictionary.findByApiName(dimensionName);
@@ -285,34 +308,36 @@ public class DimensionCacheLoaderServlet {
                 return Response.status(NOT_FOUND).entity(message).build();
             }
 
-            // extract dimension rows form the post data
-            Map<String, LinkedHashSet<LinkedHashMap<String, String>>> rawDimensionRows = mapper.readValue(
-                    json,
-                    new TypeReference<Map<String, LinkedHashSet<LinkedHashMap<String, String>>>>() { /* Empty class */ }
-            );
-
+            // stream the dimension rows from the post data, merged into the existing rows, into the dimension
             DimensionField key = dimension.getKey();
-            Set<DimensionRow> dimensionRows = new LinkedHashSet<>();
-            for (Map<String, String> fieldnameValueMap: rawDimensionRows.get("dimensionRows")) {
-                DimensionRow newRow = dimension.parseDimensionRow(fieldnameValueMap);
-                DimensionRow oldRow = dimension.findDimensionRowByKeyValue(newRow.get(key));
-                if (oldRow == null) {
-                    // It didn't exist before, so add it directly
-                    dimensionRows.add(newRow);
-                } else {
-                    // The row existed before, so do an update on the existing row's data
-                    for (DimensionField field : dimension.getDimensionFields()) {
-                        // only overwrite if the field was in the original JSON
-                        if (fieldnameValueMap.containsKey(field.getName())) {
-                            oldRow.put(field, newRow.get(field));
+            DimensionRowBatchLoader loader = new DimensionRowBatchLoader(dimension);
+            try {
+                readDimensionRows(json, fieldnameValueMap -> {
+                    DimensionRow newRow = dimension.parseDimensionRow(fieldnameValueMap);
+                    DimensionRow oldRow = dimension.findDimensionRowByKeyValue(newRow.get(key));
+                    if (oldRow == null) {
+                        // It didn't exist before, so add it directly
+                        loader.accept(newRow);
+                    } else {
+                        // The row existed before, so do an update on the existing row's data
+                        for (DimensionField field : dimension.getDimensionFields()) {
+                            // only overwrite if the field was in the original JSON
+                            if (fieldnameValueMap.containsKey(field.getName())) {
+                                oldRow.put(field, newRow.get(field));
+                            }
                         }
-                        dimensionRows.add(oldRow);
+                        loader.accept(oldRow);
                     }
-                }
+                });
+            } finally {
+                loader.close();
             }
-            dimension.addAllDimensionRows(dimensionRows);
 
-            LOG.debug("Successfully added/updated {} row(s) for dimension: {}", dimensionRows.size(), dimensionName);
+            LOG.debug(
+                    "Successfully added/updated {} row(s) for dimension: {}",
+                    loader.getLoadedRows(),
+                    dimensionName
+            );
             return Response.status(Status.OK).build();
         } catch (IOException e) {
             String message = "Failed to add/update dimension rows";
@@ -321,6 +346,62 @@ public class DimensionCacheLoaderServlet {
         }
     }
 
+    /**
+     * Add/update dimension rows from a json string.
+     *
+     * @param dimensionName  name of the dimension whose dimension rows are to be modified
+     * @param json  post data json containing a list of json objects which describe dimension rows
+     *
+     * @return OK(200) if successfully added/updated else Bad Request(400)
+     *
+     * @see #addUpdateDimensionRows(String, Reader)
+     */
+    public Response addUpdateDimensionRows(String dimensionName, String json) {
+        return addUpdateDimensionRows(dimensionName, new StringReader(json));
+    }
+
+    /**
+     * Read the dimension rows of a dimension rows payload one row at a time.
+     * <p>
+     * Only the {@code dimensionRows} array of the payload is read, and only one row of it is in memory at a time.
+     *
+     * @param json  The payload, an object with a {@code dimensionRows} array of objects mapping field names to values
+     * @param consumer  The consumer of the field name to value map of each row
+     *
+     * @throws IOException if the payload can't be read or is not a dimension rows payload
+     */
+    private void readDimensionRows(Reader json, Consumer<Map<String, String>> consumer) throws IOException {
+        TypeReference<LinkedHashMap<String, String>> rowType = new TypeReference<LinkedHashMap<String, String>>() {
+            // Empty class
+        };
+        try (JsonParser parser = mapper.getFactory().createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException("Expected a dimension rows object", parser.getCurrentLocation());
+            }
+            boolean found = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                if (found || !"dimensionRows".equals(parser.getCurrentName())) {
+                    parser.nextToken();
+                    parser.skipChildren();
+                    continue;
+                }
+                if (parser.nextToken() != JsonToken.START_ARRAY) {
+                    throw new JsonParseException("Expected a dimensionRows array", parser.getCurrentLocation());
+                }
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    consumer.accept(mapper.readValue(parser, rowType));
+                }
+                if (parser.getCurrentToken() != JsonToken.END_ARRAY) {
+                    throw new JsonParseException("Expected dimension rows to be objects", parser.getCurrentLocation());
+                }
+                found = true;
+            }
+            if (!found) {
+                throw new JsonParseException("Expected a dimensionRows array", parser.getCurrentLocation());
+            }
+        }
+    }
+
     /**
      * Endpoint to update cache status.
      *
@@ -10,6 +10,7 @@ import static javax.ws.rs.core.Response.Status.OK;
 import com.yahoo.bard.webservice.application.ObjectMappersSuite;
 import com.yahoo.bard.webservice.async.ResponseException;
 import com.yahoo.bard.webservice.async.broadcastchannels.BroadcastChannel;
+import com.yahoo.bard.webservice.async.broadcastchannels.NotificationRegistry;
 import com.yahoo.bard.webservice.async.jobs.payloads.JobPayloadBuilder;
 import com.yahoo.bard.webservice.async.jobs.stores.ApiJobStore;
 import com.yahoo.bard.webservice.async.preresponses.stores.PreResponseStore;
@@ -46,6 +47,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import rx.Observable;
+import rx.Subscription;
 import rx.exceptions.Exceptions;
 import rx.observables.ConnectableObservable;
 
@@ -88,7 +90,7 @@ public class JobsServlet extends EndpointServlet {
     private final RequestMapper requestMapper;
     private final JobPayloadBuilder jobPayloadBuilder;
     private final PreResponseStore preResponseStore;
-    private final BroadcastChannel<String> broadcastChannel;
+    private final NotificationRegistry<String> notificationRegistry;
     private final ObjectWriter writer;
     private final HttpResponseMaker httpResponseMaker;
 
@@ -117,7 +119,7 @@ public class JobsServlet extends EndpointServlet {
         this.apiJobStore = apiJobStore;
         this.jobPayloadBuilder = jobPayloadBuilder;
         this.preResponseStore = preResponseStore;
-        this.broadcastChannel = broadcastChannel;
+        this.notificationRegistry = new NotificationRegistry<>(broadcastChannel);
         this.writer = objectMappers.getMapper().writer();
         this.httpResponseMaker = httpResponseMaker;
     }
@@ -274,7 +276,9 @@ public class JobsServlet extends EndpointServlet {
             @Context ContainerRequestContext containerRequestContext,
             @Suspended AsyncResponse asyncResponse
     ) {
-        Observable<Response> observableResponse;
+        Observable<Response> observableResponse = null;
+        JobsApiRequest jobsApiRequest = null;
+        Observable<PreResponse> preResponseObservable = null;
         try {
             RequestLog.startTiming(this);
             RequestLog.record(new JobRequest(ticket));
@@ -294,25 +298,10 @@ public class JobsServlet extends EndpointServlet {
                 apiRequest = (JobsApiRequest) requestMapper.apply(apiRequest, containerRequestContext);
             }
 
-            // apiRequest is not final and cannot be used inside a lambda. Therefore we are assigning apiRequest to
-            // jobsApiRequest.
-            JobsApiRequest jobsApiRequest = apiRequest;
-
-            Observable<PreResponse> preResponseObservable = getResults(ticket, apiRequest.getAsyncAfter());
-
-            observableResponse = preResponseObservable.isEmpty()
-                    .map(
-                            isEmptyResult -> handlePreResponse(
-                                    ticket,
-                                    jobsApiRequest,
-                                    asyncResponse,
-                                    preResponseObservable,
-                                    isEmptyResult
-                            )
-                    )
-                    .toBlocking()
-                    .single();
+            jobsApiRequest = apiRequest;
 
+            // Cached so that the store is read once, both to check for results and to send them
+            preResponseObservable = getResults(ticket, apiRequest.getAsyncAfter()).cache();
         } catch (RequestValidationException e) {
             LOG.debug(e.getMessage(), e);
             observableResponse = Observable.just(RequestHandlerUtils.makeErrorResponse(e.getStatus(), e, writer));
@@ -323,9 +312,49 @@ public class JobsServlet extends EndpointServlet {
             RequestLog.stopTiming(this);
         }
 
+        if (observableResponse == null) {
+            observableResponse = waitForResults(ticket, jobsApiRequest, asyncResponse, preResponseObservable);
+        }
         observableResponse.subscribe(asyncResponse::resume);
     }
 
+    /**
+     * Build the response to a results request once its results arrive or its async timeout expires.
+     * <p>
+     * The response is resumed from whichever thread the results or the timeout arrive on, leaving the request thread
+     * free while the request waits on its job. The request log is handed over to that thread, since the response is
+     * logged by the thread resuming it.
+     *
+     * @param ticket  The ticket that can uniquely identify a Job
+     * @param apiRequest  JobsApiRequest object with all the associated info in it
+     * @param asyncResponse  An async response that we can use to respond asynchronously
+     * @param preResponseObservable  An Observable wrapping a PreResponse or an empty observable, read at most once
+     *
+     * @return an observable response to be consumed
+     */
+    private Observable<Response> waitForResults(
+            String ticket,
+            JobsApiRequest apiRequest,
+            AsyncResponse asyncResponse,
+            Observable<PreResponse> preResponseObservable
+    ) {
+        RequestLog logCtx = RequestLog.dump();
+        // isEmpty emits either a value or an error, so the log is restored exactly once
+        return preResponseObservable.isEmpty()
+                .doOnNext(ignored -> RequestLog.restore(logCtx))
+                .doOnError(ignored -> RequestLog.restore(logCtx))
+                .flatMap(
+                        isEmptyResult -> handlePreResponse(
+                                ticket,
+                                apiRequest,
+                                asyncResponse,
+                                preResponseObservable,
+                                isEmptyResult
+                        )
+                )
+                .onErrorReturn(this::getErrorResponse);
+    }
+
     /**
      * If isEmpty is true, call the method to send the job payload to the user else call the method to send the job
      * result to the user.
@@ -356,8 +385,8 @@ public class JobsServlet extends EndpointServlet {
     }
 
     /**
-     * Get an Observable wrapping a PreResponse. We first connect to the BroadcastChannel to ensure that we do not
-     * miss any notifications. We then check the PreResponseStore for the PreResponse. If no PreResponse is available,
+     * Get an Observable wrapping a PreResponse. We first start listening for the ticket's notification to ensure that
+     * we do not miss it. We then check the PreResponseStore for the PreResponse. If no PreResponse is available,
      * we check to see if we got a notification from the BroadcastChannel before the async timeout. If we get a
      * notification before timeout, we retrieve the PreResponse from the PreResponseStore else we return an empty
      * Observable.
@@ -379,12 +408,14 @@ public class JobsServlet extends EndpointServlet {
              * subscribers. We use the replay operator so that the preResponseObservable upon connection, will begin
              * collecting values.
              * Once a new observer subscribes to the observable, it will have all the collected values replayed to it.
+             * The notification registry hands the ticket's notification to this listener only, and the listener is
+             * dropped once the results are found, or the request times out. The results are usually read through
+             * cache(), whose source is never unsubscribed, so the listener is dropped when the chain terminates as well
+             * as when it is unsubscribed.
              */
-            ConnectableObservable<String> broadcastChannelNotifications = broadcastChannel.getNotifications()
-                    .filter(ticket::equals)
-                    .take(1)
+            ConnectableObservable<String> broadcastChannelNotifications = notificationRegistry.listen(ticket)
                     .replay(1);
-            broadcastChannelNotifications.connect();
+            Subscription listener = broadcastChannelNotifications.connect();
             /*
              * In the cases where we may get a synchronous response (asyncAfter is a number, or
              * ApiRequest.SYNCHRONOUS_ASYNC_AFTER_VALUE ), then we start the timer, and
@@ -395,9 +426,13 @@ public class JobsServlet extends EndpointServlet {
              * If the results are already in the response store, then return them to me. Otherwise, very quickly
              * send back the asynchronous payload.
              */
-            return preResponseStore.get(ticket).switchIfEmpty(
-                    applyTimeoutIfNeeded(broadcastChannelNotifications, asyncAfter).flatMap(preResponseStore::get)
-            );
+            return preResponseStore.get(ticket)
+                    .switchIfEmpty(
+                            applyTimeoutIfNeeded(broadcastChannelNotifications, asyncAfter)
+                                    .flatMap(preResponseStore::get)
+                    )
+                    .doOnTerminate(listener::unsubscribe)
+                    .doOnUnsubscribe(listener::unsubscribe);
         }
     }
 
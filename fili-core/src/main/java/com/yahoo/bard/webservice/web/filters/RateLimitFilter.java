@@ -5,19 +5,27 @@ package com.yahoo.bard.webservice.web.filters;
 import static com.yahoo.bard.webservice.web.ResponseCode.RATE_LIMIT;
 
 import com.yahoo.bard.webservice.config.SystemConfigException;
+import com.yahoo.bard.webservice.data.time.DefaultTimeGrain;
 import com.yahoo.bard.webservice.logging.RequestLog;
 import com.yahoo.bard.webservice.util.Utils;
 import com.yahoo.bard.webservice.web.DataApiRequestTypeIdentifier;
 import com.yahoo.bard.webservice.web.RateLimiter;
 import com.yahoo.bard.webservice.web.RateLimiter.RequestToken;
 import com.yahoo.bard.webservice.web.RateLimiter.RequestType;
+import com.yahoo.bard.webservice.web.TimeMacros;
 
+import org.joda.time.DateTime;
+import org.joda.time.Interval;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.URI;
 import java.security.Principal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
 import javax.annotation.Priority;
 import javax.inject.Singleton;
@@ -27,11 +35,16 @@ import javax.ws.rs.container.ContainerResponseContext;
 import javax.ws.rs.container.ContainerResponseFilter;
 import javax.ws.rs.container.PreMatching;
 import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.PathSegment;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.SecurityContext;
 
 /**
  * Filter all requests to respond RATE_LIMIT if user/global limits are exceeded.
+ * <p>
+ * Each data request is charged the number of time buckets it asks for, estimated from the granularity in its path and
+ * its {@code dateTime} intervals, against the token buckets of the {@link RateLimiter} when they are enabled. The
+ * filter runs before the request is matched to a resource, so the cost is estimated from the URI alone.
  */
 @PreMatching
 @Singleton
@@ -86,7 +99,9 @@ public class RateLimitFilter implements ContainerRequestFilter, ContainerRespons
             // Get the token
             SecurityContext securityContext = request.getSecurityContext();
             Principal user = securityContext == null ? null : securityContext.getUserPrincipal();
-            RequestToken token = rateLimiter.getToken(type, user);
+            RequestToken token = type == RequestType.BYPASS
+                    ? rateLimiter.getToken(type, user)
+                    : rateLimiter.getToken(type, user, estimateCost(request));
 
             // Add the token to the request if it was bound
             if (token.isBound()) {
@@ -103,6 +118,56 @@ public class RateLimitFilter implements ContainerRequestFilter, ContainerRespons
         RequestLog.stopTiming(this);
     }
 
+    /**
+     * Estimate the cost of a data request as the number of time buckets it asks for.
+     * <p>
+     * The granularity is the path segment after the logical table, and the intervals are the {@code dateTime} query
+     * parameter, with time macros resolved against the current time. A request whose cost can't be estimated costs 1.
+     *
+     * @param request  The request
+     *
+     * @return the estimated cost of the request, at least 1
+     */
+    protected long estimateCost(ContainerRequestContext request) {
+        List<String> segments = request.getUriInfo().getPathSegments().stream()
+                .map(PathSegment::getPath)
+                .collect(Collectors.toList());
+        int dataIndex = segments.indexOf("data");
+        String dateTime = request.getUriInfo().getQueryParameters().getFirst("dateTime");
+        if (dataIndex < 0 || segments.size() < dataIndex + 3 || dateTime == null) {
+            return 1;
+        }
+
+        String grainName = segments.get(dataIndex + 2);
+        Optional<DefaultTimeGrain> grain = Arrays.stream(DefaultTimeGrain.values())
+                .filter(timeGrain -> timeGrain.getName().equalsIgnoreCase(grainName))
+                .findFirst();
+        if (!grain.isPresent() && !"all".equalsIgnoreCase(grainName)) {
+            return 1;
+        }
+
+        long cost = 0;
+        DateTime now = DateTime.now();
+        for (String intervalString : dateTime.split(",")) {
+            try {
+                String[] ends = intervalString.split("/");
+                for (int i = 0; i < ends.length; i++) {
+                    TimeMacros macro = TimeMacros.forName(ends[i]);
+                    if (macro != null) {
+                        ends[i] = macro.getDateTime(now, grain.orElse(DefaultTimeGrain.DAY)).toString();
+                    }
+                }
+                Interval interval = new Interval(String.join("/", ends));
+                cost += grain.isPresent()
+                        ? Math.max(1, interval.toDurationMillis() / grain.get().getEstimatedDuration().getMillis())
+                        : 1;
+            } catch (IllegalArgumentException e) {
+                cost += 1;
+            }
+        }
+        return Math.max(1, cost);
+    }
+
     @Override
     public void filter(ContainerRequestContext request, ContainerResponseContext response) throws IOException {
         // Release the token
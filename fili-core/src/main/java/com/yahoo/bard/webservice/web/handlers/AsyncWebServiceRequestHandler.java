@@ -2,16 +2,20 @@
 // Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
 package com.yahoo.bard.webservice.web.handlers;
 
+import com.yahoo.bard.webservice.config.BardFeatureFlag;
 import com.yahoo.bard.webservice.druid.client.DruidWebService;
 import com.yahoo.bard.webservice.druid.client.FailureCallback;
 import com.yahoo.bard.webservice.druid.client.HttpErrorCallback;
+import com.yahoo.bard.webservice.druid.client.StreamingSuccessCallback;
 import com.yahoo.bard.webservice.druid.client.SuccessCallback;
 import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
 import com.yahoo.bard.webservice.logging.RequestLog;
 import com.yahoo.bard.webservice.web.DataApiRequest;
 import com.yahoo.bard.webservice.web.responseprocessors.LoggingContext;
 import com.yahoo.bard.webservice.web.responseprocessors.ResponseProcessor;
+import com.yahoo.bard.webservice.web.responseprocessors.StreamingResponseProcessor;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -42,12 +46,27 @@ public class AsyncWebServiceRequestHandler extends BaseDataRequestHandler {
             final DruidAggregationQuery<?> druidQuery,
             final ResponseProcessor response
     ) {
-        SuccessCallback success = new SuccessCallback() {
-            @Override
-            public void invoke(JsonNode rootNode) {
-                response.processResponse(rootNode, druidQuery, new LoggingContext(RequestLog.copy()));
-            }
-        };
+        SuccessCallback success;
+        if (BardFeatureFlag.STREAMING_RESPONSE_PARSING.isOn() && response instanceof StreamingResponseProcessor) {
+            // Only a processor at the end of the chain can stream, processors wrapping it need the whole json tree
+            success = new StreamingSuccessCallback() {
+                @Override
+                public void invoke(JsonParser jsonParser) {
+                    ((StreamingResponseProcessor) response).processResponse(
+                            jsonParser,
+                            druidQuery,
+                            new LoggingContext(RequestLog.copy())
+                    );
+                }
+            };
+        } else {
+            success = new SuccessCallback() {
+                @Override
+                public void invoke(JsonNode rootNode) {
+                    response.processResponse(rootNode, druidQuery, new LoggingContext(RequestLog.copy()));
+                }
+            };
+        }
         HttpErrorCallback error = response.getErrorCallback(druidQuery);
         FailureCallback failure = response.getFailureCallback(druidQuery);
 
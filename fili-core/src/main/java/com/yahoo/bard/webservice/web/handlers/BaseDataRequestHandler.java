@@ -2,9 +2,15 @@
 // Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
 package com.yahoo.bard.webservice.web.handlers;
 
+import com.yahoo.bard.webservice.config.BardFeatureFlag;
+import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
+import com.yahoo.bard.webservice.druid.model.query.QueryFingerprint;
+
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
 
+import java.io.IOException;
+
 import javax.validation.constraints.NotNull;
 
 /**
@@ -24,4 +30,21 @@ public abstract class BaseDataRequestHandler implements DataRequestHandler {
         this.mapper = mapper;
         this.writer = mapper.writer();
     }
+
+    /**
+     * Compute the fingerprint of a query, when query fingerprint cache keys are enabled.
+     * <p>
+     * Caches keyed on the fingerprint store its checksum beside each value, and verify it on every read.
+     *
+     * @param druidQuery  The druid query
+     *
+     * @return the fingerprint of the query, or null when cache keys are the JSON serialization of the query
+     * @throws IOException if the druid query cannot be serialized to JSON
+     */
+    protected QueryFingerprint getFingerprint(DruidAggregationQuery<?> druidQuery) throws IOException {
+        if (BardFeatureFlag.QUERY_FINGERPRINT_CACHE_KEYS.isOn()) {
+            return QueryFingerprint.compute(druidQuery, writer);
+        }
+        return null;
+    }
 }
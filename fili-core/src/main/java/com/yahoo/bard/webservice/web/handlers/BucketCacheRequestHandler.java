@@ -0,0 +1,316 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web.handlers;
+
+import static com.yahoo.bard.webservice.web.handlers.workflow.DruidWorkflow.REQUEST_WORKFLOW_TIMER;
+import static com.yahoo.bard.webservice.web.handlers.workflow.DruidWorkflow.RESPONSE_WORKFLOW_TIMER;
+
+import com.yahoo.bard.webservice.application.MetricRegistryFactory;
+import com.yahoo.bard.webservice.data.cache.CachedResponseFormat;
+import com.yahoo.bard.webservice.data.cache.DataCache;
+import com.yahoo.bard.webservice.data.cache.TupleDataCache;
+import com.yahoo.bard.webservice.druid.model.query.AllGranularity;
+import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
+import com.yahoo.bard.webservice.druid.model.query.GroupByQuery;
+import com.yahoo.bard.webservice.druid.model.query.QueryFingerprint;
+import com.yahoo.bard.webservice.druid.model.query.TimeSeriesQuery;
+import com.yahoo.bard.webservice.druid.model.query.TopNQuery;
+import com.yahoo.bard.webservice.logging.RequestLog;
+import com.yahoo.bard.webservice.logging.blocks.BardQueryInfo;
+import com.yahoo.bard.webservice.metadata.QuerySigningService;
+import com.yahoo.bard.webservice.util.IntervalUtils;
+import com.yahoo.bard.webservice.web.DataApiRequest;
+import com.yahoo.bard.webservice.web.responseprocessors.BucketCacheResponseProcessor;
+import com.yahoo.bard.webservice.web.responseprocessors.LoggingContext;
+import com.yahoo.bard.webservice.web.responseprocessors.ResponseProcessor;
+import com.yahoo.bard.webservice.web.responseprocessors.SplitQueryResponseProcessor;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.joda.time.Interval;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Request handler which caches the response of each time bucket of a query separately, and only asks Druid for the
+ * buckets which are not in the cache.
+ * <p>
+ * Each bucket is looked up under the key of the query restricted to that bucket, signed with the segments of that
+ * bucket alone. Adjacent missing buckets are sent to Druid as one query, whose response is split back into buckets to
+ * be cached. The cached and fetched buckets are merged in time order, so a query whose window moved forward by one
+ * bucket only sends the newest bucket to Druid.
+ * <p>
+ * Queries whose buckets can't be answered independently, such as group by queries with a limit, are cached whole.
+ */
+public class BucketCacheRequestHandler extends CacheV2RequestHandler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BucketCacheRequestHandler.class);
+    private static final MetricRegistry REGISTRY = MetricRegistryFactory.getRegistry();
+    public static final Meter BUCKET_HITS = REGISTRY.meter("queries.meter.cache.bucket.hits");
+    public static final Meter BUCKET_MISSES = REGISTRY.meter("queries.meter.cache.bucket.misses");
+
+    /**
+     * Build a bucket cache request handler.
+     *
+     * @param next  The next handler in the chain
+     * @param dataCache  The cache instance
+     * @param querySigningService The service to generate query signatures
+     * @param mapper  The mapper for all JSON processing
+     */
+    public BucketCacheRequestHandler(
+            DataRequestHandler next,
+            DataCache<?> dataCache,
+            QuerySigningService<?> querySigningService,
+            ObjectMapper mapper
+    ) {
+        super(next, dataCache, querySigningService, mapper);
+    }
+
+    @Override
+    public boolean handleRequest(
+            final RequestContext context,
+            final DataApiRequest request,
+            final DruidAggregationQuery<?> druidQuery,
+            final ResponseProcessor response
+    ) {
+        if (!context.isReadCache() || !isBucketable(druidQuery)) {
+            return super.handleRequest(context, request, druidQuery, response);
+        }
+
+        List<Interval> buckets = new ArrayList<>(
+                IntervalUtils.getSlicedIntervals(druidQuery.getIntervals(), druidQuery.getGranularity()).keySet()
+        );
+        if (buckets.size() < 2) {
+            return super.handleRequest(context, request, druidQuery, response);
+        }
+
+        // Look up every bucket, grouping adjacent missing buckets into a single query
+        List<Piece> pieces = new ArrayList<>();
+        Piece missing = null;
+        for (Interval bucket : buckets) {
+            DruidAggregationQuery<?> bucketQuery = druidQuery.withAllIntervals(Collections.singletonList(bucket));
+            String cacheKey = null;
+            String queryChecksum = null;
+            JsonNode cached = null;
+            try {
+                QueryFingerprint fingerprint = getFingerprint(bucketQuery);
+                cacheKey = fingerprint == null ? getKey(bucketQuery) : fingerprint.getKey();
+                queryChecksum = fingerprint == null ? null : fingerprint.getChecksum();
+                cached = readCache(cacheKey, queryChecksum, bucketQuery);
+            } catch (IOException | RuntimeException e) {
+                LOG.warn("Cache entry for bucket {} cannot be read: ", bucket, e);
+            }
+
+            if (cached != null) {
+                BUCKET_HITS.mark();
+                pieces.add(new Piece(bucket, cached));
+                missing = null;
+            } else {
+                BUCKET_MISSES.mark();
+                if (missing == null || !missing.interval.abuts(bucket)) {
+                    missing = new Piece(bucket, null);
+                    pieces.add(missing);
+                } else {
+                    missing.interval = missing.interval.withEnd(bucket.getEnd());
+                }
+                missing.bucketKeys.put(bucket, cacheKey);
+                missing.bucketChecksums.put(bucket, queryChecksum);
+            }
+        }
+
+        int numberOfPieces = pieces.size();
+        if (numberOfPieces > 1 && !expectResponses(context, numberOfPieces)) {
+            // Already part of a split query, so answer it as a whole
+            return super.handleRequest(context, request, druidQuery, response);
+        }
+
+        Map<Interval, AtomicInteger> expectedIntervals = new LinkedHashMap<>();
+        for (Piece piece : pieces) {
+            expectedIntervals.put(piece.interval, new AtomicInteger(expectedIntervals.size()));
+        }
+
+        RequestLog logCtx = RequestLog.dump();
+        SplitQueryResponseProcessor mergingResponse = new SplitQueryResponseProcessor(
+                response,
+                request,
+                druidQuery,
+                Collections.unmodifiableMap(expectedIntervals),
+                logCtx
+        );
+
+        // Send the missing buckets first, so Druid can start on them while the cached buckets are processed
+        for (Piece piece : pieces) {
+            if (piece.cached == null) {
+                RequestLog.restore(logCtx);
+                next.handleRequest(
+                        context,
+                        request,
+                        druidQuery.withAllIntervals(Collections.singletonList(piece.interval)),
+                        new BucketCacheResponseProcessor(
+                                mergingResponse,
+                                piece.bucketKeys,
+                                piece.bucketChecksums,
+                                dataCache,
+                                querySigningService,
+                                mapper
+                        )
+                );
+            }
+        }
+        for (Piece piece : pieces) {
+            if (piece.cached != null) {
+                RequestLog.restore(logCtx);
+                processCachedBucket(context, druidQuery, piece, mergingResponse);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Make the context expect a response for every piece of the query, unless it already expects several responses.
+     * <p>
+     * Both counters are left unchanged if either of them doesn't expect a single response.
+     *
+     * @param context  The context of the request
+     * @param numberOfPieces  The number of pieces the query is answered by
+     *
+     * @return true if the context now expects a response for every piece
+     */
+    private static boolean expectResponses(RequestContext context, int numberOfPieces) {
+        AtomicLong incoming = context.getNumberOfIncoming();
+        AtomicLong outgoing = context.getNumberOfOutgoing();
+        if (incoming.get() != 1 || outgoing.get() != 1 || !incoming.compareAndSet(1, numberOfPieces)) {
+            return false;
+        }
+        if (!outgoing.compareAndSet(1, numberOfPieces)) {
+            incoming.compareAndSet(numberOfPieces, 1);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Whether the buckets of a query can be answered by separate queries and concatenated.
+     *
+     * @param druidQuery  The query
+     *
+     * @return true if the query can be cached by bucket
+     */
+    protected boolean isBucketable(DruidAggregationQuery<?> druidQuery) {
+        if (druidQuery.getGranularity() instanceof AllGranularity) {
+            return false;
+        }
+        if (druidQuery instanceof GroupByQuery) {
+            // A limit applies across all buckets
+            return ((GroupByQuery) druidQuery).getLimitSpec() == null;
+        }
+        return druidQuery instanceof TimeSeriesQuery || druidQuery instanceof TopNQuery;
+    }
+
+    /**
+     * Read the cached response of a bucket, if it is cached and its segments have not changed.
+     *
+     * @param cacheKey  The cache key of the bucket
+     * @param queryChecksum  The checksum of the bucket's query, or null if the cache key is not a fingerprint
+     * @param bucketQuery  The query restricted to the bucket
+     *
+     * @return the cached response, or null if there is no valid cache entry
+     *
+     * @throws IOException if the cached value cannot be read
+     */
+    private JsonNode readCache(
+            String cacheKey,
+            String queryChecksum,
+            DruidAggregationQuery<?> bucketQuery
+    ) throws IOException {
+        Optional<Long> segmentSetId = querySigningService.getSegmentSetId(bucketQuery);
+        TupleDataCache.DataEntry<String, Long, Serializable> cacheEntry =
+                dataCache.get(cacheKey, segmentSetId.orElse(null));
+        CACHE_REQUESTS.mark(1);
+
+        if (cacheEntry == null) {
+            CACHE_MISSES.mark(1);
+            return null;
+        }
+        Serializable cachedValue = CachedResponseFormat.verifyQueryChecksum(cacheEntry.getValue(), queryChecksum);
+        if (cachedValue == null) {
+            LOG.warn("Cache entry with key {} was stored for a different query", cacheKey);
+            CACHE_MISSES.mark(1);
+            return null;
+        }
+        if (!segmentSetId.map(id -> Objects.equals(cacheEntry.getMeta(), id)).orElse(false)) {
+            CACHE_POTENTIAL_HITS.mark(1);
+            CACHE_MISSES.mark(1);
+            return null;
+        }
+        CACHE_HITS.mark(1);
+        try (JsonParser parser = CachedResponseFormat.parse(cachedValue, mapper.getFactory())) {
+            return mapper.readTree(parser);
+        }
+    }
+
+    /**
+     * Send the cached response of a bucket to the merging response processor, as though it had been sent to Druid.
+     *
+     * @param context  The context of the request
+     * @param druidQuery  The query
+     * @param piece  The cached bucket
+     * @param mergingResponse  The response processor merging the buckets
+     */
+    private void processCachedBucket(
+            RequestContext context,
+            DruidAggregationQuery<?> druidQuery,
+            Piece piece,
+            ResponseProcessor mergingResponse
+    ) {
+        if (context.getNumberOfOutgoing().decrementAndGet() == 0) {
+            RequestLog.record(new BardQueryInfo(druidQuery.getQueryType().toJson(), true));
+            RequestLog.stopTiming(REQUEST_WORKFLOW_TIMER);
+        }
+        if (context.getNumberOfIncoming().decrementAndGet() == 0) {
+            RequestLog.startTiming(RESPONSE_WORKFLOW_TIMER);
+        }
+        mergingResponse.processResponse(
+                piece.cached,
+                druidQuery.withAllIntervals(Collections.singletonList(piece.interval)),
+                new LoggingContext(RequestLog.dump())
+        );
+    }
+
+    /**
+     * A cached bucket, or a run of adjacent missing buckets answered by one query.
+     */
+    private static class Piece {
+        private Interval interval;
+        private final JsonNode cached;
+        private final Map<Interval, String> bucketKeys = new LinkedHashMap<>();
+        private final Map<Interval, String> bucketChecksums = new LinkedHashMap<>();
+
+        /**
+         * Constructor.
+         *
+         * @param interval  The interval of the piece
+         * @param cached  The cached response of the bucket, or null for missing buckets
+         */
+        Piece(Interval interval, JsonNode cached) {
+            this.interval = interval;
+            this.cached = cached;
+        }
+    }
+}
@@ -6,8 +6,10 @@ import static com.yahoo.bard.webservice.web.handlers.workflow.DruidWorkflow.REQU
 import static com.yahoo.bard.webservice.web.handlers.workflow.DruidWorkflow.RESPONSE_WORKFLOW_TIMER;
 
 import com.yahoo.bard.webservice.application.MetricRegistryFactory;
+import com.yahoo.bard.webservice.config.BardFeatureFlag;
 import com.yahoo.bard.webservice.data.cache.DataCache;
 import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
+import com.yahoo.bard.webservice.druid.model.query.QueryFingerprint;
 import com.yahoo.bard.webservice.logging.RequestLog;
 import com.yahoo.bard.webservice.logging.blocks.BardQueryInfo;
 import com.yahoo.bard.webservice.util.Utils;
@@ -18,7 +20,6 @@ import com.yahoo.bard.webservice.web.responseprocessors.ResponseProcessor;
 
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -74,14 +75,21 @@ public class CacheRequestHandler extends BaseDataRequestHandler {
         ResponseProcessor nextResponse = response;
 
         String cacheKey = null;
+        String queryChecksum = null;
         try {
-            cacheKey = getKey(druidQuery);
+            QueryFingerprint fingerprint = getFingerprint(druidQuery);
+            cacheKey = fingerprint == null ? getKey(druidQuery) : fingerprint.getKey();
+            queryChecksum = fingerprint == null ? null : fingerprint.getChecksum();
 
             if (context.isReadCache()) {
-                final String jsonResult = dataCache.get(cacheKey);
+                final String cacheEntry = dataCache.get(cacheKey);
                 CACHE_REQUESTS.mark(1);
+                final String jsonResult = QueryFingerprint.verifyChecksum(cacheEntry, queryChecksum);
 
-                if (jsonResult != null) {
+                if (cacheEntry != null && jsonResult == null) {
+                    LOG.warn("Cache entry with key {} was stored for a different query", cacheKey);
+                    CACHE_MISSES.mark(1);
+                } else if (jsonResult != null) {
                     try {
                         if (context.getNumberOfOutgoing().decrementAndGet() == 0) {
                             RequestLog.record(new BardQueryInfo(druidQuery.getQueryType().toJson(), true));
@@ -115,6 +123,7 @@ public class CacheRequestHandler extends BaseDataRequestHandler {
         nextResponse = new CachingResponseProcessor(
                 response,
                 cacheKey,
+                queryChecksum,
                 dataCache,
                 mapper
         );
@@ -124,14 +133,18 @@ public class CacheRequestHandler extends BaseDataRequestHandler {
 
     /**
      * Construct the cache key.
-     * Current implementation includes all the fields of the druidQuery besides the context.
+     * Current implementation includes all the fields of the druidQuery besides the context. When query fingerprint
+     * cache keys are enabled, the key is the query's fingerprint rather than its JSON serialization.
      *
      * @param druidQuery  The druid query.
      *
      * @return The cache key as a String.
-     * @throws JsonProcessingException if the druid query cannot be mapped to Json
+     * @throws IOException if the druid query cannot be serialized to JSON
      */
-    protected String getKey(DruidAggregationQuery<?> druidQuery) throws JsonProcessingException {
+    protected String getKey(DruidAggregationQuery<?> druidQuery) throws IOException {
+        if (BardFeatureFlag.QUERY_FINGERPRINT_CACHE_KEYS.isOn()) {
+            return druidQuery.getFingerprint(writer);
+        }
         JsonNode root = mapper.valueToTree(druidQuery);
         Utils.omitField(root, "context", mapper);
         return writer.writeValueAsString(root);
@@ -7,9 +7,12 @@ import static com.yahoo.bard.webservice.web.handlers.workflow.DruidWorkflow.REQU
 import static com.yahoo.bard.webservice.web.handlers.workflow.DruidWorkflow.RESPONSE_WORKFLOW_TIMER;
 
 import com.yahoo.bard.webservice.application.MetricRegistryFactory;
+import com.yahoo.bard.webservice.config.BardFeatureFlag;
+import com.yahoo.bard.webservice.data.cache.CachedResponseFormat;
 import com.yahoo.bard.webservice.data.cache.DataCache;
 import com.yahoo.bard.webservice.data.cache.TupleDataCache;
 import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
+import com.yahoo.bard.webservice.druid.model.query.QueryFingerprint;
 import com.yahoo.bard.webservice.logging.RequestLog;
 import com.yahoo.bard.webservice.logging.blocks.BardQueryInfo;
 import com.yahoo.bard.webservice.metadata.QuerySigningService;
@@ -18,10 +21,11 @@ import com.yahoo.bard.webservice.web.DataApiRequest;
 import com.yahoo.bard.webservice.web.responseprocessors.CacheV2ResponseProcessor;
 import com.yahoo.bard.webservice.web.responseprocessors.LoggingContext;
 import com.yahoo.bard.webservice.web.responseprocessors.ResponseProcessor;
+import com.yahoo.bard.webservice.web.responseprocessors.StreamingResponseProcessor;
 
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -29,7 +33,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.Serializable;
 import java.util.Objects;
+import java.util.Optional;
 
 import javax.validation.constraints.NotNull;
 
@@ -49,7 +55,7 @@ public class CacheV2RequestHandler extends BaseDataRequestHandler {
     public static final Meter CACHE_REQUESTS = REGISTRY.meter("queries.meter.cache.total");
 
     protected final @NotNull DataRequestHandler next;
-    protected final @NotNull TupleDataCache<String, Long, String> dataCache;
+    protected final @NotNull TupleDataCache<String, Long, Serializable> dataCache;
     protected final @NotNull QuerySigningService<Long> querySigningService;
 
     /**
@@ -69,7 +75,7 @@ public class CacheV2RequestHandler extends BaseDataRequestHandler {
     ) {
         super(mapper);
         this.next = next;
-        this.dataCache = (TupleDataCache<String, Long, String>) dataCache;
+        this.dataCache = (TupleDataCache<String, Long, Serializable>) dataCache;
         this.querySigningService = (QuerySigningService<Long>) querySigningService;
     }
 
@@ -83,18 +89,29 @@ public class CacheV2RequestHandler extends BaseDataRequestHandler {
         ResponseProcessor nextResponse = response;
 
         String cacheKey = null;
+        String queryChecksum = null;
         try {
-            cacheKey = getKey(druidQuery);
+            QueryFingerprint fingerprint = getFingerprint(druidQuery);
+            cacheKey = fingerprint == null ? getKey(druidQuery) : fingerprint.getKey();
+            queryChecksum = fingerprint == null ? null : fingerprint.getChecksum();
 
             if (context.isReadCache()) {
-                final TupleDataCache.DataEntry<String, Long, String> cacheEntry = dataCache.get(cacheKey);
+                Optional<Long> segmentSetId = querySigningService.getSegmentSetId(druidQuery);
+                final TupleDataCache.DataEntry<String, Long, Serializable> cacheEntry =
+                        dataCache.get(cacheKey, segmentSetId.orElse(null));
                 CACHE_REQUESTS.mark(1);
+                Serializable cachedValue = cacheEntry == null
+                        ? null
+                        : CachedResponseFormat.verifyQueryChecksum(cacheEntry.getValue(), queryChecksum);
 
-                if (cacheEntry != null) {
+                if (cacheEntry != null && cachedValue == null) {
+                    LOG.warn("Cache entry with key {} was stored for a different query", cacheKey);
+                    CACHE_MISSES.mark(1);
+                } else if (cacheEntry != null) {
                     // Make sure that if the optional return value is empty, the statement always evaluates to false
                     // Metadata type needs to be int.
                     if (
-                            querySigningService.getSegmentSetId(druidQuery)
+                            segmentSetId
                                     .map(id -> Objects.equals(cacheEntry.getMeta(), id))
                                     .orElse(false)
                     ) {
@@ -110,9 +127,10 @@ public class CacheV2RequestHandler extends BaseDataRequestHandler {
 
                             CACHE_HITS.mark(1);
                             RequestLog logCtx = RequestLog.dump();
-                            nextResponse.processResponse(
-                                    mapper.readTree(cacheEntry.getValue()),
+                            processCachedResponse(
+                                    cachedValue,
                                     druidQuery,
+                                    nextResponse,
                                     new LoggingContext(logCtx)
                             );
 
@@ -138,6 +156,7 @@ public class CacheV2RequestHandler extends BaseDataRequestHandler {
         nextResponse = new CacheV2ResponseProcessor(
                 response,
                 cacheKey,
+                queryChecksum,
                 dataCache,
                 querySigningService,
                 mapper
@@ -146,16 +165,49 @@ public class CacheV2RequestHandler extends BaseDataRequestHandler {
         return next.handleRequest(context, request, druidQuery, nextResponse);
     }
 
+    /**
+     * Send a cached response to the response processor.
+     * <p>
+     * The response is parsed straight from the cached value. If the processor can consume a stream of tokens, the
+     * cached response is not even built into a JSON tree.
+     *
+     * @param cachedValue  The cached response, in any {@link CachedResponseFormat}
+     * @param druidQuery  The query the response is for
+     * @param response  The response processor to send the response to
+     * @param loggingContext  The logging context for processing the response
+     *
+     * @throws IOException if the cached value cannot be read
+     */
+    protected void processCachedResponse(
+            Serializable cachedValue,
+            DruidAggregationQuery<?> druidQuery,
+            ResponseProcessor response,
+            LoggingContext loggingContext
+    ) throws IOException {
+        try (JsonParser parser = CachedResponseFormat.parse(cachedValue, mapper.getFactory())) {
+            if (BardFeatureFlag.STREAMING_RESPONSE_PARSING.isOn() && response instanceof StreamingResponseProcessor) {
+                ((StreamingResponseProcessor) response).processResponse(parser, druidQuery, loggingContext);
+            } else {
+                JsonNode json = mapper.readTree(parser);
+                response.processResponse(json, druidQuery, loggingContext);
+            }
+        }
+    }
+
     /**
      * Construct the cache key.
-     * Current implementation includes all the fields of the druidQuery besides the context.
+     * Current implementation includes all the fields of the druidQuery besides the context. When query fingerprint
+     * cache keys are enabled, the key is the query's fingerprint rather than its JSON serialization.
      *
      * @param druidQuery  The druid query.
      *
      * @return The cache key as a String.
-     * @throws JsonProcessingException if the druid query cannot be serialized to JSON
+     * @throws IOException if the druid query cannot be serialized to JSON
      */
-    protected String getKey(DruidAggregationQuery<?> druidQuery) throws JsonProcessingException {
+    protected String getKey(DruidAggregationQuery<?> druidQuery) throws IOException {
+        if (BardFeatureFlag.QUERY_FINGERPRINT_CACHE_KEYS.isOn()) {
+            return druidQuery.getFingerprint(writer);
+        }
         JsonNode root = mapper.valueToTree(druidQuery);
         Utils.omitField(root, "context", mapper);
         return writer.writeValueAsString(root);
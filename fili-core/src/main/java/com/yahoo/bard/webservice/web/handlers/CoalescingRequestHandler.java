@@ -0,0 +1,125 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web.handlers;
+
+import static com.yahoo.bard.webservice.web.handlers.workflow.DruidWorkflow.REQUEST_WORKFLOW_TIMER;
+
+import com.yahoo.bard.webservice.application.MetricRegistryFactory;
+import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
+import com.yahoo.bard.webservice.logging.RequestLog;
+import com.yahoo.bard.webservice.web.DataApiRequest;
+import com.yahoo.bard.webservice.web.responseprocessors.CoalescedResponseProcessor;
+import com.yahoo.bard.webservice.web.responseprocessors.DruidJsonRequestContentKeys;
+import com.yahoo.bard.webservice.web.responseprocessors.ResponseProcessor;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.validation.constraints.NotNull;
+import javax.ws.rs.core.MultivaluedMap;
+
+/**
+ * Request handler which sends identical queries that are in flight at the same time to Druid only once.
+ * <p>
+ * Queries are identified by their fingerprint. The first query is sent on to the next handler, and identical queries
+ * arriving before its response are attached to it, receiving the same response, error or failure instead of being sent
+ * to Druid themselves.
+ */
+public class CoalescingRequestHandler extends BaseDataRequestHandler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CoalescingRequestHandler.class);
+    private static final MetricRegistry REGISTRY = MetricRegistryFactory.getRegistry();
+    public static final Meter COALESCED_QUERIES = REGISTRY.meter("queries.meter.coalesced");
+
+    protected final @NotNull DataRequestHandler next;
+
+    private final ConcurrentMap<String, CoalescedResponseProcessor> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param next  The next handler in the chain
+     * @param mapper  The mapper for all JSON processing
+     */
+    public CoalescingRequestHandler(@NotNull DataRequestHandler next, ObjectMapper mapper) {
+        super(mapper);
+        this.next = next;
+    }
+
+    @Override
+    public boolean handleRequest(
+            RequestContext context,
+            DataApiRequest request,
+            DruidAggregationQuery<?> druidQuery,
+            ResponseProcessor response
+    ) {
+        String key;
+        try {
+            key = getKey(context, druidQuery);
+        } catch (IOException e) {
+            LOG.warn("Query cannot be coalesced, its key cannot be built: ", e);
+            return next.handleRequest(context, request, druidQuery, response);
+        }
+
+        CoalescedResponseProcessor leader = new CoalescedResponseProcessor(response, () -> inFlight.remove(key));
+        while (true) {
+            CoalescedResponseProcessor current = inFlight.putIfAbsent(key, leader);
+            if (current == null) {
+                try {
+                    return next.handleRequest(context, request, druidQuery, leader);
+                } catch (RuntimeException e) {
+                    // The query was never sent, so the requests which attached to it must not wait for it
+                    inFlight.remove(key, leader);
+                    leader.failSubscribers(e);
+                    throw e;
+                }
+            }
+            if (current.subscribe(response, druidQuery, context.getNumberOfIncoming())) {
+                COALESCED_QUERIES.mark();
+                // The query is answered by the query in flight, as though it had been sent
+                if (context.getNumberOfOutgoing().decrementAndGet() == 0) {
+                    RequestLog.stopTiming(REQUEST_WORKFLOW_TIMER);
+                }
+                return true;
+            }
+            // The query in flight has just been answered, so it can't take more subscribers
+            inFlight.remove(key, current);
+        }
+    }
+
+    /**
+     * Build the key identifying identical queries.
+     * <p>
+     * Queries are identical if they have the same fingerprint and, when ETag caching is used, the same ETag.
+     *
+     * @param context  The context of the request
+     * @param druidQuery  The query
+     *
+     * @return the key of the query
+     *
+     * @throws IOException if the query cannot be serialized
+     */
+    protected String getKey(RequestContext context, DruidAggregationQuery<?> druidQuery) throws IOException {
+        String fingerprint = druidQuery.getFingerprint(writer);
+        MultivaluedMap<String, String> headers = context.getHeaders();
+        String eTag = headers == null ? null : headers.getFirst(DruidJsonRequestContentKeys.ETAG.getName());
+        return eTag == null ? fingerprint : fingerprint + " " + eTag;
+    }
+
+    /**
+     * Get the number of distinct queries in flight.
+     *
+     * @return the number of queries in flight
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+}
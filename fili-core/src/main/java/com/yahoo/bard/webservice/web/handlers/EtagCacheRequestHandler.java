@@ -6,8 +6,10 @@ import static com.yahoo.bard.webservice.web.handlers.workflow.DruidWorkflow.REQU
 import static com.yahoo.bard.webservice.web.handlers.workflow.DruidWorkflow.RESPONSE_WORKFLOW_TIMER;
 
 import com.yahoo.bard.webservice.application.MetricRegistryFactory;
+import com.yahoo.bard.webservice.config.BardFeatureFlag;
 import com.yahoo.bard.webservice.data.cache.TupleDataCache;
 import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
+import com.yahoo.bard.webservice.druid.model.query.QueryFingerprint;
 import com.yahoo.bard.webservice.logging.RequestLog;
 import com.yahoo.bard.webservice.logging.blocks.BardQueryInfo;
 import com.yahoo.bard.webservice.util.Utils;
@@ -19,13 +21,14 @@ import com.yahoo.bard.webservice.web.responseprocessors.ResponseProcessor;
 
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+
 import javax.validation.constraints.NotNull;
 
 /**
@@ -74,17 +77,23 @@ public class EtagCacheRequestHandler extends BaseDataRequestHandler {
 
         try {
             String cacheKey = null;
+            String queryChecksum = null;
             if (context.isReadCache()) {
-                cacheKey = getKey(druidQuery);
+                QueryFingerprint fingerprint = getFingerprint(druidQuery);
+                cacheKey = fingerprint == null ? getKey(druidQuery) : fingerprint.getKey();
+                queryChecksum = fingerprint == null ? null : fingerprint.getChecksum();
                 final TupleDataCache.DataEntry<String, String , String> cacheEntry = dataCache.get(cacheKey);
                 CACHE_REQUESTS.mark(1);
+                final String cachedValue = cacheEntry == null
+                        ? null
+                        : QueryFingerprint.verifyChecksum(cacheEntry.getValue(), queryChecksum);
 
                 String eTagInRequest = DruidJsonRequestContentKeys.ETAG.getName();
-                if (cacheEntry != null) { // Current query is in data cache
+                if (cachedValue != null) { // Current query is in data cache
                     // Insert "If-None-Match" header into RequestContext; the value is etag of the corresponding cache
                     context.getHeaders().putSingle(
                             eTagInRequest,
-                            mapper.readTree(cacheEntry.getValue())
+                            mapper.readTree(cachedValue)
                                     .get(DruidJsonResponseContentKeys.ETAG.getName())
                                     .asText()
                             );
@@ -99,7 +108,10 @@ public class EtagCacheRequestHandler extends BaseDataRequestHandler {
                     }
 
                     CACHE_HITS.mark(1);
-                } else { // Current query is not in data cache
+                } else { // Current query is not in data cache, or its entry was stored for a different query
+                    if (cacheEntry != null) {
+                        LOG.warn("Cache entry with key {} was stored for a different query", cacheKey);
+                    }
                     // Insert "If-None-Match" header into RequestContext; the value a random pre-defined string
                     context.getHeaders().putSingle(
                             eTagInRequest,
@@ -113,6 +125,7 @@ public class EtagCacheRequestHandler extends BaseDataRequestHandler {
             nextResponse = new EtagCacheResponseProcessor(
                     response,
                     cacheKey,
+                    queryChecksum,
                     dataCache,
                     mapper
             );
@@ -125,14 +138,18 @@ public class EtagCacheRequestHandler extends BaseDataRequestHandler {
 
     /**
      * Construct the cache key.
-     * Current implementation includes all the fields of the druidQuery besides the context.
+     * Current implementation includes all the fields of the druidQuery besides the context. When query fingerprint
+     * cache keys are enabled, the key is the query's fingerprint rather than its JSON serialization.
      *
      * @param druidQuery  The druid query.
      *
      * @return The cache key as a String.
-     * @throws JsonProcessingException if the druid query cannot be serialized to JSON
+     * @throws IOException if the druid query cannot be serialized to JSON
      */
-    private String getKey(DruidAggregationQuery<?> druidQuery) throws JsonProcessingException {
+    private String getKey(DruidAggregationQuery<?> druidQuery) throws IOException {
+        if (BardFeatureFlag.QUERY_FINGERPRINT_CACHE_KEYS.isOn()) {
+            return druidQuery.getFingerprint(writer);
+        }
         JsonNode root = mapper.valueToTree(druidQuery);
         Utils.omitField(root, "context", mapper);
         return writer.writeValueAsString(root);
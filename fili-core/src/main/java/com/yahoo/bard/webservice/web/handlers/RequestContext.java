@@ -21,16 +21,29 @@ public class RequestContext {
     protected final MultivaluedMap<String, String> searchableHeaders;
     protected final AtomicLong numberOfIncoming = new AtomicLong(1);
     protected final AtomicLong numberOfOutgoing = new AtomicLong(1);
+    protected final boolean asynchronous;
 
     /**
-     * Build a context for a request.
+     * Build a context for a synchronous request.
      *
      * @param containerRequestContext  context from the http request object
      * @param readCache  true if the cache should be checked for a response
      */
     public RequestContext(ContainerRequestContext containerRequestContext, boolean readCache) {
+        this(containerRequestContext, readCache, false);
+    }
+
+    /**
+     * Build a context for a request.
+     *
+     * @param containerRequestContext  context from the http request object
+     * @param readCache  true if the cache should be checked for a response
+     * @param asynchronous  true if the user may be sent a job rather than wait for the response
+     */
+    public RequestContext(ContainerRequestContext containerRequestContext, boolean readCache, boolean asynchronous) {
         this.containerRequestContext = containerRequestContext;
         this.readCache = readCache;
+        this.asynchronous = asynchronous;
         this.searchableHeaders = containerRequestContext != null ?
                 Utils.headersToLowerCase(containerRequestContext.getHeaders()) :
                 new MultivaluedHashMap<>();
@@ -66,6 +79,10 @@ public class RequestContext {
         return readCache;
     }
 
+    public boolean isAsynchronous() {
+        return asynchronous;
+    }
+
     public AtomicLong getNumberOfIncoming() {
         return numberOfIncoming;
     }
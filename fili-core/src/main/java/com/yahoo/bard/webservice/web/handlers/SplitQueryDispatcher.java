@@ -0,0 +1,126 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web.handlers;
+
+import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
+import com.yahoo.bard.webservice.logging.RequestLog;
+import com.yahoo.bard.webservice.web.DataApiRequest;
+import com.yahoo.bard.webservice.web.responseprocessors.SplitQueryResponseProcessor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * Sends the sub-queries of a split query, keeping at most a fixed number of them in flight at once.
+ * <p>
+ * Sub-queries are sent in time order. Each answered sub-query frees its slot in the {@link SubQueryConcurrencyLimiter}
+ * and lets the next sub-query be sent, possibly from the thread handling the answer. Without a limiter shared across
+ * requests, the dispatcher uses an unlimited limiter of its own, so that requests don't contend on a shared lock.
+ * Once the split query has failed, the remaining sub-queries are dropped.
+ */
+public class SplitQueryDispatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SplitQueryDispatcher.class);
+
+    private final @NotNull DataRequestHandler next;
+    private final RequestContext context;
+    private final DataApiRequest request;
+    private final List<DruidAggregationQuery<?>> queries;
+    private final AtomicInteger sent = new AtomicInteger(0);
+    private final int maxConcurrent;
+    private final SubQueryConcurrencyLimiter limiter;
+    private final RequestLog logCtx;
+
+    private volatile SplitQueryResponseProcessor response;
+
+    /**
+     * Constructor.
+     *
+     * @param next  The handler sending each sub-query
+     * @param context  The context of the request
+     * @param request  The request
+     * @param queries  The sub-queries, in time order
+     * @param maxConcurrent  The maximum number of this request's sub-queries in flight at once, or 0 for no limit
+     * @param limiter  The limit on sub-queries in flight across all requests, or null for no limit
+     * @param logCtx  The request log to send the sub-queries with
+     */
+    public SplitQueryDispatcher(
+            DataRequestHandler next,
+            RequestContext context,
+            DataApiRequest request,
+            List<DruidAggregationQuery<?>> queries,
+            int maxConcurrent,
+            SubQueryConcurrencyLimiter limiter,
+            RequestLog logCtx
+    ) {
+        this.next = next;
+        this.context = context;
+        this.request = request;
+        this.queries = queries;
+        this.maxConcurrent = maxConcurrent;
+        this.limiter = limiter == null ? new SubQueryConcurrencyLimiter(0) : limiter;
+        this.logCtx = logCtx;
+    }
+
+    /**
+     * Send the first sub-queries.
+     *
+     * @param response  The response processor merging the answers of the sub-queries
+     */
+    public void start(SplitQueryResponseProcessor response) {
+        this.response = response;
+        int initial = maxConcurrent > 0 ? Math.min(maxConcurrent, queries.size()) : queries.size();
+        for (int i = 0; i < initial; i++) {
+            limiter.submit(this::sendNext);
+        }
+    }
+
+    /**
+     * Note that a sub-query has been answered, and send the next one.
+     */
+    public void sliceCompleted() {
+        limiter.release();
+        if (sent.get() < queries.size()) {
+            limiter.submit(this::sendNext);
+        }
+    }
+
+    /**
+     * Send the next pending sub-query, with the request log of the split query.
+     * <p>
+     * The request log of the current thread is restored afterwards, since this may run on a thread handling the answer
+     * of another sub-query.
+     */
+    private void sendNext() {
+        int index = sent.getAndIncrement();
+        if (index >= queries.size() || response.hasFailed()) {
+            // Drop the remaining sub-queries of a failed split query
+            sent.set(queries.size());
+            limiter.release();
+            return;
+        }
+        DruidAggregationQuery<?> query = queries.get(index);
+
+        RequestLog current = RequestLog.dump();
+        RequestLog.restore(logCtx);
+        boolean handed = false;
+        try {
+            next.handleRequest(context, request, query, response);
+            handed = true;
+        } catch (RuntimeException e) {
+            LOG.error("Unable to send sub-query for {}", query.getIntervals(), e);
+            response.failSend(query, e);
+        } finally {
+            RequestLog.restore(current);
+            // A sub-query which was never handed on frees its slot here, even if failing the request threw
+            if (!handed) {
+                sliceCompleted();
+            }
+        }
+    }
+}
@@ -5,6 +5,8 @@ package com.yahoo.bard.webservice.web.handlers;
 import static com.yahoo.bard.webservice.web.ErrorMessageFormat.EMPTY_INTERVAL_FORMAT;
 
 import com.yahoo.bard.webservice.application.MetricRegistryFactory;
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
 import com.yahoo.bard.webservice.druid.model.query.AllGranularity;
 import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
 import com.yahoo.bard.webservice.druid.model.query.Granularity;
@@ -35,15 +37,45 @@ import javax.ws.rs.core.Response;
  * <p>
  * It creates a common response processor which serves as an accumulator to receive all replies before delegating to the
  * result set processing.
+ * <p>
+ * Adjacent time grain buckets are grouped into larger sub-queries when there would be more than
+ * {@code query_split_max_sub_queries} of them, and at most {@code query_split_max_concurrent_sub_queries_per_request}
+ * sub-queries of a request, and {@code query_split_max_concurrent_sub_queries} sub-queries overall, are in flight at
+ * once. None of these are limited by default.
  */
 public class SplitQueryRequestHandler implements DataRequestHandler {
 
     private static final Logger LOG = LoggerFactory.getLogger(SplitQueryRequestHandler.class);
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
     private static final MetricRegistry REGISTRY = MetricRegistryFactory.getRegistry();
     public static final Meter SPLIT_QUERIES = REGISTRY.meter("queries.meter.split_queries.sub_queries");
     public static final Meter SPLITS = REGISTRY.meter("queries.meter.split_queries.splits");
 
+    private static final int DEFAULT_MAX_SUB_QUERIES = SYSTEM_CONFIG.getIntProperty(
+            SYSTEM_CONFIG.getPackageVariableName("query_split_max_sub_queries"),
+            0
+    );
+    private static final int DEFAULT_MAX_CONCURRENT_SUB_QUERIES_PER_REQUEST = SYSTEM_CONFIG.getIntProperty(
+            SYSTEM_CONFIG.getPackageVariableName("query_split_max_concurrent_sub_queries_per_request"),
+            0
+    );
+
+    private static final int DEFAULT_MAX_CONCURRENT_SUB_QUERIES = SYSTEM_CONFIG.getIntProperty(
+            SYSTEM_CONFIG.getPackageVariableName("query_split_max_concurrent_sub_queries"),
+            0
+    );
+
+    /**
+     * The limit on sub-queries in flight shared by all split query handlers, or null when there is no such limit.
+     */
+    public static final SubQueryConcurrencyLimiter SUB_QUERY_LIMITER = DEFAULT_MAX_CONCURRENT_SUB_QUERIES > 0
+            ? new SubQueryConcurrencyLimiter(DEFAULT_MAX_CONCURRENT_SUB_QUERIES)
+            : null;
+
     protected final @NotNull DataRequestHandler next;
+    protected final int maxSubQueries;
+    protected final int maxConcurrentSubQueries;
+    protected final SubQueryConcurrencyLimiter limiter;
 
     /**
      * Build a Split Query Request Handler.
@@ -51,7 +83,27 @@ public class SplitQueryRequestHandler implements DataRequestHandler {
      * @param next  The next handler in the chain
      */
     public SplitQueryRequestHandler(DataRequestHandler next) {
+        this(next, DEFAULT_MAX_SUB_QUERIES, DEFAULT_MAX_CONCURRENT_SUB_QUERIES_PER_REQUEST, SUB_QUERY_LIMITER);
+    }
+
+    /**
+     * Build a Split Query Request Handler.
+     *
+     * @param next  The next handler in the chain
+     * @param maxSubQueries  The number of sub-queries above which adjacent buckets are grouped, or 0 for no grouping
+     * @param maxConcurrentSubQueries  The maximum number of a request's sub-queries in flight, or 0 for no limit
+     * @param limiter  The limit on sub-queries in flight across all requests, or null for no limit
+     */
+    public SplitQueryRequestHandler(
+            DataRequestHandler next,
+            int maxSubQueries,
+            int maxConcurrentSubQueries,
+            SubQueryConcurrencyLimiter limiter
+    ) {
         this.next = next;
+        this.maxSubQueries = maxSubQueries;
+        this.maxConcurrentSubQueries = maxConcurrentSubQueries;
+        this.limiter = limiter;
     }
 
     @Override
@@ -70,7 +122,7 @@ public class SplitQueryRequestHandler implements DataRequestHandler {
         }
 
         Map<Interval, AtomicInteger> expectedIntervals = Collections.unmodifiableMap(
-                IntervalUtils.getSlicedIntervals(queryIntervals, granularity)
+                IntervalUtils.getSlicedIntervals(queryIntervals, granularity, maxSubQueries)
         );
 
         int numberOfIntervals = expectedIntervals.size();
@@ -107,20 +159,30 @@ public class SplitQueryRequestHandler implements DataRequestHandler {
         // Save RequestLog up to here
         final RequestLog logCtx = RequestLog.dump();
 
-        final SplitQueryResponseProcessor mergingResponse =
-                new SplitQueryResponseProcessor(response, request, druidQuery, expectedIntervals, logCtx);
+        final SplitQueryDispatcher dispatcher = new SplitQueryDispatcher(
+                next,
+                context,
+                request,
+                queries,
+                maxConcurrentSubQueries,
+                limiter,
+                logCtx
+        );
+        final SplitQueryResponseProcessor mergingResponse = new SplitQueryResponseProcessor(
+                response,
+                request,
+                druidQuery,
+                expectedIntervals,
+                logCtx,
+                dispatcher::sliceCompleted
+        );
 
         if (numberOfIntervals > 1) {
             SPLITS.mark(1);
             SPLIT_QUERIES.mark(numberOfIntervals);
         }
 
-        queries.stream().forEach(
-                q -> {
-                    RequestLog.restore(logCtx);
-                    next.handleRequest(context, request, q, mergingResponse);
-                }
-        );
+        dispatcher.start(mergingResponse);
 
         return true;
     }
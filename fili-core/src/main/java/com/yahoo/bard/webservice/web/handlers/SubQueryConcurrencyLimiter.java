@@ -0,0 +1,112 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web.handlers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Limits how many sub-queries of split queries are in flight at once, across all requests, without blocking.
+ * <p>
+ * Sends which can't run yet are queued, and run by the thread releasing a slot. A thread already running sends only
+ * queues the sends it triggers, such as those triggered by a sub-query answered synchronously from the cache, and runs
+ * them once its current send returns, so that chains of synchronous sub-queries don't grow the stack.
+ */
+public class SubQueryConcurrencyLimiter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SubQueryConcurrencyLimiter.class);
+
+    private final int maxConcurrent;
+    private final ThreadLocal<Boolean> draining = ThreadLocal.withInitial(() -> false);
+    private final Queue<Runnable> waiting = new ArrayDeque<>();
+    private int running = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param maxConcurrent  The maximum number of sub-queries in flight at once, or 0 for no limit
+     */
+    public SubQueryConcurrencyLimiter(int maxConcurrent) {
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    /**
+     * Run a send once a slot is free.
+     * <p>
+     * The send holds its slot until {@link #release()} is called for it.
+     *
+     * @param send  The send to run
+     */
+    public void submit(Runnable send) {
+        synchronized (this) {
+            waiting.add(send);
+        }
+        drain();
+    }
+
+    /**
+     * Free the slot of a sub-query which has been answered, and run a waiting send if there is one.
+     */
+    public void release() {
+        synchronized (this) {
+            running--;
+        }
+        drain();
+    }
+
+    /**
+     * Get the number of sub-queries in flight.
+     *
+     * @return the number of slots in use
+     */
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    /**
+     * Get the number of sends waiting for a slot.
+     *
+     * @return the number of waiting sends
+     */
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+
+    /**
+     * Run waiting sends while there are free slots, unless this thread is already doing so further up its stack.
+     */
+    private void drain() {
+        if (draining.get()) {
+            return;
+        }
+        draining.set(true);
+        try {
+            Runnable send;
+            while ((send = next()) != null) {
+                try {
+                    send.run();
+                } catch (RuntimeException e) {
+                    LOG.error("Unable to send sub-query", e);
+                }
+            }
+        } finally {
+            draining.set(false);
+        }
+    }
+
+    /**
+     * Take a waiting send and its slot, if there is a free slot.
+     *
+     * @return the send to run, or null if there is none or no slot is free
+     */
+    private synchronized Runnable next() {
+        if (waiting.isEmpty() || (maxConcurrent > 0 && running >= maxConcurrent)) {
+            return null;
+        }
+        running++;
+        return waiting.poll();
+    }
+}
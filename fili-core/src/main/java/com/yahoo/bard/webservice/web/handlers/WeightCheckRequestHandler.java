@@ -12,6 +12,8 @@ import com.yahoo.bard.webservice.web.DataApiRequest;
 import com.yahoo.bard.webservice.web.ErrorMessageFormat;
 import com.yahoo.bard.webservice.web.responseprocessors.ResponseProcessor;
 import com.yahoo.bard.webservice.web.responseprocessors.WeightCheckResponseProcessor;
+import com.yahoo.bard.webservice.web.util.QueryWeightStatistics;
+import com.yahoo.bard.webservice.web.util.QueryWeightStatistics.Decision;
 import com.yahoo.bard.webservice.web.util.QueryWeightUtil;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -27,6 +29,8 @@ import javax.validation.constraints.NotNull;
  * Weight check request handler determines whether a request should be processed based on estimated query cost.
  * <ul>
  *     <li>If the dimensions of the query are sufficiently low cardinality, the request is allowed.
+ *     <li>If the weights measured for earlier queries of the same shape leave no doubt, the request is allowed or
+ * refused on them.
  *     <li>Otherwise, send a simplified version of the query to druid asynchronously to measure the cardinality of the
  * results.
  *     <li>If the cost is too high, return an error, otherwise subsequently submit the data request.
@@ -72,10 +76,22 @@ public class WeightCheckRequestHandler extends BaseDataRequestHandler {
         }
 
         final WeightCheckResponseProcessor weightCheckResponse = new WeightCheckResponseProcessor(response);
-        final DruidAggregationQuery<?> weightEvaluationQuery = queryWeightUtil.makeWeightEvaluationQuery(druidQuery);
         Granularity granularity = druidQuery.getInnermostQuery().getGranularity();
         final long queryRowLimit = queryWeightUtil.getQueryWeightThreshold(granularity);
 
+        // Decide on the weights of earlier queries of the same shape, sparing the weight check query, when they can
+        QueryWeightStatistics.Estimate estimate = queryWeightUtil.estimateWeight(druidQuery);
+        if (estimate.getDecision() == Decision.ACCEPT) {
+            LOG.debug("Weight check skipped, estimated weight at most {}", estimate.getUpperBound());
+            return next.handleRequest(context, request, druidQuery, response);
+        }
+        if (estimate.getDecision() == Decision.REJECT) {
+            rejectRequest(weightCheckResponse, druidQuery, estimate.getLowerBound(), queryRowLimit);
+            return true;
+        }
+
+        final DruidAggregationQuery<?> weightEvaluationQuery = queryWeightUtil.makeWeightEvaluationQuery(druidQuery);
+
         try {
             LOG.debug("Weight query {}", writer.writeValueAsString(weightEvaluationQuery));
         } catch (JsonProcessingException e) {
@@ -124,25 +140,11 @@ public class WeightCheckRequestHandler extends BaseDataRequestHandler {
 
                     JsonNode row = jsonResult.get(0);
                     // If the weight limit query is empty or reports acceptable rows, run the full query
-                    if (row != null) {
-                        int rowCount = row.get("event").get("count").asInt();
-
-                        if (rowCount > queryRowLimit) {
-                            String reason = String.format(
-                                    ErrorMessageFormat.WEIGHT_CHECK_FAILED.logFormat(rowCount, queryRowLimit),
-                                    rowCount,
-                                    queryRowLimit
-                            );
-                            String description = ErrorMessageFormat.WEIGHT_CHECK_FAILED.format();
-
-                            LOG.debug(reason);
-                            response.getErrorCallback(druidQuery).dispatch(
-                                507, //  Insufficient Storage
-                                reason,
-                                description
-                            );
-                            return;
-                        }
+                    int rowCount = row != null ? row.get("event").get("count").asInt() : 0;
+                    queryWeightUtil.recordWeight(druidQuery, rowCount);
+                    if (rowCount > queryRowLimit) {
+                        rejectRequest(response, druidQuery, rowCount, queryRowLimit);
+                        return;
                     }
                     next.handleRequest(context, request, druidQuery, response);
                 } catch (Throwable e) {
@@ -152,4 +154,33 @@ public class WeightCheckRequestHandler extends BaseDataRequestHandler {
             }
         };
     }
+
+    /**
+     * Refuse a request with an HTTP INSUFFICIENT_STORAGE (507) status because its query weighs too much.
+     *
+     * @param response  The response handler
+     * @param druidQuery  The query being processed
+     * @param rowCount  The weight of the query, measured or estimated
+     * @param queryRowLimit  The number of aggregating lines allowed
+     */
+    protected void rejectRequest(
+            ResponseProcessor response,
+            DruidAggregationQuery<?> druidQuery,
+            long rowCount,
+            long queryRowLimit
+    ) {
+        String reason = String.format(
+                ErrorMessageFormat.WEIGHT_CHECK_FAILED.logFormat(rowCount, queryRowLimit),
+                rowCount,
+                queryRowLimit
+        );
+        String description = ErrorMessageFormat.WEIGHT_CHECK_FAILED.format();
+
+        LOG.debug(reason);
+        response.getErrorCallback(druidQuery).dispatch(
+                507, //  Insufficient Storage
+                reason,
+                description
+        );
+    }
 }
@@ -14,8 +14,10 @@ import com.yahoo.bard.webservice.druid.client.DruidWebService;
 import com.yahoo.bard.webservice.metadata.QuerySigningService;
 import com.yahoo.bard.webservice.table.PhysicalTableDictionary;
 import com.yahoo.bard.webservice.web.handlers.AsyncWebServiceRequestHandler;
+import com.yahoo.bard.webservice.web.handlers.BucketCacheRequestHandler;
 import com.yahoo.bard.webservice.web.handlers.CacheRequestHandler;
 import com.yahoo.bard.webservice.web.handlers.CacheV2RequestHandler;
+import com.yahoo.bard.webservice.web.handlers.CoalescingRequestHandler;
 import com.yahoo.bard.webservice.web.handlers.DataRequestHandler;
 import com.yahoo.bard.webservice.web.handlers.DebugRequestHandler;
 import com.yahoo.bard.webservice.web.handlers.DruidPartialDataRequestHandler;
@@ -44,6 +46,7 @@ import javax.validation.constraints.NotNull;
  *     <li>Requests are routed by selecting a druid web service.
  *     <li>The cache is checked for responses matching the query. (Feature flagged)
  *     <li>Non UI requests may pass through an asynchronous druid query to test the aggregation cost.
+ *     <li>Requests identical to a request in flight wait on its response. (Feature flagged)
  *     <li>Requests are sent asynchronously to the druid web service
  * </ul>
  */
@@ -111,6 +114,12 @@ public class DruidWorkflow implements RequestWorkflowProvider {
         DataRequestHandler uiHandler = new AsyncWebServiceRequestHandler(uiWebService, mapper);
         DataRequestHandler nonUiHandler = new AsyncWebServiceRequestHandler(nonUiWebService, mapper);
 
+        // Identical queries in flight at the same time are sent only once
+        if (BardFeatureFlag.QUERY_COALESCING.isOn()) {
+            uiHandler = new CoalescingRequestHandler(uiHandler, mapper);
+            nonUiHandler = new CoalescingRequestHandler(nonUiHandler, mapper);
+        }
+
         // If Druid sends uncoveredIntervals, missing intervals are checked before sending the request
         if (druidUncoveredIntervalLimit > 0) {
             uiHandler = new DruidPartialDataRequestHandler(uiHandler);
@@ -121,6 +130,9 @@ public class DruidWorkflow implements RequestWorkflowProvider {
         if (CacheFeatureFlag.TTL.isOn()) {
             uiHandler = new CacheRequestHandler(uiHandler, dataCache, mapper);
             nonUiHandler = new CacheRequestHandler(nonUiHandler, dataCache, mapper);
+        } else if (CacheFeatureFlag.LOCAL_SIGNATURE.isOn() && BardFeatureFlag.DRUID_BUCKET_CACHE.isOn()) {
+            uiHandler = new BucketCacheRequestHandler(uiHandler, dataCache, querySigningService, mapper);
+            nonUiHandler = new BucketCacheRequestHandler(nonUiHandler, dataCache, querySigningService, mapper);
         } else if (CacheFeatureFlag.LOCAL_SIGNATURE.isOn()) {
             uiHandler = new CacheV2RequestHandler(uiHandler, dataCache, querySigningService, mapper);
             nonUiHandler = new CacheV2RequestHandler(nonUiHandler, dataCache, querySigningService, mapper);
@@ -0,0 +1,230 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web.responseprocessors;
+
+import static com.yahoo.bard.webservice.web.handlers.PartialDataRequestHandler.getPartialIntervalsWithDefault;
+import static com.yahoo.bard.webservice.web.handlers.VolatileDataRequestHandler.getVolatileIntervalsWithDefault;
+
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
+import com.yahoo.bard.webservice.data.cache.CachedResponseFormat;
+import com.yahoo.bard.webservice.data.cache.TupleDataCache;
+import com.yahoo.bard.webservice.druid.client.FailureCallback;
+import com.yahoo.bard.webservice.druid.client.HttpErrorCallback;
+import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
+import com.yahoo.bard.webservice.metadata.QuerySigningService;
+import com.yahoo.bard.webservice.util.SimplifiedIntervalList;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+
+import org.joda.time.DateTime;
+import org.joda.time.Interval;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A response processor which splits the response of a query covering several time buckets by bucket, and caches the
+ * rows of each bucket under that bucket's own key.
+ * <p>
+ * Buckets overlapping partial or volatile intervals are not cached. The response is passed on unchanged.
+ */
+public class BucketCacheResponseProcessor implements ResponseProcessor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BucketCacheResponseProcessor.class);
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
+    private static final JsonNodeFactory NODE_FACTORY = new JsonNodeFactory(true);
+
+    private final long maxDruidResponseLengthToCache = SYSTEM_CONFIG.getLongProperty(
+            SYSTEM_CONFIG.getPackageVariableName("druid_max_response_length_to_cache"),
+            Long.MAX_VALUE
+    );
+
+    private final ResponseProcessor next;
+    private final Map<Interval, String> bucketKeys;
+    private final Map<Interval, String> bucketChecksums;
+    private final TupleDataCache<String, Long, Serializable> dataCache;
+    private final QuerySigningService<Long> querySigningService;
+    private final CachedResponseFormat cachedResponseFormat;
+    private final ObjectWriter writer;
+
+    /**
+     * Constructor.
+     *
+     * @param next  Next ResponseProcessor in the chain
+     * @param bucketKeys  The buckets covered by the query, in time order, and the keys to cache them under
+     * @param dataCache  The cache into which to write the cache entries
+     * @param querySigningService  Service to use for signing each bucket with its segment metadata
+     * @param mapper  An object mapper to use for processing Json
+     */
+    public BucketCacheResponseProcessor(
+            ResponseProcessor next,
+            Map<Interval, String> bucketKeys,
+            TupleDataCache<String, Long, Serializable> dataCache,
+            QuerySigningService<Long> querySigningService,
+            ObjectMapper mapper
+    ) {
+        this(next, bucketKeys, Collections.emptyMap(), dataCache, querySigningService, mapper);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param next  Next ResponseProcessor in the chain
+     * @param bucketKeys  The buckets covered by the query, in time order, and the keys to cache them under
+     * @param bucketChecksums  The checksums of the queries of the buckets, stored beside their cached responses
+     * @param dataCache  The cache into which to write the cache entries
+     * @param querySigningService  Service to use for signing each bucket with its segment metadata
+     * @param mapper  An object mapper to use for processing Json
+     *
+     * @see CachedResponseFormat#withQueryChecksum(Serializable, String)
+     */
+    public BucketCacheResponseProcessor(
+            ResponseProcessor next,
+            Map<Interval, String> bucketKeys,
+            Map<Interval, String> bucketChecksums,
+            TupleDataCache<String, Long, Serializable> dataCache,
+            QuerySigningService<Long> querySigningService,
+            ObjectMapper mapper
+    ) {
+        this.next = next;
+        this.bucketKeys = bucketKeys;
+        this.bucketChecksums = bucketChecksums;
+        this.dataCache = dataCache;
+        this.querySigningService = querySigningService;
+        this.writer = mapper.writer();
+        this.cachedResponseFormat = CachedResponseFormat.getConfiguredFormat();
+    }
+
+    @Override
+    public ResponseContext getResponseContext() {
+        return next.getResponseContext();
+    }
+
+    @Override
+    public FailureCallback getFailureCallback(DruidAggregationQuery<?> druidQuery) {
+        return next.getFailureCallback(druidQuery);
+    }
+
+    @Override
+    public HttpErrorCallback getErrorCallback(DruidAggregationQuery<?> druidQuery) {
+        return next.getErrorCallback(druidQuery);
+    }
+
+    @Override
+    public void processResponse(JsonNode json, DruidAggregationQuery<?> druidQuery, LoggingContext metadata) {
+        try {
+            cacheBuckets(json, druidQuery);
+        } catch (RuntimeException e) {
+            LOG.warn("Unable to cache the buckets of {}", druidQuery.getIntervals(), e);
+        }
+        next.processResponse(json, druidQuery, metadata);
+    }
+
+    /**
+     * Split the rows of the response by bucket and cache each complete bucket.
+     *
+     * @param json  The response
+     * @param druidQuery  The query covering the buckets
+     */
+    private void cacheBuckets(JsonNode json, DruidAggregationQuery<?> druidQuery) {
+        Map<Interval, ArrayNode> bucketRows = splitByBucket(json);
+        if (bucketRows == null) {
+            LOG.debug("Buckets not cached, response rows do not all fall in a bucket of {}", bucketKeys.keySet());
+            return;
+        }
+
+        SimplifiedIntervalList missingIntervals = getPartialIntervalsWithDefault(getResponseContext());
+        SimplifiedIntervalList volatileIntervals = getVolatileIntervalsWithDefault(getResponseContext());
+
+        for (Map.Entry<Interval, ArrayNode> entry : bucketRows.entrySet()) {
+            Interval bucket = entry.getKey();
+            String cacheKey = bucketKeys.get(bucket);
+            if (cacheKey == null || overlaps(missingIntervals, bucket) || overlaps(volatileIntervals, bucket)) {
+                continue;
+            }
+            Serializable value = null;
+            try {
+                // The limit applies to the bucket before compression
+                value = cachedResponseFormat.encode(entry.getValue(), writer, maxDruidResponseLengthToCache);
+                if (value != null) {
+                    dataCache.set(
+                            cacheKey,
+                            querySigningService.getSegmentSetId(
+                                    druidQuery.withAllIntervals(Collections.singletonList(bucket))
+                            ).orElse(null),
+                            CachedResponseFormat.withQueryChecksum(value, bucketChecksums.get(bucket))
+                    );
+                } else {
+                    LOG.debug(
+                            "Bucket {} not cached. Length exceeds max value length of {}",
+                            bucket,
+                            maxDruidResponseLengthToCache
+                    );
+                }
+            } catch (Exception e) {
+                LOG.warn(
+                        "Unable to cache bucket {} {}value of size: {}",
+                        bucket,
+                        value == null ? "null " : "",
+                        value == null ? "N/A" : CachedResponseFormat.sizeOf(value),
+                        e
+                );
+            }
+        }
+    }
+
+    /**
+     * Group the rows of a response by the bucket their timestamp falls in.
+     *
+     * @param json  The response, an array of rows with timestamps
+     *
+     * @return the rows of every bucket, empty for buckets without rows, or null if a row falls outside the buckets
+     */
+    private Map<Interval, ArrayNode> splitByBucket(JsonNode json) {
+        if (!json.isArray()) {
+            return null;
+        }
+        TreeMap<Long, Interval> bucketStarts = new TreeMap<>();
+        Map<Interval, ArrayNode> bucketRows = new LinkedHashMap<>();
+        for (Interval bucket : bucketKeys.keySet()) {
+            bucketStarts.put(bucket.getStartMillis(), bucket);
+            bucketRows.put(bucket, NODE_FACTORY.arrayNode());
+        }
+
+        for (JsonNode row : json) {
+            JsonNode timestamp = row.get("timestamp");
+            if (timestamp == null) {
+                return null;
+            }
+            long instant = new DateTime(timestamp.asText()).getMillis();
+            Map.Entry<Long, Interval> bucket = bucketStarts.floorEntry(instant);
+            if (bucket == null || !bucket.getValue().contains(instant)) {
+                return null;
+            }
+            bucketRows.get(bucket.getValue()).add(row);
+        }
+        return bucketRows;
+    }
+
+    /**
+     * Whether a bucket overlaps any of a list of intervals.
+     *
+     * @param intervals  The intervals
+     * @param bucket  The bucket
+     *
+     * @return true if the bucket overlaps an interval
+     */
+    private static boolean overlaps(SimplifiedIntervalList intervals, Interval bucket) {
+        return intervals.stream().anyMatch(bucket::overlaps);
+    }
+}
@@ -7,6 +7,7 @@ import static com.yahoo.bard.webservice.web.handlers.VolatileDataRequestHandler.
 
 import com.yahoo.bard.webservice.config.SystemConfig;
 import com.yahoo.bard.webservice.config.SystemConfigProvider;
+import com.yahoo.bard.webservice.data.cache.CachedResponseFormat;
 import com.yahoo.bard.webservice.data.cache.TupleDataCache;
 import com.yahoo.bard.webservice.druid.client.FailureCallback;
 import com.yahoo.bard.webservice.druid.client.HttpErrorCallback;
@@ -21,6 +22,8 @@ import com.fasterxml.jackson.databind.ObjectWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Serializable;
+
 import javax.validation.constraints.NotNull;
 
 /**
@@ -40,7 +43,9 @@ public class CacheV2ResponseProcessor implements ResponseProcessor {
 
     private final ResponseProcessor next;
     private final String cacheKey;
-    private final @NotNull TupleDataCache<String, Long, String> dataCache;
+    private final String queryChecksum;
+    private final @NotNull TupleDataCache<String, Long, Serializable> dataCache;
+    private final CachedResponseFormat cachedResponseFormat;
     private final @NotNull QuerySigningService<Long> querySigningService;
 
     protected final ObjectWriter writer;
@@ -57,15 +62,40 @@ public class CacheV2ResponseProcessor implements ResponseProcessor {
     public CacheV2ResponseProcessor(
             ResponseProcessor next,
             String cacheKey,
-            TupleDataCache<String, Long, String> dataCache,
+            TupleDataCache<String, Long, Serializable> dataCache,
+            QuerySigningService<Long> querySigningService,
+            ObjectMapper mapper
+    ) {
+        this(next, cacheKey, null, dataCache, querySigningService, mapper);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param next  Next ResponseProcessor in the chain
+     * @param cacheKey  Key into which to write a cache entry
+     * @param queryChecksum  Checksum of the query stored beside the cached response, or null for none
+     * @param dataCache  The cache into which to write a cache entry
+     * @param querySigningService  Service to use for signing the queries in the cache key with their metadata
+     * @param mapper  An object mapper to use for processing Json
+     *
+     * @see CachedResponseFormat#withQueryChecksum(Serializable, String)
+     */
+    public CacheV2ResponseProcessor(
+            ResponseProcessor next,
+            String cacheKey,
+            String queryChecksum,
+            TupleDataCache<String, Long, Serializable> dataCache,
             QuerySigningService<Long> querySigningService,
             ObjectMapper mapper
     ) {
         this.next = next;
         this.cacheKey = cacheKey;
+        this.queryChecksum = queryChecksum;
         this.dataCache = dataCache;
         this.querySigningService = querySigningService;
         this.writer = mapper.writer();
+        this.cachedResponseFormat = CachedResponseFormat.getConfiguredFormat();
     }
 
     @Override
@@ -86,28 +116,27 @@ public class CacheV2ResponseProcessor implements ResponseProcessor {
     @Override
     public void processResponse(JsonNode json, DruidAggregationQuery<?> druidQuery, LoggingContext metadata) {
         if (isCacheable()) {
-            String valueString = null;
+            Serializable value = null;
             try {
-                valueString = writer.writeValueAsString(json);
-                int valueLength = valueString.length();
-                if (valueLength <= maxDruidResponseLengthToCache) {
+                // The limit applies to the response before compression
+                value = cachedResponseFormat.encode(json, writer, maxDruidResponseLengthToCache);
+                if (value != null) {
                     dataCache.set(
                             cacheKey,
                             querySigningService.getSegmentSetId(druidQuery).orElse(null),
-                            valueString
+                            CachedResponseFormat.withQueryChecksum(value, queryChecksum)
                     );
                 } else {
                     LOG.debug(
-                            "Response not cached. Length of {} exceeds max value length of {}",
-                            valueLength,
+                            "Response not cached. Length exceeds max value length of {}",
                             maxDruidResponseLengthToCache
                     );
                 }
             } catch (Exception e) {
                 LOG.warn(
                         "Unable to cache {}value of size: {}",
-                        valueString == null ? "null " : "",
-                        valueString == null ? "N/A" : valueString.length(),
+                        value == null ? "null " : "",
+                        value == null ? "N/A" : CachedResponseFormat.sizeOf(value),
                         e
                 );
             }
@@ -11,6 +11,7 @@ import com.yahoo.bard.webservice.data.cache.DataCache;
 import com.yahoo.bard.webservice.druid.client.FailureCallback;
 import com.yahoo.bard.webservice.druid.client.HttpErrorCallback;
 import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
+import com.yahoo.bard.webservice.druid.model.query.QueryFingerprint;
 import com.yahoo.bard.webservice.util.SimplifiedIntervalList;
 
 import com.fasterxml.jackson.databind.JsonNode;
@@ -39,6 +40,7 @@ public class CachingResponseProcessor implements ResponseProcessor {
 
     private final ResponseProcessor next;
     private final String cacheKey;
+    private final String queryChecksum;
     private final @NotNull DataCache<String> dataCache;
 
     protected final ObjectWriter writer;
@@ -56,9 +58,31 @@ public class CachingResponseProcessor implements ResponseProcessor {
             String cacheKey,
             DataCache<String> dataCache,
             ObjectMapper mapper
+    ) {
+        this(next, cacheKey, null, dataCache, mapper);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param next  Next ResponseProcessor in the chain
+     * @param cacheKey  Key into which to write a cache entry
+     * @param queryChecksum  Checksum of the query stored beside the cached response, or null for none
+     * @param dataCache  The cache into which to write a cache entry
+     * @param mapper  An object mapper to use for processing Json
+     *
+     * @see QueryFingerprint#withChecksum(String, String)
+     */
+    public CachingResponseProcessor(
+            ResponseProcessor next,
+            String cacheKey,
+            String queryChecksum,
+            DataCache<String> dataCache,
+            ObjectMapper mapper
     ) {
         this.next = next;
         this.cacheKey = cacheKey;
+        this.queryChecksum = queryChecksum;
         this.dataCache = dataCache;
         this.writer = mapper.writer();
     }
@@ -86,7 +110,7 @@ public class CachingResponseProcessor implements ResponseProcessor {
                 valueString = writer.writeValueAsString(json);
                 int valueLength = valueString.length();
                 if (valueLength <= maxDruidResponseLengthToCache) {
-                    dataCache.set(cacheKey, valueString);
+                    dataCache.set(cacheKey, QueryFingerprint.withChecksum(valueString, queryChecksum));
                 } else {
                     LOG.debug(
                             "Response not cached. Length of {} exceeds max value length of {}",
@@ -0,0 +1,220 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web.responseprocessors;
+
+import static com.yahoo.bard.webservice.web.handlers.workflow.DruidWorkflow.RESPONSE_WORKFLOW_TIMER;
+
+import com.yahoo.bard.webservice.druid.client.FailureCallback;
+import com.yahoo.bard.webservice.druid.client.HttpErrorCallback;
+import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
+import com.yahoo.bard.webservice.logging.RequestLog;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * A response processor which delivers the response of a query to the requests waiting on an identical query as well.
+ * <p>
+ * The response, error or failure of the query is handed to every subscribed request, each with its own query and
+ * request log, before being handed to the next processor of the request which sent the query. Once the query has been
+ * answered, no more requests can subscribe.
+ */
+public class CoalescedResponseProcessor implements ResponseProcessor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CoalescedResponseProcessor.class);
+
+    /**
+     * Timer measuring how long a request waits on an identical query.
+     */
+    public static final String COALESCED_QUERY_TIMER = "CoalescedQueryWait";
+
+    private final ResponseProcessor next;
+    private final Runnable onComplete;
+
+    private final List<Subscriber> subscribers = new ArrayList<>();
+    private boolean completed = false;
+
+    /**
+     * Constructor.
+     *
+     * @param next  Next ResponseProcessor in the chain of the request sending the query
+     * @param onComplete  Action run once the query has been answered, before the response is delivered
+     */
+    public CoalescedResponseProcessor(@NotNull ResponseProcessor next, Runnable onComplete) {
+        this.next = next;
+        this.onComplete = onComplete;
+    }
+
+    /**
+     * Attach a request to the query, so that it receives the query's response.
+     * <p>
+     * This dumps the request log of the current thread, which is restored when the response is delivered.
+     *
+     * @param response  The response processor of the subscribing request
+     * @param query  The subscribing request's own query, identical to the query sent
+     * @param outstanding  The counter of responses the subscribing request is waiting for
+     *
+     * @return true if the request was subscribed, false if the query has already been answered
+     */
+    public boolean subscribe(ResponseProcessor response, DruidAggregationQuery<?> query, AtomicLong outstanding) {
+        synchronized (this) {
+            if (completed) {
+                return false;
+            }
+            RequestLog.startTiming(COALESCED_QUERY_TIMER);
+            subscribers.add(new Subscriber(response, query, outstanding, RequestLog.dump()));
+            return true;
+        }
+    }
+
+    /**
+     * Get the number of requests subscribed to the query.
+     *
+     * @return the number of subscribers
+     */
+    public synchronized int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    @Override
+    public ResponseContext getResponseContext() {
+        return next.getResponseContext();
+    }
+
+    @Override
+    public FailureCallback getFailureCallback(DruidAggregationQuery<?> druidQuery) {
+        FailureCallback failure = next.getFailureCallback(druidQuery);
+        return error -> {
+            deliver(subscriber -> subscriber.response.getFailureCallback(subscriber.query).invoke(error));
+            failure.invoke(error);
+        };
+    }
+
+    @Override
+    public HttpErrorCallback getErrorCallback(DruidAggregationQuery<?> druidQuery) {
+        HttpErrorCallback error = next.getErrorCallback(druidQuery);
+        return (statusCode, reasonPhrase, responseBody) -> {
+            deliver(subscriber -> subscriber.response.getErrorCallback(subscriber.query)
+                    .invoke(statusCode, reasonPhrase, responseBody));
+            error.invoke(statusCode, reasonPhrase, responseBody);
+        };
+    }
+
+    @Override
+    public void processResponse(JsonNode json, DruidAggregationQuery<?> druidQuery, LoggingContext metadata) {
+        // Processors may modify the json they are given, so each subscriber gets its own copy
+        deliver(subscriber -> subscriber.response.processResponse(
+                json.deepCopy(),
+                subscriber.query,
+                new LoggingContext(RequestLog.copy())
+        ));
+        next.processResponse(json, druidQuery, metadata);
+    }
+
+    /**
+     * Stop accepting subscribers and hand the outcome of the query to each subscriber.
+     * <p>
+     * Each subscriber's request log is restored while it handles the outcome, and the request log of the current
+     * thread is restored afterwards.
+     *
+     * @param outcome  Hands the outcome of the query to a subscriber
+     */
+    private void deliver(Consumer<Subscriber> outcome) {
+        List<Subscriber> waiting = complete();
+        if (onComplete != null) {
+            onComplete.run();
+        }
+        deliver(waiting, outcome);
+    }
+
+    /**
+     * Stop accepting subscribers and fail every subscriber, because the query could not be sent.
+     * <p>
+     * Only the subscribers are failed: the request which tried to send the query handles the error itself. The action
+     * run once the query has been answered is not run, since the query never was in flight.
+     *
+     * @param error  The error sending the query
+     */
+    public void failSubscribers(Throwable error) {
+        deliver(complete(), subscriber -> subscriber.response.getFailureCallback(subscriber.query).invoke(error));
+    }
+
+    /**
+     * Stop accepting subscribers.
+     *
+     * @return the subscribers waiting on the query
+     */
+    private synchronized List<Subscriber> complete() {
+        completed = true;
+        List<Subscriber> waiting = new ArrayList<>(subscribers);
+        subscribers.clear();
+        return waiting;
+    }
+
+    /**
+     * Hand the outcome of the query to each of the subscribers.
+     *
+     * @param waiting  The subscribers waiting on the query
+     * @param outcome  Hands the outcome of the query to a subscriber
+     */
+    private void deliver(List<Subscriber> waiting, Consumer<Subscriber> outcome) {
+        if (waiting.isEmpty()) {
+            return;
+        }
+
+        RequestLog current = RequestLog.dump();
+        for (Subscriber subscriber : waiting) {
+            RequestLog.restore(subscriber.logCtx);
+            RequestLog.stopTiming(COALESCED_QUERY_TIMER);
+            if (subscriber.outstanding.decrementAndGet() == 0) {
+                RequestLog.startTiming(RESPONSE_WORKFLOW_TIMER);
+            }
+            try {
+                outcome.accept(subscriber);
+            } catch (RuntimeException e) {
+                LOG.error("Unable to deliver the response of a coalesced query", e);
+                subscriber.response.getFailureCallback(subscriber.query).invoke(e);
+            }
+        }
+        RequestLog.restore(current);
+    }
+
+    /**
+     * A request waiting on the query.
+     */
+    private static class Subscriber {
+        private final ResponseProcessor response;
+        private final DruidAggregationQuery<?> query;
+        private final AtomicLong outstanding;
+        private final RequestLog logCtx;
+
+        /**
+         * Constructor.
+         *
+         * @param response  The response processor of the request
+         * @param query  The request's query
+         * @param outstanding  The counter of responses the request is waiting for
+         * @param logCtx  The request log of the request
+         */
+        Subscriber(
+                ResponseProcessor response,
+                DruidAggregationQuery<?> query,
+                AtomicLong outstanding,
+                RequestLog logCtx
+        ) {
+            this.response = response;
+            this.query = query;
+            this.outstanding = outstanding;
+            this.logCtx = logCtx;
+        }
+    }
+}
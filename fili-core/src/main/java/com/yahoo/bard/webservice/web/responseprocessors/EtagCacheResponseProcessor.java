@@ -10,6 +10,7 @@ import com.yahoo.bard.webservice.data.cache.TupleDataCache;
 import com.yahoo.bard.webservice.druid.client.FailureCallback;
 import com.yahoo.bard.webservice.druid.client.HttpErrorCallback;
 import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
+import com.yahoo.bard.webservice.druid.model.query.QueryFingerprint;
 import com.yahoo.bard.webservice.web.ErrorMessageFormat;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -36,6 +37,7 @@ public class EtagCacheResponseProcessor implements FullResponseProcessor {
     private final ObjectWriter writer;
     private final ResponseProcessor next;
     private final String cacheKey;
+    private final String queryChecksum;
     private final TupleDataCache<String, String, String> dataCache;
 
     /**
@@ -51,9 +53,31 @@ public class EtagCacheResponseProcessor implements FullResponseProcessor {
             @NotNull String cacheKey,
             @NotNull TupleDataCache<String, String, String> dataCache,
             @NotNull ObjectMapper mapper
+    ) {
+        this(next, cacheKey, null, dataCache, mapper);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param next  Next ResponseProcessor in the chain
+     * @param cacheKey  Key into which to write a cache entry
+     * @param queryChecksum  Checksum of the query stored beside the cached response, or null for none
+     * @param dataCache  The cache into which to write a cache entry
+     * @param mapper  An object mapper to use for processing Json
+     *
+     * @see QueryFingerprint#withChecksum(String, String)
+     */
+    public EtagCacheResponseProcessor(
+            @NotNull ResponseProcessor next,
+            @NotNull String cacheKey,
+            String queryChecksum,
+            @NotNull TupleDataCache<String, String, String> dataCache,
+            @NotNull ObjectMapper mapper
     ) {
         this.next = next;
         this.cacheKey = cacheKey;
+        this.queryChecksum = queryChecksum;
         this.dataCache = dataCache;
         this.mapper = mapper;
         this.writer = mapper.writer();
@@ -86,10 +110,15 @@ public class EtagCacheResponseProcessor implements FullResponseProcessor {
         // If response is a NOT_MODIFIED, get response body from cache and inject it into JsonNode of the next
         // response processor
         if (statusCode == NOT_MODIFIED.getStatusCode()) {
+            String cachedResponse = QueryFingerprint.verifyChecksum(dataCache.getDataValue(cacheKey), queryChecksum);
+            if (cachedResponse == null) {
+                logAndGetErrorCallback("Cached response is missing or was stored for a different query", druidQuery);
+                return;
+            }
             try {
                 ((ObjectNode) json).set(
                         DruidJsonResponseContentKeys.RESPONSE.getName(),
-                        mapper.readTree(dataCache.getDataValue(cacheKey))
+                        mapper.readTree(cachedResponse)
                 );
             } catch (IOException ioe) {
                 logAndGetErrorCallback(ioe.getLocalizedMessage(), druidQuery);
@@ -104,7 +133,12 @@ public class EtagCacheResponseProcessor implements FullResponseProcessor {
                     dataCache.set(
                             cacheKey,
                             json.get(DruidJsonResponseContentKeys.ETAG.getName()).asText(),
-                            writer.writeValueAsString(json.get(DruidJsonResponseContentKeys.RESPONSE.getName()))
+                            QueryFingerprint.withChecksum(
+                                    writer.writeValueAsString(
+                                            json.get(DruidJsonResponseContentKeys.RESPONSE.getName())
+                                    ),
+                                    queryChecksum
+                            )
                     );
                 } catch (JsonProcessingException exception) {
                     logAndGetErrorCallback("Unable to parse JSON response while caching", druidQuery);
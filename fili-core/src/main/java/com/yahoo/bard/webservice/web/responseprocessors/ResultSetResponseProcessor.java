@@ -25,6 +25,7 @@ import com.yahoo.bard.webservice.web.DataApiRequest;
 import com.yahoo.bard.webservice.web.PageNotFoundException;
 import com.yahoo.bard.webservice.web.PreResponse;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 
 import org.joda.time.DateTimeZone;
@@ -33,10 +34,12 @@ import org.slf4j.LoggerFactory;
 
 import rx.subjects.Subject;
 
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.stream.Collectors;
 
 import javax.ws.rs.core.Response.Status;
@@ -44,7 +47,7 @@ import javax.ws.rs.core.Response.Status;
 /**
  * Callback handler for JSON to be processed into result sets.
  */
-public class ResultSetResponseProcessor extends MappingResponseProcessor implements ResponseProcessor {
+public class ResultSetResponseProcessor extends MappingResponseProcessor implements StreamingResponseProcessor {
 
     private static final Logger LOG = LoggerFactory.getLogger(ResultSetResponseProcessor.class);
 
@@ -88,9 +91,25 @@ public class ResultSetResponseProcessor extends MappingResponseProcessor impleme
 
     @Override
     public void processResponse(JsonNode json, DruidAggregationQuery<?> druidQuery, LoggingContext metadata) {
+        RequestLog.restore(metadata.getRequestLog());
+        processResultSet(() -> buildResultSet(json, druidQuery, apiRequest.getTimeZone()), druidQuery);
+    }
+
+    @Override
+    public void processResponse(JsonParser jsonParser, DruidAggregationQuery<?> druidQuery, LoggingContext metadata) {
+        RequestLog.restore(metadata.getRequestLog());
+        processResultSet(() -> buildResultSet(jsonParser, druidQuery, apiRequest.getTimeZone()), druidQuery);
+    }
+
+    /**
+     * Build and map the result set for the response and send it to the response emitter.
+     *
+     * @param resultSetBuilder  Builds the initial result set from the druid response
+     * @param druidQuery  The druid query being processed
+     */
+    protected void processResultSet(Callable<ResultSet> resultSetBuilder, DruidAggregationQuery<?> druidQuery) {
         try {
-            RequestLog.restore(metadata.getRequestLog());
-            ResultSet resultSet = buildResultSet(json, druidQuery, apiRequest.getTimeZone());
+            ResultSet resultSet = resultSetBuilder.call();
             resultSet = mapResultSet(resultSet);
 
             LinkedHashSet<String> apiMetricColumnNames = apiRequest.getLogicalMetrics().stream()
@@ -157,4 +176,28 @@ public class ResultSetResponseProcessor extends MappingResponseProcessor impleme
 
         return druidResponseParser.parse(json, resultSetSchema, druidQuery.getQueryType(), dateTimeZone);
     }
+
+    /**
+     * Build a result set using the api request time grain by streaming over the druid response.
+     *
+     * @param jsonParser  The parser over the json representing the druid response.
+     * @param druidQuery  The druid query being processed
+     * @param dateTimeZone  The date time zone for parsing result rows
+     *
+     * @return The initial result set from the json tokens.
+     *
+     * @throws IOException if the druid response cannot be read
+     */
+    public ResultSet buildResultSet(
+            JsonParser jsonParser,
+            DruidAggregationQuery<?> druidQuery,
+            DateTimeZone dateTimeZone
+    ) throws IOException {
+        LinkedHashSet<Column> columns = druidResponseParser.buildSchemaColumns(druidQuery)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+
+        ResultSetSchema resultSetSchema = new ResultSetSchema(granularity, columns);
+
+        return druidResponseParser.parse(jsonParser, resultSetSchema, druidQuery.getQueryType(), dateTimeZone);
+    }
 }
@@ -24,9 +24,10 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * This response processor receives a list of expected intervals.  As responses arrives, it stores the responses until
- * all expected intervals have arrived, at which point it passes the concatenated Json content from each of the calls
- * to its next processor.
+ * This response processor receives a list of expected intervals.  As responses arrive, the rows of each response are
+ * appended in time order to the merged response as soon as the responses of all earlier intervals have arrived, and the
+ * response itself is released. Once all expected intervals have arrived, the merged Json content is passed to its next
+ * processor.
  */
 public class SplitQueryResponseProcessor implements ResponseProcessor {
 
@@ -42,6 +43,10 @@ public class SplitQueryResponseProcessor implements ResponseProcessor {
     private final AtomicInteger completed;
     private final AtomicBoolean failed = new AtomicBoolean(false);
     private final RequestLog logCtx;
+    private final Runnable sliceCompleted;
+
+    private final ArrayNode mergedResponse = new JsonNodeFactory(true).arrayNode();
+    private int mergedIntervals = 0;
 
     /**
      * Constructor.
@@ -52,13 +57,34 @@ public class SplitQueryResponseProcessor implements ResponseProcessor {
      * @param expectedIntervals A map of expected interval status flags
      * @param logCtx  The request log logging context
      */
-    @SuppressWarnings("unchecked")
     public SplitQueryResponseProcessor(
             ResponseProcessor next,
             DataApiRequest request,
             DruidAggregationQuery<?> druidQuery,
             Map<Interval, AtomicInteger> expectedIntervals,
             RequestLog logCtx
+    ) {
+        this(next, request, druidQuery, expectedIntervals, logCtx, () -> { });
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param next  The next delegate response processor
+     * @param request  The request for this response
+     * @param druidQuery  The unmodified druid query for this response
+     * @param expectedIntervals A map of expected interval status flags
+     * @param logCtx  The request log logging context
+     * @param sliceCompleted  Action run as each sub-query is answered, with a response, an error or a failure
+     */
+    @SuppressWarnings("unchecked")
+    public SplitQueryResponseProcessor(
+            ResponseProcessor next,
+            DataApiRequest request,
+            DruidAggregationQuery<?> druidQuery,
+            Map<Interval, AtomicInteger> expectedIntervals,
+            RequestLog logCtx,
+            Runnable sliceCompleted
     ) {
         this.next = next;
         this.queryBeforeSplit = druidQuery;
@@ -66,6 +92,30 @@ public class SplitQueryResponseProcessor implements ResponseProcessor {
         this.completedIntervals = Arrays.asList(new Pair[expectedIntervals.size()]);
         this.completed = new AtomicInteger(expectedIntervals.size());
         this.logCtx = logCtx;
+        this.sliceCompleted = sliceCompleted;
+    }
+
+    /**
+     * Whether the split query has failed, in which case the answers of further sub-queries are ignored.
+     *
+     * @return true if a sub-query has failed
+     */
+    public boolean hasFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Fail the request because a sub-query could not be sent.
+     * <p>
+     * Unlike the failure callback, this doesn't complete the sub-query's slice, which is left to the sender.
+     *
+     * @param druidQuery  The sub-query which could not be sent
+     * @param error  The error sending the sub-query
+     */
+    public void failSend(DruidAggregationQuery<?> druidQuery, Throwable error) {
+        if (failed.compareAndSet(false, true)) {
+            next.getFailureCallback(druidQuery).invoke(error);
+        }
     }
 
     @Override
@@ -80,7 +130,10 @@ public class SplitQueryResponseProcessor implements ResponseProcessor {
 
             @Override
             public void invoke(Throwable error) {
-                if (failed.compareAndSet(false, true)) {
+                // Fail before the slice completes, so that no further sub-queries are sent
+                boolean firstFailure = failed.compareAndSet(false, true);
+                sliceCompleted.run();
+                if (firstFailure) {
                     nextFail.invoke(error);
                 }
             }
@@ -94,7 +147,10 @@ public class SplitQueryResponseProcessor implements ResponseProcessor {
 
             @Override
             public void invoke(int statusCode, String reasonPhrase, String responseBody) {
-                if (failed.compareAndSet(false, true)) {
+                // Fail before the slice completes, so that no further sub-queries are sent
+                boolean firstFailure = failed.compareAndSet(false, true);
+                sliceCompleted.run();
+                if (firstFailure) {
                     nextError.invoke(statusCode, reasonPhrase, responseBody);
                 }
             }
@@ -103,6 +159,7 @@ public class SplitQueryResponseProcessor implements ResponseProcessor {
 
     @Override
     public void processResponse(JsonNode json, DruidAggregationQuery<?> druidQuery, LoggingContext metadata) {
+        sliceCompleted.run();
         if (failed.get()) {
             return;
         }
@@ -121,11 +178,40 @@ public class SplitQueryResponseProcessor implements ResponseProcessor {
         }
 
         completedIntervals.set(index, new Pair<>(json, metadata));
+        completed.decrementAndGet();
 
-        if (completed.decrementAndGet() == 0) {
-            Pair<JsonNode, LoggingContext> mergedResponse = mergeResponses(completedIntervals);
-            RequestLog.restore(mergedResponse.getValue().getRequestLog());
-            next.processResponse(mergedResponse.getKey(), queryBeforeSplit, mergedResponse.getValue());
+        if (mergeCompletedIntervals()) {
+            LoggingContext mergedContext = mergeLoggingContexts(completedIntervals);
+            RequestLog.restore(mergedContext.getRequestLog());
+            JsonNode response = completedIntervals.size() == 1 ? json : mergedResponse;
+            next.processResponse(response, queryBeforeSplit, mergedContext);
+        }
+    }
+
+    /**
+     * Append the rows of the arrived responses which follow the responses already merged, in time order, releasing
+     * each response once its rows are appended.
+     *
+     * @return true if this call merged the last expected response
+     */
+    private boolean mergeCompletedIntervals() {
+        synchronized (mergedResponse) {
+            if (mergedIntervals == completedIntervals.size()) {
+                return false;
+            }
+            Pair<JsonNode, LoggingContext> entry;
+            while (mergedIntervals < completedIntervals.size()
+                    && (entry = completedIntervals.get(mergedIntervals)) != null) {
+                // A single response is handed on as it is
+                if (completedIntervals.size() > 1) {
+                    for (JsonNode jsonNode : entry.getKey()) {
+                        mergedResponse.add(jsonNode);
+                    }
+                    completedIntervals.set(mergedIntervals, new Pair<>(null, entry.getValue()));
+                }
+                mergedIntervals++;
+            }
+            return mergedIntervals == completedIntervals.size();
         }
     }
 
@@ -140,27 +226,24 @@ public class SplitQueryResponseProcessor implements ResponseProcessor {
         String message = String.format(format, interval);
         Exception e = new IllegalStateException(message);
         LOG.error(message, e);
-        getFailureCallback(druidQuery).invoke(e);
+        // The answer has already been counted as completed, so skip the failure callback's count
+        if (failed.compareAndSet(false, true)) {
+            next.getFailureCallback(druidQuery).invoke(e);
+        }
     }
 
     /**
-     * Take a list of Jackson ArrayNodes and merge their contents, preserving order.
+     * Accumulate the request logs of the responses into the request log of the query before it was split.
      *
      * @param responses  A list of pairs that encompass JSON nodes and response metadata
      *
-     * @return A new pair holding the merged json and the aggregate request log context
+     * @return the aggregate request log context
      */
-    private Pair<JsonNode, LoggingContext> mergeResponses(List<Pair<JsonNode, LoggingContext>> responses) {
-        JsonNodeFactory factory = new JsonNodeFactory(true);
-        ArrayNode result = factory.arrayNode();
+    private LoggingContext mergeLoggingContexts(List<Pair<JsonNode, LoggingContext>> responses) {
         RequestLog.restore(logCtx);
         for (Pair<JsonNode, LoggingContext> entry : responses) {
-            for (JsonNode jsonNode : entry.getKey()) {
-                result.add(jsonNode);
-            }
             RequestLog.accumulate(entry.getValue().getRequestLog());
         }
-        RequestLog updatedCtx = RequestLog.dump();
-        return new Pair<>(result, new LoggingContext(updatedCtx));
+        return new LoggingContext(RequestLog.dump());
     }
 }
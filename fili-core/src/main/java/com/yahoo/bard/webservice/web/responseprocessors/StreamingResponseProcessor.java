@@ -0,0 +1,25 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web.responseprocessors;
+
+import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+/**
+ * A response processor which can consume a druid response as a stream of JSON tokens rather than as a JSON tree.
+ * <p>
+ * Streaming avoids materializing a tree of the whole Druid response, which for large responses is several times the
+ * size of the response itself.
+ */
+public interface StreamingResponseProcessor extends ResponseProcessor {
+
+    /**
+     * Process the response json tokens and respond to the original web request.
+     *
+     * @param jsonParser  The parser over the json representing a druid data response
+     * @param query  The query with the schema for processing this response
+     * @param metadata  The LoggingContext to use
+     */
+    void processResponse(JsonParser jsonParser, DruidAggregationQuery<?> query, LoggingContext metadata);
+}
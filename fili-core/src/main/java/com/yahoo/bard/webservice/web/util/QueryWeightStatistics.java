@@ -0,0 +1,424 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web.util;
+
+import com.yahoo.bard.webservice.application.MetricRegistryFactory;
+import com.yahoo.bard.webservice.data.dimension.Dimension;
+import com.yahoo.bard.webservice.druid.model.aggregation.SketchAggregation;
+import com.yahoo.bard.webservice.druid.model.filter.Filter;
+import com.yahoo.bard.webservice.druid.model.orderby.LimitSpec;
+import com.yahoo.bard.webservice.druid.model.query.AllGranularity;
+import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
+import com.yahoo.bard.webservice.druid.model.query.GroupByQuery;
+import com.yahoo.bard.webservice.druid.model.query.TopNQuery;
+import com.yahoo.bard.webservice.util.IntervalUtils;
+import com.yahoo.bard.webservice.util.Utils;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Statistics of the weights measured by weight check queries, used to decide later weight checks without a Druid round
+ * trip.
+ * <p>
+ * Weights are kept per query shape: the query type, data sources, grouping dimensions, granularity, filter and limit of
+ * the innermost query. A weight check measures the sketches of the query times its rows, so each weight is recorded as
+ * rows per time bucket, and scaled back by the sketches and time buckets of the query being estimated. The estimate is
+ * bounded by the observed range of rows per bucket, widened to the mean plus or minus the confidence number of standard
+ * deviations. A query is accepted if the upper bound is within its threshold, and rejected if the lower bound is over
+ * it. Otherwise, or with fewer than the minimum samples, the weight check query is still needed.
+ * <p>
+ * A filter can only remove rows, so a filtered query without statistics of its own may still be accepted on the
+ * statistics of the same query unfiltered, but is never rejected on them. Queries at the 'all' granularity, and group
+ * by queries with a limit, are not estimated, since their rows don't scale with the number of time buckets. Statistics
+ * are dropped after their time to live, so that estimates follow the data as it grows.
+ */
+public class QueryWeightStatistics {
+    private static final MetricRegistry REGISTRY = MetricRegistryFactory.getRegistry();
+
+    public static final String METER_AVOIDED_RATIO = "weight.check.statistics.avoided.ratio";
+
+    public static final Meter ACCEPTED = REGISTRY.meter("weight.check.statistics.accepted");
+    public static final Meter REJECTED = REGISTRY.meter("weight.check.statistics.rejected");
+    public static final Meter UNCERTAIN = REGISTRY.meter("weight.check.statistics.uncertain");
+
+    static {
+        if (!REGISTRY.getMetrics().containsKey(METER_AVOIDED_RATIO)) {
+            REGISTRY.register(
+                    METER_AVOIDED_RATIO,
+                    new RatioGauge() {
+                        @Override
+                        protected Ratio getRatio() {
+                            long avoided = ACCEPTED.getCount() + REJECTED.getCount();
+                            long decisions = avoided + UNCERTAIN.getCount();
+                            return decisions != 0 ? Ratio.of(avoided, decisions) : Ratio.of(0, 1);
+                        }
+                    }
+            );
+        }
+    }
+
+    /**
+     * The outcomes of estimating the weight of a query.
+     */
+    public enum Decision {
+        ACCEPT,
+        REJECT,
+        UNCERTAIN
+    }
+
+    private final int minSamples;
+    private final double confidence;
+    private final int maxShapes;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+
+    private final Map<Shape, Samples> samplesByShape = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param minSamples  The fewest weights of a shape to decide a query on
+     * @param confidence  The number of standard deviations the bounds of an estimate are widened to
+     * @param maxShapes  The most shapes statistics are kept for
+     * @param ttlMs  How long the statistics of a shape are kept, in milliseconds
+     */
+    public QueryWeightStatistics(int minSamples, double confidence, int maxShapes, long ttlMs) {
+        this(minSamples, confidence, maxShapes, ttlMs, System::nanoTime);
+    }
+
+    /**
+     * Constructor with a clock, for testing.
+     *
+     * @param minSamples  The fewest weights of a shape to decide a query on
+     * @param confidence  The number of standard deviations the bounds of an estimate are widened to
+     * @param maxShapes  The most shapes statistics are kept for
+     * @param ttlMs  How long the statistics of a shape are kept, in milliseconds
+     * @param clock  Supplies the current time, in nanos
+     */
+    protected QueryWeightStatistics(int minSamples, double confidence, int maxShapes, long ttlMs, LongSupplier clock) {
+        this.minSamples = Math.max(1, minSamples);
+        this.confidence = confidence;
+        this.maxShapes = maxShapes;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        this.clock = clock;
+    }
+
+    /**
+     * Estimate the weight of a query from the weights recorded for its shape, and decide it against a threshold.
+     *
+     * @param query  The query to estimate
+     * @param threshold  The highest weight the query may have
+     *
+     * @return the estimate, uncertain if the weight check query is needed
+     */
+    public Estimate estimate(DruidAggregationQuery<?> query, long threshold) {
+        Estimate estimate = decide(query, threshold);
+        switch (estimate.getDecision()) {
+            case ACCEPT:
+                ACCEPTED.mark();
+                break;
+            case REJECT:
+                REJECTED.mark();
+                break;
+            default:
+                UNCERTAIN.mark();
+        }
+        return estimate;
+    }
+
+    /**
+     * Record the weight a weight check query measured for a query.
+     *
+     * @param query  The query whose weight was checked
+     * @param weight  The weight measured
+     */
+    public void record(DruidAggregationQuery<?> query, long weight) {
+        DruidAggregationQuery<?> innerQuery = query.getInnermostQuery();
+        if (!isScalable(innerQuery)) {
+            return;
+        }
+        long now = clock.getAsLong();
+        Shape shape = new Shape(innerQuery, true);
+        Samples samples = getSamples(shape, now);
+        if (samples == null) {
+            if (samplesByShape.size() >= maxShapes) {
+                samplesByShape.values().removeIf(expired -> expired.isExpired(now, ttlNanos));
+                if (samplesByShape.size() >= maxShapes) {
+                    return;
+                }
+            }
+            samples = samplesByShape.computeIfAbsent(shape, ignored -> new Samples(now));
+        }
+        samples.add((double) weight / scale(innerQuery));
+    }
+
+    /**
+     * Get the number of shapes statistics are kept for.
+     *
+     * @return the number of shapes
+     */
+    public int size() {
+        return samplesByShape.size();
+    }
+
+    /**
+     * Decide a query from the statistics of its shape, or of its shape unfiltered.
+     *
+     * @param query  The query to estimate
+     * @param threshold  The highest weight the query may have
+     *
+     * @return the estimate
+     */
+    private Estimate decide(DruidAggregationQuery<?> query, long threshold) {
+        DruidAggregationQuery<?> innerQuery = query.getInnermostQuery();
+        if (!isScalable(innerQuery)) {
+            return Estimate.UNCERTAIN;
+        }
+        long now = clock.getAsLong();
+        boolean exact = true;
+        Samples samples = getSamples(new Shape(innerQuery, true), now);
+        if ((samples == null || samples.getCount() < minSamples) && innerQuery.getFilter() != null) {
+            exact = false;
+            samples = getSamples(new Shape(innerQuery, false), now);
+        }
+        if (samples == null || samples.getCount() < minSamples) {
+            return Estimate.UNCERTAIN;
+        }
+
+        double scale = scale(innerQuery);
+        double[] bounds = samples.getBounds(confidence);
+        long lowerBound = (long) Math.floor(bounds[0] * scale);
+        long upperBound = (long) Math.ceil(bounds[1] * scale);
+        if (upperBound <= threshold) {
+            return new Estimate(Decision.ACCEPT, lowerBound, upperBound);
+        }
+        if (exact && lowerBound > threshold) {
+            return new Estimate(Decision.REJECT, lowerBound, upperBound);
+        }
+        return new Estimate(Decision.UNCERTAIN, lowerBound, upperBound);
+    }
+
+    /**
+     * Get the statistics of a shape, dropping them if they have expired.
+     *
+     * @param shape  The shape
+     * @param now  The current time, in nanos
+     *
+     * @return the statistics, or null if there are none
+     */
+    private Samples getSamples(Shape shape, long now) {
+        Samples samples = samplesByShape.get(shape);
+        if (samples != null && samples.isExpired(now, ttlNanos)) {
+            samplesByShape.remove(shape, samples);
+            return null;
+        }
+        return samples;
+    }
+
+    /**
+     * Whether the rows of a query scale with its time buckets.
+     * <p>
+     * A query at the 'all' granularity has a single time bucket, and the limit of a group by query caps its rows over
+     * all time buckets, so neither can be extrapolated from other queries of its shape.
+     *
+     * @param innerQuery  The innermost query
+     *
+     * @return true if the weight of the query can be estimated from rows per time bucket
+     */
+    private static boolean isScalable(DruidAggregationQuery<?> innerQuery) {
+        if (innerQuery.getGranularity() instanceof AllGranularity) {
+            return false;
+        }
+        if (innerQuery instanceof GroupByQuery) {
+            LimitSpec limitSpec = ((GroupByQuery) innerQuery).getLimitSpec();
+            return limitSpec == null || !limitSpec.getLimit().isPresent();
+        }
+        return true;
+    }
+
+    /**
+     * Get the weight of a query per row in a time bucket: its sketches times its time buckets.
+     *
+     * @param innerQuery  The innermost query
+     *
+     * @return the scale from rows per time bucket to weight
+     */
+    private static double scale(DruidAggregationQuery<?> innerQuery) {
+        int sketches = Utils.getSubsetByType(innerQuery.getAggregations(), SketchAggregation.class).size();
+        long periods = IntervalUtils.countSlicedIntervals(innerQuery.getIntervals(), innerQuery.getGranularity());
+        return (double) Math.max(sketches, 1) * Math.max(periods, 1);
+    }
+
+    /**
+     * An estimate of the weight of a query, with the decision made on it.
+     */
+    public static final class Estimate {
+
+        /**
+         * The estimate of a query which can't be decided without a weight check query.
+         */
+        public static final Estimate UNCERTAIN = new Estimate(Decision.UNCERTAIN, 0, Long.MAX_VALUE);
+
+        private final Decision decision;
+        private final long lowerBound;
+        private final long upperBound;
+
+        /**
+         * Constructor.
+         *
+         * @param decision  The decision made on the estimate
+         * @param lowerBound  The lowest weight the query is expected to have
+         * @param upperBound  The highest weight the query is expected to have
+         */
+        public Estimate(Decision decision, long lowerBound, long upperBound) {
+            this.decision = decision;
+            this.lowerBound = lowerBound;
+            this.upperBound = upperBound;
+        }
+
+        public Decision getDecision() {
+            return decision;
+        }
+
+        public long getLowerBound() {
+            return lowerBound;
+        }
+
+        public long getUpperBound() {
+            return upperBound;
+        }
+    }
+
+    /**
+     * The parts of a query which its rows per time bucket depend on.
+     */
+    private static final class Shape {
+        private final Object queryType;
+        private final Set<String> dataSources;
+        private final List<String> dimensions;
+        private final Object granularity;
+        private final Filter filter;
+        private final Object limit;
+
+        /**
+         * Constructor.
+         *
+         * @param innerQuery  The innermost query
+         * @param withFilter  Whether the filter of the query is part of the shape
+         */
+        Shape(DruidAggregationQuery<?> innerQuery, boolean withFilter) {
+            this.queryType = innerQuery.getQueryType();
+            this.dataSources = innerQuery.getDataSource().getNames();
+            this.dimensions = innerQuery.getDimensions().stream()
+                    .map(Dimension::getApiName)
+                    .sorted()
+                    .collect(Collectors.toList());
+            this.granularity = innerQuery.getGranularity();
+            this.filter = withFilter ? innerQuery.getFilter() : null;
+            if (innerQuery instanceof TopNQuery) {
+                this.limit = ((TopNQuery) innerQuery).getThreshold();
+            } else if (innerQuery instanceof GroupByQuery) {
+                this.limit = ((GroupByQuery) innerQuery).getLimitSpec();
+            } else {
+                this.limit = null;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Shape)) {
+                return false;
+            }
+            Shape that = (Shape) o;
+            return Objects.equals(queryType, that.queryType)
+                    && Objects.equals(dataSources, that.dataSources)
+                    && Objects.equals(dimensions, that.dimensions)
+                    && Objects.equals(granularity, that.granularity)
+                    && Objects.equals(filter, that.filter)
+                    && Objects.equals(limit, that.limit);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(queryType, dataSources, dimensions, granularity, filter, limit);
+        }
+    }
+
+    /**
+     * Running statistics of the rows per time bucket of a shape.
+     */
+    private static final class Samples {
+        private final long created;
+        private long count;
+        private double mean;
+        private double sumOfSquares;
+        private double min = Double.MAX_VALUE;
+        private double max;
+
+        /**
+         * Constructor.
+         *
+         * @param created  When the statistics were started, in nanos
+         */
+        Samples(long created) {
+            this.created = created;
+        }
+
+        /**
+         * Add a sample, updating the mean and variance incrementally.
+         *
+         * @param rowsPerBucket  The rows per time bucket measured
+         */
+        synchronized void add(double rowsPerBucket) {
+            count++;
+            double delta = rowsPerBucket - mean;
+            mean += delta / count;
+            sumOfSquares += delta * (rowsPerBucket - mean);
+            min = Math.min(min, rowsPerBucket);
+            max = Math.max(max, rowsPerBucket);
+        }
+
+        synchronized long getCount() {
+            return count;
+        }
+
+        /**
+         * Get the range the rows per time bucket are expected in: the observed range, widened to the mean plus or minus
+         * the given number of standard deviations.
+         *
+         * @param deviations  The number of standard deviations
+         *
+         * @return the lower and upper bound of the rows per time bucket
+         */
+        synchronized double[] getBounds(double deviations) {
+            double spread = count > 1 ? deviations * Math.sqrt(sumOfSquares / (count - 1)) : 0;
+            return new double[] {Math.max(0, Math.min(min, mean - spread)), Math.max(max, mean + spread)};
+        }
+
+        /**
+         * Whether the statistics have outlived their time to live.
+         *
+         * @param now  The current time, in nanos
+         * @param ttlNanos  How long statistics are kept, in nanos
+         *
+         * @return true if the statistics should be dropped
+         */
+        boolean isExpired(long now, long ttlNanos) {
+            return now - created >= ttlNanos;
+        }
+    }
+}
@@ -28,6 +28,9 @@ import javax.validation.constraints.NotNull;
 
 /**
  * Query Weight Util provides features used for configuring and adjusting weight query thresholds.
+ * <p>
+ * Unless {@code query_weight_statistics_enabled} is off, it also keeps {@link QueryWeightStatistics} of the weights
+ * measured by weight check queries, so that queries whose weight is certain from earlier checks need no check query.
  */
 @Singleton
 public class QueryWeightUtil {
@@ -55,6 +58,21 @@ public class QueryWeightUtil {
     private static final @NotNull String DEFAULT_SEGMENTATION_FACTOR_KEY = SYSTEM_CONFIG
             .getPackageVariableName("weight_segmentation_factor_default");
 
+    private static final @NotNull String STATISTICS_ENABLED_KEY = SYSTEM_CONFIG
+            .getPackageVariableName("query_weight_statistics_enabled");
+
+    private static final @NotNull String STATISTICS_MIN_SAMPLES_KEY = SYSTEM_CONFIG
+            .getPackageVariableName("query_weight_statistics_min_samples");
+
+    private static final @NotNull String STATISTICS_CONFIDENCE_KEY = SYSTEM_CONFIG
+            .getPackageVariableName("query_weight_statistics_confidence");
+
+    private static final @NotNull String STATISTICS_MAX_SHAPES_KEY = SYSTEM_CONFIG
+            .getPackageVariableName("query_weight_statistics_max_shapes");
+
+    private static final @NotNull String STATISTICS_TTL_KEY = SYSTEM_CONFIG
+            .getPackageVariableName("query_weight_statistics_ttl_ms");
+
     // The default weight limit for queries
     private static final long QUERY_WEIGHT_LIMIT_DEFAULT = 10000;
 
@@ -76,6 +94,18 @@ public class QueryWeightUtil {
     // The default factor to divide the weight threshold by to not require a weight check
     private static final float WEIGHT_CHECK_BYPASS_FACTOR_DEFAULT = 4;
 
+    // The default fewest weight checks of a query shape to estimate weights from
+    private static final int STATISTICS_MIN_SAMPLES_DEFAULT = 3;
+
+    // The default number of standard deviations weight estimates are widened by
+    private static final double STATISTICS_CONFIDENCE_DEFAULT = 3;
+
+    // The default most query shapes to keep weight statistics for
+    private static final int STATISTICS_MAX_SHAPES_DEFAULT = 10000;
+
+    // The default time to keep the weight statistics of a query shape, 6 hours
+    private static final long STATISTICS_TTL_DEFAULT = 21600000L;
+
     // The factor to divide the weight threshold by to not require a weight check
     private final float weightCheckBypassFactor = SYSTEM_CONFIG.getFloatProperty(
         WEIGHT_CHECK_BYPASS_FACTOR_KEY,
@@ -86,6 +116,9 @@ public class QueryWeightUtil {
     private final Long defaultRowLimit;
     private final Long allTimeRowLimit;
 
+    // The weights measured by earlier weight checks, or null if weights are not estimated from them
+    private final QueryWeightStatistics statistics;
+
     /**
      * Constructor.
      */
@@ -129,6 +162,15 @@ public class QueryWeightUtil {
         weightLimitTimeMap.put(DAY.getPeriod(), (long) (queryWeightLimit / dailySegmentationFactor));
         weightLimitTimeMap.put(WEEK.getPeriod(), (long) (queryWeightLimit / weeklySegmentationFactor));
         weightLimitTimeMap.put(MONTH.getPeriod(), (long) (queryWeightLimit / monthlySegmentationFactor));
+
+        statistics = SYSTEM_CONFIG.getBooleanProperty(STATISTICS_ENABLED_KEY, true)
+                ? new QueryWeightStatistics(
+                        SYSTEM_CONFIG.getIntProperty(STATISTICS_MIN_SAMPLES_KEY, STATISTICS_MIN_SAMPLES_DEFAULT),
+                        SYSTEM_CONFIG.getDoubleProperty(STATISTICS_CONFIDENCE_KEY, STATISTICS_CONFIDENCE_DEFAULT),
+                        SYSTEM_CONFIG.getIntProperty(STATISTICS_MAX_SHAPES_KEY, STATISTICS_MAX_SHAPES_DEFAULT),
+                        SYSTEM_CONFIG.getLongProperty(STATISTICS_TTL_KEY, STATISTICS_TTL_DEFAULT)
+                )
+                : null;
     }
 
     /**
@@ -165,6 +207,36 @@ public class QueryWeightUtil {
         }
     }
 
+    /**
+     * Estimate the weight of a query from the weights measured for earlier queries of the same shape.
+     * <p>
+     * The estimate is decided against the weight threshold of the query. An uncertain estimate means the weight check
+     * query is needed.
+     *
+     * @param query  Query to estimate
+     *
+     * @return the estimate of the query's weight
+     */
+    public QueryWeightStatistics.Estimate estimateWeight(DruidAggregationQuery<?> query) {
+        if (statistics == null) {
+            return QueryWeightStatistics.Estimate.UNCERTAIN;
+        }
+        long threshold = getQueryWeightThreshold(query.getInnermostQuery().getGranularity());
+        return statistics.estimate(query, threshold);
+    }
+
+    /**
+     * Record the weight a weight check query measured, for estimating the weight of later queries.
+     *
+     * @param query  Query whose weight was checked
+     * @param weight  The weight measured
+     */
+    public void recordWeight(DruidAggregationQuery<?> query, long weight) {
+        if (statistics != null) {
+            statistics.record(query, weight);
+        }
+    }
+
     /**
      * Get the weight check query for the given query.
      *
@@ -0,0 +1,66 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.async.broadcastchannels
+
+import rx.Subscription
+import rx.observers.TestSubscriber
+import rx.subjects.PublishSubject
+import spock.lang.Specification
+
+class NotificationRegistrySpec extends Specification {
+
+    BroadcastChannel<String> broadcastChannel = new SimpleBroadcastChannel<>(PublishSubject.create())
+    NotificationRegistry<String> registry = new NotificationRegistry<>(broadcastChannel)
+
+    def "Listeners only receive the message they wait on, once"() {
+        given:
+        TestSubscriber<String> ticket1 = new TestSubscriber<>()
+        TestSubscriber<String> otherTicket1 = new TestSubscriber<>()
+        TestSubscriber<String> ticket2 = new TestSubscriber<>()
+        registry.listen("ticket1").subscribe(ticket1)
+        registry.listen("ticket1").subscribe(otherTicket1)
+        registry.listen("ticket2").subscribe(ticket2)
+
+        when:
+        ["ticket3", "ticket1", "ticket1"].each { broadcastChannel.publish(it) }
+
+        then:
+        [ticket1, otherTicket1].each {
+            it.assertValue("ticket1")
+            it.assertCompleted()
+        }
+        ticket2.assertNoValues()
+        ticket2.assertNotCompleted()
+        registry.size() == 1
+    }
+
+    def "Messages published before listening are not received"() {
+        given:
+        TestSubscriber<String> subscriber = new TestSubscriber<>()
+        broadcastChannel.publish("ticket1")
+
+        when:
+        registry.listen("ticket1").subscribe(subscriber)
+
+        then:
+        subscriber.assertNoValues()
+    }
+
+    def "Listeners are dropped when they unsubscribe"() {
+        given:
+        TestSubscriber<String> subscriber = new TestSubscriber<>()
+        Subscription subscription = registry.listen("ticket1").subscribe(subscriber)
+
+        when:
+        subscription.unsubscribe()
+
+        then:
+        registry.size() == 0
+
+        when:
+        broadcastChannel.publish("ticket1")
+
+        then:
+        subscriber.assertNoValues()
+    }
+}
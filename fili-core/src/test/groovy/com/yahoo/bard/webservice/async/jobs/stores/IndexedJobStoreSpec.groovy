@@ -0,0 +1,217 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.async.jobs.stores
+
+import static com.yahoo.bard.webservice.async.jobs.jobrows.DefaultJobField.DATE_CREATED
+import static com.yahoo.bard.webservice.async.jobs.jobrows.DefaultJobField.JOB_TICKET
+import static com.yahoo.bard.webservice.async.jobs.jobrows.DefaultJobField.QUERY
+import static com.yahoo.bard.webservice.async.jobs.jobrows.DefaultJobField.STATUS
+import static com.yahoo.bard.webservice.async.jobs.jobrows.DefaultJobField.USER_ID
+
+import com.yahoo.bard.webservice.application.ObjectMappersSuite
+import com.yahoo.bard.webservice.async.jobs.JobTestUtils
+import com.yahoo.bard.webservice.async.jobs.jobrows.JobRow
+import com.yahoo.bard.webservice.web.FilterOperation
+
+import com.fasterxml.jackson.databind.JsonMappingException
+import com.fasterxml.jackson.databind.ObjectMapper
+
+import rx.observers.TestSubscriber
+import spock.lang.Unroll
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.time.Clock
+import java.time.Instant
+import java.time.ZoneOffset
+import java.util.concurrent.TimeUnit
+
+/**
+ * Verifies that the IndexedJobStore satisfies the ApiJobStore interface, answers filters from its indexes, expires
+ * jobs and recovers them from its log. The interface tests may be found in {@link ApiJobStoreSpec}.
+ */
+class IndexedJobStoreSpec extends ApiJobStoreSpec {
+
+    static final Clock CLOCK = Clock.fixed(Instant.parse("2017-01-10T00:00:00Z"), ZoneOffset.UTC)
+
+    JobRow fooSuccess = JobTestUtils.buildJobRow(
+            [(JOB_TICKET): "foo1", (USER_ID): "Foo", (STATUS): "success", (DATE_CREATED): "2017-01-09T00:00:00.000Z"]
+    )
+    JobRow barPending = JobTestUtils.buildJobRow(
+            [(JOB_TICKET): "bar1", (USER_ID): "Bar", (STATUS): "pending", (DATE_CREATED): "2017-01-08T00:00:00.000Z"]
+    )
+    JobRow fooPending = JobTestUtils.buildJobRow(
+            [(JOB_TICKET): "foo2", (USER_ID): "Food", (STATUS): "pending", (DATE_CREATED): "2017-01-07T00:00:00.000Z"]
+    )
+
+    Path directory
+
+    @Override
+    ApiJobStore getStore() {
+        return new IndexedJobStore(0, CLOCK)
+    }
+
+    @Override
+    def childCleanup() {
+        directory?.toFile()?.deleteDir()
+    }
+
+    /**
+     * Build a store holding the Foo and Bar jobs.
+     *
+     * @return the store
+     */
+    IndexedJobStore buildFilledStore() {
+        IndexedJobStore indexedJobStore = new IndexedJobStore(0, CLOCK)
+        [fooSuccess, barPending, fooPending].each { indexedJobStore.save(it).toBlocking().single() }
+        return indexedJobStore
+    }
+
+    /**
+     * Build a store logging to a file of the test directory.
+     *
+     * @param retentionMillis  How long jobs are kept
+     *
+     * @return the store
+     */
+    IndexedJobStore buildLoggingStore(long retentionMillis) {
+        directory = directory ?: Files.createTempDirectory("jobs")
+        return new IndexedJobStore(
+                retentionMillis,
+                CLOCK,
+                directory.resolve("jobs.log"),
+                new ObjectMappersSuite().mapper,
+                []
+        )
+    }
+
+    @Unroll
+    def "getFilteredRows returns #expected that satisfy #filters"() {
+        given:
+        TestSubscriber<JobRow> testSubscriber = new TestSubscriber<>()
+
+        when:
+        buildFilledStore().getFilteredRows(filters as Set).subscribe(testSubscriber)
+
+        then:
+        testSubscriber.assertNoErrors()
+        testSubscriber.onNextEvents*.id == expected
+
+        where:
+        filters                                                                     | expected
+        [new JobRowFilter(USER_ID, FilterOperation.eq, ["Foo"] as Set)]             | ["foo1"]
+        [new JobRowFilter(USER_ID, FilterOperation.in, ["Foo", "Bar"] as Set)]      | ["foo1", "bar1"]
+        [new JobRowFilter(USER_ID, FilterOperation.startswith, ["Fo"] as Set)]      | ["foo1", "foo2"]
+        [new JobRowFilter(USER_ID, FilterOperation.notin, ["Foo"] as Set)]          | ["bar1", "foo2"]
+        [new JobRowFilter(USER_ID, FilterOperation.contains, ["oo"] as Set)]        | ["foo1", "foo2"]
+        [new JobRowFilter(JOB_TICKET, FilterOperation.eq, ["bar1"] as Set)]         | ["bar1"]
+        [
+                new JobRowFilter(USER_ID, FilterOperation.startswith, ["Fo"] as Set),
+                new JobRowFilter(STATUS, FilterOperation.eq, ["pending"] as Set)
+        ]                                                                           | ["foo2"]
+        [
+                new JobRowFilter(DATE_CREATED, FilterOperation.startswith, ["2017-01-0"] as Set),
+                new JobRowFilter(QUERY, FilterOperation.contains, ["metrics"] as Set)
+        ]                                                                           | ["foo1", "bar1", "foo2"]
+        [new JobRowFilter(STATUS, FilterOperation.eq, ["failure"] as Set)]          | []
+    }
+
+    def "Jobs are moved between index entries when they are saved again"() {
+        given:
+        IndexedJobStore indexedJobStore = buildFilledStore()
+        JobRow fooSucceeded = JobTestUtils.buildJobRow(
+                [(JOB_TICKET): "foo2", (USER_ID): "Food", (STATUS): "success", (DATE_CREATED): "2017-01-07T00:00:00Z"]
+        )
+
+        when:
+        indexedJobStore.save(fooSucceeded).toBlocking().single()
+
+        then:
+        indexedJobStore.getFilteredRows([new JobRowFilter(STATUS, FilterOperation.eq, ["pending"] as Set)] as Set)
+                .toList().toBlocking().single()*.id == ["bar1"]
+        indexedJobStore.getFilteredRows([new JobRowFilter(STATUS, FilterOperation.eq, ["success"] as Set)] as Set)
+                .toList().toBlocking().single() == [fooSuccess, fooSucceeded]
+    }
+
+    def "Jobs missing an indexed field don't match filters on it, while missing other fields is an error"() {
+        given:
+        IndexedJobStore indexedJobStore = new IndexedJobStore(0, CLOCK)
+        indexedJobStore.save(new JobRow(JOB_TICKET, [(JOB_TICKET): "1"])).toBlocking().single()
+        TestSubscriber<JobRow> indexedSubscriber = new TestSubscriber<>()
+        TestSubscriber<JobRow> scannedSubscriber = new TestSubscriber<>()
+
+        when:
+        indexedJobStore.getFilteredRows([new JobRowFilter(USER_ID, FilterOperation.eq, ["Foo"] as Set)] as Set)
+                .subscribe(indexedSubscriber)
+        indexedJobStore.getFilteredRows([new JobRowFilter(QUERY, FilterOperation.eq, ["Foo"] as Set)] as Set)
+                .subscribe(scannedSubscriber)
+
+        then:
+        indexedSubscriber.assertNoErrors()
+        indexedSubscriber.assertNoValues()
+        scannedSubscriber.assertError(IllegalArgumentException)
+    }
+
+    def "Jobs created longer ago than the retention period are dropped"() {
+        given:
+        IndexedJobStore indexedJobStore = new IndexedJobStore(TimeUnit.DAYS.toMillis(2), CLOCK)
+
+        when:
+        [fooSuccess, barPending, fooPending].each { indexedJobStore.save(it).toBlocking().single() }
+
+        then:
+        indexedJobStore.size() == 2
+        indexedJobStore.get("foo2").isEmpty().toBlocking().single()
+        indexedJobStore.getAllRows().toList().toBlocking().single() == [fooSuccess, barPending]
+        indexedJobStore.getFilteredRows([new JobRowFilter(USER_ID, FilterOperation.eq, ["Food"] as Set)] as Set)
+                .isEmpty().toBlocking().single()
+    }
+
+    def "Jobs are recovered from the log, skipping expired jobs and unreadable records"() {
+        given:
+        IndexedJobStore indexedJobStore = buildLoggingStore(0)
+        [fooSuccess, barPending, fooPending].each { indexedJobStore.save(it).toBlocking().single() }
+        JobRow barSucceeded = JobTestUtils.buildJobRow(
+                [(JOB_TICKET): "bar1", (USER_ID): "Bar", (STATUS): "success", (DATE_CREATED): "2017-01-08T00:00:00Z"]
+        )
+        indexedJobStore.save(barSucceeded).toBlocking().single()
+        directory.resolve("jobs.log").toFile() << '{"id":"cut'
+
+        when:
+        IndexedJobStore recovered = buildLoggingStore(0)
+
+        then:
+        recovered.getAllRows().toList().toBlocking().single() == [fooSuccess, barSucceeded, fooPending]
+        recovered.getFilteredRows([new JobRowFilter(STATUS, FilterOperation.eq, ["success"] as Set)] as Set)
+                .toList().toBlocking().single() == [fooSuccess, barSucceeded]
+
+        when:
+        IndexedJobStore retained = buildLoggingStore(TimeUnit.DAYS.toMillis(2))
+
+        then:
+        retained.getAllRows().toList().toBlocking().single() == [fooSuccess, barSucceeded]
+        directory.resolve("jobs.log").toFile().readLines().size() == 2
+    }
+
+    def "A job which can't be logged is not saved"() {
+        given:
+        directory = Files.createTempDirectory("jobs")
+        ObjectMapper mapper = Spy(ObjectMapper) {
+            writeValueAsString({ it instanceof Map && it.id == "bar1" }) >> {
+                throw new JsonMappingException("unwritable")
+            }
+        }
+        IndexedJobStore indexedJobStore = new IndexedJobStore(0, CLOCK, directory.resolve("jobs.log"), mapper, [])
+        indexedJobStore.save(fooSuccess).toBlocking().single()
+
+        when:
+        TestSubscriber<JobRow> subscriber = new TestSubscriber<>()
+        indexedJobStore.save(barPending).subscribe(subscriber)
+
+        then:
+        subscriber.assertError(ApiJobStoreException)
+        indexedJobStore.get("bar1").isEmpty().toBlocking().single()
+        indexedJobStore.getAllRows().toList().toBlocking().single() == [fooSuccess]
+        buildLoggingStore(0).getAllRows().toList().toBlocking().single() == [fooSuccess]
+    }
+}
@@ -0,0 +1,215 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.async.preresponses.stores
+
+import com.yahoo.bard.webservice.application.ObjectMappersSuite
+import com.yahoo.bard.webservice.data.PreResponseDeserializer
+import com.yahoo.bard.webservice.data.Result
+import com.yahoo.bard.webservice.data.ResultSet
+import com.yahoo.bard.webservice.data.SerializationResources
+import com.yahoo.bard.webservice.data.metric.MetricColumn
+import com.yahoo.bard.webservice.data.time.StandardGranularityParser
+import com.yahoo.bard.webservice.web.PreResponse
+
+import com.fasterxml.jackson.databind.DeserializationFeature
+import com.fasterxml.jackson.databind.ObjectMapper
+
+import org.joda.time.DateTime
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.FileTime
+import java.util.concurrent.TimeUnit
+
+/**
+ * Verifies that the FilePreResponseStore satisfies the PreResponseStore interface, and restores stored results. The
+ * interface tests may be found in {@link PreResponseStoreSpec}.
+ */
+class FilePreResponseStoreSpec extends PreResponseStoreSpec {
+
+    SerializationResources resources = new SerializationResources().init()
+    Path directory
+
+    @Override
+    PreResponseStore getStore() {
+        directory = Files.createTempDirectory("preresponses")
+        return buildStore(0, 0)
+    }
+
+    @Override
+    def childCleanup() {
+        directory.toFile().deleteDir()
+    }
+
+    /**
+     * Build a store in the test directory which stores two rows per block.
+     *
+     * @param timeToLiveMillis  How long PreResponses are kept
+     * @param maxBytes  Most bytes taken by the store
+     *
+     * @return the store
+     */
+    FilePreResponseStore buildStore(long timeToLiveMillis, long maxBytes) {
+        ObjectMapper typePreservingMapper = new ObjectMappersSuite().mapper
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+                .enableDefaultTyping(ObjectMapper.DefaultTyping.NON_FINAL)
+        PreResponseDeserializer deserializer = new PreResponseDeserializer(
+                resources.dimensionDictionary,
+                new ObjectMappersSuite().mapper,
+                typePreservingMapper,
+                new StandardGranularityParser()
+        )
+        return new FilePreResponseStore(directory, deserializer, timeToLiveMillis, maxBytes, 2)
+    }
+
+    /**
+     * Save a PreResponse and get it back.
+     *
+     * @param store  The store to use
+     * @param ticket  The ticket to save the PreResponse as
+     * @param preResponse  The PreResponse to save
+     *
+     * @return the PreResponse read from the store
+     */
+    PreResponse roundTrip(PreResponseStore store, String ticket, PreResponse preResponse) {
+        store.save(ticket, preResponse).toBlocking().single()
+        return store.get(ticket).toBlocking().single()
+    }
+
+    def "Results with dimension rows, numeric, non numeric and missing metric values are restored across blocks"() {
+        given:
+        Result decimals = new Result(
+                resources.result1.dimensionRows,
+                [
+                        (new MetricColumn("simplePageViews")): new BigDecimal("1.25"),
+                        (new MetricColumn("lookbackPageViews")): new BigDecimal("123456789012345678901234567890"),
+                        (new MetricColumn("retentionPageViews")): new BigDecimal("-7")
+                ],
+                DateTime.parse("2016-01-13T00:00:00.000-05:00")
+        )
+        ResultSet resultSet = new ResultSet(
+                resources.schema3,
+                [resources.result1, resources.result2, resources.result3, resources.result4, decimals]
+        )
+        PreResponse preResponse = new PreResponse(resultSet, resources.responseContext)
+
+        when:
+        PreResponse restored = roundTrip(preResponseStore, "export", preResponse)
+
+        then:
+        restored == preResponse
+        restored.resultSet.schema.granularity == resources.schema3.granularity
+        restored.resultSet.schema.columns*.name as Set == resources.schema3.columns*.name as Set
+        restored.resultSet[4].getMetricValue(new MetricColumn("simplePageViews")).scale() == 2
+        restored.resultSet[4].timeStamp.zone == decimals.timeStamp.zone
+    }
+
+    def "A metric column mixing numbers and strings in a block is restored with the type of each value"() {
+        given:
+        List<Result> results = [new BigDecimal("1.5"), "NaN", 3.25d, "Infinity"].withIndex().collect { value, i ->
+            new Result(
+                    resources.result1.dimensionRows,
+                    [(new MetricColumn("simplePageViews")): value],
+                    DateTime.parse("2016-01-12T00:00:00.000Z").plusDays(i)
+            )
+        }
+        PreResponse preResponse = new PreResponse(new ResultSet(resources.schema, results), resources.responseContext)
+
+        when:
+        ResultSet restored = roundTrip(preResponseStore, "mixed", preResponse).resultSet
+
+        then:
+        restored*.getMetricValue(new MetricColumn("simplePageViews")) == [new BigDecimal("1.5"), "NaN", 3.25d, "Infinity"]
+        restored*.getMetricValue(new MetricColumn("simplePageViews"))*.class == [BigDecimal, String, Double, String]
+    }
+
+    def "Rows of a restored result set are read in any order"() {
+        given:
+        List<Result> results = (0..9).collect {
+            new Result(
+                    resources.result1.dimensionRows,
+                    [(new MetricColumn("simplePageViews")): new BigDecimal(it)],
+                    DateTime.parse("2016-01-12T00:00:00.000Z").plusDays(it)
+            )
+        }
+        PreResponse preResponse = new PreResponse(new ResultSet(resources.schema, results), resources.responseContext)
+
+        when:
+        ResultSet restored = roundTrip(preResponseStore, "pages", preResponse).resultSet
+
+        then:
+        restored.size() == 10
+        [9, 0, 5, 4, 8].every { restored[it] == results[it] }
+        restored.subList(6, 8) == results.subList(6, 8)
+        results[3] == restored[3]
+        restored[3].hashCode() == results[3].hashCode()
+        restored[3].metricValues.is(restored[3].metricValues)
+    }
+
+    def "Tickets which aren't valid file names are stored inside the directory"() {
+        when:
+        PreResponse restored = roundTrip(preResponseStore, "../../user/ticket?", resources.preResponse)
+
+        then:
+        restored == resources.preResponse
+        directory.toFile().list().length == 3
+        preResponseStore.get("../../user/ticket").isEmpty().toBlocking().single()
+    }
+
+    def "PreResponses are dropped once they outlive the time to live"() {
+        given:
+        FilePreResponseStore store = buildStore(TimeUnit.MINUTES.toMillis(1), 0)
+        store.save("expiring", resources.preResponse).toBlocking().single()
+        Path file = directory.resolve("expiring".bytes.encodeHex().toString() + ".preresponse")
+
+        when:
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(2)))
+
+        then:
+        store.get("expiring").isEmpty().toBlocking().single()
+        !Files.exists(file)
+    }
+
+    def "The oldest PreResponses are dropped when the store takes more than the most bytes"() {
+        given: "the two PreResponses saved in setup, made older than the one saved next"
+        FileTime anHourAgo = FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1))
+        directory.toFile().listFiles().each { Files.setLastModifiedTime(it.toPath(), anHourAgo) }
+        FilePreResponseStore store = buildStore(0, 1)
+
+        when:
+        store.save("newest", resources.preResponse).toBlocking().single()
+
+        then: "only the PreResponse just saved is kept, even though it alone takes more than the most bytes"
+        directory.toFile().list().length == 1
+        store.get("0").isEmpty().toBlocking().single()
+        store.get("newest").toBlocking().single() == resources.preResponse
+    }
+
+    def "A store drops the expired files and stale temporary files it finds in its directory when it is built"() {
+        given: "the PreResponses saved in setup are expired, and a save was interrupted long ago"
+        FileTime anHourAgo = FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1))
+        Path temp = directory.resolve("interrupted.preresponse.tmp")
+        Files.write(temp, [1, 2, 3] as byte[])
+        directory.toFile().listFiles().each { Files.setLastModifiedTime(it.toPath(), anHourAgo) }
+
+        when:
+        buildStore(TimeUnit.MINUTES.toMillis(1), 0)
+
+        then:
+        directory.toFile().list().length == 0
+    }
+
+    def "A PreResponse saved again under the same ticket is counted once towards the most bytes"() {
+        given:
+        FilePreResponseStore store = buildStore(0, 0)
+        store.save("again", resources.preResponse).toBlocking().single()
+        long bytes = store.totalBytes
+
+        when:
+        store.save("again", resources.preResponse).toBlocking().single()
+
+        then:
+        store.totalBytes == bytes
+        store.files.keySet().last() == directory.resolve("again".bytes.encodeHex().toString() + ".preresponse")
+    }
+}
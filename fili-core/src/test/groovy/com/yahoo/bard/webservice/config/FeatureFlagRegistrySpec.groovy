@@ -38,7 +38,10 @@ class FeatureFlagRegistrySpec extends Specification {
         values == ["partial_data_enabled", "druid_cache_enabled", "druid_cache_v2_enabled", "query_split_enabled",
                    "top_n_enabled", "data_filter_substring_operations_enabled", "intersection_reporting_enabled",
                    "updated_metadata_collection_names_enabled", "druid_coordinator_metadata_enabled",
-                   "druid_dimensions_loader_enabled", "case_sensitive_keys_enabled"] as Set
+                   "druid_dimensions_loader_enabled", "case_sensitive_keys_enabled",
+                   "streaming_response_parsing_enabled", "columnar_result_sets_enabled",
+                   "query_fingerprint_cache_keys_enabled", "query_coalescing_enabled",
+                   "druid_bucket_cache_enabled", "binary_dimension_rows_enabled"] as Set
     }
 
     @Unroll
@@ -50,6 +53,9 @@ class FeatureFlagRegistrySpec extends Specification {
         flagName << ["partial_data_enabled", "druid_cache_enabled", "druid_cache_v2_enabled", "query_split_enabled",
                      "top_n_enabled", "data_filter_substring_operations_enabled", "intersection_reporting_enabled",
                      "updated_metadata_collection_names_enabled", "druid_coordinator_metadata_enabled",
-                     "druid_dimensions_loader_enabled", "case_sensitive_keys_enabled"]
+                     "druid_dimensions_loader_enabled", "case_sensitive_keys_enabled",
+                     "streaming_response_parsing_enabled", "columnar_result_sets_enabled",
+                     "query_fingerprint_cache_keys_enabled", "query_coalescing_enabled",
+                     "druid_bucket_cache_enabled", "binary_dimension_rows_enabled"]
     }
 }
@@ -0,0 +1,193 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.data
+
+import static com.yahoo.bard.webservice.data.time.DefaultTimeGrain.DAY
+
+import com.yahoo.bard.webservice.data.dimension.BardDimensionField
+import com.yahoo.bard.webservice.data.dimension.Dimension
+import com.yahoo.bard.webservice.data.dimension.DimensionColumn
+import com.yahoo.bard.webservice.data.dimension.DimensionRow
+import com.yahoo.bard.webservice.data.metric.MetricColumn
+import com.yahoo.bard.webservice.data.metric.mappers.DateTimeSortMapper
+import com.yahoo.bard.webservice.data.metric.mappers.ResultSetMapper
+import com.yahoo.bard.webservice.data.metric.mappers.TopNResultSetMapper
+import com.yahoo.bard.webservice.druid.model.orderby.SortDirection
+
+import com.fasterxml.jackson.databind.ObjectMapper
+
+import org.joda.time.DateTime
+import org.joda.time.DateTimeZone
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class ColumnarResultSetSpec extends Specification {
+
+    DimensionColumn genderColumn = new DimensionColumn(Mock(Dimension) { getApiName() >> "gender" })
+    MetricColumn pageViewsColumn = new MetricColumn("pageViews")
+    ResultSetSchema schema = new ResultSetSchema(DAY, [genderColumn, pageViewsColumn])
+
+    DateTime timestamp = new DateTime("2017-01-01", DateTimeZone.UTC)
+
+    DimensionRow makeRow(String keyValue) {
+        new DimensionRow(BardDimensionField.ID, [(BardDimensionField.ID): keyValue, (BardDimensionField.DESC): "desc"])
+    }
+
+    Result makeResult(String gender, Object pageViews, DateTime dateTime = timestamp) {
+        new Result([(genderColumn): makeRow(gender)], [(pageViewsColumn): pageViews], dateTime)
+    }
+
+    @Unroll
+    def "Metric values #values survive being stored in columns"() {
+        given:
+        List<Result> results = values.collect { makeResult("f", it) }
+
+        when:
+        ResultSet resultSet = ColumnarResultSet.of(schema, results)
+
+        then:
+        resultSet instanceof ColumnarResultSet
+        resultSet == results
+        resultSet.collect { it.getMetricValue(pageViewsColumn) } == values
+        resultSet.schema == schema
+
+        where:
+        values << [
+                [1 as BigDecimal, null, BigDecimal.valueOf(Long.MAX_VALUE)],
+                [BigDecimal.valueOf(1.5d), null, BigDecimal.valueOf(-2.25d)],
+                [BigDecimal.valueOf(1L), BigDecimal.valueOf(1.5d), BigDecimal.valueOf(0L)],
+                [BigDecimal.valueOf(1L), new BigDecimal("1.10"), BigDecimal.valueOf(Long.MAX_VALUE)],
+                [BigDecimal.valueOf(1L), "a string", true, new ObjectMapper().readTree('{"sketch": 1}'), null]
+        ]
+    }
+
+    def "Rows are views which equal the results they were built from"() {
+        given:
+        Result first = makeResult("f", 1 as BigDecimal)
+        Result second = makeResult("m", 2 as BigDecimal, timestamp.plusDays(1))
+
+        when:
+        ResultSet resultSet = ColumnarResultSet.of(schema, [first, second])
+
+        then:
+        resultSet[0] == first
+        resultSet[0].hashCode() == first.hashCode()
+        resultSet[1].timeStamp == second.timeStamp
+        resultSet[1].getDimensionRow(genderColumn) == makeRow("m")
+        resultSet[1].dimensionRows == second.dimensionRows
+        resultSet[1].metricValues == second.metricValues
+        resultSet[1].withMetricValue(pageViewsColumn, 3 as BigDecimal) ==
+                makeResult("m", 3 as BigDecimal, timestamp.plusDays(1))
+    }
+
+    def "Dimension rows are dictionary encoded"() {
+        when:
+        ResultSet resultSet = ColumnarResultSet.of(schema, (1..10).collect { makeResult(it % 2 ? "f" : "m", it) })
+
+        then:
+        resultSet.collect { it.getDimensionRow(genderColumn) }.unique(false).size() == 2
+        resultSet[0].getDimensionRow(genderColumn).is(resultSet[2].getDimensionRow(genderColumn))
+    }
+
+    def "Timestamps in different time zones are kept"() {
+        given:
+        List<Result> results = [
+                makeResult("f", 1, timestamp),
+                makeResult("f", 1, timestamp.withZone(DateTimeZone.forOffsetHours(3)))
+        ]
+
+        expect:
+        ColumnarResultSet.of(schema, results).collect { it.timeStamp } == results.collect { it.timeStamp }
+    }
+
+    def "Results with different columns fall back to a plain result set"() {
+        given:
+        List<Result> results = [
+                makeResult("f", 1),
+                new Result([(genderColumn): makeRow("m")], [:], timestamp)
+        ]
+
+        when:
+        ResultSet resultSet = ColumnarResultSet.of(schema, results)
+
+        then:
+        !(resultSet instanceof ColumnarResultSet)
+        resultSet == results
+    }
+
+    @Unroll
+    def "#mapper.class.simpleName keeps a columnar result set columnar and maps it like a plain one"() {
+        given:
+        List<Result> results = [
+                makeResult("f", 1, timestamp.plusDays(1)),
+                makeResult("m", 2, timestamp),
+                makeResult("u", 3, timestamp.plusDays(1)),
+                makeResult("f", 4, timestamp),
+                makeResult("m", 5, timestamp.plusDays(2))
+        ]
+        ResultSet columnarResultSet = ColumnarResultSet.of(schema, results)
+
+        when:
+        ResultSet mapped = mapper.map(columnarResultSet)
+
+        then:
+        mapped instanceof ColumnarResultSet
+        mapped == mapper.map(new ResultSet(schema, results))
+        mapped.every { row -> columnarResultSet.any { it.is(row) } }
+
+        where:
+        mapper << [
+                new DateTimeSortMapper(SortDirection.ASC),
+                new DateTimeSortMapper(SortDirection.DESC),
+                new TopNResultSetMapper(1),
+                new ResultSetMapper() {
+                    @Override
+                    protected Result map(Result result, ResultSetSchema schema) {
+                        result.metricValues.values().first() % 2 ? result : null
+                    }
+
+                    @Override
+                    protected ResultSetSchema map(ResultSetSchema schema) {
+                        schema
+                    }
+                }
+        ]
+    }
+
+    def "Timestamps in different time zones are sorted by building them"() {
+        given:
+        List<Result> results = [
+                makeResult("f", 1, timestamp.plusDays(1)),
+                makeResult("m", 2, timestamp.withZone(DateTimeZone.forOffsetHours(3)))
+        ]
+        ColumnarResultSet columnarResultSet = (ColumnarResultSet) ColumnarResultSet.of(schema, results)
+
+        expect:
+        !columnarResultSet.hasUniformChronology()
+        new DateTimeSortMapper(SortDirection.ASC).map(columnarResultSet) == results.reverse()
+    }
+
+    def "Rows which were rewritten by a mapper are stored in new columns"() {
+        given:
+        ResultSet columnarResultSet = ColumnarResultSet.of(schema, (1..3).collect { makeResult("f", it) })
+        ResultSetMapper mapper = new ResultSetMapper() {
+            @Override
+            protected Result map(Result result, ResultSetSchema schema) {
+                result.withMetricValue(pageViewsColumn, result.getMetricValue(pageViewsColumn) * 2)
+            }
+
+            @Override
+            protected ResultSetSchema map(ResultSetSchema schema) {
+                schema
+            }
+        }
+
+        when:
+        ResultSet mapped = mapper.map(columnarResultSet)
+
+        then:
+        mapped instanceof ColumnarResultSet
+        mapped.collect { it.getMetricValue(pageViewsColumn) } == [2, 4, 6]
+    }
+}
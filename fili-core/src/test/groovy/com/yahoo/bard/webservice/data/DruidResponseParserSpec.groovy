@@ -397,6 +397,46 @@ class DruidResponseParserSpec extends Specification {
         queryType << [DefaultQueryType.GROUP_BY, DefaultQueryType.TOP_N, DefaultQueryType.TIMESERIES]
     }
 
+    @Unroll
+    def "Streaming a Druid #queryType response builds the same result set as parsing the json tree"() {
+        given: "A response from Druid containing numeric, null and JsonNode metrics"
+        String druidResponse = buildResponse(
+                queryType,
+                [
+                        '"pageViews"': 101,
+                        '"ratio"': 1.25,
+                        '"null"': null,
+                        '"luckyNumbers"': '{"values": "1, 3, 7", "length": 3}',
+                        '"skipped"': '[1, 2, 3]'
+                ]
+        )
+        ResultSetSchema schema = buildSchema(["pageViews", "ratio", "null", "luckyNumbers"])
+
+        when: "We stream the Druid response into a result set"
+        JsonParser parser = new JsonFactory().createParser(druidResponse)
+        ResultSet resultSet = responseParser.parse(parser, schema, queryType, DateTimeZone.UTC)
+
+        then: "The result set matches the one built from the json tree"
+        resultSet == buildResultSet(druidResponse, schema, queryType)
+        resultSet.getSchema() == schema
+
+        where:
+        queryType << [DefaultQueryType.GROUP_BY, DefaultQueryType.TOP_N, DefaultQueryType.TIMESERIES]
+    }
+
+    def "Streaming a response which is not a Druid result array throws an IOException"() {
+        when:
+        responseParser.parse(
+                new JsonFactory().createParser('{"error": "not a result"}'),
+                buildSchema([]),
+                DefaultQueryType.GROUP_BY,
+                DateTimeZone.UTC
+        )
+
+        then:
+        thrown(IOException)
+    }
+
     def "Attempting to parse an unknown query type throws an UnsupportedOperationException"() {
         given:
         QueryType mysteryType = Mock(QueryType)
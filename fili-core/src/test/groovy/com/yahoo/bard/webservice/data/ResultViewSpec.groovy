@@ -0,0 +1,120 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.data
+
+import static com.yahoo.bard.webservice.data.time.DefaultTimeGrain.DAY
+
+import com.yahoo.bard.webservice.data.dimension.BardDimensionField
+import com.yahoo.bard.webservice.data.dimension.Dimension
+import com.yahoo.bard.webservice.data.dimension.DimensionColumn
+import com.yahoo.bard.webservice.data.dimension.DimensionRow
+import com.yahoo.bard.webservice.data.metric.MetricColumn
+
+import org.joda.time.DateTime
+import org.joda.time.DateTimeZone
+
+import spock.lang.Specification
+
+class ResultViewSpec extends Specification {
+
+    static final MetricColumn PAGE_VIEWS = new MetricColumn("pageViews")
+    static final MetricColumn USERS = new MetricColumn("users")
+    static final DateTime TIMESTAMP = new DateTime("2017-01-01", DateTimeZone.UTC)
+
+    /**
+     * Supply columns with values for the rows the ClassScannerSpec builds views of.
+     *
+     * @return the dependencies of a result view
+     */
+    Map<Class, Object> supplyDependencies() {
+        ResultSet resultSet = ColumnarResultSet.of(
+                new ResultSetSchema(DAY, [PAGE_VIEWS]),
+                (1..2).collect { new Result([:], [(PAGE_VIEWS): it as BigDecimal], TIMESTAMP) }
+        )
+        [(ResultColumns): ((ResultView) resultSet[0]).columns]
+    }
+
+    /**
+     * Build columns of one row which has a page views value but no users value.
+     *
+     * @return the columns
+     */
+    ResultColumns buildSparseColumns() {
+        Stub(ResultColumns) {
+            getDimensionColumnCount() >> 0
+            indexOf(_ as DimensionColumn) >> -1
+            getMetricColumnCount() >> 2
+            getMetricColumn(0) >> PAGE_VIEWS
+            getMetricColumn(1) >> USERS
+            indexOf(PAGE_VIEWS) >> 0
+            indexOf(USERS) >> 1
+            getTimeStamp(0) >> TIMESTAMP
+            getMetricValue(0, 0) >> (5 as BigDecimal)
+            hasMetricValue(0, 0) >> true
+            hasMetricValue(1, 0) >> false
+        }
+    }
+
+    def "A view equals and hashes like the plain result with the same values, on either side"() {
+        given:
+        Result plain = new Result([:], [(PAGE_VIEWS): 5 as BigDecimal], TIMESTAMP)
+        Result view = new ResultView(buildSparseColumns(), 0)
+
+        expect:
+        view == plain
+        plain == view
+        view.hashCode() == plain.hashCode()
+        view != new Result([:], [(PAGE_VIEWS): 5 as BigDecimal, (USERS): null], TIMESTAMP)
+        view != new Result([:], [(PAGE_VIEWS): 6 as BigDecimal], TIMESTAMP)
+        view != new Result([:], [(PAGE_VIEWS): 5 as BigDecimal], TIMESTAMP.plusDays(1))
+    }
+
+    def "The maps of a view skip absent columns and are made once"() {
+        given:
+        Result view = new ResultView(buildSparseColumns(), 0)
+
+        expect:
+        view.metricValues == [(PAGE_VIEWS): 5 as BigDecimal]
+        view.metricValues.keySet() as List == [PAGE_VIEWS]
+        !view.metricValues.containsKey(USERS)
+        view.getMetricValue(USERS) == null
+        view.metricValues.is(view.metricValues)
+        view.dimensionRows.isEmpty()
+        view.getDimensionRow(new DimensionColumn(Mock(Dimension) { getApiName() >> "gender" })) == null
+    }
+
+    def "The maps of a view can't be modified"() {
+        given:
+        Result view = new ResultView(buildSparseColumns(), 0)
+
+        when:
+        view.metricValues.put(USERS, 1 as BigDecimal)
+
+        then:
+        thrown(UnsupportedOperationException)
+    }
+
+    def "Dimension rows of a view are read from the columns"() {
+        given:
+        DimensionColumn genderColumn = new DimensionColumn(Mock(Dimension) { getApiName() >> "gender" })
+        DimensionRow dimensionRow = new DimensionRow(BardDimensionField.ID, [(BardDimensionField.ID): "f"])
+        ResultColumns columns = Stub(ResultColumns) {
+            getDimensionColumnCount() >> 1
+            getDimensionColumn(0) >> genderColumn
+            indexOf(genderColumn) >> 0
+            indexOf(_ as MetricColumn) >> -1
+            getMetricColumnCount() >> 0
+            getDimensionRow(0, 3) >> dimensionRow
+            getTimeStamp(3) >> TIMESTAMP
+            hasDimensionRow(0, 3) >> true
+        }
+
+        when:
+        Result view = new ResultView(columns, 3)
+
+        then:
+        view.getDimensionRow(genderColumn).is(dimensionRow)
+        view.dimensionRows == [(genderColumn): dimensionRow]
+        view == new Result([(genderColumn): dimensionRow], [:], TIMESTAMP)
+    }
+}
@@ -0,0 +1,87 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.cache
+
+import com.yahoo.bard.webservice.application.ObjectMappersSuite
+
+import com.fasterxml.jackson.core.JsonParser
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.ObjectMapper
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class CachedResponseFormatSpec extends Specification {
+
+    private static final ObjectMapper MAPPER = new ObjectMappersSuite().getMapper()
+
+    JsonNode response = MAPPER.readTree(
+            '[{"timestamp": "2017-01-01T00:00:00.000Z", "event": {"gender": "f", "pageViews": 1, "name": "Zoë"}}]'
+    )
+
+    @Unroll
+    def "A response encoded as #format is parsed back to the same response"() {
+        when:
+        Serializable value = format.encode(response, MAPPER.writer())
+
+        then:
+        value.class == valueType
+
+        when:
+        JsonParser parser = CachedResponseFormat.parse(value, MAPPER.factory)
+
+        then:
+        MAPPER.readTree(parser) == response
+
+        cleanup:
+        parser?.close()
+
+        where:
+        format                                | valueType
+        CachedResponseFormat.STRING           | String
+        CachedResponseFormat.BYTES            | byte[]
+        CachedResponseFormat.COMPRESSED_BYTES | byte[]
+    }
+
+    def "Compressed responses are smaller than uncompressed ones"() {
+        given:
+        JsonNode largeResponse = MAPPER.valueToTree((1..100).collect { response.get(0) })
+
+        expect:
+        CachedResponseFormat.sizeOf(CachedResponseFormat.COMPRESSED_BYTES.encode(largeResponse, MAPPER.writer())) <
+                CachedResponseFormat.sizeOf(CachedResponseFormat.BYTES.encode(largeResponse, MAPPER.writer()))
+    }
+
+    @Unroll
+    def "A response is encoded as #format only if its length before compression is within the maximum length"() {
+        given:
+        JsonNode largeResponse = MAPPER.valueToTree((1..100).collect { response.get(0) })
+        long length = MAPPER.writer().writeValueAsBytes(largeResponse).length
+
+        expect: "The compressed value is well within the limit, but the response isn't"
+        CachedResponseFormat.sizeOf(CachedResponseFormat.COMPRESSED_BYTES.encode(largeResponse, MAPPER.writer())) <
+                length - 1
+        format.encode(largeResponse, MAPPER.writer(), length) != null
+        format.encode(largeResponse, MAPPER.writer(), length - 1) == null
+
+        where:
+        format << [CachedResponseFormat.BYTES, CachedResponseFormat.COMPRESSED_BYTES]
+    }
+
+    @Unroll
+    def "Parsing the invalid cache value #value throws an IOException"() {
+        when:
+        CachedResponseFormat.parse(value, MAPPER.factory)
+
+        then:
+        thrown(IOException)
+
+        where:
+        value << [null, new byte[0], [(byte) 9, (byte) '['] as byte[], 5L]
+    }
+
+    def "The configured format defaults to String"() {
+        expect:
+        CachedResponseFormat.configuredFormat == CachedResponseFormat.STRING
+    }
+}
@@ -0,0 +1,90 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.cache
+
+import spock.lang.Specification
+
+class TieredTupleDataCacheSpec extends Specification {
+
+    TinyLfuDataCache<TupleDataCache.DataEntry<String, Long, String>> localCache = new TinyLfuDataCache<>(
+            10000,
+            100,
+            { TupleDataCache.DataEntry<String, Long, String> entry -> entry.value.length() as long }
+    )
+    TupleDataCache<String, Long, String> remoteCache = Spy(TestTupleDataCache)
+
+    TieredTupleDataCache<Long, String> cache = new TieredTupleDataCache<>(localCache, remoteCache)
+
+    def "Entries are written to both tiers"() {
+        when:
+        cache.set("key", 1L, "value")
+
+        then:
+        localCache.get("key").value == "value"
+        remoteCache.get("key").value == "value"
+    }
+
+    def "Entries in the local cache are read without consulting the remote cache"() {
+        given:
+        cache.set("key", 1L, "value")
+        long hits = TieredTupleDataCache.LOCAL_CACHE_HITS.count
+
+        when:
+        TupleDataCache.DataEntry<String, Long, String> entry = cache.get("key", 1L)
+
+        then:
+        entry.value == "value"
+        0 * remoteCache.get(_)
+        TieredTupleDataCache.LOCAL_CACHE_HITS.count == hits + 1
+    }
+
+    def "Entries missing locally are read from the remote cache and kept locally"() {
+        given:
+        remoteCache.set("key", 1L, "value")
+        long misses = TieredTupleDataCache.LOCAL_CACHE_MISSES.count
+
+        expect:
+        cache.get("key", 1L).value == "value"
+        localCache.get("key").value == "value"
+        cache.getDataValue("key") == "value"
+        TieredTupleDataCache.LOCAL_CACHE_MISSES.count == misses + 1
+    }
+
+    def "Local entries with an outdated segment set id are refreshed from the remote cache"() {
+        given: "A local entry for an old segment set, and a remote entry for the new one"
+        cache.set("key", 1L, "old value")
+        remoteCache.set("key", 2L, "new value")
+
+        when:
+        TupleDataCache.DataEntry<String, Long, String> entry = cache.get("key", 2L)
+
+        then:
+        entry.meta == 2L
+        entry.value == "new value"
+        localCache.get("key").value == "new value"
+    }
+
+    def "Outdated remote entries are returned but not kept locally"() {
+        given:
+        remoteCache.set("key", 1L, "old value")
+
+        when:
+        TupleDataCache.DataEntry<String, Long, String> entry = cache.get("key", 2L)
+
+        then:
+        entry.meta == 1L
+        localCache.get("key") == null
+    }
+
+    def "Clearing the cache clears both tiers"() {
+        given:
+        cache.set("key", 1L, "value")
+
+        when:
+        cache.clear()
+
+        then:
+        cache.get("key") == null
+        localCache.get("key") == null
+    }
+}
@@ -0,0 +1,92 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.cache
+
+import spock.lang.Specification
+
+class TinyLfuDataCacheSpec extends Specification {
+
+    // Keys are one character long, so each entry weighs the length of its value plus one
+    TinyLfuDataCache<String> cache = new TinyLfuDataCache<>(1000, 100, { String value -> value.length() as long })
+
+    def "Values that are set can be read back"() {
+        when:
+        cache.set("a", "value a")
+        cache.set("b", "value b")
+
+        then:
+        cache.get("a") == "value a"
+        cache.get("b") == "value b"
+        cache.get("c") == null
+        cache.weight == 16
+    }
+
+    def "Setting a key again replaces its value and weight"() {
+        when:
+        cache.set("a", "x" * 99)
+        cache.set("a", "y" * 9)
+
+        then:
+        cache.get("a") == "y" * 9
+        cache.weight == 10
+    }
+
+    def "Values too heavy for the cache are not stored"() {
+        expect:
+        !cache.set("a", "x" * 1000)
+        cache.get("a") == null
+        cache.weight == 0
+    }
+
+    def "The cache never grows beyond its maximum weight"() {
+        when:
+        ("a".."z").each { cache.set(it, "x" * 99) }
+
+        then:
+        cache.weight <= 1000
+        ("a".."z").count { cache.get(it) != null } <= 10
+    }
+
+    def "Frequently read entries are not evicted by one-off entries"() {
+        given: "A full cache whose entries are read often"
+        ("a".."i").each { key ->
+            cache.set(key, "x" * 99)
+            5.times { cache.get(key) }
+        }
+
+        when: "Many entries are set once"
+        ("j".."z").each { cache.set(it, "x" * 99) }
+
+        then: "The frequently read entries are still cached"
+        ("a".."i").every { cache.get(it) != null }
+    }
+
+    def "A rejected entry evicts nothing, even if it is more frequent than some of the entries it would evict"() {
+        given: "A full main region, whose least recently used entry is read less than the candidate"
+        cache.set("a", "x" * 494)
+        cache.set("b", "x" * 494)
+        5.times { cache.get("b") }
+        2.times { cache.get("c") }
+
+        when: "The candidate needs the room of both entries"
+        cache.set("c", "x" * 599)
+
+        then:
+        cache.get("c") == null
+        cache.get("a") == "x" * 494
+        cache.get("b") == "x" * 494
+        cache.weight == 990
+    }
+
+    def "Clearing the cache removes all entries"() {
+        given:
+        cache.set("a", "value a")
+
+        when:
+        cache.clear()
+
+        then:
+        cache.get("a") == null
+        cache.weight == 0
+    }
+}
@@ -174,4 +174,14 @@ abstract class BaseKeyValueStoreSpec extends Specification {
         null == previousValues.get("key2")
         "oldValue3" == previousValues.get("key3")
     }
+
+    def "getAll gets the values of the keys, with null for keys which are not set"() {
+        given:
+        store1.putAll(["key1": "value1", "key2": "value2", "key3": "value3"])
+        store1.remove("key2")
+
+        expect:
+        store1.getAll(["key1", "key2", "key3", "key4"]) == ["key1": "value1", "key2": null, "key3": "value3", "key4": null]
+        store1.getAll([]) == [:]
+    }
 }
@@ -0,0 +1,111 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.dimension
+
+import spock.lang.Specification
+import spock.lang.Timeout
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
+
+@Timeout(30)
+class DimensionRowBatchLoaderSpec extends Specification {
+
+    List<List<String>> batches = Collections.synchronizedList([])
+
+    Dimension dimension = Mock(Dimension) {
+        getApiName() >> "dimension"
+        addAllDimensionRows(_) >> { Set<DimensionRow> rows -> batches << rows*.getKeyValue() }
+    }
+
+    DimensionRow row(int key) {
+        return new DimensionRow(BardDimensionField.ID, [(BardDimensionField.ID): "$key" as String])
+    }
+
+    def "Rows are added in batches of the batch size, in order"() {
+        given:
+        DimensionRowBatchLoader loader = new DimensionRowBatchLoader(dimension, 3)
+
+        when:
+        (1..8).each { loader.accept(row(it)) }
+        loader.close()
+
+        then:
+        batches == [["1", "2", "3"], ["4", "5", "6"], ["7", "8"]]
+        loader.loadedRows == 8
+    }
+
+    def "Closing a loader which was given no rows adds nothing"() {
+        given:
+        DimensionRowBatchLoader loader = new DimensionRowBatchLoader(dimension, 3)
+
+        when:
+        loader.close()
+
+        then:
+        0 * dimension.addAllDimensionRows(_)
+        loader.loadedRows == 0
+    }
+
+    def "A full batch waits for the batch being added"() {
+        given: "A dimension which blocks adding the first batch"
+        CountDownLatch firstBatchStarted = new CountDownLatch(1)
+        CountDownLatch releaseFirstBatch = new CountDownLatch(1)
+        AtomicInteger adding = new AtomicInteger()
+        AtomicInteger maxAdding = new AtomicInteger()
+        Dimension blocking = Mock(Dimension) {
+            addAllDimensionRows(_) >> { Set<DimensionRow> rows ->
+                maxAdding.accumulateAndGet(adding.incrementAndGet(), Math.&max)
+                if (rows*.getKeyValue().contains("1")) {
+                    firstBatchStarted.countDown()
+                    releaseFirstBatch.await()
+                }
+                adding.decrementAndGet()
+            }
+        }
+        DimensionRowBatchLoader loader = new DimensionRowBatchLoader(blocking, 2)
+        (1..2).each { loader.accept(row(it)) }
+        firstBatchStarted.await()
+
+        when: "The second batch fills while the first is being added"
+        Thread feeder = Thread.start { (3..4).each { loader.accept(row(it)) } }
+        feeder.join(200)
+
+        then: "The second batch isn't started"
+        feeder.alive
+
+        when:
+        releaseFirstBatch.countDown()
+        feeder.join()
+        loader.close()
+
+        then:
+        loader.loadedRows == 4
+        maxAdding.get() == 1
+    }
+
+    def "A failure to add a batch is thrown to the caller"() {
+        given:
+        Dimension failing = Mock(Dimension) {
+            addAllDimensionRows(_) >> { throw new IllegalStateException("store is down") }
+        }
+        DimensionRowBatchLoader loader = new DimensionRowBatchLoader(failing, 1)
+        loader.accept(row(1))
+
+        when:
+        loader.close()
+
+        then:
+        IllegalStateException e = thrown()
+        e.message == "store is down"
+        loader.loadedRows == 0
+    }
+
+    def "A batch size below one is rejected"() {
+        when:
+        new DimensionRowBatchLoader(dimension, 0)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+}
@@ -0,0 +1,76 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.dimension
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class DimensionRowCodecSpec extends Specification {
+
+    static final String MARKER = String.valueOf(DimensionRowCodec.FORMAT_MARKER)
+
+    DimensionField id = BardDimensionField.ID
+    DimensionField desc = BardDimensionField.DESC
+
+    DimensionRowCodec codec = new DimensionRowCodec(id, [id, desc], ["id", "desc"])
+
+    DimensionRow row(Map<DimensionField, String> values) {
+        return new DimensionRow(id, values)
+    }
+
+    @Unroll
+    def "A row with a description of #description.length() characters survives encoding"() {
+        given:
+        DimensionRow dimensionRow = row([(id): "key", (desc): description])
+
+        when:
+        String encoded = codec.encode(dimensionRow)
+
+        then:
+        DimensionRowCodec.isEncoded(encoded)
+        codec.decode(encoded) == dimensionRow
+
+        where:
+        description << ["", "plain", "ünïcødé 字段 \uD83D\uDE00", "x" * 200, "y" * 70000]
+    }
+
+    def "Empty values are not stored and decode as empty strings"() {
+        expect:
+        codec.encode(row([(id): "key", (desc): ""])) == MARKER + "\u0000\u0003key"
+        codec.decode(MARKER + "\u0000\u0003key") == row([(id): "key", (desc): ""])
+    }
+
+    def "Rows decode by field ordinal after fields are added to or removed from the dimension"() {
+        given: "A row encoded when the dimension had a field which was later removed"
+        DimensionField removed = Mock(DimensionField) { getName() >> "removed" }
+        DimensionField added = Mock(DimensionField) { getName() >> "added" }
+        DimensionRowCodec before = new DimensionRowCodec(id, [removed, id, desc], ["removed", "id", "desc"])
+        String encoded = before.encode(row([(removed): "gone", (id): "key", (desc): "description"]))
+
+        when:
+        DimensionRowCodec after = new DimensionRowCodec(id, [id, added, desc], ["removed", "id", "desc", "added"])
+
+        then:
+        after.decode(encoded) == row([(id): "key", (added): "", (desc): "description"])
+    }
+
+    def "A row without a key can't be decoded"() {
+        when:
+        codec.decode(MARKER + "\u0001\u0004desc")
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    @Unroll
+    def "A malformed row '#encoded' can't be decoded"() {
+        when:
+        codec.decode(encoded)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        encoded << ['{"id": "key"}', MARKER + "\u0000\u0009key", ""]
+    }
+}
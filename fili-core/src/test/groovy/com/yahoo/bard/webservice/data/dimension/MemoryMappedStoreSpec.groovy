@@ -0,0 +1,192 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.dimension
+
+import com.yahoo.bard.webservice.config.SystemConfigProvider
+
+import spock.lang.Requires
+
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.Path
+
+@Requires({ SystemConfigProvider.getInstance().getListProperty(
+        SystemConfigProvider.getInstance().getPackageVariableName("key_value_store_tests"), ["memory"]
+).contains("mmap") })
+class MemoryMappedStoreSpec extends BaseKeyValueStoreSpec {
+
+    static final int SEGMENT_BYTES = 4096
+
+    Path directory
+
+    def KeyValueStore getInstance(String storeName) {
+        return MemoryMappedStoreManager.getInstance(storeName);
+    }
+
+    def void removeInstance(String storeName) {
+        MemoryMappedStoreManager.removeInstance(storeName);
+    }
+
+    def setup() {
+        directory = Files.createTempDirectory("memoryMappedStoreSpec")
+    }
+
+    def cleanup() {
+        directory.toFile().deleteDir()
+    }
+
+    MemoryMappedStore openStore(String storeName = "store") {
+        MemoryMappedStore store = new MemoryMappedStore(directory, storeName, SEGMENT_BYTES, 16)
+        store.open()
+        return store
+    }
+
+    def "Entries are kept when the store is closed and opened again"() {
+        given:
+        MemoryMappedStore store = openStore()
+        store.putAll([key1: "value1", key2: "value2", key3: "value3"])
+        store.remove("key2")
+        store.put("key3", "new value3")
+        store.close()
+
+        when:
+        store = openStore()
+
+        then:
+        store.get("key1") == "value1"
+        store.get("key2") == null
+        store.get("key3") == "new value3"
+        store.size == 2
+
+        cleanup:
+        store.close()
+    }
+
+    def "The index is rebuilt from the data file of a store which was not closed"() {
+        given: "A store which is still open, as after a crash"
+        MemoryMappedStore crashed = openStore()
+        crashed.putAll([key1: "value1", key2: "value2", key3: "value3"])
+        crashed.remove("key2")
+        crashed.put("key3", "new value3")
+
+        when:
+        MemoryMappedStore store = openStore()
+
+        then:
+        store.get("key1") == "value1"
+        store.get("key2") == null
+        store.get("key3") == "new value3"
+        store.size == 2
+
+        cleanup:
+        store.close()
+        crashed.close()
+    }
+
+    def "Stores closed by the manager, as on shutdown, are reopened from a clean index"() {
+        given:
+        MemoryMappedStore store = MemoryMappedStoreManager.getInstance("closedOnShutdown")
+        store.put("key1", "value1")
+
+        when:
+        MemoryMappedStoreManager.closeAll()
+
+        then: "the index is marked clean"
+        !store.isOpen()
+        ByteBuffer.wrap(Files.readAllBytes(store.getIndexPath())).getInt(MemoryMappedStore.CLEAN_POSITION) == 1
+
+        when:
+        store = MemoryMappedStoreManager.getInstance("closedOnShutdown")
+
+        then: "the store is opened again with its entries"
+        store.isOpen()
+        store.get("key1") == "value1"
+
+        cleanup:
+        MemoryMappedStoreManager.removeInstance("closedOnShutdown")
+    }
+
+    def "The store grows past its initial index capacity and its first segment"() {
+        given:
+        MemoryMappedStore store = openStore()
+        Map<String, String> entries = (1..2000).collectEntries { ["key$it" as String, "value $it ü" as String] }
+
+        when:
+        store.putAll(entries)
+
+        then:
+        entries.every { key, value -> store.get(key) == value }
+        store.size == 2000
+        Files.size(directory.resolve("store.data")) > SEGMENT_BYTES
+
+        when:
+        store.close()
+        store = openStore()
+
+        then:
+        entries.every { key, value -> store.get(key) == value }
+
+        cleanup:
+        store.close()
+    }
+
+    def "Overwritten and removed entries are compacted away"() {
+        given:
+        MemoryMappedStore store = openStore()
+        store.put("kept", "kept value")
+
+        when:
+        (1..5000).each {
+            store.put("key", "value $it")
+            store.remove("other")
+            store.put("other", "other value $it")
+        }
+
+        then:
+        store.get("kept") == "kept value"
+        store.get("key") == "value 5000"
+        store.get("other") == "other value 5000"
+        Files.size(directory.resolve("store.data")) <= 2 * SEGMENT_BYTES
+
+        when:
+        store.close()
+        store = openStore()
+
+        then:
+        store.get("kept") == "kept value"
+        store.get("key") == "value 5000"
+        store.size == 3
+
+        cleanup:
+        store.close()
+    }
+
+    def "An entry larger than a segment is rejected"() {
+        given:
+        MemoryMappedStore store = openStore()
+
+        when:
+        store.put("key", "x" * SEGMENT_BYTES)
+
+        then:
+        thrown(IllegalArgumentException)
+        store.get("key") == null
+
+        cleanup:
+        store.close()
+    }
+
+    def "A closed store can't be read"() {
+        given:
+        MemoryMappedStore store = openStore()
+        store.close()
+
+        when:
+        store.get("key")
+
+        then:
+        thrown(IllegalStateException)
+        !store.open
+        !store.healthy
+    }
+}
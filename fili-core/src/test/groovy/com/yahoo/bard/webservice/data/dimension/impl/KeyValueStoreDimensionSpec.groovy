@@ -2,17 +2,24 @@
 // Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
 package com.yahoo.bard.webservice.data.dimension.impl
 
+import com.yahoo.bard.webservice.config.BardFeatureFlag
+import com.yahoo.bard.webservice.config.SystemConfig
+import com.yahoo.bard.webservice.config.SystemConfigProvider
 import com.yahoo.bard.webservice.data.config.dimension.DimensionBackend
 import com.yahoo.bard.webservice.data.dimension.BardDimensionField
 import com.yahoo.bard.webservice.data.dimension.DimensionField
 import com.yahoo.bard.webservice.data.dimension.DimensionRow
+import com.yahoo.bard.webservice.data.dimension.DimensionRowCodec
 import com.yahoo.bard.webservice.data.dimension.KeyValueStore
 import com.yahoo.bard.webservice.data.dimension.MapStoreManager
 import com.yahoo.bard.webservice.data.dimension.RedisStoreManager
 import com.yahoo.bard.webservice.data.dimension.SearchProvider
+import com.yahoo.bard.webservice.util.DimensionStoreKeyUtils
 import com.yahoo.bard.webservice.web.ApiFilter
 import com.yahoo.bard.webservice.web.FilterOperation
 
+import com.fasterxml.jackson.databind.ObjectMapper
+
 import org.joda.time.DateTime
 
 import spock.lang.Shared
@@ -22,6 +29,8 @@ import java.text.SimpleDateFormat
 
 class KeyValueStoreDimensionSpec extends Specification {
 
+    static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance()
+
     static KeyValueStoreDimension kvsDimension
     static SearchProvider searchProvider
 
@@ -187,4 +196,94 @@ class KeyValueStoreDimensionSpec extends Specification {
         threads.each { it.join(10000) }
         threads.each { if ( it.cause != null ) throw it.cause }
     }
+
+    KeyValueStoreDimension buildMapStoreDimension(KeyValueStore keyValueStore) {
+        LinkedHashSet<DimensionField> dimensionFields = [BardDimensionField.ID, BardDimensionField.DESC]
+        return new KeyValueStoreDimension(
+                "cached",
+                "cached-description",
+                dimensionFields,
+                keyValueStore,
+                new ScanSearchProvider()
+        )
+    }
+
+    def "Found rows are cached, and callers get their own copy of a cached row"() {
+        given: "A dimension with a row cache"
+        SYSTEM_CONFIG.setProperty(KeyValueStoreDimension.ROW_CACHE_MAX_BYTES_KEY, "4194304")
+        KeyValueStore keyValueStore = MapStoreManager.getInstance("row_cache_test")
+        KeyValueStoreDimension dimension = buildMapStoreDimension(keyValueStore)
+        DimensionRow row = BardDimensionField.makeDimensionRow(dimension, "row1", "desc1")
+        dimension.addDimensionRow(row)
+        long hits = KeyValueStoreDimension.ROW_CACHE_HITS.count
+
+        when: "A row is found and changed by the caller"
+        DimensionRow found = dimension.findDimensionRowByKeyValue("row1")
+        found.put(BardDimensionField.DESC, "changed")
+
+        then: "The row is found in the cache, unchanged"
+        dimension.findDimensionRowByKeyValue("row1") == row
+        KeyValueStoreDimension.ROW_CACHE_HITS.count == hits + 2
+        keyValueStore.get(DimensionStoreKeyUtils.getRowKey("id", "row1")) != null
+
+        cleanup:
+        SYSTEM_CONFIG.clearProperty(KeyValueStoreDimension.ROW_CACHE_MAX_BYTES_KEY)
+        MapStoreManager.removeInstance("row_cache_test")
+    }
+
+    def "Updated and deleted rows are not served from the cache"() {
+        given: "A dimension with a row cache"
+        SYSTEM_CONFIG.setProperty(KeyValueStoreDimension.ROW_CACHE_MAX_BYTES_KEY, "4194304")
+        KeyValueStoreDimension dimension = buildMapStoreDimension(MapStoreManager.getInstance("row_cache_test"))
+        dimension.addDimensionRow(BardDimensionField.makeDimensionRow(dimension, "row1", "desc1"))
+        dimension.findDimensionRowByKeyValue("row1")
+
+        when:
+        DimensionRow updated = BardDimensionField.makeDimensionRow(dimension, "row1", "desc2")
+        dimension.addDimensionRow(updated)
+
+        then:
+        dimension.findDimensionRowByKeyValue("row1") == updated
+
+        when:
+        dimension.deleteAllDimensionRows()
+
+        then:
+        dimension.findDimensionRowByKeyValue("row1") == null
+
+        cleanup:
+        SYSTEM_CONFIG.clearProperty(KeyValueStoreDimension.ROW_CACHE_MAX_BYTES_KEY)
+        MapStoreManager.removeInstance("row_cache_test")
+    }
+
+    def "Rows are stored encoded when binary dimension rows are on, and rows in either form are read"() {
+        given:
+        boolean binaryRows = BardFeatureFlag.BINARY_DIMENSION_ROWS.isOn()
+        KeyValueStore keyValueStore = MapStoreManager.getInstance("binary_rows_test")
+        KeyValueStoreDimension dimension = buildMapStoreDimension(keyValueStore)
+        DimensionRow jsonRow = BardDimensionField.makeDimensionRow(dimension, "json", "stored as JSON")
+        DimensionRow encodedRow = BardDimensionField.makeDimensionRow(dimension, "encoded", "stored encoded")
+        dimension.addDimensionRow(jsonRow)
+
+        when:
+        BardFeatureFlag.BINARY_DIMENSION_ROWS.setOn(true)
+        dimension.addDimensionRow(encodedRow)
+
+        then:
+        keyValueStore.get(DimensionStoreKeyUtils.getRowKey("id", "json")).startsWith("{")
+        DimensionRowCodec.isEncoded(keyValueStore.get(DimensionStoreKeyUtils.getRowKey("id", "encoded")))
+        new ObjectMapper().readValue(keyValueStore.get(DimensionStoreKeyUtils.getRowFieldsKey()), List) == ["id", "desc"]
+
+        when: "A new dimension reads the store, without a row cache to answer from"
+        BardFeatureFlag.BINARY_DIMENSION_ROWS.setOn(false)
+        KeyValueStoreDimension reloaded = buildMapStoreDimension(keyValueStore)
+
+        then:
+        reloaded.findDimensionRowByKeyValue("json") == jsonRow
+        reloaded.findDimensionRowByKeyValue("encoded") == encodedRow
+
+        cleanup:
+        BardFeatureFlag.BINARY_DIMENSION_ROWS.setOn(binaryRows)
+        MapStoreManager.removeInstance("binary_rows_test")
+    }
 }
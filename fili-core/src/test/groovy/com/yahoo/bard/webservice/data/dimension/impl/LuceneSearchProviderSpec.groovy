@@ -2,12 +2,20 @@
 // Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
 package com.yahoo.bard.webservice.data.dimension.impl
 import com.yahoo.bard.webservice.data.dimension.BardDimensionField
+import com.yahoo.bard.webservice.data.dimension.DimensionField
 import com.yahoo.bard.webservice.data.dimension.DimensionRow
+import com.yahoo.bard.webservice.data.dimension.MapStoreManager
 import com.yahoo.bard.webservice.data.dimension.TimeoutException
 import com.yahoo.bard.webservice.util.DimensionStoreKeyUtils
 import com.yahoo.bard.webservice.web.RowLimitReachedException
 import com.yahoo.bard.webservice.web.util.PaginationParameters
+import org.apache.lucene.index.DirectoryReader
 import org.apache.lucene.store.FSDirectory
+
+import spock.util.concurrent.PollingConditions
+
+import java.nio.file.Files
+import java.nio.file.Path
 /**
  * Specification for behavior specific to the LuceneSearchProvider
  */
@@ -86,6 +94,92 @@ class LuceneSearchProviderSpec extends SearchProviderSpec<LuceneSearchProvider>
         thrown RowLimitReachedException
     }
 
+    /**
+     * Build a dimension over a new search provider with its own index.
+     *
+     * @param indexPath  The directory of the index
+     * @param commitInterval  The commit interval of the search provider
+     *
+     * @return the dimension
+     */
+    KeyValueStoreDimension buildDimension(Path indexPath, long commitInterval) {
+        LinkedHashSet<DimensionField> dimensionFields = [BardDimensionField.ID, BardDimensionField.DESC]
+        return new KeyValueStoreDimension(
+                "nrt",
+                "nrt-description",
+                dimensionFields,
+                MapStoreManager.getInstance("nrt"),
+                new LuceneSearchProvider(indexPath.toString(), rowLimit, searchTimeout, commitInterval)
+        )
+    }
+
+    /**
+     * Count the documents of the last commit of an index.
+     *
+     * @param indexPath  The directory of the index
+     *
+     * @return the number of committed documents
+     */
+    int committedDocuments(Path indexPath) {
+        DirectoryReader reader = DirectoryReader.open(FSDirectory.open(indexPath))
+        try {
+            return reader.numDocs()
+        } finally {
+            reader.close()
+        }
+    }
+
+    def "Updates are searchable before they are committed, and are committed when the provider is closed"() {
+        given:
+        Path indexPath = Files.createTempDirectory("luceneSearchProviderSpec")
+        KeyValueStoreDimension dimension = buildDimension(indexPath, 3600000)
+        DimensionRow row = BardDimensionField.makeDimensionRow(dimension, "owl", "this is an owl")
+
+        when:
+        dimension.addDimensionRow(row)
+
+        then:
+        dimension.searchProvider.findAllDimensionRows() == [row] as Set
+        dimension.searchProvider.dimensionCardinality == 1
+        committedDocuments(indexPath) == 0
+
+        when:
+        dimension.searchProvider.close()
+
+        then:
+        committedDocuments(indexPath) == 1
+
+        and: "The index is opened again when the provider is used"
+        dimension.searchProvider.findAllDimensionRows() == [row] as Set
+
+        cleanup:
+        dimension.searchProvider.close()
+        MapStoreManager.removeInstance("nrt")
+        indexPath.toFile().deleteDir()
+    }
+
+    def "Updates are committed on schedule"() {
+        given:
+        Path indexPath = Files.createTempDirectory("luceneSearchProviderSpec")
+        KeyValueStoreDimension dimension = buildDimension(indexPath, 10)
+
+        when:
+        dimension.addAllDimensionRows([
+                BardDimensionField.makeDimensionRow(dimension, "owl", "this is an owl"),
+                BardDimensionField.makeDimensionRow(dimension, "hawk", "this is a raptor")
+        ] as Set)
+
+        then:
+        new PollingConditions(timeout: 5).eventually {
+            assert committedDocuments(indexPath) == 2
+        }
+
+        cleanup:
+        dimension.searchProvider.close()
+        MapStoreManager.removeInstance("nrt")
+        indexPath.toFile().deleteDir()
+    }
+
     @Override
     boolean indicesHaveBeenCleared() {
         //A file is a Lucene index file iff it has one of the following extensions
@@ -5,6 +5,7 @@ package com.yahoo.bard.webservice.data.metric.mappers
 import static com.yahoo.bard.webservice.data.time.DefaultTimeGrain.DAY
 
 import com.yahoo.bard.webservice.application.ObjectMappersSuite
+import com.yahoo.bard.webservice.data.ColumnarResultSet
 import com.yahoo.bard.webservice.data.Result
 import com.yahoo.bard.webservice.data.ResultSet
 import com.yahoo.bard.webservice.data.ResultSetSchema
@@ -221,6 +222,21 @@ class PaginationMapperSpec extends Specification {
     }
 
 
+    def "A page of a columnar result set reads from the same columns"() {
+        given:
+        ResultSet testResults = buildResultSet(8)
+        ResultSet columnarResults = ColumnarResultSet.of(testResults.schema, testResults)
+        PaginationMapper mapper = new PaginationMapper(new PaginationParameters(3, 2), responseProcessor, uriBuilder)
+
+        when:
+        ResultSet pageOfData = mapper.map(columnarResults)
+
+        then:
+        pageOfData instanceof ColumnarResultSet
+        pageOfData == buildExpectedPage(testResults, 2, 3)
+        (0..2).every { pageOfData[it].is(columnarResults[it + 3]) }
+    }
+
     String getExpectedErrorMessage(int page, int rowsPerPage, int numPages) {
         "Requested page '$page' with '$rowsPerPage' rows per page, but there are only '$numPages' pages."
     }
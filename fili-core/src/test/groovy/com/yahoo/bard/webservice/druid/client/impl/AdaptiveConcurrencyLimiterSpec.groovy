@@ -0,0 +1,214 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.druid.client.impl
+
+import static com.yahoo.bard.webservice.druid.client.impl.AdaptiveConcurrencyLimiter.Priority.ASYNCHRONOUS
+import static com.yahoo.bard.webservice.druid.client.impl.AdaptiveConcurrencyLimiter.Priority.INTERACTIVE
+import static com.yahoo.bard.webservice.druid.client.impl.AdaptiveConcurrencyLimiter.Priority.WEIGHT_CHECK
+import static com.yahoo.bard.webservice.druid.client.impl.AdaptiveConcurrencyLimiter.Rejection.QUEUE_FULL
+import static com.yahoo.bard.webservice.druid.client.impl.AdaptiveConcurrencyLimiter.Rejection.QUEUE_TIMEOUT
+
+import com.yahoo.bard.webservice.druid.client.impl.AdaptiveConcurrencyLimiter.LimitedRequest
+import com.yahoo.bard.webservice.druid.client.impl.AdaptiveConcurrencyLimiter.Permit
+import com.yahoo.bard.webservice.druid.client.impl.AdaptiveConcurrencyLimiter.Rejection
+
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.TimeUnit
+import java.util.function.LongSupplier
+
+class AdaptiveConcurrencyLimiterSpec extends Specification {
+
+    long now = 0
+    List<String> events = Collections.synchronizedList([])
+
+    AdaptiveConcurrencyLimiter limiter(int initial, int min, int max, int queueSize, long queueWaitMs = 60000) {
+        new AdaptiveConcurrencyLimiter(initial, min, max, 0.5, 1000, queueSize, queueWaitMs, { now } as LongSupplier)
+    }
+
+    static class Recorder implements LimitedRequest {
+        String name
+        List<String> events
+        Permit permit
+        Rejection rejection
+
+        @Override
+        void dispatch(Permit permit) {
+            this.permit = permit
+            events << name
+        }
+
+        @Override
+        void reject(Rejection rejection) {
+            this.rejection = rejection
+            events << "${name} ${rejection}".toString()
+        }
+    }
+
+    Recorder submit(AdaptiveConcurrencyLimiter limiter, AdaptiveConcurrencyLimiter.Priority priority, String name) {
+        Recorder request = new Recorder(name: name, events: events)
+        limiter.submit(priority, request)
+        request
+    }
+
+    def "Requests under the limit are sent at once and requests over it wait in priority then arrival order"() {
+        given:
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 1, 2, 10)
+        Recorder first = submit(limiter, INTERACTIVE, "first")
+        Recorder second = submit(limiter, ASYNCHRONOUS, "second")
+
+        when:
+        submit(limiter, ASYNCHRONOUS, "async1")
+        submit(limiter, INTERACTIVE, "interactive1")
+        submit(limiter, ASYNCHRONOUS, "async2")
+        submit(limiter, WEIGHT_CHECK, "weight")
+        submit(limiter, INTERACTIVE, "interactive2")
+
+        then:
+        events == ["first", "second"]
+        limiter.inFlight == 2
+        limiter.queueDepth == 5
+
+        when: "Each completion sends the best waiting request"
+        first.permit.release(false)
+        second.permit.release(false)
+
+        then:
+        events == ["first", "second", "weight", "interactive1"]
+        limiter.inFlight == 2
+        limiter.queueDepth == 3
+    }
+
+    def "A request arriving at a full queue sheds the newest lowest priority request, or is rejected"() {
+        given:
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, 1, 2)
+        submit(limiter, INTERACTIVE, "running")
+        Recorder async1 = submit(limiter, ASYNCHRONOUS, "async1")
+        Recorder async2 = submit(limiter, ASYNCHRONOUS, "async2")
+
+        when: "An interactive request takes the place of the newest asynchronous one"
+        Recorder interactive = submit(limiter, INTERACTIVE, "interactive")
+
+        then:
+        async2.rejection == QUEUE_FULL
+        async1.rejection == null
+        interactive.rejection == null
+        limiter.queueDepth == 2
+
+        when: "A request of the lowest waiting priority has nothing to shed"
+        Recorder async3 = submit(limiter, ASYNCHRONOUS, "async3")
+
+        then:
+        async3.rejection == QUEUE_FULL
+        limiter.queueDepth == 2
+    }
+
+    def "A request which waits too long is rejected without being sent"() {
+        given:
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, 1, 10, 50)
+        Recorder running = submit(limiter, INTERACTIVE, "running")
+        Recorder waiting = submit(limiter, INTERACTIVE, "waiting")
+
+        expect:
+        new PollingConditions(timeout: 5).eventually {
+            assert waiting.rejection == QUEUE_TIMEOUT
+        }
+        limiter.queueDepth == 0
+
+        when: "Completing the running request has nothing left to send"
+        running.permit.release(false)
+
+        then:
+        waiting.permit == null
+        limiter.inFlight == 0
+    }
+
+    def "The limit grows additively on fast completions and shrinks multiplicatively on overload"() {
+        given:
+        AdaptiveConcurrencyLimiter limiter = limiter(4, 2, 5, 10)
+
+        when: "A round of fast completions at full use"
+        fullRound(limiter)
+
+        then: "The limit grows by a fraction of one"
+        limiter.limit == 4
+
+        when: "More rounds of fast completions"
+        10.times { fullRound(limiter) }
+
+        then: "The limit grows up to the max"
+        limiter.limit == 5
+
+        when: "An overloaded request halves the limit"
+        submit(limiter, INTERACTIVE, "overloaded").permit.release(true)
+
+        then:
+        limiter.limit == 2
+
+        when: "A slow request lowers the limit, but not below the min"
+        Recorder slow = submit(limiter, INTERACTIVE, "slow")
+        now += TimeUnit.SECONDS.toNanos(2)
+        slow.permit.release(false)
+
+        then:
+        limiter.limit == 2
+    }
+
+    /**
+     * Send as many requests as the limit allows, and complete them all quickly.
+     *
+     * @param limiter  The limiter
+     */
+    void fullRound(AdaptiveConcurrencyLimiter limiter) {
+        List<Recorder> running = (1..limiter.limit).collect { submit(limiter, INTERACTIVE, "request") }
+        running.each { it.permit.release(false) }
+    }
+
+    def "Releasing a permit twice releases it once"() {
+        given:
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, 1, 10)
+        Recorder running = submit(limiter, INTERACTIVE, "running")
+        submit(limiter, INTERACTIVE, "waiting1")
+        submit(limiter, INTERACTIVE, "waiting2")
+
+        when:
+        running.permit.release(false)
+        running.permit.release(true)
+
+        then:
+        events == ["running", "waiting1"]
+        limiter.inFlight == 1
+        limiter.queueDepth == 1
+    }
+
+    def "A request which throws while being sent gives back its permit"() {
+        given:
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, 1, 10)
+        LimitedRequest failing = Mock(LimitedRequest) {
+            dispatch(_) >> { throw new IllegalStateException("boom") }
+        }
+
+        when:
+        limiter.submit(INTERACTIVE, failing)
+
+        then:
+        limiter.inFlight == 0
+        submit(limiter, INTERACTIVE, "next").permit != null
+    }
+
+    def "Invalid limits are rejected"() {
+        when:
+        new AdaptiveConcurrencyLimiter(1, min, max, ratio, 1000, 10, 1000)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        min | max | ratio
+        0   | 1   | 0.5
+        2   | 1   | 0.5
+        1   | 1   | 0
+        1   | 1   | 1
+    }
+}
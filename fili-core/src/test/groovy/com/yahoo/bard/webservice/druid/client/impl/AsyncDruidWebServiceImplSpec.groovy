@@ -4,14 +4,29 @@ package com.yahoo.bard.webservice.druid.client.impl
 
 import com.yahoo.bard.webservice.application.ObjectMappersSuite
 import com.yahoo.bard.webservice.druid.client.DruidClientConfigHelper
+import com.yahoo.bard.webservice.druid.client.FailureCallback
+import com.yahoo.bard.webservice.druid.client.HttpErrorCallback
+import com.yahoo.bard.webservice.druid.client.SuccessCallback
+import com.yahoo.bard.webservice.druid.client.impl.AdaptiveConcurrencyLimiter.Priority
+import com.yahoo.bard.webservice.druid.model.query.GroupByQuery
 import com.yahoo.bard.webservice.druid.model.query.QueryContext
 import com.yahoo.bard.webservice.druid.model.query.WeightEvaluationQuery
+import com.yahoo.bard.webservice.web.handlers.RequestContext
 
+import com.fasterxml.jackson.core.JsonLocation
+import com.fasterxml.jackson.core.JsonParseException
+import com.fasterxml.jackson.databind.JsonNode
 import com.fasterxml.jackson.databind.ObjectMapper
 
+import org.asynchttpclient.Response
+
 import io.netty.handler.codec.http.HttpHeaders
 import spock.lang.Specification
+import spock.lang.Unroll
 
+import java.net.ConnectException
+import java.util.concurrent.Future
+import java.util.concurrent.TimeoutException
 import java.util.function.Supplier
 
 class AsyncDruidWebServiceImplSpec extends Specification {
@@ -71,4 +86,121 @@ class AsyncDruidWebServiceImplSpec extends Specification {
             assert actualHeaders.get(header.getKey()) == header.getValue()
         }
     }
+
+    @Unroll
+    def "A #queryType query of a request which is #description waits with #priority priority"() {
+        given:
+        AsyncDruidWebServiceImpl webService = new AsyncDruidWebServiceImplWrapper(
+                DruidClientConfigHelper.getNonUiServiceConfig(),
+                MAPPER,
+                { [:] } as Supplier
+        )
+        RequestContext context = asynchronous == null ? null : new RequestContext(null, false, asynchronous)
+
+        expect:
+        webService.getPriority(context, Mock(queryType)) == priority
+
+        where:
+        queryType             | asynchronous | priority
+        WeightEvaluationQuery | false        | Priority.WEIGHT_CHECK
+        GroupByQuery          | false        | Priority.INTERACTIVE
+        GroupByQuery          | true         | Priority.ASYNCHRONOUS
+        GroupByQuery          | null         | Priority.INTERACTIVE
+
+        description = asynchronous == null ? "unknown" : asynchronous ? "asynchronous" : "synchronous"
+    }
+
+    def "A query holds a concurrency permit until Druid answers it"() {
+        given:
+        WeightEvaluationQuery weightEvaluationQuery = Mock(WeightEvaluationQuery)
+        weightEvaluationQuery.getContext() >> Mock(QueryContext)
+        AsyncDruidWebServiceImplWrapper webService = new AsyncDruidWebServiceImplWrapper(
+                DruidClientConfigHelper.getNonUiServiceConfig(),
+                MAPPER,
+                { [:] } as Supplier
+        )
+        SuccessCallback success = Mock(SuccessCallback)
+        JsonNode node = Mock(JsonNode)
+
+        when:
+        Future<Response> future = webService.postDruidQuery(
+                null,
+                success,
+                Mock(HttpErrorCallback),
+                Mock(FailureCallback),
+                weightEvaluationQuery
+        )
+
+        then:
+        webService.concurrencyLimiter.inFlight == 1
+        !future.isDone()
+
+        when:
+        webService.success.invoke(node)
+
+        then:
+        1 * success.invoke(node)
+        webService.concurrencyLimiter.inFlight == 0
+        future.isDone()
+    }
+
+    def "An overloaded Druid lowers the concurrency limit and its error is passed on"() {
+        given:
+        WeightEvaluationQuery weightEvaluationQuery = Mock(WeightEvaluationQuery)
+        weightEvaluationQuery.getContext() >> Mock(QueryContext)
+        AsyncDruidWebServiceImplWrapper webService = new AsyncDruidWebServiceImplWrapper(
+                DruidClientConfigHelper.getNonUiServiceConfig(),
+                MAPPER,
+                { [:] } as Supplier
+        )
+        HttpErrorCallback error = Mock(HttpErrorCallback)
+        int initialLimit = webService.concurrencyLimiter.limit
+
+        when:
+        webService.postDruidQuery(null, Mock(SuccessCallback), error, Mock(FailureCallback), weightEvaluationQuery)
+        webService.error.invoke(503, "Service Unavailable", "busy")
+
+        then:
+        1 * error.invoke(503, "Service Unavailable", "busy")
+        webService.concurrencyLimiter.inFlight == 0
+        webService.concurrencyLimiter.limit < initialLimit
+    }
+
+    @Unroll
+    def "A #failure.class.simpleName failure #effect the concurrency limit"() {
+        given:
+        WeightEvaluationQuery weightEvaluationQuery = Mock(WeightEvaluationQuery)
+        weightEvaluationQuery.getContext() >> Mock(QueryContext)
+        AsyncDruidWebServiceImplWrapper webService = new AsyncDruidWebServiceImplWrapper(
+                DruidClientConfigHelper.getNonUiServiceConfig(),
+                MAPPER,
+                { [:] } as Supplier
+        )
+        FailureCallback failureCallback = Mock(FailureCallback)
+        int initialLimit = webService.concurrencyLimiter.limit
+
+        when:
+        webService.postDruidQuery(
+                null,
+                Mock(SuccessCallback),
+                Mock(HttpErrorCallback),
+                failureCallback,
+                weightEvaluationQuery
+        )
+        webService.failure.invoke(failure)
+
+        then:
+        1 * failureCallback.invoke(failure)
+        webService.concurrencyLimiter.inFlight == 0
+        (webService.concurrencyLimiter.limit < initialLimit) == overloaded
+
+        where:
+        failure                                                     | overloaded
+        new ConnectException("Connection refused")                  | true
+        new TimeoutException("Request timeout")                     | true
+        new JsonParseException("Unexpected token", JsonLocation.NA) | false
+        new IllegalStateException("Callback failed")                | false
+
+        effect = overloaded ? "lowers" : "doesn't lower"
+    }
 }
@@ -0,0 +1,96 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.druid.model.query
+
+import com.yahoo.bard.webservice.application.ObjectMappersSuite
+import com.yahoo.bard.webservice.druid.model.datasource.QueryDataSource
+import com.yahoo.bard.webservice.web.RequestUtils
+
+import com.fasterxml.jackson.databind.ObjectWriter
+import com.google.common.hash.Hashing
+
+import spock.lang.Specification
+
+class QueryFingerprintSpec extends Specification {
+
+    ObjectWriter writer = new ObjectMappersSuite().getMapper().writer()
+
+    GroupByQuery query = RequestUtils.buildGroupByQuery()
+
+    def "A fingerprint is 128 bits of hexadecimal"() {
+        expect:
+        query.getFingerprint(writer) ==~ /[0-9a-f]{32}/
+    }
+
+    def "Fingerprints ignore the query context"() {
+        given:
+        GroupByQuery withContext = query.withContext(query.context.withTimeout(5).withQueryId("some id"))
+
+        expect:
+        withContext.getFingerprint(writer) == query.getFingerprint(writer)
+    }
+
+    def "Fingerprints ignore the context of inner queries"() {
+        given:
+        GroupByQuery outer = query.withDataSource(new QueryDataSource<>(query))
+        GroupByQuery outerWithContext = query.withDataSource(
+                new QueryDataSource<>(query.withContext(query.context.withPriority(1)))
+        )
+
+        expect:
+        outerWithContext.getFingerprint(writer) == outer.getFingerprint(writer)
+        outer.getFingerprint(writer) != query.getFingerprint(writer)
+    }
+
+    def "The canonical form keeps empty arrays and leaves out the context"() {
+        given:
+        ByteArrayOutputStream out = new ByteArrayOutputStream()
+        QueryFingerprint.writeCanonical(query, writer, out)
+        String canonical = new String(out.toByteArray(), "UTF-8")
+
+        expect:
+        canonical.contains('"dimensions":[]')
+        canonical.contains('"aggregations":[]')
+        !canonical.contains('"context"')
+    }
+
+    def "The key and the checksum are hashes of the canonical form, computed in one pass"() {
+        given:
+        ByteArrayOutputStream out = new ByteArrayOutputStream()
+        QueryFingerprint.writeCanonical(query, writer, out)
+        QueryFingerprint fingerprint = QueryFingerprint.compute(query, writer)
+
+        expect:
+        fingerprint.key == Hashing.murmur3_128().hashBytes(out.toByteArray()).toString()
+        fingerprint.checksum == Hashing.sha256().hashBytes(out.toByteArray()).toString()
+        fingerprint.key == query.getFingerprint(writer)
+    }
+
+    def "Checksums are 256 bits of hexadecimal and differ between queries"() {
+        given:
+        String checksum = QueryFingerprint.compute(query, writer).checksum
+        String otherChecksum = QueryFingerprint.compute(RequestUtils.buildGroupByQuery("otherDataSource"), writer)
+                .checksum
+
+        expect:
+        checksum ==~ /[0-9a-f]{64}/
+        checksum != otherChecksum
+    }
+
+    def "A String value stored with a checksum is only read back with the same checksum"() {
+        given:
+        String stored = QueryFingerprint.withChecksum("[]", "abc")
+
+        expect:
+        QueryFingerprint.verifyChecksum(stored, "abc") == "[]"
+        QueryFingerprint.verifyChecksum(stored, "def") == null
+        QueryFingerprint.verifyChecksum("[]", "abc") == null
+        QueryFingerprint.verifyChecksum("[]", null) == "[]"
+    }
+
+    def "Different queries have different fingerprints"() {
+        expect:
+        RequestUtils.buildGroupByQuery("otherDataSource").getFingerprint(writer) != query.getFingerprint(writer)
+        RequestUtils.buildTopNQuery().getFingerprint(writer) != query.getFingerprint(writer)
+    }
+}
@@ -0,0 +1,159 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.filterbuilders
+
+import static com.yahoo.bard.webservice.data.filterbuilders.CompactDruidFilterBuilder.Strategy.KEY_PATTERN
+import static com.yahoo.bard.webservice.data.filterbuilders.CompactDruidFilterBuilder.Strategy.KEY_VALUES
+import static com.yahoo.bard.webservice.data.filterbuilders.CompactDruidFilterBuilder.Strategy.ROW_VALUES
+
+import com.yahoo.bard.webservice.data.QueryBuildingTestingResources
+import com.yahoo.bard.webservice.data.dimension.BardDimensionField
+import com.yahoo.bard.webservice.data.dimension.DimensionRowNotFoundException
+import com.yahoo.bard.webservice.data.dimension.MapStoreManager
+import com.yahoo.bard.webservice.data.dimension.impl.KeyValueStoreDimension
+import com.yahoo.bard.webservice.data.dimension.impl.ScanSearchProviderManager
+import com.yahoo.bard.webservice.data.filterbuilders.CompactDruidFilterBuilder
+import com.yahoo.bard.webservice.druid.model.filter.AndFilter
+import com.yahoo.bard.webservice.druid.model.filter.Filter
+import com.yahoo.bard.webservice.druid.model.filter.InFilter
+import com.yahoo.bard.webservice.druid.model.filter.NotFilter
+import com.yahoo.bard.webservice.druid.model.filter.RegularExpressionFilter
+import com.yahoo.bard.webservice.druid.model.filter.SelectorFilter
+import com.yahoo.bard.webservice.web.ApiFilter
+import com.yahoo.bard.webservice.web.BadApiRequestException
+import com.yahoo.bard.webservice.web.FilterOperation
+
+import spock.lang.Shared
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.util.regex.Pattern
+
+class CompactDruidFilterBuilderSpec extends Specification {
+
+    @Shared QueryBuildingTestingResources resources
+
+    CompactDruidFilterBuilder filterBuilder = new CompactDruidFilterBuilder()
+
+    def setupSpec() {
+        resources = new QueryBuildingTestingResources()
+    }
+
+    Filter build(String... filterStrings) {
+        Set<ApiFilter> filters = filterStrings.collect { new ApiFilter(it, resources.dimensionDictionary) } as Set
+        return filterBuilder.buildFilters([(resources.d3): filters])
+    }
+
+    @Unroll
+    def "#filterString is translated with the #strategy strategy"() {
+        given:
+        long count = strategy.meter.count
+
+        expect:
+        build(filterString) == expected.call(resources.d3)
+        strategy.meter.count == count + 1
+
+        where:
+        filterString                      | strategy    | expected
+        "ageBracket|id-eq[1]"             | KEY_VALUES  | { new SelectorFilter(it, "1") }
+        "ageBracket|id-in[4,1,2]"         | KEY_VALUES  | { new InFilter(it, ["1", "2", "4"]) }
+        "ageBracket|id-in[1,2,unknown]"   | KEY_VALUES  | { new InFilter(it, ["1", "2"]) }
+        "ageBracket|id-notin[5,6]"        | KEY_VALUES  | { new NotFilter(new InFilter(it, ["5", "6"])) }
+        "ageBracket|desc-in[11-14,14-29]" | ROW_VALUES  | { new InFilter(it, ["2", "3"]) }
+        "ageBracket|desc-contains[60]"    | ROW_VALUES  | { new SelectorFilter(it, "6") }
+        "ageBracket|desc-notin[14-29]"    | ROW_VALUES  | { new NotFilter(new SelectorFilter(it, "3")) }
+        "ageBracket|id-startswith[1]"     | KEY_PATTERN | { new RegularExpressionFilter(it, Pattern.compile('^\\Q1\\E')) }
+        "ageBracket|id-contains[1]"       | KEY_PATTERN | { new RegularExpressionFilter(it, Pattern.compile('\\Q1\\E')) }
+    }
+
+    @Unroll
+    def "The pattern of #filterString matches exactly the values #matched"() {
+        when:
+        RegularExpressionFilter filter = build(filterString)
+
+        then: "Druid finds the pattern anywhere in a value"
+        ["1", "12", "21", "2.1", "3", "a|b", "xa|by"].findAll { filter.pattern.matcher(it).find() } == matched
+
+        where:
+        filterString                        | matched
+        "ageBracket|id-startswith[1]"       | ["1", "12"]
+        "ageBracket|id-startswith[2,3]"     | ["21", "2.1", "3"]
+        "ageBracket|id-startswith[2.]"      | ["2.1"]
+        "ageBracket|id-contains[1]"         | ["1", "12", "21", "2.1"]
+        "ageBracket|id-contains[a|b]"       | ["a|b", "xa|by"]
+    }
+
+    @Unroll
+    def "Key values of #values are filtered on as the key values of the rows they find"() {
+        given: "Keys are case insensitive by default"
+        KeyValueStoreDimension flavor = new KeyValueStoreDimension(
+                "flavor",
+                "flavor",
+                [BardDimensionField.ID, BardDimensionField.DESC] as LinkedHashSet,
+                MapStoreManager.getInstance("flavor"),
+                ScanSearchProviderManager.getInstance("flavor")
+        )
+        flavor.addAllDimensionRows([
+                BardDimensionField.makeDimensionRow(flavor, "foo", "Foo"),
+                BardDimensionField.makeDimensionRow(flavor, "Bar", "Bar")
+        ] as Set)
+        ApiFilter filter = new ApiFilter(flavor, BardDimensionField.ID, FilterOperation.in, values as Set)
+
+        expect:
+        filterBuilder.buildFilters([(flavor): [filter] as Set]) == expected.call(flavor)
+
+        where:
+        values                | expected
+        ["FOO"]               | { new SelectorFilter(it, "foo") }
+        ["FOO", "foo"]        | { new SelectorFilter(it, "foo") }
+        ["Foo", "bar", "baz"] | { new InFilter(it, ["Bar", "foo"]) }
+    }
+
+    def "Terms on a dimension are combined in a conjunction"() {
+        expect:
+        build("ageBracket|id-in[1,2,3]", "ageBracket|desc-notin[14-29]") == new AndFilter([
+                new InFilter(resources.d3, ["1", "2", "3"]),
+                new NotFilter(new SelectorFilter(resources.d3, "3"))
+        ])
+    }
+
+    @Unroll
+    def "#filterString matching no rows is rejected"() {
+        when:
+        build(filterString)
+
+        then:
+        thrown(DimensionRowNotFoundException)
+
+        where:
+        filterString << ["ageBracket|id-in[unknown]", "ageBracket|desc-in[unknown]"]
+    }
+
+    @Unroll
+    def "#filterStrings excluding no rows adds no filter for the term"() {
+        expect:
+        build(*filterStrings) == expected.call(resources.d3)
+
+        where:
+        filterStrings                                              | expected
+        ["ageBracket|id-notin[unknown]"]                           | { null }
+        ["ageBracket|desc-notin[unknown]"]                         | { null }
+        ["ageBracket|id-in[1,2]", "ageBracket|id-notin[unknown]"]  | { new InFilter(it, ["1", "2"]) }
+    }
+
+    @Unroll
+    def "#filterString matching more values than the budget is rejected"() {
+        given:
+        filterBuilder = new CompactDruidFilterBuilder(2)
+
+        when:
+        build(filterString)
+
+        then:
+        BadApiRequestException exception = thrown()
+        exception.message.contains("more than the limit of 2")
+
+        where:
+        filterString << ["ageBracket|id-in[1,2,3]", "ageBracket|desc-contains[-]", "ageBracket|id-contains[1,2,3]"]
+    }
+}
@@ -255,4 +255,67 @@ class DataSourceMetadataLoadTaskSpec extends Specification {
         then: "the query is issued to the webservice that was specified to query the druid metadata endpoint"
         1 * testWs.getJsonObject(_, _, _, _)
     }
+
+    def "A metadata request in flight holds a request permit until any of its callbacks is called"() {
+        setup: "a webservice which holds the callbacks of its requests"
+        List<List> requests = []
+        DruidWebService testWs = Mock(DruidWebService) {
+            getJsonObject(_, _, _, _) >> { success, error, failure, path -> requests << [success, error, failure]; null }
+        }
+        DataSourceMetadataLoadTask loader = new DataSourceMetadataLoadTask(
+                tableDict,
+                Mock(DataSourceMetadataService),
+                testWs,
+                MAPPERS.mapper
+        )
+        int maxRequests = loader.requestPermits.availablePermits()
+
+        when: "as many requests as there are permits are sent"
+        maxRequests.times { loader.queryDataSourceMetadata(DataSourceName.of("test$it" as String)) }
+
+        then:
+        requests.size() == maxRequests
+        loader.requestPermits.availablePermits() == 0
+
+        when: "the requests finish by success, http error and failure, each calling back more than once"
+        requests[0][0].invoke(MAPPERS.mapper.readTree(fullDataSourceMetadataJson))
+        requests[0][2].invoke(new IOException("late failure"))
+        requests[1][1].invoke(500, "error", "body")
+        requests[2][2].invoke(new IOException("failure"))
+
+        then: "each request releases one permit"
+        loader.requestPermits.availablePermits() == 3
+    }
+
+    def "Data sources beyond the request permits are queued without waiting, and sent as earlier requests finish"() {
+        setup: "a webservice which holds the callbacks of its requests"
+        List<List> requests = []
+        DruidWebService testWs = Mock(DruidWebService) {
+            getJsonObject(_, _, _, _) >> { success, error, failure, path -> requests << [path, failure]; null }
+        }
+        DataSourceMetadataLoadTask loader = new DataSourceMetadataLoadTask(
+                tableDict,
+                Mock(DataSourceMetadataService),
+                testWs,
+                MAPPERS.mapper
+        )
+        int maxRequests = loader.requestPermits.availablePermits()
+
+        when: "one more data source than there are permits is queried, the last one twice"
+        (maxRequests + 1).times { loader.queryDataSourceMetadata(DataSourceName.of("test$it" as String)) }
+        loader.queryDataSourceMetadata(DataSourceName.of("test$maxRequests" as String))
+
+        then: "the last data source is queued once"
+        requests.size() == maxRequests
+        loader.pendingDataSources.size() == 1
+
+        when: "a request finishes"
+        requests[0][1].invoke(new IOException("failure"))
+
+        then: "the queued data source is sent"
+        requests.size() == maxRequests + 1
+        requests.last()[0] == "/datasources/test$maxRequests?full"
+        loader.pendingDataSources.empty
+        loader.requestPermits.availablePermits() == 0
+    }
 }
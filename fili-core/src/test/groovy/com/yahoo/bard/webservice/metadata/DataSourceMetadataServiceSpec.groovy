@@ -4,12 +4,17 @@ package com.yahoo.bard.webservice.metadata
 
 import com.yahoo.bard.webservice.application.JerseyTestBinder
 import com.yahoo.bard.webservice.data.config.names.DataSourceName
+import com.yahoo.bard.webservice.druid.model.metadata.NumberedShardSpec
+import com.yahoo.bard.webservice.util.SimplifiedIntervalList
 
 import org.joda.time.DateTime
 import org.joda.time.Interval
 
+import io.druid.timeline.DataSegment
+
 import java.util.concurrent.ConcurrentSkipListMap
 import java.util.concurrent.atomic.AtomicReference
+import java.util.function.Consumer
 import java.util.stream.Collectors
 
 class DataSourceMetadataServiceSpec extends BaseDataSourceMetadataSpec {
@@ -52,6 +57,150 @@ class DataSourceMetadataServiceSpec extends BaseDataSourceMetadataSpec {
         jtb.tearDown()
     }
 
+    def "Every update which changes the metadata bumps the version of the metadata"() {
+        given:
+        DataSourceMetadataService metadataService = new DataSourceMetadataService()
+        long initialVersion = metadataService.version
+
+        when:
+        metadataService.update(DataSourceName.of(tableName), metadata)
+        metadataService.update(DataSourceName.of("other"), metadata)
+
+        then:
+        metadataService.version == initialVersion + 2
+    }
+
+    def "Signatures are of the segments they are read with, and are built once for segments set without an update"() {
+        given:
+        DataSourceMetadataService metadataService = new DataSourceMetadataService()
+        DataSourceName dataSourceName = DataSourceName.of(tableName)
+        metadataService.update(dataSourceName, metadata)
+        ConcurrentSkipListMap<DateTime, Map<String, SegmentInfo>> updated =
+                metadataService.allSegmentsByTime.get(dataSourceName).get()
+
+        expect:
+        metadataService.getSegmentSignatures([dataSourceName] as Set)[0].isOf(updated)
+
+        when:
+        ConcurrentSkipListMap<DateTime, Map<String, SegmentInfo>> replaced = new ConcurrentSkipListMap<>(updated)
+        metadataService.allSegmentsByTime.get(dataSourceName).set(replaced)
+        SegmentSignatures signatures = metadataService.getSegmentSignatures([dataSourceName] as Set)[0]
+
+        then:
+        signatures.isOf(replaced)
+        metadataService.getSegmentSignatures([dataSourceName] as Set)[0].is(signatures)
+    }
+
+    def "An update which changes no segment leaves the metadata and its version as they are"() {
+        given:
+        DataSourceMetadataService metadataService = new DataSourceMetadataService()
+        DataSourceName dataSourceName = DataSourceName.of(tableName)
+        metadataService.update(dataSourceName, metadata)
+        long version = metadataService.version
+        Map<String, SimplifiedIntervalList> availability =
+                metadataService.getAvailableIntervalsByDataSource(dataSourceName)
+
+        when:
+        metadataService.update(dataSourceName, new DataSourceMetadata(tableName, [:], segments.reverse()))
+
+        then:
+        metadataService.version == version
+        metadataService.getAvailableIntervalsByDataSource(dataSourceName).is(availability)
+    }
+
+    def "Incremental updates match rebuilding the metadata from scratch"() {
+        given: "A pool of overlapping segments of different lengths and columns"
+        NumberedShardSpec partition = Stub(NumberedShardSpec) { getPartitionNum() >> 0 }
+        List<String> columns = dimensions123 + metrics123
+        Random random = new Random(4321)
+        List<DataSegment> pool = (0..<60).collect { i ->
+            DateTime start = new DateTime(2015, 1, 1, 0, 0).plusHours(random.nextInt(24 * 10))
+            Interval interval = new Interval(start, start.plusHours([1, 6, 24][random.nextInt(3)]))
+            List<String> segmentColumns = columns.findAll { random.nextBoolean() }
+            new DataSegment(
+                    tableName,
+                    interval,
+                    "v$i" as String,
+                    null,
+                    segmentColumns.findAll { dimensions123.contains(it) },
+                    segmentColumns.findAll { metrics123.contains(it) },
+                    partition,
+                    9,
+                    1024
+            )
+        }
+        DataSourceName dataSourceName = DataSourceName.of(tableName)
+        DataSourceMetadataService incremental = new DataSourceMetadataService()
+
+        expect: "Each random subset of the pool is applied as a diff against the previous subset"
+        (1..50).every {
+            List<DataSegment> current = pool.findAll { random.nextInt(4) != 0 }
+            DataSourceMetadata currentMetadata = new DataSourceMetadata(tableName, [:], current)
+            DataSourceMetadataService fresh = new DataSourceMetadataService()
+            incremental.update(dataSourceName, currentMetadata)
+            fresh.update(dataSourceName, currentMetadata)
+
+            incremental.getAvailableIntervalsByDataSource(dataSourceName) ==
+                    fresh.getAvailableIntervalsByDataSource(dataSourceName) &&
+                    segmentIds(incremental, dataSourceName) == segmentIds(fresh, dataSourceName) &&
+                    signature(incremental, dataSourceName) == signature(fresh, dataSourceName)
+        }
+    }
+
+    def "Listeners are told the intervals and columns of the segments added and removed"() {
+        given:
+        DataSourceMetadataService metadataService = new DataSourceMetadataService()
+        DataSourceName dataSourceName = DataSourceName.of(tableName)
+        metadataService.update(dataSourceName, new DataSourceMetadata(tableName, [:], [segment1, segment2]))
+        List<DataSourceMetadataChange> changes = []
+        metadataService.addChangeListener({ changes << it } as Consumer)
+
+        when:
+        metadataService.update(dataSourceName, new DataSourceMetadata(tableName, [:], [segment2, segment3]))
+
+        then:
+        changes == [
+                new DataSourceMetadataChange(
+                        dataSourceName,
+                        new SimplifiedIntervalList([interval12]),
+                        (dimensions123 + metrics123) as Set,
+                        metadataService.version
+                )
+        ]
+        metadataService.getAvailableIntervalsByDataSource(dataSourceName).values().every { it == [interval12] }
+    }
+
+    def "A failing listener does not stop the update or the other listeners"() {
+        given:
+        DataSourceMetadataService metadataService = new DataSourceMetadataService()
+        List<DataSourceMetadataChange> changes = []
+        metadataService.addChangeListener({ throw new IllegalStateException("listener failed") } as Consumer)
+        metadataService.addChangeListener({ changes << it } as Consumer)
+
+        when:
+        metadataService.update(DataSourceName.of(tableName), metadata)
+
+        then:
+        changes.size() == 1
+        changes[0].changedIntervals == [interval12]
+    }
+
+    /**
+     * The identifiers of the segments held for a data source, by the start of their interval.
+     */
+    static Map<DateTime, Set<String>> segmentIds(DataSourceMetadataService service, DataSourceName dataSourceName) {
+        return service.getSegments([dataSourceName] as Set).first().collectEntries { start, segments ->
+            [(start): segments.keySet()]
+        }
+    }
+
+    /**
+     * The signature of all the segments held for a data source.
+     */
+    static long signature(DataSourceMetadataService service, DataSourceName dataSourceName) {
+        return service.getSegmentSignatures([dataSourceName] as Set).first().getSignature(Long.MIN_VALUE, Long.MAX_VALUE)
+    }
+
     def "grouping segment data by date time behave as expected"() {
         given:
         ConcurrentSkipListMap<DateTime, Map<String, SegmentInfo>> segmentByTime = DataSourceMetadataService.groupSegmentByTime(metadata)
@@ -117,6 +117,13 @@ class SegmentIntervalsHashIdGeneratorSpec extends BaseDataSourceMetadataSpec {
         jtb.tearDown()
     }
 
+    /**
+     * The signature of all the segments of a map of segments.
+     */
+    static long signature(ConcurrentSkipListMap<DateTime, Map<String, SegmentInfo>> segments) {
+        return SegmentSignatures.of(segments).getSignature(Long.MIN_VALUE, Long.MAX_VALUE)
+    }
+
     def "test metadata service returns valid segment ids"() {
         setup:
         DataSource dataSource = Mock(DataSource)
@@ -133,7 +140,7 @@ class SegmentIntervalsHashIdGeneratorSpec extends BaseDataSourceMetadataSpec {
         Optional<Long> hashCode = segmentSetIdGenerator.getSegmentSetId(query)
 
         then:
-        hashCode.present && hashCode.get() == availabilityList1.hashCode() as Long
+        hashCode.present && hashCode.get() == signature(availabilityList1)
     }
 
     @Unroll
@@ -153,6 +160,25 @@ class SegmentIntervalsHashIdGeneratorSpec extends BaseDataSourceMetadataSpec {
     def "test different segments have different hashcodes"() {
         expect:
         segmentSetIdGenerator.getSegmentHash([availabilityList1].stream()).get() != segmentSetIdGenerator.getSegmentHash([availabilityList2].stream()).get()
+        signature(availabilityList1) != signature(availabilityList2)
+    }
+
+    def "Segment set ids follow the segments set without an update"() {
+        given:
+        DataSourceMetadataService service = new DataSourceMetadataService()
+        SegmentIntervalsHashIdGenerator generator = new SegmentIntervalsHashIdGenerator(service)
+        DataSourceName dataSourceName = tableDict.get(tableName).dataSourceNames[0]
+        service.allSegmentsByTime.put(dataSourceName, new AtomicReference<>(availabilityList1))
+        Optional<Long> before = generator.getSegmentSetId(timeSeriesQuery)
+
+        when:
+        service.allSegmentsByTime.get(dataSourceName).set(
+                [(interval2.start): [(segment4.identifier): new SegmentInfo(segment4)]] as ConcurrentSkipListMap
+        )
+
+        then:
+        before == Optional.of(signature(availabilityList2))
+        generator.getSegmentSetId(timeSeriesQuery) != before
     }
 
     @Unroll
@@ -165,7 +191,7 @@ class SegmentIntervalsHashIdGeneratorSpec extends BaseDataSourceMetadataSpec {
 
         where:
         query           | segmentId
-        timeSeriesQuery | availabilityList2.hashCode() as Long
-        lookbackQuery   | availabilityList1.hashCode() as Long
+        timeSeriesQuery | signature(availabilityList2)
+        lookbackQuery   | signature(availabilityList1)
     }
 }
@@ -0,0 +1,89 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.metadata
+
+import org.joda.time.DateTime
+import org.joda.time.DateTimeZone
+
+import spock.lang.Specification
+
+import java.util.concurrent.ConcurrentSkipListMap
+
+class SegmentSignaturesSpec extends Specification {
+
+    static DateTime hour(int hour) {
+        return new DateTime(2017, 1, 1, 0, 0, DateTimeZone.UTC).plusHours(hour)
+    }
+
+    static Map<String, SegmentInfo> bucket(String... identifiers) {
+        return identifiers.collectEntries { [(it): null] }
+    }
+
+    ConcurrentSkipListMap<DateTime, Map<String, SegmentInfo>> segments = [
+            (hour(0)): bucket("a", "b"),
+            (hour(1)): bucket("c"),
+            (hour(3)): bucket("d", "e", "f"),
+            (hour(7)): bucket("g")
+    ] as ConcurrentSkipListMap
+
+    /**
+     * The signature of a range as the sum of the signatures of its buckets, each looked up alone.
+     */
+    static long bruteForce(SegmentSignatures signatures, Collection<DateTime> starts, long from, long to) {
+        return starts.findAll { from <= it.millis && it.millis < to }
+                .collect { signatures.getSignature(it.millis, it.millis + 1) }
+                .sum(0L) as long
+    }
+
+    def "The signature of any range is the sum of the signatures of the buckets starting in it"() {
+        given:
+        SegmentSignatures signatures = SegmentSignatures.of(segments)
+
+        expect:
+        (-1..8).every { from ->
+            (from..9).every { to ->
+                signatures.getSignature(hour(from).millis, hour(to).millis) ==
+                        bruteForce(signatures, segments.keySet(), hour(from).millis, hour(to).millis)
+            }
+        }
+        signatures.getSignature(hour(2).millis, hour(3).millis) == 0
+        signatures.getSignature(hour(0).millis, hour(1).millis) != 0
+    }
+
+    def "Signatures depend on the segment identifiers and bucket starts, not on the order of the segments"() {
+        given:
+        long signature = SegmentSignatures.of(segments).getSignature(Long.MIN_VALUE, Long.MAX_VALUE)
+
+        expect:
+        SegmentSignatures.of(
+                [(hour(0)): bucket("b", "a"), (hour(1)): bucket("c"), (hour(3)): bucket("f", "e", "d"), (hour(7)): bucket("g")] as ConcurrentSkipListMap
+        ).getSignature(Long.MIN_VALUE, Long.MAX_VALUE) == signature
+        SegmentSignatures.of(
+                [(hour(0)): bucket("a", "b"), (hour(1)): bucket("c"), (hour(3)): bucket("d", "e", "f"), (hour(8)): bucket("g")] as ConcurrentSkipListMap
+        ).getSignature(Long.MIN_VALUE, Long.MAX_VALUE) != signature
+        SegmentSignatures.of(
+                [(hour(0)): bucket("a", "b"), (hour(1)): bucket("c"), (hour(3)): bucket("d", "e", "f2"), (hour(7)): bucket("g")] as ConcurrentSkipListMap
+        ).getSignature(Long.MIN_VALUE, Long.MAX_VALUE) != signature
+    }
+
+    def "Updating the signatures with the changed buckets matches building them from scratch"() {
+        given:
+        SegmentSignatures previous = SegmentSignatures.of(segments)
+        ConcurrentSkipListMap<DateTime, Map<String, SegmentInfo>> changed = new ConcurrentSkipListMap<>(segments)
+        changed.remove(hour(1))
+        changed.put(hour(3), bucket("d", "e"))
+        changed.put(hour(5), bucket("h"))
+
+        when:
+        SegmentSignatures updated = previous.update(changed, [hour(1), hour(3), hour(5)])
+        SegmentSignatures rebuilt = SegmentSignatures.of(changed)
+
+        then:
+        updated.isOf(changed)
+        !previous.isOf(changed)
+        (-1..8).every { from ->
+            updated.getSignature(hour(from).millis, hour(from + 2).millis) ==
+                    rebuilt.getSignature(hour(from).millis, hour(from + 2).millis)
+        }
+    }
+}
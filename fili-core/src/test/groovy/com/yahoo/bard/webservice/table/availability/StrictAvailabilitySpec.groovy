@@ -1,6 +1,7 @@
 package com.yahoo.bard.webservice.table.availability
 
 import com.yahoo.bard.webservice.data.config.names.DataSourceName
+import com.yahoo.bard.webservice.metadata.DataSourceMetadataService
 import com.yahoo.bard.webservice.metadata.TestDataSourceMetadataService
 import com.yahoo.bard.webservice.table.resolver.PhysicalDataSourceConstraint
 import com.yahoo.bard.webservice.util.SimplifiedIntervalList
@@ -97,4 +98,37 @@ class StrictAvailabilitySpec extends Specification{
         expect:
         strictAvailability.getAvailableIntervals(constraint) == new SimplifiedIntervalList()
     }
+
+    def "Available intervals are memoized until the version of the metadata changes"() {
+        given:
+        DataSourceMetadataService metadataService = Mock(DataSourceMetadataService)
+        strictAvailability = new StrictAvailability(DataSourceName.of('table'), metadataService)
+        PhysicalDataSourceConstraint constraint = Mock(PhysicalDataSourceConstraint)
+        constraint.allColumnPhysicalNames >> [columnPhysicalName1, columnPhysicalName2]
+
+        when: "The same columns are requested twice for a version"
+        SimplifiedIntervalList first = strictAvailability.getAvailableIntervals(constraint)
+        SimplifiedIntervalList second = strictAvailability.getAvailableIntervals(constraint)
+
+        then: "The metadata is only read once"
+        2 * metadataService.getVersion() >> 1
+        1 * metadataService.getAvailableIntervalsByDataSource(_) >> [
+                (columnPhysicalName1): new SimplifiedIntervalList([interval1]),
+                (columnPhysicalName2): new SimplifiedIntervalList([interval2])
+        ]
+        first == [new Interval('2010-01-01/2015-12-31')]
+        second == first
+        !second.is(first)
+
+        when: "The columns are requested after the metadata is updated"
+        SimplifiedIntervalList updated = strictAvailability.getAvailableIntervals(constraint)
+
+        then: "The metadata is read again"
+        1 * metadataService.getVersion() >> 2
+        1 * metadataService.getAvailableIntervalsByDataSource(_) >> [
+                (columnPhysicalName1): new SimplifiedIntervalList([interval1]),
+                (columnPhysicalName2): new SimplifiedIntervalList([interval1])
+        ]
+        updated == [interval1]
+    }
 }
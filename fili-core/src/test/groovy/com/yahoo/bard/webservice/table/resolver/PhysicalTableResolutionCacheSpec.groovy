@@ -0,0 +1,149 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.table.resolver
+
+import static com.yahoo.bard.webservice.data.time.DefaultTimeGrain.DAY
+import static com.yahoo.bard.webservice.data.time.DefaultTimeGrain.HOUR
+
+import com.yahoo.bard.webservice.data.dimension.BardDimensionField
+import com.yahoo.bard.webservice.data.dimension.Dimension
+import com.yahoo.bard.webservice.druid.model.query.Granularity
+import com.yahoo.bard.webservice.table.PhysicalTable
+import com.yahoo.bard.webservice.web.ApiFilter
+import com.yahoo.bard.webservice.web.FilterOperation
+
+import org.joda.time.Interval
+
+import spock.lang.Specification
+
+import java.util.concurrent.atomic.AtomicLong
+
+class PhysicalTableResolutionCacheSpec extends Specification {
+
+    AtomicLong version = new AtomicLong()
+    PhysicalTableResolutionCache cache = new PhysicalTableResolutionCache(version.&get, 10, 60000)
+
+    PhysicalTable table1 = Mock(PhysicalTable)
+    PhysicalTable table2 = Mock(PhysicalTable)
+
+    int resolutions = 0
+
+    PhysicalTableResolutionCache.Resolver resolveTo(PhysicalTable table) {
+        return { resolutions++; table } as PhysicalTableResolutionCache.Resolver
+    }
+
+    QueryPlanningConstraint constraint(
+            List<String> dimensionNames,
+            Granularity granularity = DAY,
+            String interval = "2017/2018",
+            Map<Dimension, Set<ApiFilter>> apiFilters = [:]
+    ) {
+        Set<Dimension> dimensions = dimensionNames.collect { name ->
+            Mock(Dimension) { getApiName() >> name }
+        } as Set
+        return Mock(QueryPlanningConstraint) {
+            getRequestDimensions() >> dimensions
+            getFilterDimensions() >> apiFilters.keySet()
+            getApiFilters() >> apiFilters
+            getMetricDimensions() >> ([] as Set)
+            getMetricNames() >> (["metric"] as Set)
+            getLogicalMetricNames() >> (["metric"] as Set)
+            getIntervals() >> ([new Interval(interval)] as Set)
+            getMinimumGranularity() >> granularity
+            getRequestGranularity() >> granularity
+        }
+    }
+
+    def "Requests with the same signature and tables are resolved once"() {
+        given:
+        long hits = PhysicalTableResolutionCache.HITS.count
+
+        expect:
+        cache.resolve([table1, table2], constraint(["a", "b"]), resolveTo(table1)) == table1
+        cache.resolve([table1, table2], constraint(["b", "a"]), resolveTo(table2)) == table1
+        resolutions == 1
+        PhysicalTableResolutionCache.HITS.count == hits + 1
+    }
+
+    def "Requests with a different signature or different tables are resolved again"() {
+        given:
+        cache.resolve([table1, table2], constraint(["a"]), resolveTo(table1))
+
+        expect:
+        cache.resolve([table1, table2], constraint(["a", "b"]), resolveTo(table2)) == table2
+        cache.resolve([table1, table2], constraint(["a"], HOUR), resolveTo(table2)) == table2
+        cache.resolve([table1, table2], constraint(["a"], DAY, "2016/2017"), resolveTo(table2)) == table2
+        cache.resolve([table2], constraint(["a"]), resolveTo(table2)) == table2
+        resolutions == 5
+    }
+
+    def "Resolutions are forgotten when the version changes"() {
+        given:
+        cache.resolve([table1], constraint(["a"]), resolveTo(table1))
+
+        when:
+        version.incrementAndGet()
+
+        then:
+        cache.resolve([table1], constraint(["a"]), resolveTo(table2)) == table2
+        resolutions == 2
+    }
+
+    def "Requests filtering on different values are resolved again"() {
+        given:
+        Dimension country = Mock(Dimension) { getApiName() >> "country" }
+        Map<Dimension, Set<ApiFilter>> usFilter = [(country): [filter(country, "US")] as Set]
+        Map<Dimension, Set<ApiFilter>> caFilter = [(country): [filter(country, "CA")] as Set]
+
+        expect:
+        cache.resolve([table1, table2], constraint(["a"], DAY, "2017/2018", usFilter), resolveTo(table1)) == table1
+        cache.resolve([table1, table2], constraint(["a"], DAY, "2017/2018", caFilter), resolveTo(table2)) == table2
+        cache.resolve([table1, table2], constraint(["a"], DAY, "2017/2018", usFilter), resolveTo(table2)) == table1
+        resolutions == 2
+    }
+
+    ApiFilter filter(Dimension dimension, String value) {
+        new ApiFilter(dimension, BardDimensionField.ID, FilterOperation.in, [value] as Set)
+    }
+
+    def "Nothing is remembered without a positive time to live"() {
+        given:
+        PhysicalTableResolutionCache expiring = new PhysicalTableResolutionCache(version.&get, 10, 0)
+
+        when:
+        expiring.resolve([table1], constraint(["a"]), resolveTo(table1))
+        expiring.resolve([table1], constraint(["a"]), resolveTo(table1))
+
+        then:
+        resolutions == 2
+    }
+
+    def "Failed resolutions are not remembered"() {
+        when:
+        cache.resolve([table1], constraint(["a"]), { throw new NoMatchFoundException("none") })
+
+        then:
+        thrown(NoMatchFoundException)
+
+        when:
+        PhysicalTable resolved = cache.resolve([table1], constraint(["a"]), resolveTo(table1))
+
+        then:
+        resolved == table1
+        resolutions == 1
+    }
+
+    def "No more than the maximum number of resolutions are remembered"() {
+        given:
+        PhysicalTableResolutionCache small = new PhysicalTableResolutionCache(version.&get, 1, 60000)
+        small.resolve([table1], constraint(["a"]), resolveTo(table1))
+        small.resolve([table1], constraint(["b"]), resolveTo(table1))
+
+        when:
+        small.resolve([table1], constraint(["a"]), resolveTo(table1))
+        small.resolve([table1], constraint(["b"]), resolveTo(table1))
+
+        then:
+        resolutions == 3
+    }
+}
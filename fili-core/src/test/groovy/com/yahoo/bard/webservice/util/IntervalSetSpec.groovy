@@ -0,0 +1,149 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.util
+
+import org.joda.time.Chronology
+import org.joda.time.DateTimeZone
+import org.joda.time.Interval
+import org.joda.time.chrono.ISOChronology
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class IntervalSetSpec extends Specification {
+
+    static IntervalSet set(List<List<Long>> times) {
+        return IntervalSet.of(times.collect { new Interval(it[0], it[1]) })
+    }
+
+    /**
+     * The instants of a set of intervals ending before 64, as the bits of a long.
+     */
+    static long bits(IntervalSet intervalSet) {
+        long bits = 0
+        (0..<intervalSet.size()).each { i ->
+            (intervalSet.getStartMillis(i)..<intervalSet.getEndMillis(i)).each { bits |= 1L << it }
+        }
+        return bits
+    }
+
+    /**
+     * Random intervals ending before 64.
+     */
+    static List<List<Long>> randomIntervals(Random random) {
+        return (0..<random.nextInt(6)).collect {
+            long start = random.nextInt(60)
+            [start, start + random.nextInt(64 - start as int)]
+        }
+    }
+
+    @Unroll
+    def "#input is built into #expected"() {
+        expect:
+        set(input).toSimplifiedIntervalList() == set(expected).toSimplifiedIntervalList()
+        set(input).toSimplifiedIntervalList() == new SimplifiedIntervalList(set(input).toSimplifiedIntervalList())
+
+        where:
+        input                              | expected
+        []                                 | []
+        [[5, 5]]                           | []
+        [[10, 20], [0, 5]]                 | [[0, 5], [10, 20]]
+        [[0, 5], [5, 10], [12, 14]]        | [[0, 10], [12, 14]]
+        [[0, 10], [2, 4], [8, 12], [1, 1]] | [[0, 12]]
+    }
+
+    def "A simplified interval list is converted without changes"() {
+        given:
+        SimplifiedIntervalList intervals = new SimplifiedIntervalList(
+                [new Interval("2014/2015"), new Interval("2016/2017"), new Interval("2017-06/2018")]
+        )
+
+        expect:
+        IntervalSet.of(intervals).toSimplifiedIntervalList() == intervals
+        IntervalSet.of(intervals).size() == 3
+    }
+
+    def "Union, intersection and difference match the sets of instants of random intervals"() {
+        given:
+        Random random = new Random(1234)
+
+        expect:
+        (1..2000).every {
+            IntervalSet left = set(randomIntervals(random))
+            IntervalSet right = set(randomIntervals(random))
+            bits(left.union(right)) == (bits(left) | bits(right)) &&
+                    bits(left.intersect(right)) == (bits(left) & bits(right)) &&
+                    bits(left.subtract(right)) == (bits(left) & ~bits(right)) &&
+                    [left.union(right), left.intersect(right), left.subtract(right)].every {
+                        it == IntervalSet.of(it.toSimplifiedIntervalList())
+                    }
+        }
+    }
+
+    @Unroll
+    def "Instant #instant is #description [[0, 5], [10, 20]]"() {
+        expect:
+        set([[0, 5], [10, 20]]).contains(instant as long) == contained
+
+        where:
+        instant | contained
+        -1      | false
+        0       | true
+        4       | true
+        5       | false
+        10      | true
+        19      | true
+        20      | false
+
+        description = contained ? "in" : "not in"
+    }
+
+    @Unroll
+    def "Interval #start/#end is contained #contained and overlaps #overlaps in [[0, 5], [10, 20]]"() {
+        given:
+        IntervalSet intervalSet = set([[0, 5], [10, 20]])
+        Interval interval = new Interval(start, end)
+
+        expect:
+        intervalSet.contains(interval) == contained
+        intervalSet.overlaps(interval) == overlaps
+
+        where:
+        start | end | contained | overlaps
+        0     | 5   | true      | true
+        1     | 3   | true      | true
+        3     | 7   | false     | true
+        5     | 10  | false     | false
+        4     | 11  | false     | true
+        12    | 20  | true      | true
+        19    | 25  | false     | true
+        20    | 25  | false     | false
+        -5    | 0   | false     | false
+    }
+
+    def "Sets with the same intervals are equal"() {
+        expect:
+        set([[0, 5], [5, 10]]) == set([[0, 10]])
+        set([[0, 5], [5, 10]]).hashCode() == set([[0, 10]]).hashCode()
+        set([[0, 5]]) != set([[0, 6]])
+        set([]) == IntervalSet.EMPTY
+    }
+
+    def "Intervals are built in the chronology of the intervals the set was built from"() {
+        given:
+        Chronology chronology = ISOChronology.getInstance(DateTimeZone.forID("America/Chicago"))
+        IntervalSet chicago = IntervalSet.of([new Interval(10, 20, chronology), new Interval(0, 5, chronology)])
+        IntervalSet utc = IntervalSet.of([new Interval(3, 15, ISOChronology.instanceUTC)])
+
+        expect:
+        chicago.toSimplifiedIntervalList().every { it.chronology == chronology }
+        chicago.union(utc).toSimplifiedIntervalList().every { it.chronology == chronology }
+        utc.subtract(chicago).toSimplifiedIntervalList() == [new Interval(5, 10, ISOChronology.instanceUTC)]
+        chicago.toString() == [new Interval(0, 5, chronology), new Interval(10, 20, chronology)].toString()
+    }
+
+    def "The total duration is the duration of the instants of the set"() {
+        expect:
+        set([[0, 5], [3, 10], [20, 25]]).totalDurationMillis == 15
+    }
+}
@@ -102,6 +102,25 @@ class IntervalUtilsSpec extends Specification {
         [grain, baseIntervals, expected] << sliceExpectedSets()
     }
 
+    @Unroll
+    def "Slicing #baseIntervals by day into at most #maxSlices slices groups adjacent days into #expected"() {
+        given:
+        List<Interval> baseIntervalList = buildIntervalList(baseIntervals)
+        Map<Interval, AtomicInteger> expectedSet = buildIntervalMap(expected)
+
+        expect:
+        IntervalUtils.getSlicedIntervals(baseIntervalList, DAY, maxSlices).
+                collectEntries { k, v -> [(k): v.get()] } == expectedSet
+
+        where:
+        baseIntervals                                      | maxSlices || expected
+        ["2015-01-01/2015-01-04"]                          | 0         || ["2015-01-01/2015-01-02", "2015-01-02/2015-01-03", "2015-01-03/2015-01-04"]
+        ["2015-01-01/2015-01-04"]                          | 3         || ["2015-01-01/2015-01-02", "2015-01-02/2015-01-03", "2015-01-03/2015-01-04"]
+        ["2015-01-01/2015-01-08"]                          | 3         || ["2015-01-01/2015-01-04", "2015-01-04/2015-01-07", "2015-01-07/2015-01-08"]
+        ["2015-01-01/2015-01-08"]                          | 1         || ["2015-01-01/2015-01-08"]
+        ["2015-01-01/2015-01-03", "2015-01-04/2015-01-06"] | 1         || ["2015-01-01/2015-01-03", "2015-01-04/2015-01-06"]
+    }
+
     static def sliceExpectedSets() {
         List results = []
         results.add(
@@ -2,6 +2,8 @@
 // Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
 package com.yahoo.bard.webservice.web
 
+import com.yahoo.bard.webservice.config.SystemConfig
+import com.yahoo.bard.webservice.config.SystemConfigProvider
 import com.yahoo.bard.webservice.web.RateLimiter.RequestToken
 import com.yahoo.bard.webservice.web.RateLimiter.RequestType
 import com.yahoo.bard.webservice.web.filters.RateLimitFilterSpec
@@ -9,9 +11,13 @@ import com.yahoo.bard.webservice.web.filters.RateLimitFilterSpec
 import spock.lang.Specification
 
 import java.security.Principal
+import java.util.concurrent.TimeUnit
+import java.util.function.LongSupplier
 
 class RateLimiterSpec extends Specification {
 
+    static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance()
+
     RateLimiter rateLimiter
     Principal user
 
@@ -186,4 +192,93 @@ class RateLimiterSpec extends Specification {
         rateLimiter.rejectUiMeter.count == 0
         rateLimiter.rejectUserMeter.count == 0
     }
+
+    def "Token buckets reject a heavy user without throttling a light one"() {
+        given: "token buckets of 100 tokens per user and 150 globally, refilling at 1 token per second"
+        Map originals = enableTokenBuckets(rate: 1, burstPerUser: 100, burstGlobal: 150)
+        long now = 0
+        RateLimiter limiter = new RateLimiter({ now } as LongSupplier)
+        Principal heavy = Mock(Principal) { getName() >> "heavy" }
+        Principal light = Mock(Principal) { getName() >> "light" }
+
+        when: "the heavy user spends their bucket"
+        RequestToken first = limiter.getToken(RequestType.USER, heavy, 90)
+        boolean firstBound = first.bound
+        first.close()
+        RequestToken second = limiter.getToken(RequestType.USER, heavy, 20)
+
+        then: "the heavy user is rejected without holding any count, while the light user is served"
+        firstBound
+        !second.bound
+        limiter.globalCount.get() == 0
+        limiter.userCounts.heavy.get() == 0
+        limiter.rejectCostMeter.count >= 1
+        limiter.getToken(RequestType.USER, light, 20).bound
+
+        when: "the global bucket runs low"
+        RequestToken lightRejected = limiter.getToken(RequestType.USER, light, 50)
+
+        then: "the light user's tokens are refunded"
+        !lightRejected.bound
+        limiter.getToken(RequestType.USER, light, 40).bound
+
+        when: "time passes"
+        now += TimeUnit.SECONDS.toNanos(20)
+
+        then:
+        limiter.getToken(RequestType.USER, heavy, 20).bound
+
+        cleanup:
+        restore(originals)
+    }
+
+    def "Token buckets of idle users are dropped"() {
+        given:
+        Map originals = enableTokenBuckets(rate: 1, burstPerUser: 10, burstGlobal: 100, idleMs: 1000)
+        long now = 0
+        RateLimiter limiter = new RateLimiter({ now } as LongSupplier)
+        limiter.getToken(RequestType.USER, user, 5).close()
+
+        expect:
+        limiter.userBucketCount == 1
+
+        when: "the bucket refills and stays full for the idle time"
+        now += TimeUnit.SECONDS.toNanos(6)
+        limiter.getToken(RequestType.USER, Mock(Principal) { getName() >> "other" }, 1).close()
+
+        then:
+        limiter.userBucketCount == 1
+        limiter.userBuckets.keySet() == ["other"] as Set
+
+        cleanup:
+        restore(originals)
+    }
+
+    def "Costs are not charged while token buckets are disabled"() {
+        expect:
+        !rateLimiter.tokenBucketEnabled
+        rateLimiter.getToken(RequestType.USER, user, Long.MAX_VALUE).bound
+    }
+
+    /**
+     * Enable token buckets with the given settings, returning the settings they replaced.
+     */
+    static Map enableTokenBuckets(Map settings) {
+        Map values = [
+                (RateLimiter.TOKEN_BUCKET_ENABLED_KEY): "true",
+                (RateLimiter.TOKEN_RATE_PER_USER_KEY): settings.rate as String,
+                (RateLimiter.TOKEN_RATE_GLOBAL_KEY): settings.rate as String,
+                (RateLimiter.TOKEN_BURST_PER_USER_KEY): settings.burstPerUser as String,
+                (RateLimiter.TOKEN_BURST_GLOBAL_KEY): settings.burstGlobal as String,
+                (RateLimiter.TOKEN_BUCKET_IDLE_EVICTION_KEY): (settings.idleMs ?: 600000) as String
+        ]
+        return values.collectEntries { key, value -> [(key): SYSTEM_CONFIG.setProperty(key, value)] }
+    }
+
+    /**
+     * Restore the settings replaced by enableTokenBuckets.
+     */
+    static void restore(Map originals) {
+        originals.each { key, value -> SYSTEM_CONFIG.resetProperty(key, value) }
+    }
 }
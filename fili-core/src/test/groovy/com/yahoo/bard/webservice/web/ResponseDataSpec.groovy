@@ -24,6 +24,9 @@ import com.yahoo.bard.webservice.util.DateTimeFormatterFactory
 import com.yahoo.bard.webservice.util.Pagination
 import com.yahoo.bard.webservice.util.SimplifiedIntervalList
 
+import com.fasterxml.jackson.core.JsonGenerator
+import com.fasterxml.jackson.databind.ObjectMapper
+
 import org.joda.time.DateTime
 import org.joda.time.DateTimeZone
 
@@ -234,4 +237,56 @@ class ResponseDataSpec extends Specification {
         expect:
         row == expectedRow
     }
+
+    ObjectMapper mapper = new ObjectMapper()
+
+    /**
+     * Write the results of the result set with a row writer, and read them back.
+     *
+     * @param rowWriter  The row writer
+     *
+     * @return the rows written
+     */
+    List<Map<String, Object>> writeRows(ResultRowWriter rowWriter) {
+        StringWriter writer = new StringWriter()
+        JsonGenerator generator = mapper.getFactory().createGenerator(writer)
+        generator.writeStartArray()
+        resultSet.each { rowWriter.write(it, generator) }
+        generator.writeEndArray()
+        generator.close()
+        return mapper.readValue(writer.toString(), List)
+    }
+
+    /**
+     * Serialize rows built as maps, and read them back.
+     *
+     * @param rows  The rows
+     *
+     * @return the rows serialized
+     */
+    List<Map<String, Object>> serializeRows(List<Map<String, Object>> rows) {
+        return mapper.readValue(mapper.writeValueAsString(rows), List)
+    }
+
+    def "The row writer writes the rows built by build result row"() {
+        expect:
+        writeRows(response.buildResultRowWriter()) == serializeRows(resultSet.collect { response.buildResultRow(it) })
+    }
+
+    def "The row writer with sidecars writes the rows and sidecars built by build result row with sidecars"() {
+        given:
+        Map<Dimension, Set<Map<DimensionField, String>>> writerSidecars = [:]
+        Map<Dimension, Set<Map<DimensionField, String>>> expectedSidecars = [:]
+        resultSet.schema.getColumns(DimensionColumn).each {
+            writerSidecars.put(it.dimension, new LinkedHashSet<>())
+            expectedSidecars.put(it.dimension, new LinkedHashSet<>())
+        }
+
+        when:
+        List<Map<String, Object>> rows = writeRows(response.buildResultRowWriterWithSidecars(writerSidecars))
+
+        then:
+        rows == serializeRows(resultSet.collect { response.buildResultRowWithSidecars(it, expectedSidecars) })
+        writerSidecars == expectedSidecars
+    }
 }
@@ -0,0 +1,67 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web
+
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+class StripedTokenBucketSpec extends Specification {
+
+    static final long SECOND = TimeUnit.SECONDS.toNanos(1)
+
+    StripedTokenBucket bucket = new StripedTokenBucket(40, 4000, 4, 0)
+
+    def "A bucket is split into stripes of at least the minimum capacity"() {
+        expect:
+        new StripedTokenBucket(10, capacity, 4, 0).stripeCount == stripes
+
+        where:
+        capacity | stripes
+        100      | 1
+        1999     | 1
+        2000     | 2
+        4000     | 4
+        100000   | 4
+    }
+
+    def "Costs are gathered across stripes, and a cost the stripes can't cover takes nothing"() {
+        expect:
+        bucket.getAvailableTokens(0) == 4000
+        bucket.tryTake(3000, 0)
+        !bucket.tryTake(1001, 0)
+        bucket.getAvailableTokens(0) == 1000
+        bucket.tryTake(1000, 0)
+        !bucket.tryTake(1, 0)
+    }
+
+    def "The stripes refill at the rate of the bucket"() {
+        given:
+        bucket.tryTake(4000, 0)
+
+        expect:
+        bucket.getAvailableTokens(SECOND) == 40
+        bucket.tryTake(40, SECOND)
+        !bucket.tryTake(1, SECOND)
+        bucket.getAvailableTokens(1000 * SECOND) == 4000
+    }
+
+    def "A cost above the capacity takes the full bucket"() {
+        expect:
+        bucket.tryTake(10000, 0)
+        !bucket.tryTake(1, 0)
+        bucket.tryTake(10000, 100 * SECOND)
+    }
+
+    def "Concurrent takes never take more tokens than the bucket holds"() {
+        given:
+        StripedTokenBucket shared = new StripedTokenBucket(1, 10000, 4, 0)
+        List<Integer> taken = Collections.synchronizedList([])
+
+        when:
+        (1..8).collect { Thread.start { taken << (1..5000).count { shared.tryTake(1, 0) } } }*.join()
+
+        then:
+        taken.sum() == 10000
+    }
+}
@@ -0,0 +1,89 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web
+
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+class TokenBucketSpec extends Specification {
+
+    static final long SECOND = TimeUnit.SECONDS.toNanos(1)
+
+    TokenBucket bucket = new TokenBucket(10, 100, 0)
+
+    def "A new bucket is full, and refuses tokens once empty"() {
+        expect:
+        bucket.getAvailableTokens(0) == 100
+        bucket.tryTake(60, 0)
+        bucket.tryTake(40, 0)
+        !bucket.tryTake(1, 0)
+        bucket.getAvailableTokens(0) == 0
+    }
+
+    def "A bucket refills at its rate up to its capacity"() {
+        given:
+        bucket.tryTake(100, 0)
+
+        expect:
+        bucket.getAvailableTokens(SECOND) == 10
+        !bucket.tryTake(11, SECOND)
+        bucket.tryTake(10, SECOND)
+        bucket.getAvailableTokens(100 * SECOND) == 100
+    }
+
+    def "A cost above the capacity takes the full bucket"() {
+        expect:
+        bucket.tryTake(1000, 0)
+        !bucket.tryTake(1, 0)
+        !bucket.tryTake(1000, 9 * SECOND)
+        bucket.tryTake(1000, 10 * SECOND)
+    }
+
+    def "Refunded tokens can be taken again"() {
+        given:
+        bucket.tryTake(100, 0)
+
+        when:
+        bucket.refund(30)
+
+        then:
+        bucket.getAvailableTokens(0) == 30
+        bucket.tryTake(30, 0)
+    }
+
+    def "A bucket is idle once it has been full for the idle time"() {
+        given:
+        bucket.tryTake(50, 0)
+
+        expect: "the bucket is full again after 5 seconds"
+        !bucket.isIdle(5 * SECOND, SECOND)
+        !bucket.isIdle(6 * SECOND - 1, SECOND)
+        bucket.isIdle(6 * SECOND, SECOND)
+    }
+
+    def "Concurrent takes never take more tokens than the bucket holds"() {
+        given:
+        TokenBucket shared = new TokenBucket(1, 10000, 0)
+        List<Integer> taken = Collections.synchronizedList([])
+
+        when:
+        (1..8).collect { Thread.start { taken << (1..5000).count { shared.tryTake(1, 0) } } }*.join()
+
+        then:
+        taken.sum() == 10000
+    }
+
+    def "A bucket needs a positive rate and capacity"() {
+        when:
+        new TokenBucket(rate, capacity, 0)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        rate | capacity
+        0    | 10
+        10   | 0
+    }
+}
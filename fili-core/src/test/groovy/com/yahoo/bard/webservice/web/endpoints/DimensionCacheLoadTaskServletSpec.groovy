@@ -246,6 +246,37 @@ class DimensionCacheLoadTaskServletSpec extends Specification {
                 .containsAll(dimensionUserCountry.searchProvider.findAllDimensionRows())
     }
 
+    def "addReplaceDimensionRows reads only the dimension rows of the payload, however many there are"() {
+        setup:
+        List<Map<String, String>> rows = (1..2500).collect {
+            [id: "country$it" as String, description: "Country $it" as String]
+        }
+        String post = MAPPERS.mapper.writeValueAsString([
+                before: [nested: [dimensionRows: [[id: "ignored"]]]],
+                dimensionRows: rows,
+                after: "ignored"
+        ])
+
+        when:
+        Response r = dimensionCacheLoaderServlet.addReplaceDimensionRows("user_country", post)
+
+        then:
+        r.getStatusInfo() == Status.OK
+        dimensionUserCountry.findDimensionRowByKeyValue("country1").get(BardDimensionField.DESC) == "Country 1"
+        dimensionUserCountry.findDimensionRowByKeyValue("country2500").get(BardDimensionField.DESC) == "Country 2500"
+        dimensionUserCountry.findDimensionRowByKeyValue("ignored") == null
+        dimensionUserCountry.searchProvider.findAllDimensionRows().size() == 2502
+    }
+
+    def "A payload without a dimension rows array is rejected"() {
+        expect:
+        dimensionCacheLoaderServlet.addReplaceDimensionRows("user_country", post).status == 500
+        dimensionCacheLoaderServlet.addUpdateDimensionRows("user_country", post).status == 500
+
+        where:
+        post << ['[]', '{"rows": []}', '{"dimensionRows": {"id": "usa"}}', '{"dimensionRows": ["usa"]}']
+    }
+
     def "Check servlet getDimensionLastUpdated"() {
         setup:
         String expected = """{"name":"gender","lastUpdated":"$lastUpdated"}"""
@@ -12,6 +12,8 @@ import com.yahoo.bard.webservice.async.jobs.payloads.JobPayloadBuilder
 import com.yahoo.bard.webservice.async.preresponses.stores.PreResponseStore
 import com.yahoo.bard.webservice.async.preresponses.stores.PreResponseTestingUtils
 import com.yahoo.bard.webservice.async.broadcastchannels.SimpleBroadcastChannel
+import com.yahoo.bard.webservice.logging.RequestLog
+import com.yahoo.bard.webservice.web.ApiRequest
 import com.yahoo.bard.webservice.web.JobsApiRequest
 import com.yahoo.bard.webservice.web.JsonResponseWriter
 import com.yahoo.bard.webservice.web.PreResponse
@@ -28,7 +30,11 @@ import spock.lang.Specification
 import spock.lang.Timeout
 
 import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
 
+import javax.ws.rs.container.AsyncResponse
+import javax.ws.rs.container.ContainerRequestContext
+import javax.ws.rs.core.Response
 import javax.ws.rs.core.UriInfo
 
 /**
@@ -187,6 +193,120 @@ class JobsServletReactiveChainforResultsEndpointSpec extends Specification {
         testSubscriber.assertNoValues()
     }
 
+    def "The listener for the ticket's notification is dropped once the async timeout expires"() {
+        setup:
+        TestSubscriber<PreResponse> testSubscriber = new TestSubscriber<>()
+
+        when:
+        jobsServlet.getResults("ticket5", 5).subscribe(testSubscriber)
+        testSubscriber.awaitTerminalEvent()
+
+        then:
+        testSubscriber.assertNoValues()
+        jobsServlet.notificationRegistry.size() == 0
+    }
+
+    def "The listener for the ticket's notification is dropped when a results request finds the results in the store"() {
+        setup:
+        TestSubscriber<PreResponse> resultsSubscriber = new TestSubscriber<>()
+        JobsServlet resultsServlet = new JobsServlet(
+                objectMappersSuite,
+                apiJobStore,
+                jobPayloadBuilder,
+                preResponseStore,
+                broadcastChannel,
+                requestMapper,
+                httpResponseMaker
+        ) {
+            @Override
+            protected void handleResultsResponse(
+                    Observable<PreResponse> preResponseObservable,
+                    AsyncResponse asyncResponse,
+                    ApiRequest apiRequest
+            ) {
+                preResponseObservable.subscribe(resultsSubscriber)
+            }
+        }
+        requestMapper.apply(_, _) >> { it[0] }
+        PreResponse preResponse = PreResponseTestingUtils.buildPreResponse("2016-04-23")
+        preResponseStore.save("ticket6", preResponse).toBlocking().first()
+
+        when:
+        resultsServlet.getJobResultsByTicket(
+                "ticket6",
+                null,
+                "never",
+                "",
+                "",
+                uriInfo,
+                Mock(ContainerRequestContext),
+                Mock(AsyncResponse)
+        )
+
+        then:
+        resultsSubscriber.assertValue(preResponse)
+        // The servlet is a subclass, so its registry is read through the JobsServlet field
+        JobsServlet.getDeclaredField("notificationRegistry").with {
+            accessible = true
+            get(resultsServlet).size()
+        } == 0
+    }
+
+    def "A results request resumed on the async timeout hands its request log to the resuming thread"() {
+        setup:
+        JobsServlet timeoutServlet = new JobsServlet(
+                objectMappersSuite,
+                apiJobStore,
+                jobPayloadBuilder,
+                preResponseStore,
+                broadcastChannel,
+                requestMapper,
+                httpResponseMaker
+        ) {
+            @Override
+            protected Observable<Response> handleJobResponse(String ticket, JobsApiRequest apiRequest) {
+                return Observable.just(Response.ok().build())
+            }
+        }
+        requestMapper.apply(_, _) >> { it[0] }
+        String requestId = RequestLog.getId()
+        String resumedId = null
+        String resumedThread = null
+        CountDownLatch resumed = new CountDownLatch(1)
+        AsyncResponse asyncResponse = Mock(AsyncResponse) {
+            resume(_ as Response) >> {
+                resumedId = RequestLog.getId()
+                resumedThread = Thread.currentThread().name
+                RequestLog.dump()
+                resumed.countDown()
+                true
+            }
+        }
+
+        when:
+        timeoutServlet.getJobResultsByTicket(
+                "ticket7",
+                null,
+                "5",
+                "",
+                "",
+                uriInfo,
+                Mock(ContainerRequestContext),
+                asyncResponse
+        )
+
+        then: "The request thread no longer holds the request log"
+        RequestLog.getId() != requestId
+
+        and: "The thread resuming the response on the timeout holds it"
+        resumed.await(10, TimeUnit.SECONDS)
+        resumedId == requestId
+        resumedThread != Thread.currentThread().name
+
+        cleanup:
+        RequestLog.dump()
+    }
+
     def "If the PreResponse is available in the PreResponseStore and we miss the notification from broadcastChannel, we go to the PreResponseStore exactly once"() {
         setup:
         JobsApiRequest apiRequest1 = new JobsApiRequest(
@@ -13,9 +13,15 @@ import com.yahoo.bard.webservice.web.endpoints.TestFilterServlet
 import spock.lang.IgnoreIf
 import spock.lang.Specification
 import spock.lang.Timeout
+import spock.lang.Unroll
 
 import java.util.concurrent.atomic.AtomicInteger
 
+import javax.ws.rs.container.ContainerRequestContext
+import javax.ws.rs.core.MultivaluedHashMap
+import javax.ws.rs.core.PathSegment
+import javax.ws.rs.core.UriInfo
+
 /* Do not test on Jenkins since URL requests are inconsistent */
 @Timeout(30)    // Fail test if hangs
 @IgnoreIf({System.getenv("BUILD_NUMBER") != null})
@@ -249,6 +255,33 @@ class RateLimitFilterSpec extends Specification {
         TestOptions.fail.get() == 0
     }
 
+    @Unroll
+    def "A request for #path?dateTime=#dateTime costs #cost"() {
+        given:
+        ContainerRequestContext request = Mock(ContainerRequestContext) {
+            getUriInfo() >> Mock(UriInfo) {
+                getPathSegments() >> path.split("/").collect { segment -> Mock(PathSegment) { getPath() >> segment } }
+                getQueryParameters() >> new MultivaluedHashMap<>(dateTime == null ? [:] : [dateTime: dateTime])
+            }
+        }
+
+        expect:
+        TestRateLimitFilter.instance.estimateCost(request) == cost
+
+        where:
+        path                          | dateTime                          | cost
+        "v1/data/shapes/day"          | "2017-01-01/2017-01-08"           | 7
+        "v1/data/shapes/day/color"    | "2017-01-01/2017-01-08,2017/2018" | 7 + 365
+        "v1/data/shapes/hour"         | "2017-01-01/P2D"                  | 48
+        "v1/data/shapes/month"        | "2017-01-01/2017-01-08"           | 1
+        "v1/data/shapes/all"          | "2010/2020"                       | 1
+        "v1/data/shapes/day"          | "P3D/current"                     | 3
+        "v1/data/shapes/day"          | "not an interval"                 | 1
+        "v1/data/shapes/fortnight"    | "2017-01-01/2017-01-08"           | 1
+        "v1/data/shapes/day"          | null                              | 1
+        "v1/dimensions/color"         | "2017-01-01/2017-01-08"           | 1
+    }
+
     final static class TestOptions extends MultiThreadedTest.Once {
 
         static AtomicInteger ok = new AtomicInteger()
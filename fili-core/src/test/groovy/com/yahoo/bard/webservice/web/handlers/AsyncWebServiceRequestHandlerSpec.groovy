@@ -2,12 +2,16 @@
 // Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
 package com.yahoo.bard.webservice.web.handlers
 
+import com.yahoo.bard.webservice.config.BardFeatureFlag
 import com.yahoo.bard.webservice.druid.client.DruidWebService
+import com.yahoo.bard.webservice.druid.client.StreamingSuccessCallback
 import com.yahoo.bard.webservice.druid.client.SuccessCallback
 import com.yahoo.bard.webservice.druid.model.query.GroupByQuery
 import com.yahoo.bard.webservice.web.DataApiRequest
 import com.yahoo.bard.webservice.web.responseprocessors.ResponseProcessor
+import com.yahoo.bard.webservice.web.responseprocessors.StreamingResponseProcessor
 
+import com.fasterxml.jackson.core.JsonParser
 import com.fasterxml.jackson.databind.JsonNode
 import com.fasterxml.jackson.databind.ObjectMapper
 import com.fasterxml.jackson.databind.ObjectWriter
@@ -53,4 +57,38 @@ class AsyncWebServiceRequestHandlerSpec extends Specification {
         then:
         1 * response.processResponse(rootNode, groupByQuery, _)
     }
+
+    def "With streaming parsing on, a streaming response processor gets a streaming success callback"() {
+        setup:
+        BardFeatureFlag.STREAMING_RESPONSE_PARSING.setOn(true)
+        DruidWebService dws = Mock(DruidWebService)
+        RequestContext rc = Mock(RequestContext)
+        DataApiRequest request = Mock(DataApiRequest)
+        GroupByQuery groupByQuery = Mock(GroupByQuery)
+        StreamingResponseProcessor response = Mock(StreamingResponseProcessor)
+        JsonParser parser = Mock(JsonParser)
+
+        AsyncWebServiceRequestHandler handler = new AsyncWebServiceRequestHandler(dws, Mock(ObjectMapper))
+
+        SuccessCallback sc = null
+
+        when:
+        handler.handleRequest(rc, request, groupByQuery, response)
+
+        then:
+        1 * dws.postDruidQuery(rc, _, _, _, groupByQuery) >> { a0, a1, a2, a3, a4 ->
+            sc = a1
+            return Mock(Future)
+        }
+        sc instanceof StreamingSuccessCallback
+
+        when:
+        ((StreamingSuccessCallback) sc).invoke(parser)
+
+        then:
+        1 * response.processResponse(parser, groupByQuery, _)
+
+        cleanup:
+        BardFeatureFlag.STREAMING_RESPONSE_PARSING.reset()
+    }
 }
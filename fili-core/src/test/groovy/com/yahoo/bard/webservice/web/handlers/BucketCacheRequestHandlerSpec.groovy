@@ -0,0 +1,250 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web.handlers
+
+import com.yahoo.bard.webservice.application.ObjectMappersSuite
+import com.yahoo.bard.webservice.config.BardFeatureFlag
+import com.yahoo.bard.webservice.data.cache.HashDataCache
+import com.yahoo.bard.webservice.data.cache.MemTupleDataCache
+import com.yahoo.bard.webservice.data.cache.TupleDataCache
+import com.yahoo.bard.webservice.druid.model.orderby.LimitSpec
+import com.yahoo.bard.webservice.druid.model.query.AllGranularity
+import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery
+import com.yahoo.bard.webservice.druid.model.query.GroupByQuery
+import com.yahoo.bard.webservice.logging.RequestLog
+import com.yahoo.bard.webservice.metadata.QuerySigningService
+import com.yahoo.bard.webservice.metadata.SegmentIntervalsHashIdGenerator
+import com.yahoo.bard.webservice.web.DataApiRequest
+import com.yahoo.bard.webservice.web.RequestUtils
+import com.yahoo.bard.webservice.web.responseprocessors.BucketCacheResponseProcessor
+import com.yahoo.bard.webservice.web.responseprocessors.CacheV2ResponseProcessor
+import com.yahoo.bard.webservice.web.responseprocessors.LoggingContext
+import com.yahoo.bard.webservice.web.responseprocessors.ResponseContext
+import com.yahoo.bard.webservice.web.responseprocessors.ResponseProcessor
+
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.ObjectMapper
+
+import org.joda.time.Interval
+
+import spock.lang.Specification
+
+import javax.ws.rs.container.ContainerRequestContext
+import javax.ws.rs.core.MultivaluedHashMap
+
+class BucketCacheRequestHandlerSpec extends Specification {
+
+    ObjectMapper mapper = new ObjectMappersSuite().getMapper()
+
+    DataRequestHandler next = Mock(DataRequestHandler)
+    TupleDataCache<String, Long, Serializable> dataCache = Mock(TupleDataCache)
+    QuerySigningService<Long> querySigningService = Mock(SegmentIntervalsHashIdGenerator)
+    BucketCacheRequestHandler handler = new BucketCacheRequestHandler(next, dataCache, querySigningService, mapper)
+
+    Map<String, TupleDataCache.DataEntry<String, Long, Serializable>> entries = [:]
+
+    DataApiRequest apiRequest = Mock(DataApiRequest)
+    ResponseProcessor response = Mock(ResponseProcessor)
+    ResponseProcessor earlierResponse = Stub(ResponseProcessor) { getResponseContext() >> new ResponseContext() }
+
+    def setup() {
+        RequestLog.dump()
+        querySigningService.getSegmentSetId(_) >> Optional.of(1234L)
+        dataCache.get(_, _) >> { entries[it[0] as String] }
+        dataCache.set(_, _, _) >> {
+            entries[it[0] as String] = new MemTupleDataCache.DataEntry(it[0] as String, it[1] as Long, it[2])
+            true
+        }
+        response.getResponseContext() >> new ResponseContext()
+    }
+
+    def cleanup() {
+        RequestLog.dump()
+    }
+
+    RequestContext buildContext() {
+        ContainerRequestContext containerRequestContext = Mock(ContainerRequestContext)
+        containerRequestContext.getHeaders() >> (["ClientId": "UI"] as MultivaluedHashMap<String, String>)
+        return new RequestContext(containerRequestContext, true)
+    }
+
+    GroupByQuery buildQuery(String interval) {
+        return RequestUtils.buildGroupByQuery().withAllIntervals([new Interval(interval)])
+    }
+
+    JsonNode rows(String... days) {
+        return mapper.readTree(
+                "[" + days.collect { """{"version": "v1", "timestamp": "${it}T00:00:00.000Z", "event": {}}""" }
+                        .join(", ") + "]"
+        )
+    }
+
+    List<String> timestamps(JsonNode json) {
+        return json.collect { it.get("timestamp").asText().substring(0, 10) }
+    }
+
+    def "A query without cached buckets is sent as a whole and its buckets are cached"() {
+        given:
+        GroupByQuery query = buildQuery("2015-01-01/2015-01-04")
+        ResponseProcessor sentResponse
+        DruidAggregationQuery<?> sentQuery
+        JsonNode merged
+
+        when:
+        handler.handleRequest(buildContext(), apiRequest, query, response)
+
+        then:
+        1 * next.handleRequest(_, apiRequest, _, _) >> { sentQuery = it[2]; sentResponse = it[3]; true }
+        sentQuery.intervals == [new Interval("2015-01-01/2015-01-04")]
+        sentResponse instanceof BucketCacheResponseProcessor
+
+        when:
+        sentResponse.processResponse(
+                rows("2015-01-01", "2015-01-02", "2015-01-03"),
+                sentQuery,
+                new LoggingContext(RequestLog.copy())
+        )
+
+        then:
+        1 * response.processResponse(_, query, _) >> { merged = it[0] }
+        timestamps(merged) == ["2015-01-01", "2015-01-02", "2015-01-03"]
+        entries.size() == 3
+    }
+
+    def "Only the buckets missing from the cache are sent, and merged in order with the cached buckets"() {
+        given: "The buckets of an earlier window are cached"
+        GroupByQuery earlier = buildQuery("2015-01-01/2015-01-04")
+        next.handleRequest(_, _, _, _) >> {
+            it[3].processResponse(
+                    rows("2015-01-01", "2015-01-02", "2015-01-03"),
+                    it[2],
+                    new LoggingContext(RequestLog.copy())
+            )
+            true
+        }
+        handler.handleRequest(buildContext(), apiRequest, earlier, earlierResponse)
+
+        and: "A window which has moved forward by a bucket"
+        GroupByQuery query = buildQuery("2015-01-02/2015-01-05")
+        RequestContext context = buildContext()
+        ResponseProcessor sentResponse
+        DruidAggregationQuery<?> sentQuery
+        JsonNode merged
+
+        when:
+        handler.handleRequest(context, apiRequest, query, response)
+
+        then: "Only the new bucket is sent"
+        1 * next.handleRequest(context, apiRequest, _, _) >> { sentQuery = it[2]; sentResponse = it[3]; true }
+        sentQuery.intervals == [new Interval("2015-01-04/2015-01-05")]
+        0 * response.processResponse(*_)
+
+        and: "Only the sent query is left to be answered"
+        context.numberOfIncoming.get() == 1
+        context.numberOfOutgoing.get() == 1
+
+        when:
+        sentResponse.processResponse(rows("2015-01-04"), sentQuery, new LoggingContext(RequestLog.copy()))
+
+        then: "The cached and fetched buckets are merged in time order"
+        1 * response.processResponse(_, query, _) >> { merged = it[0] }
+        timestamps(merged) == ["2015-01-02", "2015-01-03", "2015-01-04"]
+        entries.size() == 4
+    }
+
+    def "A query whose buckets are all cached is answered without sending it"() {
+        given:
+        GroupByQuery query = buildQuery("2015-01-01/2015-01-03")
+        JsonNode merged
+        next.handleRequest(_, _, _, _) >> {
+            it[3].processResponse(rows("2015-01-01", "2015-01-02"), it[2], new LoggingContext(RequestLog.copy()))
+            true
+        }
+        handler.handleRequest(buildContext(), apiRequest, query, earlierResponse)
+
+        when:
+        handler.handleRequest(buildContext(), apiRequest, query, response)
+
+        then:
+        0 * next.handleRequest(*_)
+        1 * response.processResponse(_, query, _) >> { merged = it[0] }
+        timestamps(merged) == ["2015-01-01", "2015-01-02"]
+    }
+
+    def "Queries whose buckets can't be answered separately are cached whole"() {
+        when:
+        handler.handleRequest(buildContext(), apiRequest, query, response)
+
+        then:
+        1 * next.handleRequest(_, apiRequest, query, { it instanceof CacheV2ResponseProcessor }) >> true
+
+        where:
+        query << [
+                buildQuery("2015-01-01/2015-01-04").withLimitSpec(new LimitSpec([] as LinkedHashSet)),
+                buildQuery("2015-01-01/2015-01-04").withGranularity(AllGranularity.INSTANCE),
+                buildQuery("2015-01-01/2015-01-02")
+        ]
+    }
+
+    def "A query already expecting several responses is answered whole, leaving both counters unchanged"() {
+        given: "The buckets of an earlier window are cached"
+        next.handleRequest(_, _, _, _) >> {
+            it[3].processResponse(
+                    rows("2015-01-01", "2015-01-02", "2015-01-03"),
+                    it[2],
+                    new LoggingContext(RequestLog.copy())
+            )
+            true
+        }
+        handler.handleRequest(buildContext(), apiRequest, buildQuery("2015-01-01/2015-01-04"), earlierResponse)
+
+        and: "A context which already expects a second outgoing query"
+        GroupByQuery query = buildQuery("2015-01-02/2015-01-05")
+        RequestContext context = buildContext()
+        context.numberOfOutgoing.set(2)
+
+        when:
+        handler.handleRequest(context, apiRequest, query, response)
+
+        then:
+        1 * next.handleRequest(context, apiRequest, query, { it instanceof CacheV2ResponseProcessor }) >> true
+        context.numberOfIncoming.get() == 1
+        context.numberOfOutgoing.get() == 2
+    }
+
+    def "With fingerprint cache keys, buckets carry their query checksum and a mismatching bucket is a miss"() {
+        setup:
+        BardFeatureFlag.QUERY_FINGERPRINT_CACHE_KEYS.setOn(true)
+        GroupByQuery query = buildQuery("2015-01-01/2015-01-04")
+        next.handleRequest(_, _, _, _) >> {
+            it[3].processResponse(
+                    rows("2015-01-01", "2015-01-02", "2015-01-03"),
+                    it[2],
+                    new LoggingContext(RequestLog.copy())
+            )
+            true
+        }
+        handler.handleRequest(buildContext(), apiRequest, query, earlierResponse)
+
+        and: "The entry of the middle bucket was stored for a different query"
+        String middleKey = buildQuery("2015-01-02/2015-01-03").getFingerprint(mapper.writer())
+        TupleDataCache.DataEntry<String, Long, Serializable> middle = entries[middleKey]
+        entries[middleKey] = new MemTupleDataCache.DataEntry(
+                middleKey,
+                middle.meta,
+                new HashDataCache.Pair<>("0" * 64, (middle.value as HashDataCache.Pair).value)
+        )
+        DruidAggregationQuery<?> sentQuery
+
+        when:
+        handler.handleRequest(buildContext(), apiRequest, query, response)
+
+        then:
+        entries.values().every { it.value instanceof HashDataCache.Pair }
+        1 * next.handleRequest(_, apiRequest, _, _) >> { sentQuery = it[2]; true }
+        sentQuery.intervals == [new Interval("2015-01-02/2015-01-03")]
+
+        cleanup:
+        BardFeatureFlag.QUERY_FINGERPRINT_CACHE_KEYS.reset()
+    }
+}
@@ -3,8 +3,10 @@
 package com.yahoo.bard.webservice.web.handlers
 
 import com.yahoo.bard.webservice.application.ObjectMappersSuite
+import com.yahoo.bard.webservice.config.BardFeatureFlag
 import com.yahoo.bard.webservice.data.cache.DataCache
 import com.yahoo.bard.webservice.druid.model.query.GroupByQuery
+import com.yahoo.bard.webservice.druid.model.query.QueryFingerprint
 import com.yahoo.bard.webservice.druid.model.query.TimeSeriesQuery
 import com.yahoo.bard.webservice.druid.model.query.TopNQuery
 import com.yahoo.bard.webservice.web.DataApiRequest
@@ -19,6 +21,7 @@ import com.fasterxml.jackson.databind.ObjectWriter
 import com.fasterxml.jackson.databind.node.JsonNodeFactory
 
 import spock.lang.Specification
+import spock.lang.Unroll
 
 import javax.ws.rs.container.ContainerRequestContext
 import javax.ws.rs.core.MultivaluedHashMap
@@ -170,4 +173,30 @@ class CacheRequestHandlerSpec extends Specification {
         and: "Request is flagged as processed"
         requestProcessed
     }
+
+    @Unroll
+    def "With fingerprint cache keys, an entry stored with #description is #outcome"() {
+        setup:
+        BardFeatureFlag.QUERY_FINGERPRINT_CACHE_KEYS.setOn(true)
+        QueryFingerprint fingerprint = QueryFingerprint.compute(groupByQuery, mapper.writer())
+
+        when:
+        handler.handleRequest(requestContext, apiRequest, groupByQuery, response)
+
+        then:
+        1 * dataCache.get(fingerprint.key) >> value.call(fingerprint.checksum)
+        (hit ? 1 : 0) * response.processResponse(json, groupByQuery, _)
+        (hit ? 0 : 1) * next.handleRequest(requestContext, apiRequest, groupByQuery, _ as CachingResponseProcessor)
+
+        cleanup:
+        BardFeatureFlag.QUERY_FINGERPRINT_CACHE_KEYS.reset()
+
+        where:
+        description                | value                        | hit
+        "the query checksum"       | { it + "[]" }                | true
+        "another query's checksum" | { "0" * it.length() + "[]" } | false
+        "no checksum"              | { "[]" }                     | false
+
+        outcome = hit ? "a hit" : "a miss"
+    }
 }
@@ -3,9 +3,13 @@
 package com.yahoo.bard.webservice.web.handlers
 
 import com.yahoo.bard.webservice.application.ObjectMappersSuite
+import com.yahoo.bard.webservice.config.BardFeatureFlag
+import com.yahoo.bard.webservice.data.cache.CachedResponseFormat
+import com.yahoo.bard.webservice.data.cache.HashDataCache
 import com.yahoo.bard.webservice.data.cache.MemTupleDataCache
 import com.yahoo.bard.webservice.data.cache.TupleDataCache
 import com.yahoo.bard.webservice.druid.model.query.GroupByQuery
+import com.yahoo.bard.webservice.druid.model.query.QueryFingerprint
 import com.yahoo.bard.webservice.druid.model.query.TimeSeriesQuery
 import com.yahoo.bard.webservice.druid.model.query.TopNQuery
 import com.yahoo.bard.webservice.metadata.QuerySigningService
@@ -22,6 +26,7 @@ import com.fasterxml.jackson.databind.ObjectWriter
 import com.fasterxml.jackson.databind.node.JsonNodeFactory
 
 import spock.lang.Specification
+import spock.lang.Unroll
 
 import javax.ws.rs.container.ContainerRequestContext
 import javax.ws.rs.core.MultivaluedHashMap
@@ -36,7 +41,7 @@ class CacheV2RequestHandlerSpec extends Specification {
 
     DataRequestHandler next = Mock(DataRequestHandler)
 
-    TupleDataCache<String, Long, String> dataCache = Mock(TupleDataCache)
+    TupleDataCache<String, Long, Serializable> dataCache = Mock(TupleDataCache)
 
     DataApiRequest apiRequest = Mock(DataApiRequest)
     ResponseProcessor response = Mock(ResponseProcessor)
@@ -69,7 +74,7 @@ class CacheV2RequestHandlerSpec extends Specification {
         boolean requestProcessed = handler.handleRequest(requestContext, apiRequest, groupByQuery, response)
 
         then: "Check the cache and return valid json"
-        1 * dataCache.get(_) >> new MemTupleDataCache.DataEntry<String>("key1", 1234L, "[]")
+        1 * dataCache.get(_, 1234L) >> new MemTupleDataCache.DataEntry<String>("key1", 1234L, "[]")
 
         then: "Process the Json response"
         1 * response.processResponse(json, groupByQuery, _)
@@ -83,7 +88,7 @@ class CacheV2RequestHandlerSpec extends Specification {
         boolean requestProcessed = handler.handleRequest(requestContext, apiRequest, topNQuery, response)
 
         then: "Check the cache and return valid json"
-        1 * dataCache.get(_) >> new MemTupleDataCache.DataEntry<String>("key1", 1234L, "[]")
+        1 * dataCache.get(_, 1234L) >> new MemTupleDataCache.DataEntry<String>("key1", 1234L, "[]")
 
         then: "Process the Json response"
         1 * response.processResponse(json, topNQuery, _)
@@ -97,7 +102,7 @@ class CacheV2RequestHandlerSpec extends Specification {
         boolean requestProcessed = handler.handleRequest(requestContext, apiRequest, timeseriesQuery, response)
 
         then: "Check the cache and return valid json"
-        1 * dataCache.get(_) >> new MemTupleDataCache.DataEntry<String>("key1", 1234L, "[]")
+        1 * dataCache.get(_, 1234L) >> new MemTupleDataCache.DataEntry<String>("key1", 1234L, "[]")
 
         then: "Process the Json response"
         1 * response.processResponse(json, timeseriesQuery, _)
@@ -106,12 +111,33 @@ class CacheV2RequestHandlerSpec extends Specification {
         requestProcessed
     }
 
+    @Unroll
+    def "Test handle request on a #format cache hit responds with the cached json"() {
+        given: "A cache entry stored in a byte format"
+        Serializable value = format.encode(json, mapper.writer())
+
+        when: "A groupBy query runs with a valid cache hit"
+        boolean requestProcessed = handler.handleRequest(requestContext, apiRequest, groupByQuery, response)
+
+        then: "Check the cache and return the cached bytes"
+        1 * dataCache.get(_, 1234L) >> new MemTupleDataCache.DataEntry<Serializable>("key1", 1234L, value)
+
+        then: "Process the Json response"
+        1 * response.processResponse(json, groupByQuery, _)
+
+        and: "The request is marked as processed"
+        requestProcessed
+
+        where:
+        format << [CachedResponseFormat.BYTES, CachedResponseFormat.COMPRESSED_BYTES]
+    }
+
     def "Test handle request cache miss delegates response to next handler"() {
         when: "A request is sent that has a cache miss"
         boolean requestProcessed = handler.handleRequest(requestContext, apiRequest, groupByQuery, response)
 
         then: "The cache is checked for a match and misses"
-        1 * dataCache.get(_) >> null
+        1 * dataCache.get(_, 1234L) >> null
 
         then: "We delegate to the next handler, wrapping in a CacheV2ResponseProcessor"
         1 * next.handleRequest(requestContext, apiRequest, groupByQuery, _ as CacheV2ResponseProcessor) >> true
@@ -128,7 +154,7 @@ class CacheV2RequestHandlerSpec extends Specification {
         boolean requestProcessed = handler.handleRequest(requestContext, apiRequest, groupByQuery, response)
 
         then: "Check the cache and return a stale entry"
-        1 * dataCache.get(_) >> new MemTupleDataCache.DataEntry<String>("key1", 5678L, "[]")
+        1 * dataCache.get(_, 1234L) >> new MemTupleDataCache.DataEntry<String>("key1", 5678L, "[]")
 
         then: "We delegate to the next handler, wrapping in a CacheV2ResponseProcessor"
         1 * next.handleRequest(requestContext, apiRequest, groupByQuery, _ as CacheV2ResponseProcessor) >> true
@@ -148,7 +174,7 @@ class CacheV2RequestHandlerSpec extends Specification {
         boolean requestProcessed = handler.handleRequest(requestContext, apiRequest, groupByQuery, response)
 
         then: "The cache is not checked for a match"
-        0 * dataCache.get(_)
+        0 * dataCache.get(_, _)
 
         then: "We delegate to the next handler, wrapping in a CacheV2ResponseProcessor"
         1 * next.handleRequest(requestContext, apiRequest, groupByQuery, _ as CacheV2ResponseProcessor) >> true
@@ -165,7 +191,7 @@ class CacheV2RequestHandlerSpec extends Specification {
         boolean requestProcessed = handler.handleRequest(requestContext, apiRequest, groupByQuery, response)
 
         then: "The cache returns an invalid cache hit"
-        1 * dataCache.get(_) >> new MemTupleDataCache.DataEntry<String>("key1", 1234L, "...NOT VALID JSON")
+        1 * dataCache.get(_, 1234L) >> new MemTupleDataCache.DataEntry<String>("key1", 1234L, "...NOT VALID JSON")
 
         then: "Continue the request to the next handler with a CacheV2ResponseProcessor"
         1 * next.handleRequest(requestContext, apiRequest, groupByQuery, _ as CacheV2ResponseProcessor) >> true
@@ -174,6 +200,45 @@ class CacheV2RequestHandlerSpec extends Specification {
         requestProcessed
     }
 
+    def "The cache key is the query fingerprint when fingerprint cache keys are enabled"() {
+        setup:
+        BardFeatureFlag.QUERY_FINGERPRINT_CACHE_KEYS.setOn(true)
+
+        expect:
+        handler.getKey(groupByQuery) == groupByQuery.getFingerprint(mapper.writer())
+
+        cleanup:
+        BardFeatureFlag.QUERY_FINGERPRINT_CACHE_KEYS.reset()
+    }
+
+    @Unroll
+    def "With fingerprint cache keys, an entry stored with #description is #outcome"() {
+        setup:
+        BardFeatureFlag.QUERY_FINGERPRINT_CACHE_KEYS.setOn(true)
+        String queryChecksum = QueryFingerprint.compute(groupByQuery, mapper.writer()).checksum
+        Serializable value = checksum == null ? "[]" : new HashDataCache.Pair<>(checksum.call(queryChecksum), "[]")
+
+        when:
+        handler.handleRequest(requestContext, apiRequest, groupByQuery, response)
+
+        then:
+        1 * dataCache.get(groupByQuery.getFingerprint(mapper.writer()), 1234L) >>
+                new MemTupleDataCache.DataEntry<String>("key1", 1234L, value)
+        (hit ? 1 : 0) * response.processResponse(json, groupByQuery, _)
+        (hit ? 0 : 1) * next.handleRequest(requestContext, apiRequest, groupByQuery, _ as CacheV2ResponseProcessor)
+
+        cleanup:
+        BardFeatureFlag.QUERY_FINGERPRINT_CACHE_KEYS.reset()
+
+        where:
+        description                  | checksum                | hit
+        "the query checksum"         | { it }                  | true
+        "another query's checksum"   | { "0" * it.length() }   | false
+        "no checksum"                | null                    | false
+
+        outcome = hit ? "a hit" : "a miss"
+    }
+
     def "Test handle request key parse error delegates to next handler with original processor"() {
         setup:
         mapper = Mock(ObjectMapper)
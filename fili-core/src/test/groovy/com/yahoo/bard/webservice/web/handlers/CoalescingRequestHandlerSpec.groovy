@@ -0,0 +1,193 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web.handlers
+
+import com.yahoo.bard.webservice.druid.client.FailureCallback
+import com.yahoo.bard.webservice.druid.client.HttpErrorCallback
+import com.yahoo.bard.webservice.druid.model.query.GroupByQuery
+import com.yahoo.bard.webservice.logging.RequestLog
+import com.yahoo.bard.webservice.web.DataApiRequest
+import com.yahoo.bard.webservice.web.responseprocessors.DruidJsonRequestContentKeys
+import com.yahoo.bard.webservice.web.responseprocessors.LoggingContext
+import com.yahoo.bard.webservice.web.responseprocessors.ResponseProcessor
+
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.ObjectMapper
+
+import spock.lang.Specification
+
+import java.util.concurrent.atomic.AtomicLong
+
+import javax.ws.rs.core.MultivaluedHashMap
+
+class CoalescingRequestHandlerSpec extends Specification {
+
+    static final ObjectMapper MAPPER = new ObjectMapper()
+
+    DataRequestHandler next = Mock(DataRequestHandler)
+    CoalescingRequestHandler handler = new CoalescingRequestHandler(next, MAPPER)
+
+    DataApiRequest apiRequest = Mock(DataApiRequest)
+    GroupByQuery leaderQuery = Mock(GroupByQuery) { getFingerprint(_) >> "fingerprint" }
+    GroupByQuery followerQuery = Mock(GroupByQuery) { getFingerprint(_) >> "fingerprint" }
+    RequestContext leaderContext = buildContext()
+    RequestContext followerContext = buildContext()
+    ResponseProcessor leaderResponse = Mock(ResponseProcessor)
+    ResponseProcessor followerResponse = Mock(ResponseProcessor)
+
+    ResponseProcessor sentResponse
+
+    def setup() {
+        RequestLog.dump()
+    }
+
+    def cleanup() {
+        RequestLog.dump()
+    }
+
+    RequestContext buildContext(MultivaluedHashMap<String, String> headers = new MultivaluedHashMap<>()) {
+        AtomicLong incoming = new AtomicLong(1)
+        AtomicLong outgoing = new AtomicLong(1)
+        return Mock(RequestContext) {
+            getHeaders() >> headers
+            getNumberOfIncoming() >> incoming
+            getNumberOfOutgoing() >> outgoing
+        }
+    }
+
+    def "A query identical to a query in flight is not sent and receives the response of the query in flight"() {
+        given:
+        JsonNode json = MAPPER.readTree('[{"version": "v1"}]')
+
+        when:
+        handler.handleRequest(leaderContext, apiRequest, leaderQuery, leaderResponse)
+        boolean followerHandled = handler.handleRequest(followerContext, apiRequest, followerQuery, followerResponse)
+
+        then:
+        1 * next.handleRequest(leaderContext, apiRequest, leaderQuery, _) >> { sentResponse = it[3]; true }
+        followerHandled
+        handler.inFlightCount == 1
+        followerContext.numberOfOutgoing.get() == 0
+
+        when:
+        sentResponse.processResponse(json, leaderQuery, new LoggingContext(RequestLog.copy()))
+
+        then:
+        1 * followerResponse.processResponse(json, followerQuery, _)
+        1 * leaderResponse.processResponse(json, leaderQuery, _)
+        followerContext.numberOfIncoming.get() == 0
+        handler.inFlightCount == 0
+    }
+
+    def "Errors of a query in flight are handed to the requests waiting on it"() {
+        given:
+        HttpErrorCallback leaderError = Mock(HttpErrorCallback)
+        HttpErrorCallback followerError = Mock(HttpErrorCallback)
+        leaderResponse.getErrorCallback(leaderQuery) >> leaderError
+        followerResponse.getErrorCallback(followerQuery) >> followerError
+        next.handleRequest(*_) >> { sentResponse = it[3]; true }
+
+        handler.handleRequest(leaderContext, apiRequest, leaderQuery, leaderResponse)
+        handler.handleRequest(followerContext, apiRequest, followerQuery, followerResponse)
+
+        when:
+        sentResponse.getErrorCallback(leaderQuery).invoke(500, "Internal Server Error", "body")
+
+        then:
+        1 * followerError.invoke(500, "Internal Server Error", "body")
+        1 * leaderError.invoke(500, "Internal Server Error", "body")
+        handler.inFlightCount == 0
+    }
+
+    def "Failures of a query in flight are handed to the requests waiting on it"() {
+        given:
+        Throwable error = new RuntimeException("Druid is unavailable")
+        FailureCallback leaderFailure = Mock(FailureCallback)
+        FailureCallback followerFailure = Mock(FailureCallback)
+        leaderResponse.getFailureCallback(leaderQuery) >> leaderFailure
+        followerResponse.getFailureCallback(followerQuery) >> followerFailure
+        next.handleRequest(*_) >> { sentResponse = it[3]; true }
+
+        handler.handleRequest(leaderContext, apiRequest, leaderQuery, leaderResponse)
+        handler.handleRequest(followerContext, apiRequest, followerQuery, followerResponse)
+
+        when:
+        sentResponse.getFailureCallback(leaderQuery).invoke(error)
+
+        then:
+        1 * followerFailure.invoke(error)
+        1 * leaderFailure.invoke(error)
+        handler.inFlightCount == 0
+    }
+
+    def "A query identical to an answered query is sent again"() {
+        given:
+        next.handleRequest(*_) >> { sentResponse = it[3]; true }
+        handler.handleRequest(leaderContext, apiRequest, leaderQuery, leaderResponse)
+        sentResponse.processResponse(MAPPER.readTree('[]'), leaderQuery, new LoggingContext(RequestLog.copy()))
+
+        when:
+        handler.handleRequest(followerContext, apiRequest, followerQuery, followerResponse)
+
+        then:
+        1 * next.handleRequest(followerContext, apiRequest, followerQuery, _) >> true
+        handler.inFlightCount == 1
+    }
+
+    def "Queries with different fingerprints or ETags are both sent"() {
+        given:
+        GroupByQuery otherQuery = Mock(GroupByQuery) { getFingerprint(_) >> "other fingerprint" }
+        MultivaluedHashMap<String, String> headers = new MultivaluedHashMap<>()
+        headers.putSingle(DruidJsonRequestContentKeys.ETAG.getName(), "etag")
+        RequestContext eTagContext = buildContext(headers)
+
+        when:
+        handler.handleRequest(leaderContext, apiRequest, leaderQuery, leaderResponse)
+        handler.handleRequest(followerContext, apiRequest, otherQuery, followerResponse)
+        handler.handleRequest(eTagContext, apiRequest, followerQuery, followerResponse)
+
+        then:
+        3 * next.handleRequest(*_) >> true
+        handler.inFlightCount == 3
+    }
+
+    def "A query which fails to be sent fails the requests attached to it and is not left in flight"() {
+        given:
+        RuntimeException error = new IllegalStateException("query cannot be sent")
+        FailureCallback followerFailure = Mock(FailureCallback)
+        followerResponse.getFailureCallback(followerQuery) >> followerFailure
+        next.handleRequest(leaderContext, apiRequest, leaderQuery, _) >> {
+            // An identical query arrives while the query is being sent
+            handler.handleRequest(followerContext, apiRequest, followerQuery, followerResponse)
+            throw error
+        }
+
+        when:
+        handler.handleRequest(leaderContext, apiRequest, leaderQuery, leaderResponse)
+
+        then:
+        RuntimeException exception = thrown()
+        exception.is(error)
+        1 * followerFailure.invoke(error)
+        handler.inFlightCount == 0
+
+        when:
+        handler.handleRequest(buildContext(), apiRequest, followerQuery, followerResponse)
+
+        then:
+        1 * next.handleRequest(_, apiRequest, followerQuery, _) >> true
+        handler.inFlightCount == 1
+    }
+
+    def "A query which cannot be fingerprinted is sent without being coalesced"() {
+        given:
+        GroupByQuery badQuery = Mock(GroupByQuery) { getFingerprint(_) >> { throw new IOException("bad query") } }
+
+        when:
+        handler.handleRequest(leaderContext, apiRequest, badQuery, leaderResponse)
+
+        then:
+        1 * next.handleRequest(leaderContext, apiRequest, badQuery, leaderResponse) >> true
+        handler.inFlightCount == 0
+    }
+}
@@ -6,14 +6,19 @@ import static com.yahoo.bard.webservice.data.time.DefaultTimeGrain.DAY
 import static com.yahoo.bard.webservice.data.time.DefaultTimeGrain.MONTH
 import static com.yahoo.bard.webservice.druid.model.query.AllGranularity.INSTANCE
 
+import com.yahoo.bard.webservice.druid.client.FailureCallback
 import com.yahoo.bard.webservice.druid.client.HttpErrorCallback
 import com.yahoo.bard.webservice.druid.model.query.GroupByQuery
 import com.yahoo.bard.webservice.druid.model.query.Granularity
+import com.yahoo.bard.webservice.logging.RequestLog
 import com.yahoo.bard.webservice.util.SimplifiedIntervalList
 import com.yahoo.bard.webservice.web.DataApiRequest
+import com.yahoo.bard.webservice.web.responseprocessors.LoggingContext
 import com.yahoo.bard.webservice.web.responseprocessors.ResponseProcessor
 import com.yahoo.bard.webservice.web.responseprocessors.SplitQueryResponseProcessor
 
+import com.fasterxml.jackson.databind.ObjectMapper
+
 import org.joda.time.DateTime
 import org.joda.time.Duration
 import org.joda.time.Interval
@@ -25,6 +30,8 @@ import java.util.concurrent.atomic.AtomicLong
 
 class SplitQueryRequestHandlerSpec extends Specification {
 
+    static final ObjectMapper MAPPER = new ObjectMapper()
+
     DataRequestHandler next = Mock(DataRequestHandler)
 
     RequestContext rc = Mock(RequestContext)
@@ -110,6 +117,117 @@ class SplitQueryRequestHandlerSpec extends Specification {
         0 * _._
     }
     
+    def "Handler groups adjacent buckets when there would be too many sub-queries"() {
+        setup:
+        handler = new SplitQueryRequestHandler(next, 3, 0, new SubQueryConcurrencyLimiter(0))
+        groupByQuery.granularity >> DAY
+        groupByQuery.intervals >> [week]
+        rc.numberOfIncoming >> new AtomicLong(1)
+        rc.numberOfOutgoing >> new AtomicLong(1)
+        List<Interval> sentIntervals = []
+
+        when:
+        handler.handleRequest(rc, apiRequest, groupByQuery, response)
+
+        then:
+        3 * groupByQuery.withAllIntervals(_) >> { sentIntervals.addAll(it[0]); groupByQuerySplit }
+        3 * next.handleRequest(rc, apiRequest, groupByQuerySplit, _ as SplitQueryResponseProcessor)
+        sentIntervals == [
+                new Interval(startInstant, startInstant.plusDays(3)),
+                new Interval(startInstant.plusDays(3), startInstant.plusDays(6)),
+                new Interval(startInstant.plusDays(6), startInstant.plusDays(7))
+        ]
+    }
+
+    def "Handler keeps at most the configured number of sub-queries in flight"() {
+        setup:
+        SubQueryConcurrencyLimiter limiter = new SubQueryConcurrencyLimiter(0)
+        handler = new SplitQueryRequestHandler(next, 0, 2, limiter)
+        groupByQuery.granularity >> DAY
+        groupByQuery.intervals >> [week]
+        groupByQuery.withAllIntervals(_) >> {
+            GroupByQuery subQuery = Mock(GroupByQuery)
+            subQuery.getIntervals() >> it[0]
+            subQuery
+        }
+        rc.numberOfIncoming >> new AtomicLong(1)
+        rc.numberOfOutgoing >> new AtomicLong(1)
+        List<GroupByQuery> sent = []
+        SplitQueryResponseProcessor merging = null
+        next.handleRequest(*_) >> { sent.add(it[2]); merging = it[3]; true }
+
+        when:
+        handler.handleRequest(rc, apiRequest, groupByQuery, response)
+
+        then:
+        sent.size() == 2
+        limiter.running == 2
+
+        when:
+        merging.processResponse(MAPPER.readTree("[]"), sent[0], new LoggingContext(RequestLog.dump()))
+
+        then:
+        sent.size() == 3
+        limiter.running == 2
+
+        when:
+        (1..6).each {
+            merging.processResponse(MAPPER.readTree("[]"), sent[it], new LoggingContext(RequestLog.dump()))
+        }
+
+        then:
+        sent.size() == 7
+        sent*.intervals.flatten() == (0..6).collect { new Interval(startInstant.plusDays(it), Duration.standardDays(1)) }
+        limiter.running == 0
+        1 * response.processResponse(_, groupByQuery, _)
+    }
+
+    def "Handler stops sending sub-queries once a sub-query fails"() {
+        setup:
+        SubQueryConcurrencyLimiter limiter = new SubQueryConcurrencyLimiter(0)
+        handler = new SplitQueryRequestHandler(next, 0, 1, limiter)
+        groupByQuery.granularity >> DAY
+        groupByQuery.intervals >> [week]
+        groupByQuery.withAllIntervals(_) >> groupByQuerySplit
+        rc.numberOfIncoming >> new AtomicLong(1)
+        rc.numberOfOutgoing >> new AtomicLong(1)
+        response.getFailureCallback(_) >> Mock(FailureCallback)
+        SplitQueryResponseProcessor merging = null
+
+        when:
+        handler.handleRequest(rc, apiRequest, groupByQuery, response)
+        merging.getFailureCallback(groupByQuerySplit).invoke(new RuntimeException("Druid is unavailable"))
+
+        then:
+        1 * next.handleRequest(*_) >> { merging = it[3]; true }
+        limiter.running == 0
+    }
+
+    def "A sub-query which can't be sent frees its slot, even if failing the request throws"() {
+        setup:
+        SubQueryConcurrencyLimiter limiter = new SubQueryConcurrencyLimiter(0)
+        handler = new SplitQueryRequestHandler(next, 0, 1, limiter)
+        groupByQuery.granularity >> DAY
+        groupByQuery.intervals >> [week]
+        groupByQuery.withAllIntervals(_) >> groupByQuerySplit
+        rc.numberOfIncoming >> new AtomicLong(1)
+        rc.numberOfOutgoing >> new AtomicLong(1)
+        response.getFailureCallback(_) >> { throw new IllegalStateException("no failure callback") }
+
+        when:
+        handler.handleRequest(rc, apiRequest, groupByQuery, response)
+
+        then:
+        1 * next.handleRequest(*_) >> { throw new RuntimeException("query cannot be sent") }
+        limiter.running == 0
+    }
+
+    def "Without a shared limit, the default handler doesn't use the shared limiter"() {
+        expect:
+        SplitQueryRequestHandler.SUB_QUERY_LIMITER == null
+        handler.limiter == null
+    }
+
     SimplifiedIntervalList buildIntervals(List<String> intervals) {
         intervals.collect({ new Interval(it) }) as SimplifiedIntervalList
     }
@@ -0,0 +1,71 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web.handlers
+
+import spock.lang.Specification
+
+class SubQueryConcurrencyLimiterSpec extends Specification {
+
+    def "Sends beyond the limit wait until a slot is released"() {
+        given:
+        SubQueryConcurrencyLimiter limiter = new SubQueryConcurrencyLimiter(2)
+        List<Integer> sent = []
+
+        when:
+        (1..3).each { int i -> limiter.submit { sent.add(i) } }
+
+        then:
+        sent == [1, 2]
+        limiter.running == 2
+        limiter.waiting == 1
+
+        when:
+        limiter.release()
+
+        then:
+        sent == [1, 2, 3]
+        limiter.running == 2
+        limiter.waiting == 0
+    }
+
+    def "Without a limit every send runs at once"() {
+        given:
+        SubQueryConcurrencyLimiter limiter = new SubQueryConcurrencyLimiter(0)
+        int sent = 0
+
+        when:
+        100.times { limiter.submit { sent++ } }
+
+        then:
+        sent == 100
+        limiter.running == 100
+    }
+
+    def "Sends triggered by a running send run after it returns, without nesting"() {
+        given:
+        SubQueryConcurrencyLimiter limiter = new SubQueryConcurrencyLimiter(1)
+        int depth = 0
+        int maxDepth = 0
+        int sent = 0
+        Closure send
+        send = {
+            depth++
+            maxDepth = Math.max(maxDepth, depth)
+            sent++
+            // Answered synchronously, so the slot is released and the next send queued from within this one
+            limiter.release()
+            if (sent < 1000) {
+                limiter.submit(send)
+            }
+            depth--
+        }
+
+        when:
+        limiter.submit(send)
+
+        then:
+        sent == 1000
+        maxDepth == 1
+        limiter.running == 0
+    }
+}
@@ -15,6 +15,8 @@ import com.yahoo.bard.webservice.druid.model.query.WeightEvaluationQuery
 import com.yahoo.bard.webservice.web.DataApiRequest
 import com.yahoo.bard.webservice.web.responseprocessors.ResponseProcessor
 import com.yahoo.bard.webservice.web.responseprocessors.WeightCheckResponseProcessor
+import com.yahoo.bard.webservice.web.util.QueryWeightStatistics
+import com.yahoo.bard.webservice.web.util.QueryWeightStatistics.Decision
 import com.yahoo.bard.webservice.web.util.QueryWeightUtil
 
 import com.fasterxml.jackson.core.JsonFactory
@@ -44,6 +46,7 @@ class WeightCheckRequestHandlerSpec extends Specification {
         next = Mock(DataRequestHandler)
         webService = Mock(DruidWebService)
         queryWeightUtil = Mock(QueryWeightUtil)
+        queryWeightUtil.estimateWeight(_) >> QueryWeightStatistics.Estimate.UNCERTAIN
         mapper = Mock(ObjectMapper)
         writer = Mock(ObjectWriter)
         mapper.writer() >> writer
@@ -164,6 +167,63 @@ class WeightCheckRequestHandlerSpec extends Specification {
     }
 
 
+    def "A request whose estimated weight is certainly within the limit skips the weight check query"() {
+        setup:
+        QueryWeightUtil estimatingUtil = Mock(QueryWeightUtil)
+        WeightCheckRequestHandler handler = new WeightCheckRequestHandler(next, webService, estimatingUtil, mapper)
+        groupByQuery.getGranularity() >> DAY
+        estimatingUtil.skipWeightCheckQuery(groupByQuery) >> false
+        estimatingUtil.getQueryWeightThreshold(DAY) >> 100
+        estimatingUtil.estimateWeight(groupByQuery) >> new QueryWeightStatistics.Estimate(Decision.ACCEPT, 10, 50)
+
+        when:
+        boolean handled = handler.handleRequest(context, request, groupByQuery, response)
+
+        then:
+        handled
+        1 * next.handleRequest(context, request, groupByQuery, response) >> true
+        0 * estimatingUtil.makeWeightEvaluationQuery(_)
+        0 * webService.postDruidQuery(*_)
+    }
+
+    def "A request whose estimated weight is certainly over the limit is refused without the weight check query"() {
+        setup:
+        QueryWeightUtil estimatingUtil = Mock(QueryWeightUtil)
+        WeightCheckRequestHandler handler = new WeightCheckRequestHandler(next, webService, estimatingUtil, mapper)
+        groupByQuery.getGranularity() >> DAY
+        estimatingUtil.skipWeightCheckQuery(groupByQuery) >> false
+        estimatingUtil.getQueryWeightThreshold(DAY) >> 100
+        estimatingUtil.estimateWeight(groupByQuery) >> new QueryWeightStatistics.Estimate(Decision.REJECT, 150, 300)
+        HttpErrorCallback ec = Mock(HttpErrorCallback)
+        response.getErrorCallback(groupByQuery) >> ec
+
+        when:
+        boolean handled = handler.handleRequest(context, request, groupByQuery, response)
+
+        then:
+        handled
+        1 * ec.invoke(507, { it.contains("150 > 100") }, _)
+        0 * next.handleRequest(*_)
+        0 * webService.postDruidQuery(*_)
+    }
+
+    def "The weight measured by the weight check query is recorded"() {
+        setup:
+        WeightCheckRequestHandler handler = new WeightCheckRequestHandler(next, webService, queryWeightUtil, MAPPER)
+        SuccessCallback success = handler.buildSuccessCallback(context, request, groupByQuery, response, 100)
+
+        when:
+        success.invoke(MAPPER.readTree(json))
+
+        then:
+        1 * queryWeightUtil.recordWeight(groupByQuery, weight)
+
+        where:
+        json                             | weight
+        '[{"event": {"count": "60"}}]'   | 60
+        '[]'                             | 0
+    }
+
     def "Test build and invoke success callback passes"() {
         setup:
         WeightCheckRequestHandler handler = new WeightCheckRequestHandler(
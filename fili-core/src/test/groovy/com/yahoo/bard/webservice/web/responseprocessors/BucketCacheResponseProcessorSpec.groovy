@@ -0,0 +1,122 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web.responseprocessors
+
+import com.yahoo.bard.webservice.application.ObjectMappersSuite
+import com.yahoo.bard.webservice.data.cache.TupleDataCache
+import com.yahoo.bard.webservice.druid.model.query.GroupByQuery
+import com.yahoo.bard.webservice.metadata.QuerySigningService
+import com.yahoo.bard.webservice.metadata.SegmentIntervalsHashIdGenerator
+import com.yahoo.bard.webservice.util.SimplifiedIntervalList
+import com.yahoo.bard.webservice.web.RequestUtils
+
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.ObjectMapper
+
+import org.joda.time.Interval
+
+import spock.lang.Specification
+
+class BucketCacheResponseProcessorSpec extends Specification {
+
+    ObjectMapper mapper = new ObjectMappersSuite().getMapper()
+
+    Interval day1 = new Interval("2015-01-01/2015-01-02")
+    Interval day2 = new Interval("2015-01-02/2015-01-03")
+    Interval day3 = new Interval("2015-01-03/2015-01-04")
+    Map<Interval, String> bucketKeys = [(day1): "key1", (day2): "key2", (day3): "key3"]
+
+    GroupByQuery query = RequestUtils.buildGroupByQuery().withAllIntervals([new Interval("2015-01-01/2015-01-04")])
+
+    ResponseProcessor next = Mock(ResponseProcessor)
+    ResponseContext responseContext = new ResponseContext()
+    TupleDataCache<String, Long, Serializable> dataCache = Mock(TupleDataCache)
+    QuerySigningService<Long> querySigningService = Mock(SegmentIntervalsHashIdGenerator)
+    LoggingContext loggingContext = Mock(LoggingContext)
+
+    BucketCacheResponseProcessor processor
+
+    def setup() {
+        next.getResponseContext() >> responseContext
+        querySigningService.getSegmentSetId(_) >> Optional.of(1234L)
+        processor = new BucketCacheResponseProcessor(next, bucketKeys, dataCache, querySigningService, mapper)
+    }
+
+    JsonNode rows(String... days) {
+        return mapper.readTree(
+                "[" + days.collect { """{"version": "v1", "timestamp": "${it}T00:00:00.000Z", "event": {}}""" }
+                        .join(", ") + "]"
+        )
+    }
+
+    def "The rows of each bucket are cached under the key of the bucket"() {
+        given:
+        JsonNode json = rows("2015-01-01", "2015-01-01", "2015-01-03")
+        Map<String, List<String>> cached = [:]
+
+        when:
+        processor.processResponse(json, query, loggingContext)
+
+        then:
+        3 * dataCache.set(_, 1234L, _) >> {
+            cached[it[0] as String] = mapper.readTree(it[2] as String).collect { it.get("timestamp").asText() }
+            true
+        }
+        cached == [
+                key1: ["2015-01-01T00:00:00.000Z", "2015-01-01T00:00:00.000Z"],
+                key2: [],
+                key3: ["2015-01-03T00:00:00.000Z"]
+        ]
+
+        and: "The response is passed on unchanged"
+        1 * next.processResponse(json, query, loggingContext)
+    }
+
+    def "Buckets overlapping partial or volatile intervals are not cached"() {
+        given:
+        responseContext.put(
+                ResponseContextKeys.MISSING_INTERVALS_CONTEXT_KEY.getName(),
+                new SimplifiedIntervalList([day1])
+        )
+        responseContext.put(
+                ResponseContextKeys.VOLATILE_INTERVALS_CONTEXT_KEY.getName(),
+                new SimplifiedIntervalList([new Interval("2015-01-03T12:00:00.000Z/2015-01-04")])
+        )
+        JsonNode json = rows("2015-01-02", "2015-01-03")
+
+        when:
+        processor.processResponse(json, query, loggingContext)
+
+        then:
+        1 * dataCache.set("key2", 1234L, _) >> true
+        0 * dataCache.set(*_)
+        1 * next.processResponse(json, query, loggingContext)
+    }
+
+    def "Nothing is cached when a row falls outside the buckets"() {
+        given:
+        JsonNode json = rows(day)
+
+        when:
+        processor.processResponse(json, query, loggingContext)
+
+        then:
+        0 * dataCache.set(*_)
+        1 * next.processResponse(json, query, loggingContext)
+
+        where:
+        day << ["2014-12-31", "2015-01-04"]
+    }
+
+    def "A failure to cache does not stop the response"() {
+        given:
+        JsonNode json = rows("2015-01-01")
+
+        when:
+        processor.processResponse(json, query, loggingContext)
+
+        then:
+        3 * dataCache.set(*_) >> { throw new IllegalStateException("cache is down") }
+        1 * next.processResponse(json, query, loggingContext)
+    }
+}
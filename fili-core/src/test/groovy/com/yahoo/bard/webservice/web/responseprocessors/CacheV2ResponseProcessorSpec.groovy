@@ -9,6 +9,7 @@ import static com.yahoo.bard.webservice.web.responseprocessors.ResponseContextKe
 import com.yahoo.bard.webservice.application.ObjectMappersSuite
 import com.yahoo.bard.webservice.config.SystemConfig
 import com.yahoo.bard.webservice.config.SystemConfigProvider
+import com.yahoo.bard.webservice.data.cache.HashDataCache
 import com.yahoo.bard.webservice.data.cache.TupleDataCache
 import com.yahoo.bard.webservice.data.metric.mappers.ResultSetMapper
 import com.yahoo.bard.webservice.druid.client.FailureCallback
@@ -103,6 +104,19 @@ class CacheV2ResponseProcessorSpec extends Specification {
 
     }
 
+    def "A response is stored beside the checksum of its query"() {
+        setup:
+        crp = new CacheV2ResponseProcessor(next, cacheKey, "checksum", dataCache, querySigningService, MAPPER)
+        next.getResponseContext() >> responseContext
+
+        when:
+        crp.processResponse(json, groupByQuery, null)
+
+        then:
+        1 * dataCache.set(cacheKey, segmentId, new HashDataCache.Pair<>("checksum", '[]'))
+        1 * next.processResponse(json, groupByQuery, null)
+    }
+
     def "After error saving to cache, process response continues"() {
         when:
         crp.processResponse(json, groupByQuery, null)
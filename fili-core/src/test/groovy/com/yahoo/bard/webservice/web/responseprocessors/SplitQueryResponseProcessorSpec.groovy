@@ -109,16 +109,74 @@ public class SplitQueryResponseProcessorSpec extends Specification {
         sqrp.failed.get()
     }
 
-    def "Test stitch Json"() {
+    def "Test responses arriving out of order are merged in time order"() {
         setup:
-        completedIntervals.add(new Pair<>(node1, new LoggingContext(RequestLog.dump())))
-        completedIntervals.add(new Pair<>(node2, new LoggingContext(RequestLog.dump())))
+        groupByQuery2.getIntervals() >> [interval2] >> [interval1]
 
         when:
-        Pair<JsonNode, LoggingContext> result = sqrp.mergeResponses(completedIntervals)
+        sqrp.processResponse(node2, groupByQuery2, new LoggingContext(RequestLog.dump()))
+
+        then:
+        sqrp.mergedResponse.size() == 0
+        0 * next.processResponse(_, _, _)
+
+        when:
+        sqrp.processResponse(node1, groupByQuery2, new LoggingContext(RequestLog.dump()))
+
+        then:
+        1 * next.processResponse(nodeExpected, groupByQuery1, _)
+        sqrp.completedIntervals.every { it.key == null }
+    }
+
+    def "Test responses are merged as soon as all earlier responses have arrived"() {
+        setup:
+        groupByQuery2.getIntervals() >> [interval1]
+
+        when:
+        sqrp.processResponse(node1, groupByQuery2, new LoggingContext(RequestLog.dump()))
 
         then:
-        result.getKey().equals(nodeExpected)
+        sqrp.mergedResponse == node1
+        sqrp.completedIntervals[0].key == null
+    }
+
+    def "Test a single response is passed on without being copied"() {
+        setup:
+        expectedIntervals.remove(interval2)
+        sqrp = new SplitQueryResponseProcessor(next, apiRequest, groupByQuery1, expectedIntervals, RequestLog.dump())
+        groupByQuery2.getIntervals() >> [interval1]
+
+        when:
+        sqrp.processResponse(node1, groupByQuery2, new LoggingContext(RequestLog.dump()))
+
+        then:
+        1 * next.processResponse({ it.is(node1) }, groupByQuery1, _)
+    }
+
+    def "Test every answer, error and failure is counted as a completed slice"() {
+        setup:
+        int slicesCompleted = 0
+        sqrp = new SplitQueryResponseProcessor(
+                next,
+                apiRequest,
+                groupByQuery1,
+                expectedIntervals,
+                RequestLog.dump(),
+                { slicesCompleted++ }
+        )
+        next.getFailureCallback(_) >> nextFail
+        next.getErrorCallback(_) >> Mock(HttpErrorCallback)
+        groupByQuery2.getIntervals() >> [new Interval(5, 10)]
+
+        when:
+        sqrp.processResponse(node1, groupByQuery2, null)
+        sqrp.getErrorCallback(groupByQuery2).invoke(500, "reason", "body")
+        sqrp.getFailureCallback(groupByQuery2).invoke(new Throwable("foo"))
+
+        then:
+        slicesCompleted == 3
+        sqrp.failed.get()
+        1 * nextFail.invoke(_)
     }
 
     def "Test process response with good Data"() {
@@ -0,0 +1,221 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web.util
+
+import static com.yahoo.bard.webservice.data.time.DefaultTimeGrain.DAY
+import static com.yahoo.bard.webservice.druid.model.DefaultQueryType.GROUP_BY
+
+import com.yahoo.bard.webservice.data.dimension.Dimension
+import com.yahoo.bard.webservice.druid.model.aggregation.SketchAggregation
+import com.yahoo.bard.webservice.druid.model.datasource.DataSource
+import com.yahoo.bard.webservice.druid.model.filter.Filter
+import com.yahoo.bard.webservice.druid.model.orderby.LimitSpec
+import com.yahoo.bard.webservice.druid.model.query.AllGranularity
+import com.yahoo.bard.webservice.druid.model.query.Granularity
+import com.yahoo.bard.webservice.druid.model.query.GroupByQuery
+import com.yahoo.bard.webservice.web.util.QueryWeightStatistics.Decision
+
+import org.joda.time.DateTime
+import org.joda.time.DateTimeZone
+import org.joda.time.Days
+import org.joda.time.Interval
+
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+import java.util.function.LongSupplier
+
+class QueryWeightStatisticsSpec extends Specification {
+
+    long now = 0
+    QueryWeightStatistics statistics = new QueryWeightStatistics(3, 3, 100, 60000, { now } as LongSupplier)
+
+    Filter filter = Mock(Filter)
+
+    /**
+     * Make a group by query on one data source.
+     *
+     * @param days  The number of days the query asks for
+     * @param sketches  The number of sketch aggregations of the query
+     * @param dimensionNames  The names of the grouping dimensions
+     * @param queryFilter  The filter of the query
+     * @param granularity  The granularity of the query
+     * @param limitSpec  The limit spec of the query
+     */
+    GroupByQuery query(
+            int days,
+            int sketches = 1,
+            List<String> dimensionNames = ["color"],
+            Filter queryFilter = null,
+            Granularity granularity = DAY,
+            LimitSpec limitSpec = null
+    ) {
+        GroupByQuery query = Mock(GroupByQuery)
+        query.getInnermostQuery() >> query
+        query.getQueryType() >> GROUP_BY
+        query.getDataSource() >> Mock(DataSource) { getNames() >> (["shapes"] as Set) }
+        query.getDimensions() >> dimensionNames.collect { name -> Mock(Dimension) { getApiName() >> name } }
+        query.getGranularity() >> granularity
+        query.getFilter() >> queryFilter
+        query.getLimitSpec() >> limitSpec
+        query.getIntervals() >> [new Interval(new DateTime(2017, 1, 1, 0, 0, DateTimeZone.UTC), Days.days(days))]
+        query.getAggregations() >> (1..sketches).collect { Mock(SketchAggregation) }
+        return query
+    }
+
+    def "Queries are uncertain until enough weights of their shape are recorded"() {
+        when:
+        statistics.record(query(10), 100)
+        statistics.record(query(10), 100)
+
+        then:
+        statistics.estimate(query(10), 1000).decision == Decision.UNCERTAIN
+
+        when:
+        statistics.record(query(10), 100)
+
+        then:
+        statistics.estimate(query(10), 1000).decision == Decision.ACCEPT
+    }
+
+    def "Weights are scaled by the time buckets and sketches of the query being estimated"() {
+        given: "10 rows per day"
+        3.times { statistics.record(query(10, 1), 100) }
+
+        when:
+        QueryWeightStatistics.Estimate estimate = statistics.estimate(query(days, sketches), threshold)
+
+        then:
+        estimate.decision == decision
+        estimate.lowerBound == weight
+        estimate.upperBound == weight
+
+        where:
+        days | sketches | threshold | weight | decision
+        10   | 1        | 100       | 100    | Decision.ACCEPT
+        30   | 2        | 600       | 600    | Decision.ACCEPT
+        30   | 2        | 599       | 600    | Decision.REJECT
+        5    | 1        | 49        | 50     | Decision.REJECT
+    }
+
+    def "The bounds widen with the spread of the recorded weights"() {
+        given: "10, 20 and 30 rows per day"
+        [100, 200, 300].each { statistics.record(query(10), it) }
+
+        when: "mean 20 and standard deviation 10, widened to 3 deviations"
+        QueryWeightStatistics.Estimate estimate = statistics.estimate(query(10), threshold)
+
+        then:
+        estimate.lowerBound == 0
+        estimate.upperBound == 500
+        estimate.decision == decision
+
+        where:
+        threshold | decision
+        500       | Decision.ACCEPT
+        499       | Decision.UNCERTAIN
+        0         | Decision.UNCERTAIN
+    }
+
+    def "Shapes are told apart by their dimensions"() {
+        given:
+        3.times { statistics.record(query(10, 1, ["color", "shape"]), 100) }
+
+        expect: "dimension order doesn't matter"
+        statistics.estimate(query(10, 1, ["shape", "color"]), 1000).decision == Decision.ACCEPT
+        statistics.estimate(query(10, 1, ["color"]), 1000).decision == Decision.UNCERTAIN
+        statistics.size() == 1
+    }
+
+    def "A filtered query may be accepted but not rejected on the weights of the same query unfiltered"() {
+        given:
+        3.times { statistics.record(query(10), 100) }
+
+        expect:
+        statistics.estimate(query(10, 1, ["color"], filter), 100).decision == Decision.ACCEPT
+        statistics.estimate(query(10, 1, ["color"], filter), 10).decision == Decision.UNCERTAIN
+        statistics.estimate(query(10), 10).decision == Decision.REJECT
+    }
+
+    def "Queries at the all granularity are neither recorded nor estimated"() {
+        given:
+        GroupByQuery allQuery = query(10, 1, ["color"], null, AllGranularity.INSTANCE)
+
+        when:
+        3.times { statistics.record(allQuery, 100) }
+
+        then:
+        statistics.size() == 0
+        statistics.estimate(allQuery, Long.MAX_VALUE).decision == Decision.UNCERTAIN
+    }
+
+    def "Group by queries with a limit are neither recorded nor estimated"() {
+        given: "the limit caps the rows over all days, not per day"
+        LimitSpec limitSpec = new LimitSpec([] as LinkedHashSet, OptionalInt.of(10))
+        GroupByQuery limitedQuery = query(10, 1, ["color"], null, DAY, limitSpec)
+
+        when:
+        3.times { statistics.record(limitedQuery, 100) }
+
+        then:
+        statistics.size() == 0
+        statistics.estimate(limitedQuery, 1).decision == Decision.UNCERTAIN
+        statistics.estimate(query(30, 1, ["color"], null, DAY, limitSpec), 1).decision == Decision.UNCERTAIN
+    }
+
+    def "Group by queries sorted without a limit are estimated"() {
+        given:
+        LimitSpec limitSpec = new LimitSpec([] as LinkedHashSet)
+        3.times { statistics.record(query(10, 1, ["color"], null, DAY, limitSpec), 100) }
+
+        expect:
+        statistics.estimate(query(30, 1, ["color"], null, DAY, limitSpec), 299).decision == Decision.REJECT
+    }
+
+    def "Statistics are dropped after their time to live"() {
+        given:
+        3.times { statistics.record(query(10), 100) }
+
+        when:
+        now += TimeUnit.MINUTES.toNanos(1)
+
+        then:
+        statistics.estimate(query(10), 1000).decision == Decision.UNCERTAIN
+        statistics.size() == 0
+    }
+
+    def "New shapes are not recorded past the most shapes, unless expired shapes make room"() {
+        given:
+        QueryWeightStatistics small = new QueryWeightStatistics(1, 3, 1, 60000, { now } as LongSupplier)
+        small.record(query(10, 1, ["color"]), 100)
+
+        when:
+        small.record(query(10, 1, ["shape"]), 100)
+
+        then:
+        small.estimate(query(10, 1, ["shape"]), 1000).decision == Decision.UNCERTAIN
+
+        when:
+        now += TimeUnit.MINUTES.toNanos(1)
+        small.record(query(10, 1, ["shape"]), 100)
+
+        then:
+        small.size() == 1
+        small.estimate(query(10, 1, ["shape"]), 1000).decision == Decision.ACCEPT
+    }
+
+    def "Decisions are metered"() {
+        given:
+        long accepted = QueryWeightStatistics.ACCEPTED.count
+        long uncertain = QueryWeightStatistics.UNCERTAIN.count
+        3.times { statistics.record(query(10), 100) }
+
+        when:
+        statistics.estimate(query(10), 1000)
+        statistics.estimate(query(10, 1, ["shape"]), 1000)
+
+        then:
+        QueryWeightStatistics.ACCEPTED.count == accepted + 1
+        QueryWeightStatistics.UNCERTAIN.count == uncertain + 1
+    }
+}
@@ -26,6 +26,9 @@ import java.util.function.Supplier;
  */
 public class AsyncDruidWebServiceImplWrapper extends AsyncDruidWebServiceImpl {
     public Request request;
+    public SuccessCallback success;
+    public HttpErrorCallback error;
+    public FailureCallback failure;
 
     /**
      * Constructor wrapper.
@@ -65,6 +68,9 @@ public class AsyncDruidWebServiceImplWrapper extends AsyncDruidWebServiceImpl {
             final AtomicLong outstanding
     ) {
         this.request = requestBuilder.build();
+        this.success = success;
+        this.error = error;
+        this.failure = failure;
         return ConcurrentUtils.constantFuture(null);
     }
 
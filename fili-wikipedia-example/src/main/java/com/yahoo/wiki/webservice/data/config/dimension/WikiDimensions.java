@@ -9,6 +9,7 @@ import com.yahoo.bard.webservice.data.config.dimension.DimensionConfig;
 import com.yahoo.bard.webservice.data.dimension.DimensionField;
 import com.yahoo.bard.webservice.data.dimension.KeyValueStore;
 import com.yahoo.bard.webservice.data.dimension.MapStoreManager;
+import com.yahoo.bard.webservice.data.dimension.MemoryMappedStoreManager;
 import com.yahoo.bard.webservice.data.dimension.SearchProvider;
 import com.yahoo.bard.webservice.data.dimension.impl.ScanSearchProviderManager;
 import com.yahoo.bard.webservice.util.StreamUtils;
@@ -95,6 +96,9 @@ public class WikiDimensions {
      * @return A KeyValueStore instance
      */
     private KeyValueStore getDefaultKeyValueStore(WikiApiDimensionConfigInfo storeName) {
+        if ("mmap".equalsIgnoreCase(systemConfig.getStringProperty(defaultDimensionBackendKey, "memory"))) {
+            return MemoryMappedStoreManager.getInstance(storeName.asName());
+        }
         return MapStoreManager.getInstance(storeName.asName());
     }
 